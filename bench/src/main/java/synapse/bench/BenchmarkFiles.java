@@ -0,0 +1,73 @@
+package synapse.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Creates and removes the files used by the benchmarks.
+ *
+ * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+ */
+public class BenchmarkFiles {
+
+    /**
+     * Creates a temporary folder.
+     *
+     * @param name A prefix of the folder name.
+     * @return The folder.
+     * @throws IOException If the folder could not be created.
+     */
+    public static File createFolder(String name) throws IOException {
+        File folder = File.createTempFile(name, "");
+        folder.delete();
+        if (!folder.mkdirs()) {
+            throw new IOException("Could not create " + folder);
+        }
+        return folder;
+    }
+
+    /**
+     * Creates a file of random bytes.
+     *
+     * @param folder The folder of the file.
+     * @param size The file size.
+     * @return The file.
+     * @throws IOException If the file could not be written.
+     */
+    public static File createFile(File folder, long size) throws IOException {
+        File file = new File(folder, "bench-" + size + ".dat");
+        Random random = new Random(size);
+        byte[] buffer = new byte[ 64 * 1024 ];
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            for (long written = 0; written < size; written += buffer.length) {
+                random.nextBytes(buffer);
+                out.write(buffer, 0, (int) Math.min(buffer.length, size - written));
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Removes a folder and its files.
+     *
+     * @param folder The folder.
+     */
+    public static void delete(File folder) {
+        File[] files = folder.listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            if (files[i].isDirectory()) {
+                delete(files[i]);
+            }
+            else {
+                files[i].delete();
+            }
+        }
+        folder.delete();
+    }
+
+}
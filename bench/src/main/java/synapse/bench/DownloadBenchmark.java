@@ -0,0 +1,129 @@
+package synapse.bench;
+
+import java.io.File;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synapse.client.ClientConfig;
+import synapse.client.TransferPipeImpl;
+import synapse.client.manager.AbstractDownload;
+import synapse.client.manager.AdvancedDownload;
+import synapse.client.manager.SimpleDownload;
+import synapse.client.manager.SwarmDownload;
+import synapse.common.FileInfo;
+
+/**
+ * Measures a whole download, from <code>resume</code> to <code>COMPLETED</code>, with
+ * sources that are <code>TransferPipeImpl</code>s in the same process. There is no
+ * network, so this measures the scheduling, the chunk sizing and the writes.
+ *
+ * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DownloadBenchmark {
+
+    /**
+     * The longest time a download may take.
+     */
+    private static final long TIMEOUT = 5 * 60 * 1000;
+
+    @Param({ "SimpleDownload", "AdvancedDownload", "SwarmDownload" })
+    public String type;
+
+    @Param({ "1048576", "67108864" })
+    public long fileSize;
+
+    @Param({ "1", "4" })
+    public int sources;
+
+    private File sourceFolder;
+
+    private File sharedFolder;
+
+    private TransferPipeImpl[] pipes;
+
+    private File downloaded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.sourceFolder = BenchmarkFiles.createFolder("source");
+        this.sharedFolder = BenchmarkFiles.createFolder("shared");
+        ClientConfig.setProperty(ClientConfig.SHARED_FOLDER, this.sharedFolder.getPath());
+
+        File file = BenchmarkFiles.createFile(this.sourceFolder, this.fileSize);
+        FileInfo info = new FileInfo(file);
+        this.pipes = new TransferPipeImpl[ this.sources ];
+        for (int i = 0; i < this.pipes.length; i++) {
+            this.pipes[i] = new TransferPipeImpl(info);
+        }
+        this.downloaded = new File(this.sharedFolder, file.getName());
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteDownload() {
+        this.downloaded.delete();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        for (int i = 0; i < this.pipes.length; i++) {
+            UnicastRemoteObject.unexportObject(this.pipes[i], true);
+        }
+        BenchmarkFiles.delete(this.sourceFolder);
+        BenchmarkFiles.delete(this.sharedFolder);
+    }
+
+    @Benchmark
+    public int download() throws Exception {
+        AbstractDownload download = this.create();
+        for (int i = 1; i < this.pipes.length; i++) {
+            download.addTransferPipe(this.pipes[i]);
+        }
+        download.resume();
+
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        int status = download.getStatus();
+        while (status == AbstractDownload.DOWNLOADING || status == AbstractDownload.PAUSED) {
+            if (System.currentTimeMillis() > deadline) {
+                download.cancel();
+                throw new IllegalStateException("The download did not finish: " + download);
+            }
+            Thread.sleep(1);
+            status = download.getStatus();
+        }
+        if (status != AbstractDownload.COMPLETED) {
+            throw new IllegalStateException("The download failed: " + download);
+        }
+        return status;
+    }
+
+    private AbstractDownload create() throws Exception {
+        if ("SimpleDownload".equals(this.type)) {
+            return new SimpleDownload(this.pipes[0]);
+        }
+        if ("AdvancedDownload".equals(this.type)) {
+            return new AdvancedDownload(this.pipes[0]);
+        }
+        return new SwarmDownload(this.pipes[0]);
+    }
+
+}
@@ -0,0 +1,92 @@
+package synapse.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synapse.client.ExpressionAnalyzer;
+import synapse.util.CompiledExpressionAnalyzer;
+import synapse.util.SimpleExpressionAnalyzer;
+
+/**
+ * Measures a search over the names of a shared folder: one expression matched
+ * against every name, as <code>FileSource.searchForResources</code> does.
+ *
+ * @author <p>Thiago Emmanuel, thiago.manel@gmail.com</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExpressionBenchmark {
+
+    private static final String[] WORDS = new String[] {
+        "linux", "ubuntu", "debian", "desktop", "server", "amd64", "i386", "live",
+        "music", "album", "live", "remastered", "flac", "mp3", "video", "season",
+        "episode", "720p", "1080p", "book", "manual", "draft", "final", "backup"
+    };
+
+    private static final String[] EXTENSIONS = new String[] { ".iso", ".mp3", ".avi", ".pdf", ".zip", ".dat" };
+
+    @Param({ "1000", "100000" })
+    public int names;
+
+    @Param({ "ubuntu", "linux iso", "ubuntu+desktop", "album !mp3" })
+    public String expression;
+
+    @Param({ "simple", "compiled" })
+    public String analyzerType;
+
+    private String[] fileNames;
+
+    private ExpressionAnalyzer analyzer;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        this.fileNames = new String[ this.names ];
+        for (int i = 0; i < this.fileNames.length; i++) {
+            StringBuffer name = new StringBuffer();
+            int words = 2 + random.nextInt(4);
+            for (int k = 0; k < words; k++) {
+                if (k > 0) {
+                    name.append(random.nextBoolean() ? '_' : ' ');
+                }
+                name.append(WORDS[ random.nextInt(WORDS.length) ]);
+            }
+            name.append(EXTENSIONS[ random.nextInt(EXTENSIONS.length) ]);
+            this.fileNames[i] = name.toString();
+        }
+        if ("compiled".equals(this.analyzerType)) {
+            this.analyzer = new CompiledExpressionAnalyzer(CompiledExpressionAnalyzer.DEFAULT_CACHE_SIZE);
+        }
+        else {
+            this.analyzer = new SimpleExpressionAnalyzer();
+        }
+    }
+
+    @Benchmark
+    public int search() {
+        int found = 0;
+        for (int i = 0; i < this.fileNames.length; i++) {
+            if (this.analyzer.accept(this.expression, this.fileNames[i])) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+}
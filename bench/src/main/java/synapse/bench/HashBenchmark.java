@@ -0,0 +1,64 @@
+package synapse.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synapse.common.PieceHashes;
+import synapse.util.HashUtil;
+
+/**
+ * Measures the hashing of a shared file. After the first iteration the file is in
+ * the page cache, so this measures the MD5 and the read loop, not the disk.
+ *
+ * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashBenchmark {
+
+    @Param({ "65536", "1048576", "67108864" })
+    public long fileSize;
+
+    private File folder;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.folder = BenchmarkFiles.createFolder("hash");
+        this.file = BenchmarkFiles.createFile(this.folder, this.fileSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkFiles.delete(this.folder);
+    }
+
+    @Benchmark
+    public String createHash() {
+        return HashUtil.createHash(this.file);
+    }
+
+    @Benchmark
+    public PieceHashes createHashes() {
+        return HashUtil.createHashes(this.file);
+    }
+
+}
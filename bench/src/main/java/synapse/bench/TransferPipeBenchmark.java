@@ -0,0 +1,94 @@
+package synapse.bench;
+
+import java.io.File;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synapse.client.TransferPipeImpl;
+import synapse.common.FileInfo;
+
+/**
+ * Measures the reads of an upload, calling the <code>TransferPipeImpl</code> in the
+ * same process. The chunks go through the file sequentially and start again at the
+ * beginning, as a download does.
+ *
+ * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferPipeBenchmark {
+
+    /**
+     * The number of chunks asked in a batch by <code>getFiles</code>.
+     */
+    private static final int BATCH = 8;
+
+    @Param({ "67108864" })
+    public long fileSize;
+
+    @Param({ "16384", "65536", "262144", "1048576" })
+    public int chunkSize;
+
+    private File folder;
+
+    private TransferPipeImpl pipe;
+
+    private long position;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.folder = BenchmarkFiles.createFolder("pipe");
+        File file = BenchmarkFiles.createFile(this.folder, this.fileSize);
+        this.pipe = new TransferPipeImpl(new FileInfo(file));
+        this.position = 0;
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        UnicastRemoteObject.unexportObject(this.pipe, true);
+        BenchmarkFiles.delete(this.folder);
+    }
+
+    @Benchmark
+    public byte[] getFile() throws Exception {
+        if (this.position + this.chunkSize > this.fileSize) {
+            this.position = 0;
+        }
+        byte[] chunk = this.pipe.getFile(this.position, this.chunkSize);
+        this.position += this.chunkSize;
+        return chunk;
+    }
+
+    @Benchmark
+    public byte[][] getFiles() throws Exception {
+        if (this.position + (long) BATCH * this.chunkSize > this.fileSize) {
+            this.position = 0;
+        }
+        long[] offsets = new long[ BATCH ];
+        int[] lengths = new int[ BATCH ];
+        for (int k = 0; k < BATCH; k++) {
+            offsets[k] = this.position;
+            lengths[k] = this.chunkSize;
+            this.position += this.chunkSize;
+        }
+        return this.pipe.getFiles(offsets, lengths);
+    }
+
+}
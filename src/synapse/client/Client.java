@@ -64,6 +64,13 @@ public class Client extends UnicastRemoteObject implements Consumer, Provider {
         throw new OperationNotSupportedException();
     }
 
+    /* (non-Javadoc)
+     * @see synapse.common.Provider#searchFile(synapse.common.Consumer, java.lang.String, int, boolean)
+     */
+    public long searchFile(Consumer consumer, String fileName, int limit, boolean ranked) throws OperationNotSupportedException {
+        throw new OperationNotSupportedException();
+    }
+
     /* (non-Javadoc)
      * @see synapse.common.Provider#searchFile(long, synapse.common.Consumer, java.lang.String)
      */
@@ -71,6 +78,13 @@ public class Client extends UnicastRemoteObject implements Consumer, Provider {
         this.facade.searchFile(id, consumer, fileName);
     }
 
+    /* (non-Javadoc)
+     * @see synapse.common.Provider#searchFile(long, synapse.common.Consumer, java.lang.String, int, boolean)
+     */
+    public void searchFile(long id, Consumer consumer, String fileName, int limit, boolean ranked) throws RemoteException {
+        this.facade.searchFile(id, consumer, fileName, limit, ranked);
+    }
+
 
     /* (non-Javadoc)
      * @see synapse.common.Provider#searchFile(java.lang.String, synapse.common.Consumer)
@@ -86,6 +100,13 @@ public class Client extends UnicastRemoteObject implements Consumer, Provider {
 		throw new OperationNotSupportedException();
 	}
 
+	/* (non-Javadoc)
+	 * @see synapse.common.Provider#searchForCommunity(long, synapse.common.Consumer, java.lang.String, int, boolean)
+	 */
+	public void searchForCommunity(long id, Consumer consumer, String fileName, int limit, boolean ranked) throws RemoteException {
+		throw new OperationNotSupportedException();
+	}
+
     /* (non-Javadoc)
      * @see synapse.common.Provider#getFile(java.lang.String)
      */
@@ -100,6 +121,13 @@ public class Client extends UnicastRemoteObject implements Consumer, Provider {
         this.facade.fileWasFound(id, provider, fileInfo);
     }
 
+    /* (non-Javadoc)
+     * @see synapse.common.Consumer#filesWereFound(long, synapse.common.Provider, synapse.common.FileInfo[])
+     */
+    public void filesWereFound(long id, Provider provider, FileInfo[] files) throws RemoteException {
+        this.facade.filesWereFound(id, provider, files);
+    }
+
     /* (non-Javadoc)
      * @see synapse.common.Consumer#hereIsFile(synapse.common.TransferPipe)
      */
@@ -12,6 +12,7 @@ import synapse.client.manager.RequestIDDoesNotExistException;
 import synapse.client.manager.UploadManager;
 import synapse.client.ui.ClientNotConnectedException;
 import synapse.common.Consumer;
+import synapse.common.FileInfo;
 import synapse.common.Provider;
 
 /**
@@ -59,8 +60,10 @@ public class ClientCommunicator {
 	 */
 	public void search(String value) throws ClientNotConnectedException {
 		try {
-			long id = this.server.searchFile(client, value);
-			ReplyManager.getInstance().addNewSearch(id);
+			int limit = ClientConfig.getSearchLimit();
+			boolean ranked = ClientConfig.isSearchRanked();
+			long id = this.server.searchFile(client, value, limit, ranked);
+			ReplyManager.getInstance().addNewSearch(id, value, limit, ranked);
 		} catch (RemoteException e) {
 			throw new ClientNotConnectedException();
 		}
@@ -137,7 +140,9 @@ public class ClientCommunicator {
 	 * @throws HashDoesNotExistException If the hash does not exist.
 	 */
 	public void sendGetToProviders(long id, String hash) throws RequestIDDoesNotExistException, HashDoesNotExistException {
-	    DownloadManager.getInstance().addSolicitation(hash); // this line HAS to be here!!
+	    //a raiz das hashes das pecas vem da busca, e nao da fonte que as envia
+	    FileInfo info = ReplyManager.getInstance().getFileInfo(id, hash);
+	    DownloadManager.getInstance().addSolicitation(hash, info.getPieceRoot()); // this line HAS to be here!!
 
 	    List providersList = ReplyManager.getInstance().getProviders(id, hash);
 		Iterator iterator = providersList.iterator();
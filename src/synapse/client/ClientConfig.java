@@ -37,6 +37,79 @@ public class ClientConfig extends Config {
      */
     public static final String SHARED_FOLDER = "sharedfolder";
 
+    /**
+     * Download sync policy field: <code>never</code>, <code>close</code> or <code>always</code>.
+     */
+    public static final String DOWNLOAD_SYNC = "downloadsync";
+
+    /**
+     * Maximum number of active downloads field.
+     */
+    public static final String MAX_DOWNLOADS = "maxdownloads";
+
+    /**
+     * Maximum number of sources of a download field.
+     */
+    public static final String MAX_SOURCES = "maxsources";
+
+    /**
+     * The property name used to define the number of search results sent in each call.
+     */
+    public static final String RESULT_PAGE_SIZE = "resultpagesize";
+
+    /**
+     * The property name used to define the time, in milliseconds, a search result waits to be sent.
+     */
+    public static final String RESULT_PAGE_TIME = "resultpagetime";
+
+    /**
+     * The property name used to define the number of files a search wants from each peer and keeps.
+     */
+    public static final String SEARCH_LIMIT = "searchlimit";
+
+    /**
+     * The property name used to define if the files of a search are ranked, keeping the best ones
+     * instead of the first ones found.
+     */
+    public static final String SEARCH_RANKING = "searchranking";
+
+    /**
+     * The property name used to define the number of events waiting to be processed.
+     */
+    public static final String EVENT_QUEUE_SIZE = "eventqueuesize";
+
+    /**
+     * The prefix of the properties used to define what happens to an event when the queue is full,
+     * followed by the event type, as <code>eventpolicy.FileWasFoundNotifyEvent=dropoldest</code>.
+     * The policy of <code>eventpolicy.Event</code> is used by the types without one.
+     */
+    public static final String EVENT_POLICY = "eventpolicy";
+
+    /**
+     * The default maximum number of active downloads.
+     */
+    private static final int DEFAULT_MAX_DOWNLOADS = 4;
+
+    /**
+     * The default maximum number of sources of a download.
+     */
+    private static final int DEFAULT_MAX_SOURCES = 16;
+
+    /**
+     * The default number of events waiting to be processed.
+     */
+    private static final int DEFAULT_EVENT_QUEUE_SIZE = 10000;
+
+    /**
+     * The default number of files a search keeps.
+     */
+    private static final int DEFAULT_SEARCH_LIMIT = 500;
+
+    /**
+     * Hash index full path.
+     */
+    private static final String HASH_INDEX_FILENAME = getRootDir() + File.separator + "hashes.idx";
+
     /**
      * Test folder full path.
      */
@@ -97,6 +170,14 @@ public class ClientConfig extends Config {
         properties.setProperty(PORT, "1551");
         properties.setProperty(LOGNAME, "client.log");
         properties.setProperty(SHARED_FOLDER, "sharedFolder");
+        properties.setProperty(DOWNLOAD_SYNC, "close");
+        properties.setProperty(MAX_DOWNLOADS, Integer.toString(DEFAULT_MAX_DOWNLOADS));
+        properties.setProperty(MAX_SOURCES, Integer.toString(DEFAULT_MAX_SOURCES));
+        properties.setProperty(EVENT_QUEUE_SIZE, Integer.toString(DEFAULT_EVENT_QUEUE_SIZE));
+        properties.setProperty(RESULT_PAGE_SIZE, Integer.toString(ResultPager.DEFAULT_PAGE_SIZE));
+        properties.setProperty(RESULT_PAGE_TIME, Long.toString(ResultPager.DEFAULT_PAGE_TIME));
+        properties.setProperty(SEARCH_LIMIT, Integer.toString(DEFAULT_SEARCH_LIMIT));
+        properties.setProperty(SEARCH_RANKING, "true");
 
         saveProperties();
     }
@@ -150,6 +231,117 @@ public class ClientConfig extends Config {
         return properties.getProperty(SHARED_FOLDER);
     }
 
+    /**
+     * Returns when the downloaded bytes are forced to disk.
+     * 
+     * @return The sync policy.
+     */
+    public static String getDownloadSync() {
+        if (properties == null) {
+            loadProperties();
+        }
+        return properties.getProperty(DOWNLOAD_SYNC, "close");
+    }
+
+    /**
+     * Returns the maximum number of downloads active at the same time.
+     * 
+     * @return The number of downloads.
+     */
+    public static int getMaxDownloads() {
+        return getInt(MAX_DOWNLOADS, DEFAULT_MAX_DOWNLOADS);
+    }
+
+    /**
+     * Returns the maximum number of sources a download uses at the same time.
+     * 
+     * @return The number of sources.
+     */
+    public static int getMaxSources() {
+        return getInt(MAX_SOURCES, DEFAULT_MAX_SOURCES);
+    }
+
+    /**
+     * Returns the maximum number of search results sent in each call.
+     * 
+     * @return The number of results.
+     */
+    public static int getResultPageSize() {
+        return getInt(RESULT_PAGE_SIZE, ResultPager.DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Returns the time a search result waits to be sent with the next ones.
+     * 
+     * @return The time, in milliseconds.
+     */
+    public static long getResultPageTime() {
+        return getInt(RESULT_PAGE_TIME, (int) ResultPager.DEFAULT_PAGE_TIME);
+    }
+
+    /**
+     * Returns the number of files a search wants from each peer and keeps.
+     * 
+     * @return The number of files.
+     */
+    public static int getSearchLimit() {
+        return getInt(SEARCH_LIMIT, DEFAULT_SEARCH_LIMIT);
+    }
+
+    /**
+     * Informs if the files of a search are ranked, so the best ones are kept.
+     * 
+     * @return true if the files are ranked.
+     */
+    public static boolean isSearchRanked() {
+        if (properties == null) {
+            loadProperties();
+        }
+        return Boolean.valueOf(properties.getProperty(SEARCH_RANKING, "true").trim()).booleanValue();
+    }
+
+    /**
+     * Returns the maximum number of events waiting to be processed.
+     * 
+     * @return The number of events.
+     */
+    public static int getEventQueueSize() {
+        return getInt(EVENT_QUEUE_SIZE, DEFAULT_EVENT_QUEUE_SIZE);
+    }
+
+    /**
+     * Returns the policy of an event type when the queue is full.
+     * 
+     * @param type The event type.
+     * @param defaultPolicy The policy used if the property is not defined or is unknown.
+     * @return The policy, as defined by <code>EventLimit</code>.
+     */
+    public static int getEventPolicy(Class type, int defaultPolicy) {
+        if (properties == null) {
+            loadProperties();
+        }
+        return getEventPolicy(properties, EVENT_POLICY, type, defaultPolicy);
+    }
+
+    /**
+     * Returns a positive number property, or its default if it's not a positive number.
+     */
+    private static int getInt(String key, int defaultValue) {
+        if (properties == null) {
+            loadProperties();
+        }
+        return getInt(properties, key, defaultValue);
+    }
+
+    /**
+     * Returns the file where the hashes of the shared files are kept.
+     * 
+     * @return The file name.
+     */
+    public static String getHashIndexFilename() {
+        return HASH_INDEX_FILENAME;
+    }
+
     /**
      * Returns the folder name used on tests.
      * 
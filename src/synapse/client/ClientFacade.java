@@ -5,13 +5,15 @@ import java.rmi.RemoteException;
 import org.ourgrid.yal.Logger;
 
 import synapse.common.Consumer;
+import synapse.common.EventLimit;
 import synapse.common.EventProcessor;
 import synapse.common.Facade;
 import synapse.common.FileInfo;
 import synapse.common.OperationNotSupportedException;
+import synapse.common.PartitionedEventProcessor;
 import synapse.common.Provider;
-import synapse.common.SimpleEventProcessor;
 import synapse.common.TransferPipe;
+import synapse.common.events.Event;
 import synapse.common.events.SearchFileHashRequestEvent;
 import synapse.common.events.SearchFileRequestEvent;
 
@@ -26,8 +28,11 @@ public class ClientFacade extends Facade implements Consumer, Provider {
     private TransferCore transferCore;
     private Logger logger;
 
+    /**
+     * Creates a new ClientFacade. Its events are limited as the <code>ClientConfig</code> says.
+     */
     public ClientFacade() {
-        this(new SimpleEventProcessor());
+        this(new PartitionedEventProcessor(PartitionedEventProcessor.DEFAULT_THREADS, createEventLimit()));
     }
 
     /**
@@ -41,6 +46,24 @@ public class ClientFacade extends Facade implements Consumer, Provider {
         this.logger = Logger.getInstance();
     }
 
+    /**
+     * Creates the limit of the events. By default a burst of search results drops
+     * the oldest ones, the searches of the other peers are rejected when the client
+     * is full and the other events wait.
+     * 
+     * @return The limit.
+     */
+    private static EventLimit createEventLimit() {
+        EventLimit limit = new EventLimit(ClientConfig.getEventQueueSize(), ClientConfig.getEventPolicy(Event.class, EventLimit.BLOCK));
+        limit.setPolicy(FileWasFoundNotifyEvent.class, ClientConfig.getEventPolicy(FileWasFoundNotifyEvent.class, EventLimit.DROP_OLDEST));
+        limit.setPolicy(FilesWereFoundNotifyEvent.class, ClientConfig.getEventPolicy(FilesWereFoundNotifyEvent.class, EventLimit.DROP_OLDEST));
+        limit.setPolicy(SearchFileRequestEvent.class, ClientConfig.getEventPolicy(SearchFileRequestEvent.class, EventLimit.REJECT));
+        limit.setPolicy(SearchFileHashRequestEvent.class, ClientConfig.getEventPolicy(SearchFileHashRequestEvent.class, EventLimit.REJECT));
+        limit.setPolicy(GetFileRequestEvent.class, ClientConfig.getEventPolicy(GetFileRequestEvent.class, EventLimit.BLOCK));
+        limit.setPolicy(HereIsFileNotifyEvent.class, ClientConfig.getEventPolicy(HereIsFileNotifyEvent.class, EventLimit.BLOCK));
+        return limit;
+    }
+
     public Client getClient() {
         return this.client;
     }
@@ -74,11 +97,25 @@ public class ClientFacade extends Facade implements Consumer, Provider {
         throw new OperationNotSupportedException();
     }
 
+    /* (non-Javadoc)
+     * @see synapse.common.Provider#searchFile(synapse.common.Consumer, java.lang.String, int, boolean)
+     */
+    public long searchFile(Consumer consumer, String fileName, int limit, boolean ranked) throws OperationNotSupportedException {
+        throw new OperationNotSupportedException();
+    }
+
     /* (non-Javadoc)
      * @see synapse.common.Provider#searchFile(long, synapse.common.Consumer, java.lang.String)
      */
     public void searchFile(long id, Consumer consumer, String fileName) throws RemoteException {
-        this.eventProcessor.putEvent(new SearchFileRequestEvent(this.transferCore, id, consumer, fileName));
+        this.searchFile(id, consumer, fileName, NO_LIMIT, false);
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.common.Provider#searchFile(long, synapse.common.Consumer, java.lang.String, int, boolean)
+     */
+    public void searchFile(long id, Consumer consumer, String fileName, int limit, boolean ranked) throws RemoteException {
+        this.eventProcessor.putEvent(new SearchFileRequestEvent(this.transferCore, id, consumer, fileName, limit, ranked));
     }
 
     /* (non-Javadoc)
@@ -96,6 +133,13 @@ public class ClientFacade extends Facade implements Consumer, Provider {
 		throw new OperationNotSupportedException();
 	}
 
+	/* (non-Javadoc)
+	 * @see synapse.common.Provider#searchForCommunity(long, synapse.common.Consumer, java.lang.String, int, boolean)
+	 */
+	public void searchForCommunity(long id, Consumer consumer, String fileName, int limit, boolean ranked) throws RemoteException {
+		throw new OperationNotSupportedException();
+	}
+
     /* (non-Javadoc)
      * @see synapse.common.Provider#getFile(java.lang.String)
      */
@@ -111,6 +155,13 @@ public class ClientFacade extends Facade implements Consumer, Provider {
         this.eventProcessor.putEvent(new FileWasFoundNotifyEvent(id, this.transferCore, provider, fileInfo));
     }
 
+    /* (non-Javadoc)
+     * @see synapse.common.Consumer#filesWereFound(long, synapse.common.Provider, synapse.common.FileInfo[])
+     */
+    public void filesWereFound(long id, Provider provider, FileInfo[] files) throws RemoteException {
+        this.eventProcessor.putEvent(new FilesWereFoundNotifyEvent(id, this.transferCore, provider, files));
+    }
+
     /* (non-Javadoc)
      * @see synapse.common.Consumer#hereIsFile(synapse.common.TransferPipe)
      */
@@ -0,0 +1,281 @@
+package synapse.client;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the shared files opened by the <code>TransferPipeImpl</code>s. Every file
+ * has only one read-only <code>FileChannel</code>, no matter how many pipes are
+ * reading it. Small files are served from memory-mapped regions and the very large
+ * ones with positional reads, so the readers never share a file pointer.
+ *
+ * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
+ */
+public class FileRegionCache {
+
+    /**
+     * The size of each memory-mapped region.
+     */
+    public static final int REGION_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Files bigger than this are read with positional reads instead of being mapped.
+     */
+    public static final long MAP_THRESHOLD = 256L * 1024 * 1024;
+
+    /**
+     * The maximum number of files kept opened.
+     */
+    public static final int MAX_OPEN_FILES = 64;
+
+    private static FileRegionCache uniqueInstance;
+
+    /**
+     * A map:
+     * Absolute path x CachedFile, in access order.
+     */
+    private LinkedHashMap openFiles;
+
+    /**
+     * Constructs a new FileRegionCache.
+     */
+    private FileRegionCache() {
+        this.openFiles = new LinkedHashMap(16, 0.75f, true);
+    }
+
+    /**
+     * The class is a singleton. This method return the unique object os this class.
+     * @return The unique object of this class.
+     */
+    public static synchronized FileRegionCache getInstance() {
+        if (uniqueInstance == null) {
+            uniqueInstance = new FileRegionCache();
+        }
+        return uniqueInstance;
+    }
+
+    /**
+     * Closes the opened files and make the unique object os this class null.
+     */
+    public static synchronized void reset() {
+        if (uniqueInstance != null) {
+            uniqueInstance.closeAll();
+        }
+        uniqueInstance = null;
+    }
+
+    /**
+     * Opens the file, if it is not opened yet.
+     *
+     * @param file The file to be opened.
+     * @throws IOException If the file can't be opened for reading.
+     */
+    public void open(File file) throws IOException {
+        this.lookup(file);
+    }
+
+    /**
+     * Reads up to <code>len</code> bytes of the file starting at <code>position</code>.
+     * The returned array is shorter than <code>len</code> only when the end of the
+     * file is reached.
+     *
+     * @param file The file to be read.
+     * @param position The start offset of the data.
+     * @param len The maximum number of bytes read.
+     * @return The bytes read.
+     * @throws IOException If the file can't be read.
+     */
+    public byte[] read(File file, long position, int len) throws IOException {
+        try {
+            return this.lookup(file).read(position, len);
+        } catch (ClosedChannelException e) {
+            // the file was closed by another thread, it is opened again
+            this.close(file);
+            return this.lookup(file).read(position, len);
+        }
+    }
+
+    /**
+     * Closes the file. It must be called when the file is changed or removed, so the
+     * next read opens the new version instead of using the old size and regions. The
+     * regions already mapped are released by the garbage collector.
+     *
+     * @param file The file to be closed.
+     */
+    public synchronized void close(File file) {
+        CachedFile cached = (CachedFile) this.openFiles.remove(file.getAbsolutePath());
+        if (cached != null) {
+            cached.close();
+        }
+    }
+
+    /**
+     * Returns the number of opened files.
+     *
+     * @return The number of opened files.
+     */
+    public synchronized int getNumberOfOpenFiles() {
+        return this.openFiles.size();
+    }
+
+    /**
+     * Closes all the opened files.
+     */
+    private synchronized void closeAll() {
+        Iterator it = this.openFiles.values().iterator();
+        while (it.hasNext()) {
+            ((CachedFile) it.next()).close();
+        }
+        this.openFiles.clear();
+    }
+
+    /**
+     * Returns the <code>CachedFile</code> of the file, opening it if necessary.
+     * The least recently used file is closed when there are too many files opened.
+     *
+     * @param file The file.
+     * @return The cached file.
+     * @throws IOException If the file can't be opened.
+     */
+    private synchronized CachedFile lookup(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        CachedFile cached = (CachedFile) this.openFiles.get(key);
+
+        if (cached == null) {
+            cached = new CachedFile(file);
+            this.openFiles.put(key, cached);
+
+            if (this.openFiles.size() > MAX_OPEN_FILES) {
+                Iterator it = this.openFiles.entrySet().iterator();
+                CachedFile eldest = (CachedFile) ((Map.Entry) it.next()).getValue();
+                it.remove();
+                eldest.close();
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * An opened file and its mapped regions.
+     *
+     * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
+     */
+    private static class CachedFile {
+
+        private FileInputStream input;
+
+        private FileChannel channel;
+
+        private long size;
+
+        /**
+         * The mapped regions, <code>null</code> if the file is read with positional reads.
+         */
+        private MappedByteBuffer[] regions;
+
+        /**
+         * Opens the file read-only.
+         *
+         * @param file The file.
+         * @throws IOException If the file can't be opened.
+         */
+        public CachedFile(File file) throws IOException {
+            this.input = new FileInputStream(file);
+            this.channel = this.input.getChannel();
+            this.size = this.channel.size();
+
+            if (this.size <= MAP_THRESHOLD) {
+                this.regions = new MappedByteBuffer[ (int) ((this.size + REGION_SIZE - 1) / REGION_SIZE) ];
+            }
+        }
+
+        /**
+         * Reads up to <code>len</code> bytes starting at <code>position</code>.
+         *
+         * @param position The start offset.
+         * @param len The maximum number of bytes.
+         * @return The bytes read.
+         * @throws IOException If the file can't be read.
+         */
+        public byte[] read(long position, int len) throws IOException {
+            if (position < 0 || len < 0) {
+                throw new IOException("Invalid range: " + position + " " + len);
+            }
+            int available = (int) Math.max(0, Math.min(len, this.size - position));
+            byte[] array = new byte[ available ];
+
+            int read = 0;
+            if (this.regions != null) {
+                while (read < available) {
+                    long current = position + read;
+                    ByteBuffer region = this.region((int) (current / REGION_SIZE)).duplicate();
+                    region.position((int) (current % REGION_SIZE));
+
+                    int count = Math.min(available - read, region.remaining());
+                    region.get(array, read, count);
+                    read += count;
+                }
+            }
+            else {
+                ByteBuffer buffer = ByteBuffer.wrap(array);
+                while (buffer.hasRemaining()) {
+                    if (this.channel.read(buffer, position + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+                read = buffer.position();
+            }
+
+            if (read < available) {
+                byte[] aux = new byte[ read ];
+                System.arraycopy(array, 0, aux, 0, read);
+                return aux;
+            }
+            return array;
+        }
+
+        /**
+         * Returns the mapped region, mapping it if necessary.
+         *
+         * @param index The region index.
+         * @return The region.
+         * @throws IOException If the region can't be mapped.
+         */
+        private synchronized MappedByteBuffer region(int index) throws IOException {
+            //um leitor que pegou o arquivo antes do close() nao usa as regioes antigas
+            if (!this.channel.isOpen()) {
+                throw new ClosedChannelException();
+            }
+            if (this.regions[index] == null) {
+                long start = (long) index * REGION_SIZE;
+                long length = Math.min(REGION_SIZE, this.size - start);
+                this.regions[index] = this.channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+            return this.regions[index];
+        }
+
+        /**
+         * Closes the file and drops its regions.
+         */
+        public synchronized void close() {
+            try {
+                this.input.close();
+            } catch (IOException e) {
+                // do nothing
+            }
+            if (this.regions != null) {
+                Arrays.fill(this.regions, null);
+            }
+        }
+    }
+
+}
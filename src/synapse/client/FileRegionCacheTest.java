@@ -0,0 +1,114 @@
+package synapse.client;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for FileRegionCache.
+ *
+ * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
+ */
+public class FileRegionCacheTest extends TestCase {
+
+    private FileRegionCache cache;
+
+    private File file;
+
+    /*
+     * @see TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        FileRegionCache.reset();
+        this.cache = FileRegionCache.getInstance();
+        this.file = new File("testFiles" + File.separator + "test2.dat");
+    }
+
+    /*
+     * @see TestCase#tearDown()
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        FileRegionCache.reset();
+    }
+
+    /**
+     * Tests if the bytes read are the same read by a <code>RandomAccessFile</code>.
+     */
+    public void testRead() throws Exception {
+        byte[] expected = new byte[ 1000 ];
+        RandomAccessFile input = new RandomAccessFile(this.file, "r");
+        input.seek(500);
+        input.readFully(expected);
+        input.close();
+
+        assertTrue(Arrays.equals(expected, this.cache.read(this.file, 500, 1000)));
+        assertEquals(1, this.cache.getNumberOfOpenFiles());
+    }
+
+    /**
+     * Tests the reads at the end of the file.
+     */
+    public void testReadAtEndOfFile() throws Exception {
+        long size = this.file.length();
+
+        assertEquals(10, this.cache.read(this.file, size - 10, 100).length);
+        assertEquals(0, this.cache.read(this.file, size, 100).length);
+        assertEquals(0, this.cache.read(this.file, size + 10, 100).length);
+    }
+
+    /**
+     * Tests many threads reading the same file at the same time.
+     */
+    public void testConcurrentReads() throws Exception {
+        final byte[] expected = new byte[ (int) this.file.length() ];
+        RandomAccessFile input = new RandomAccessFile(this.file, "r");
+        input.readFully(expected);
+        input.close();
+
+        final boolean[] failed = new boolean[1];
+        Thread[] threads = new Thread[ 8 ];
+        for (int i = 0; i < threads.length; i++) {
+            final int offset = i * 100;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int k = 0; k < 200; k++) {
+                            byte[] array = cache.read(file, offset + k, 512);
+                            for (int j = 0; j < array.length; j++) {
+                                if (array[j] != expected[offset + k + j]) {
+                                    failed[0] = true;
+                                }
+                            }
+                        }
+                    } catch (Exception e) {
+                        failed[0] = true;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+        assertFalse(failed[0]);
+    }
+
+    /**
+     * Tests the <code>close</code> method.
+     */
+    public void testClose() throws Exception {
+        this.cache.open(this.file);
+        assertEquals(1, this.cache.getNumberOfOpenFiles());
+
+        this.cache.close(this.file);
+        assertEquals(0, this.cache.getNumberOfOpenFiles());
+
+        assertEquals(10, this.cache.read(this.file, 0, 10).length);
+        assertEquals(1, this.cache.getNumberOfOpenFiles());
+    }
+
+}
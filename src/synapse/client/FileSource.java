@@ -1,37 +1,146 @@
 package synapse.client;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.ourgrid.yal.Logger;
+
+import synapse.common.ContentHash;
 import synapse.common.FileInfo;
-import synapse.util.SimpleExpressionAnalyzer;
+import synapse.common.PieceHashes;
+import synapse.util.HashUtil;
 
 /**
+ * The files shared by this client. The files are put by the threads that load and
+ * watch the shared folder, one at a time, while the lookups and the searches are
+ * made without waiting for them: the resources are kept in a concurrent map and the
+ * searches use a copy of the name index that is replaced when the names change.
+ * The copy is replaced at most once each <code>PUBLISH_INTERVAL</code> milliseconds,
+ * or when <code>publish()</code> is called at the end of a batch of changes.
+ * 
  * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
 */
 public class FileSource{
 
+	/**
+	 * The longest time, in milliseconds, the searches use an old copy of the names
+	 * while files are being put or removed.
+	 */
+	private static final long PUBLISH_INTERVAL = 1000;
+
+	/**
+	 * Publishes the names changed after the last copy, at the end of the interval.
+	 */
+	private static final Timer PUBLISHER = new Timer("FileSource publisher", true);
+
     /**
      * A map:
      * Hash x FileInfo
+     * Read without locking.
      */
-	private HashMap resources;
+	private ConcurrentHashMap resources;
+	
+	/**
+	 * A map:
+	 * Path x Shared
+	 * Sorted, so the files of a folder are next to each other.
+	 */
+	private TreeMap paths;
+	
+	/**
+	 * A map:
+	 * Hash x Integer (number of paths with the hash)
+	 */
+	private HashMap copies;
 	
 	/**
-	 * The matcher.
+	 * The names of the resources, indexed for the searches.
 	 */
-	private ExpressionAnalyzer analyzer;
+	private NameIndex names;
 	
 	/**
-	 * Constructs a new FileSource.
+	 * The copy of <code>names</code> used by the searches.
+	 */
+	private volatile NameIndex searchable;
+	
+	/**
+	 * Informs if <code>names</code> changed since it was copied.
+	 */
+	private boolean namesChanged;
+	
+	/**
+	 * When <code>names</code> was copied.
+	 */
+	private long published;
+	
+	/**
+	 * Informs if the <code>PUBLISHER</code> will copy the names.
+	 */
+	private boolean publishing;
+	
+	/**
+	 * The hashes computed in the last runs, or null.
+	 */
+	private HashIndex index;
+	
+	/**
+	 * Hashes the new files in other threads, or null to hash them in the
+	 * thread that loads the folder.
+	 */
+	private HashingService hashing;
+	
+	/**
+	 * Walks the folders being loaded.
+	 */
+	private FolderCrawler crawler;
+	
+	/**
+	 * The number of folders still being loaded.
+	 */
+	private int loading;
+	
+	/**
+	 * Constructs a new FileSource that hashes every file.
 	 */
 	public FileSource (){
-		this.resources = new HashMap();
-		this.analyzer = new SimpleExpressionAnalyzer();
+		this(null);
+	}
+
+	/**
+	 * Constructs a new FileSource that reuses the hashes of the files that
+	 * did not change since they were put in the <code>index</code>.
+	 * @param index The hash index, or null to hash every file.
+	 */
+	public FileSource (HashIndex index){
+		this(index, null);
+	}
+
+	/**
+	 * Constructs a new FileSource that hashes the new files with the
+	 * <code>hashing</code> service, sharing each file as soon as it's hashed.
+	 * @param index The hash index, or null to hash every file.
+	 * @param hashing The hashing service, or null to hash in the loading thread.
+	 */
+	public FileSource (HashIndex index, HashingService hashing){
+		this.resources = new ConcurrentHashMap();
+		this.paths = new TreeMap();
+		this.copies = new HashMap();
+		this.names = new NameIndex();
+		this.searchable = this.names.copy();
+		this.index = index;
+		this.hashing = hashing;
+		this.crawler = new FolderCrawler(FolderCrawler.DEFAULT_PARALLELISM);
 	}
 
 	/**
@@ -41,8 +150,199 @@ public class FileSource{
 	 * @return true if the file was added, false otherwise.
 	 */
 	public boolean putFile (File file) {
-		FileInfo aux = new FileInfo(file);
-		return this.resources.put(aux.getHash(), aux) == null;
+		//o tempo de modificacao e lido antes, para que uma alteracao durante o hash seja percebida
+		long modified = file.lastModified();
+		PieceHashes hashes = this.getHashes(file, modified);
+		if (hashes == null) {
+			return false;
+		}
+		boolean added = this.putFile(file, file.length(), modified, hashes);
+		this.publishLater();
+		return added;
+	}
+
+	/**
+	 * Puts a file whose hashes are already known, replacing the previous
+	 * version of the file.
+	 */
+	private synchronized boolean putFile (File file, long size, long modified, PieceHashes hashes) {
+		FileInfo aux = new FileInfo(file, hashes);
+		String path = file.getAbsolutePath();
+		Shared old = (Shared) this.paths.get(path);
+		if (old != null) {
+			//o arquivo foi reescrito: o canal e as regioes mapeadas da versao antiga nao servem mais
+			FileRegionCache.getInstance().close(file);
+		}
+		if (old != null && !old.info.getContentHash().equals(aux.getContentHash())) {
+			this.unshare(old);
+			old = null;
+		}
+		this.paths.put(path, new Shared(aux, size, modified));
+		if (old == null) {
+			Integer count = (Integer) this.copies.get(aux.getContentHash());
+			this.copies.put(aux.getContentHash(), new Integer(count == null ? 1 : count.intValue() + 1));
+		}
+		this.names.add(aux);
+		this.namesChanged = true;
+		return this.resources.put(aux.getContentHash(), aux) == null;
+	}
+
+	/**
+	 * Puts a file again if its size or modification time changed.
+	 * @param file The file.
+	 * @return true if the file is new or it was changed.
+	 */
+	public boolean updateFile (File file) {
+		long size = file.length();
+		long modified = file.lastModified();
+		if (this.isUnchanged(file, size, modified)) {
+			return false;
+		}
+		PieceHashes hashes = this.getHashes(file, modified);
+		if (hashes == null) {
+			return false;
+		}
+		this.putFile(file, size, modified, hashes);
+		this.publishLater();
+		return true;
+	}
+
+	/**
+	 * Removes a file, or all the files of a folder.
+	 * @param file The file or folder.
+	 * @return The number of files removed.
+	 */
+	public synchronized int removeFiles (File file) {
+		String path = file.getAbsolutePath();
+		int removed = 0;
+		Shared shared = (Shared) this.paths.remove(path);
+		if (shared != null) {
+			this.unshare(shared);
+			this.forget(shared);
+			removed++;
+		}
+		//os caminhos dentro da pasta comecam com "pasta/" e ficam juntos no TreeMap
+		String prefix = path.endsWith(File.separator) ? path : path + File.separator;
+		SortedMap children = this.paths.subMap(prefix, prefix + '\uffff');
+		Iterator it = children.values().iterator();
+		while (it.hasNext()) {
+			shared = (Shared) it.next();
+			it.remove();
+			this.unshare(shared);
+			this.forget(shared);
+			removed++;
+		}
+		this.publishLater();
+		return removed;
+	}
+
+	/**
+	 * Informs if the file is shared with this size and modification time.
+	 */
+	private synchronized boolean isUnchanged(File file, long size, long modified) {
+		Shared shared = (Shared) this.paths.get(file.getAbsolutePath());
+		return shared != null && shared.modified == modified && shared.size == size;
+	}
+
+	/**
+	 * Forgets a path that is not in the folder any more: its hashes and its opened
+	 * file. A path whose file was replaced keeps the hashes of the new version, put
+	 * by <code>getHashes()</code>.
+	 */
+	private void forget(Shared shared) {
+		if (this.index != null) {
+			this.index.remove(shared.info.getFile());
+		}
+		FileRegionCache.getInstance().close(shared.info.getFile());
+	}
+
+	/**
+	 * Stops sharing a path. The hash stays shared while another path has it.
+	 */
+	private void unshare(Shared shared) {
+		ContentHash hash = shared.info.getContentHash();
+		Integer count = (Integer) this.copies.get(hash);
+		if (count == null || count.intValue() <= 1) {
+			this.copies.remove(hash);
+			this.resources.remove(hash);
+			this.names.remove(hash);
+			this.namesChanged = true;
+			return;
+		}
+		this.copies.put(hash, new Integer(count.intValue() - 1));
+		if (this.resources.get(hash) == shared.info) {
+			//procura outra copia do arquivo para continuar compartilhando
+			Iterator it = this.paths.values().iterator();
+			while (it.hasNext()) {
+				Shared copy = (Shared) it.next();
+				if (copy != shared && copy.info.getContentHash().equals(hash)) {
+					this.resources.put(hash, copy.info);
+					this.names.add(copy.info);
+					this.namesChanged = true;
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Makes the files put and removed so far visible to the searches at once. The
+	 * ones that put or remove many files call it at the end, instead of waiting
+	 * for the <code>PUBLISH_INTERVAL</code>.
+	 */
+	public void publish() {
+		this.publish(true);
+	}
+
+	/**
+	 * Replaces the copy of the names used by the searches, unless it was taken less
+	 * than <code>PUBLISH_INTERVAL</code> milliseconds ago; in this case, the copy is
+	 * replaced by the <code>PUBLISHER</code> at the end of the interval.
+	 */
+	private synchronized void publishLater() {
+		this.publish(false);
+		if (this.namesChanged && !this.publishing) {
+			this.publishing = true;
+			PUBLISHER.schedule(new TimerTask() {
+				public void run() {
+					synchronized (FileSource.this) {
+						publishing = false;
+						publish(true);
+					}
+				}
+			}, PUBLISH_INTERVAL);
+		}
+	}
+
+	/**
+	 * Replaces the copy of the names used by the searches, if the names changed.
+	 * @param now false to keep the copy if it was taken less than
+	 * <code>PUBLISH_INTERVAL</code> milliseconds ago.
+	 */
+	private synchronized void publish(boolean now) {
+		long time = System.currentTimeMillis();
+		if (this.namesChanged && (now || time - this.published >= PUBLISH_INTERVAL)) {
+			this.searchable = this.names.copy();
+			this.namesChanged = false;
+			this.published = time;
+		}
+	}
+
+	/**
+	 * Returns the hashes of a file, from the index when the file did not change.
+	 */
+	private PieceHashes getHashes(File file, long modified) {
+		if (this.index == null) {
+			return HashUtil.createHashes(file);
+		}
+		PieceHashes hashes = this.index.get(file);
+		if (hashes == null) {
+			hashes = HashUtil.createHashes(file);
+			if (hashes != null) {
+				this.index.put(file, modified, hashes);
+			}
+		}
+		return hashes;
 	}
 
 	/**
@@ -52,7 +352,16 @@ public class FileSource{
 	 * or null if the FileSource contains no mapping for this hash.
 	 */	
 	public FileInfo getFileInfo(String hash) {
-		return (FileInfo)resources.get(hash);
+		return this.getFileInfo(ContentHash.valueOf(hash));
+	}
+
+	/**
+	 * Returns the FileInfo to which the specified hash is mapped in this FileSource. 
+	 * @param hash the hash whose associated FileInfo is to be returned.
+	 * @return the FileInfo with the hash, or null if there is none.
+	 */	
+	public FileInfo getFileInfo(ContentHash hash) {
+		return hash == null ? null : (FileInfo)resources.get(hash);
 	}
 	
 	/**
@@ -63,19 +372,30 @@ public class FileSource{
 	 * at the name.
 	 */
 	public Collection searchForResources (String key) {
-		
-		List feedBack = new LinkedList();
-		Iterator it = this.getAllResources().iterator();
-		
-		while (it.hasNext()) {
-			FileInfo temp = (FileInfo)it.next();
+		return this.searchable.search(key);
+	}
 
-			if (this.analyzer.accept(key, temp.getFileName())) {
-				feedBack.add(temp);				
-			}
-		}
-		
-		return feedBack;
+	/**
+	 * Returns the <code>FileInfo</code>s whose file names contain this key, one at a
+	 * time, so a search that matches many files is not copied to a <code>Collection</code>.
+	 * @param key the key to be looked for in the <code>FileInfo</code>s that is in this <code>FileSource</code>.
+	 * @return an <code>Iterator</code> of the <code>FileInfo</code>s that have this key at the name.
+	 */
+	public Iterator searchCursor (String key) {
+		return this.searchable.cursor(key);
+	}
+
+	/**
+	 * Returns at most <code>limit</code> <code>FileInfo</code>s whose file names contain
+	 * this key, one at a time. The search stops when it has found them.
+	 * @param key the key to be looked for in the <code>FileInfo</code>s that is in this <code>FileSource</code>.
+	 * @param limit the number of <code>FileInfo</code>s wanted, or 0 for all of them.
+	 * @param ranked true to return the names that best match the key, best first,
+	 * false to return the first ones found.
+	 * @return an <code>Iterator</code> of the <code>FileInfo</code>s that have this key at the name.
+	 */
+	public Iterator searchCursor (String key, int limit, boolean ranked) {
+		return this.searchable.cursor(key, limit, ranked);
 	}
 	
 	/**
@@ -85,16 +405,51 @@ public class FileSource{
 	 * in this <code>FileSource</code>.
 	 */
 	public Collection getAllResources() {
-		return this.resources.values();
+		return new ArrayList(this.resources.values());
 	}
 
 	/**
-	 * Fills this <code>FileSource</code> with the <code>sharedFolder</code> contents (files).
+	 * Fills this <code>FileSource</code> with the <code>sharedFolder</code> contents (files),
+	 * waiting until every file is hashed.
 	 * 
 	 * @param sharedFolder The source folder.
 	 * @return The number of files loaded.
 	 */
     public int loadFiles(String sharedFolder){
+        int before = this.resources.size();
+        this.startLoading(sharedFolder);
+        this.waitLoading();
+        return this.resources.size() - before;
+    }
+
+	/**
+	 * Starts to fill this <code>FileSource</code> with the <code>sharedFolder</code> contents.
+	 * The files found in the index are shared at once; the others are shared as they
+	 * are hashed by the <code>HashingService</code>.
+	 * 
+	 * @param sharedFolder The source folder.
+	 * @return The number of files found.
+	 */
+    public int startLoading(String sharedFolder){
+        return this.load(sharedFolder, true).found;
+    }
+
+	/**
+	 * Compares the shared files of a folder with the files on disk, waiting until
+	 * the changes are applied: new and changed files are hashed and the files that
+	 * are gone are removed. Only the files whose size or modification time changed
+	 * are read.
+	 * 
+	 * @param folder The folder, the shared folder or one of its subfolders.
+	 * @return The number of files added, changed or removed.
+	 */
+    public int reconcile(String folder){
+        Loading load = this.load(folder, false);
+        this.waitLoading();
+        return load.changed + load.removed;
+    }
+
+    private Loading load(String sharedFolder, boolean retainIndex){
         
         File folder = new File(sharedFolder);
         
@@ -102,33 +457,176 @@ public class FileSource{
             folder.mkdir();
         }
         
-        int count = 0;
-        File[]  files;
-        LinkedList directories = new LinkedList();
+        synchronized (this) {
+            this.loading++;
+        }
+        final Loading load = new Loading(folder, retainIndex);
         
-		//adiciona primeiramente a pasta principal a ser pesquisada na lista
-		directories.add(folder.getAbsolutePath());
+		//as subpastas sao percorridas em paralelo e os arquivos chegam de varias threads
+		this.crawler.crawl(folder, new FolderCrawler.Visitor() {
+			public void visitFile(File file, long size, long modified) {
+				load.add(file, size, modified);
+			}
+		});
 		
-		//ciclo para efetuar a pesquisa em todas as subpastas da pasta principal
-		while(directories.size() > 0){
-		    files = (new File(directories.getFirst().toString())).listFiles();
-			for(int i = 0; i <  files.length; i++) {
-				if(files[i].canRead() && !files[i].isHidden()){
-					if(files[i].isDirectory()){
-						//adiciona a subpasta no linkedlista para ter a busca efetuada nela posteriormente
-						directories.add(files[i].getAbsolutePath());
-					}
-					else if(files[i].isFile()){
-					    if (this.putFile(files[i])) {
-					        count++;
-					    }
+		load.done();
+		return load;
+    }
+
+	/**
+	 * Waits until the folders being loaded are hashed.
+	 */
+	public synchronized void waitLoading() {
+		while (this.loading > 0) {
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Informs if a folder is still being loaded.
+	 * 
+	 * @return true if there are files waiting to be hashed.
+	 */
+	public synchronized boolean isLoading() {
+		return this.loading > 0;
+	}
+
+	/**
+	 * Removes the shared files of a folder that were not seen in a load.
+	 */
+	private synchronized int removeMissing(File folder, Set seen) {
+		String prefix = folder.getAbsolutePath();
+		prefix = prefix.endsWith(File.separator) ? prefix : prefix + File.separator;
+		int removed = 0;
+		Iterator it = this.paths.subMap(prefix, prefix + '\uffff').entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry entry = (Map.Entry) it.next();
+			if (!seen.contains(entry.getKey())) {
+				it.remove();
+				this.unshare((Shared) entry.getValue());
+				this.forget((Shared) entry.getValue());
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * A shared path: its <code>FileInfo</code> and the size and modification
+	 * time of the file hashed.
+	 */
+	private static class Shared {
+
+		private FileInfo info;
+
+		private long size;
+
+		private long modified;
+
+		private Shared(FileInfo info, long size, long modified) {
+			this.info = info;
+			this.size = size;
+			this.modified = modified;
+		}
+	}
+
+	/**
+	 * The load of a folder. It ends when the folder was walked and every file
+	 * sent to the <code>HashingService</code> came back.
+	 */
+	private class Loading {
+
+		private File folder;
+
+		private boolean retainIndex;
+
+		private Set paths = new HashSet();
+
+		private int found;
+
+		private int changed;
+
+		private int removed;
+
+		/**
+		 * The files being hashed, plus one while the folder is being walked.
+		 */
+		private int pending = 1;
+
+		private Loading(File folder, boolean retainIndex) {
+			this.folder = folder;
+			this.retainIndex = retainIndex;
+		}
+
+		private void add(final File file, final long size, final long modified) {
+			synchronized (this) {
+				this.paths.add(file.getAbsolutePath());
+				this.found++;
+			}
+			if (isUnchanged(file, size, modified)) {
+				return;
+			}
+
+			PieceHashes cached = index == null ? null : index.get(file, size, modified);
+			if (cached != null || hashing == null) {
+				this.put(file, size, modified, cached != null ? cached : getHashes(file, modified));
+				return;
+			}
+
+			synchronized (this) {
+				this.pending++;
+			}
+			hashing.hash(file, new HashingService.Listener() {
+				public void fileWasHashed(File hashed, PieceHashes hashes) {
+					if (hashes != null && index != null) {
+						index.put(hashed, modified, hashes);
 					}
+					put(hashed, size, modified, hashes);
+					done();
 				}
+			});
+		}
+
+		/**
+		 * Shares a file that was read. A file that could not be read is not shared.
+		 */
+		private void put(File file, long size, long modified, PieceHashes hashes) {
+			if (hashes == null) {
+				Logger.getInstance().error(FileSource.class.getName() + ".load()", "Could not read " + file + ".");
+				return;
+			}
+			putFile(file, size, modified, hashes);
+			publish(false);
+			synchronized (this) {
+				this.changed++;
 			}
-			//remove a pasta em que a pesquisa terminou
-			directories.removeFirst();
 		}
-		
-		return count;
-    }
+
+		private void done() {
+			synchronized (this) {
+				if (--this.pending > 0) {
+					return;
+				}
+			}
+			this.removed = removeMissing(this.folder, this.paths);
+			publish(true);
+			//esquece os arquivos removidos e grava os hashes novos
+			if (index != null) {
+				if (this.retainIndex) {
+					index.retain(this.paths);
+				}
+				index.save();
+			}
+			Logger.getInstance().debug(FileSource.class.getName() + ".load()", this.found + " files were loaded, "
+					+ this.changed + " new or changed, " + this.removed + " removed.");
+			synchronized (FileSource.this) {
+				loading--;
+				FileSource.this.notifyAll();
+			}
+		}
+	}
 }
@@ -2,9 +2,11 @@
 package synapse.client;
 
 import java.io.File;
+import java.io.FileOutputStream;
 
 import junit.framework.TestCase;
 import synapse.common.FileInfo;
+import synapse.util.HashUtil;
 
 /**
  * Class that tests the <code>FileSource</code> class.
@@ -97,6 +99,7 @@ public class FileSourceTest extends TestCase {
 		assertTrue(this.fileSource.putFile(b));
 		assertFalse(this.fileSource.putFile(a));
 		assertFalse(this.fileSource.putFile(b));
+		this.fileSource.publish();
 		
 		assertEquals(2, this.fileSource.getAllResources().size());
 		
@@ -107,4 +110,162 @@ public class FileSourceTest extends TestCase {
 		
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Tests the methods updateFile, removeFiles and reconcile of the <code>FileSource</code> class.
+	 */
+	public void testReconcile() throws Exception {
+		File folder = new File(ClientConfig.getTestFolder() + File.separator + "reconcileTest");
+		File sub = new File(folder, "sub");
+		sub.mkdirs();
+		File x = new File(folder, "x.dat");
+		File y = new File(sub, "y.dat");
+		File z = new File(sub, "z.dat");
+		File w = new File(folder, "w.dat");
+		try {
+			this.write(x, "first");
+			this.write(y, "second");
+			this.write(z, "second");
+
+			assertEquals(2, this.fileSource.loadFiles(folder.getPath()));
+			assertFalse(this.fileSource.updateFile(x));
+			assertEquals(0, this.fileSource.reconcile(folder.getPath()));
+
+			//arquivos iguais continuam compartilhados enquanto existir uma copia
+			String second = HashUtil.createHash(y);
+			assertEquals(1, this.fileSource.removeFiles(y));
+			assertNotNull(this.fileSource.getFileInfo(second));
+			assertTrue(this.fileSource.updateFile(y));
+
+			String first = HashUtil.createHash(x);
+			this.write(x, "changed");
+			x.setLastModified(x.lastModified() - 5000);
+			assertTrue(this.fileSource.updateFile(x));
+			assertNull(this.fileSource.getFileInfo(first));
+			assertNotNull(this.fileSource.getFileInfo(HashUtil.createHash(x)));
+			this.fileSource.publish();
+			assertEquals(1, this.fileSource.searchForResources("x.dat").size());
+
+			y.delete();
+			z.delete();
+			this.write(w, "new");
+			assertEquals(3, this.fileSource.reconcile(folder.getPath()));
+			assertNull(this.fileSource.getFileInfo(second));
+			assertNotNull(this.fileSource.getFileInfo(HashUtil.createHash(w)));
+			assertEquals(2, this.fileSource.getAllResources().size());
+
+			assertEquals(2, this.fileSource.removeFiles(folder));
+			assertEquals(0, this.fileSource.getAllResources().size());
+			this.fileSource.publish();
+			assertEquals(0, this.fileSource.searchForResources("dat").size());
+		} finally {
+			x.delete();
+			y.delete();
+			z.delete();
+			w.delete();
+			sub.delete();
+			folder.delete();
+		}
+	}
+
+	/**
+	 * Tests if the files put one at a time reach the searches without a
+	 * call to <code>publish()</code>, at the end of the interval.
+	 */
+	public void testPublishLater() throws Exception {
+		this.fileSource.putFile(a);
+		this.fileSource.putFile(b);
+		this.fileSource.putFile(c);
+		long end = System.currentTimeMillis() + 5000;
+		while (this.fileSource.searchForResources("test").size() < 3 && System.currentTimeMillis() < end) {
+			Thread.sleep(50);
+		}
+		assertEquals(3, this.fileSource.searchForResources("test").size());
+	}
+
+	/**
+	 * Tests if the lookups and the searches don't wait for a thread that is
+	 * changing the <code>FileSource</code>.
+	 */
+	public void testLookupWhileChanging() throws Exception {
+		this.fileSource.putFile(a);
+		final Object[] found = new Object[ 3 ];
+		Thread reader = new Thread() {
+			public void run() {
+				found[0] = fileSource.getFileInfo(one.getHash());
+				found[1] = fileSource.searchForResources("test1");
+				found[2] = fileSource.getAllResources();
+			}
+		};
+		synchronized (this.fileSource) {
+			reader.start();
+			reader.join(5000);
+			assertFalse(reader.isAlive());
+		}
+		assertEquals(a, ((FileInfo) found[0]).getFile());
+		assertEquals(1, ((java.util.Collection) found[1]).size());
+		assertEquals(1, ((java.util.Collection) found[2]).size());
+	}
+
+	/**
+	 * Tests if the bytes served of a changed file are the new ones, and if a
+	 * removed file is closed.
+	 */
+	public void testChangedFileIsReopened() throws Exception {
+		File x = new File(ClientConfig.getTestFolder() + File.separator + "reopenTest.dat");
+		FileRegionCache.reset();
+		FileRegionCache cache = FileRegionCache.getInstance();
+		try {
+			this.write(x, "the first version");
+			assertTrue(this.fileSource.putFile(x));
+			assertEquals("the first version", new String(cache.read(x, 0, 100)));
+
+			this.write(x, "second");
+			x.setLastModified(x.lastModified() - 5000);
+			assertTrue(this.fileSource.updateFile(x));
+			assertEquals("second", new String(cache.read(x, 0, 100)));
+
+			assertEquals(1, this.fileSource.removeFiles(x));
+			assertEquals(0, cache.getNumberOfOpenFiles());
+		} finally {
+			FileRegionCache.reset();
+			x.delete();
+		}
+	}
+
+	/**
+	 * Tests if a file removed by <code>reconcile</code> is closed, so the bytes
+	 * served of a new file in the same path are the new ones.
+	 */
+	public void testReconcileClosesRemovedFile() throws Exception {
+		File folder = new File(ClientConfig.getTestFolder() + File.separator + "reconcileCloseTest");
+		folder.mkdirs();
+		File x = new File(folder, "x.dat");
+		FileRegionCache.reset();
+		FileRegionCache cache = FileRegionCache.getInstance();
+		try {
+			this.write(x, "the first version");
+			assertEquals(1, this.fileSource.loadFiles(folder.getPath()));
+			assertEquals("the first version", new String(cache.read(x, 0, 100)));
+
+			x.delete();
+			assertEquals(1, this.fileSource.reconcile(folder.getPath()));
+			assertEquals(0, cache.getNumberOfOpenFiles());
+
+			this.write(x, "second");
+			assertEquals(1, this.fileSource.reconcile(folder.getPath()));
+			assertNotNull(this.fileSource.getFileInfo(HashUtil.createHash(x)));
+			assertEquals("second", new String(cache.read(x, 0, 100)));
+		} finally {
+			FileRegionCache.reset();
+			x.delete();
+			folder.delete();
+		}
+	}
+
+	private void write(File file, String content) throws Exception {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(content.getBytes());
+		out.close();
+	}
+
+}
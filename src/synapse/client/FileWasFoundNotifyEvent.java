@@ -5,14 +5,14 @@ import java.rmi.RemoteException;
 import synapse.common.Consumer;
 import synapse.common.FileInfo;
 import synapse.common.Provider;
-import synapse.common.events.ActionEvent;
+import synapse.common.events.PartitionedEvent;
 
 /**
  * 
  * 
  * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
  */
-public class FileWasFoundNotifyEvent implements ActionEvent {
+public class FileWasFoundNotifyEvent implements PartitionedEvent {
 
     private long id;
     private Consumer consumer;
@@ -37,4 +37,13 @@ public class FileWasFoundNotifyEvent implements ActionEvent {
         }
     }
 
+    /**
+     * Returns the search id, so the results of a search keep their order.
+     * 
+     * @see synapse.common.events.PartitionedEvent#getPartitionKey()
+     */
+    public Object getPartitionKey() {
+        return new Long(this.id);
+    }
+
 }
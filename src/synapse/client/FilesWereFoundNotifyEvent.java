@@ -0,0 +1,52 @@
+package synapse.client;
+
+import java.rmi.RemoteException;
+
+import org.ourgrid.yal.Logger;
+
+import synapse.common.Consumer;
+import synapse.common.FileInfo;
+import synapse.common.Provider;
+import synapse.common.events.PartitionedEvent;
+
+/**
+ * Delivers a page of the results of a search to the consumer.
+ * 
+ * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+ */
+public class FilesWereFoundNotifyEvent implements PartitionedEvent {
+
+    private long id;
+    private Consumer consumer;
+    private Provider provider;
+    private FileInfo[] files;
+
+    public FilesWereFoundNotifyEvent(long id, Consumer consumer, Provider provider, FileInfo[] files) {
+        this.id = id;
+        this.consumer = consumer;
+        this.provider = provider;
+        this.files = files;
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.common.events.ActionEvent#process()
+     */
+    public void process() {
+        try {
+            this.consumer.filesWereFound(this.id, this.provider, this.files);
+        } catch (RemoteException e) {
+            //o consumidor pode ter saido antes de receber a pagina
+            Logger.getInstance().exception(getClass().getName() + ".process()", e);
+        }
+    }
+
+    /**
+     * Returns the search id, so the results of a search keep their order.
+     * 
+     * @see synapse.common.events.PartitionedEvent#getPartitionKey()
+     */
+    public Object getPartitionKey() {
+        return new Long(this.id);
+    }
+
+}
@@ -0,0 +1,146 @@
+package synapse.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.ourgrid.yal.Logger;
+
+/**
+ * Walks a folder tree in many threads. Each folder is listed by a fork-join task
+ * that reads the attributes of its entries together with the listing and forks
+ * one task for each subfolder. Hidden entries and symbolic links are skipped.
+ *
+ * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
+ */
+public class FolderCrawler {
+
+    /**
+     * The default number of threads. The crawl waits mostly on the disk, so
+     * there are more threads than processors.
+     */
+    public static final int DEFAULT_PARALLELISM = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    private int parallelism;
+
+    private Logger logger;
+
+    /**
+     * Creates a new FolderCrawler.
+     *
+     * @param parallelism The number of threads.
+     */
+    public FolderCrawler(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        this.logger = Logger.getInstance();
+    }
+
+    /**
+     * Walks a folder and its subfolders, waiting until every file is visited. The
+     * visitor is called by many threads at the same time.
+     *
+     * @param folder The folder.
+     * @param visitor Receives the regular files.
+     * @return The number of folders walked.
+     */
+    public int crawl(File folder, Visitor visitor) {
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+        try {
+            FolderTask task = new FolderTask(folder.getAbsoluteFile().toPath(), visitor);
+            pool.invoke(task);
+            return task.getFolders();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Receives the files found.
+     */
+    public interface Visitor {
+
+        /**
+         * Informs that a regular file was found.
+         *
+         * @param file The file.
+         * @param size The file size.
+         * @param modified The modification time of the file.
+         */
+        public void visitFile(File file, long size, long modified);
+    }
+
+    /**
+     * Lists a folder and forks a task for each subfolder.
+     */
+    private class FolderTask extends RecursiveAction {
+
+        private Path folder;
+
+        private Visitor visitor;
+
+        private int folders;
+
+        private FolderTask(Path folder, Visitor visitor) {
+            this.folder = folder;
+            this.visitor = visitor;
+        }
+
+        protected void compute() {
+            final List subfolders = new ArrayList();
+            try {
+                //com profundidade 1 as subpastas chegam como arquivos, com os atributos da listagem
+                Files.walkFileTree(this.folder, EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor() {
+                    public FileVisitResult visitFile(Object file, BasicFileAttributes attributes) {
+                        Path path = (Path) file;
+                        if (isHidden(path)) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        if (attributes.isDirectory()) {
+                            subfolders.add(new FolderTask(path, visitor));
+                        }
+                        else if (attributes.isRegularFile()) {
+                            visitor.visitFile(path.toFile(), attributes.size(), attributes.lastModifiedTime().toMillis());
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    public FileVisitResult visitFileFailed(Object file, IOException e) {
+                        logger.error(FolderCrawler.class.getName() + ".crawl()", "Could not read " + file + ": " + e.getMessage());
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                logger.error(FolderCrawler.class.getName() + ".crawl()", "Could not list " + this.folder + ": " + e.getMessage());
+            }
+
+            invokeAll(subfolders);
+            this.folders = 1;
+            for (int i = 0; i < subfolders.size(); i++) {
+                this.folders += ((FolderTask) subfolders.get(i)).folders;
+            }
+        }
+
+        private int getFolders() {
+            return this.folders;
+        }
+    }
+
+    private static boolean isHidden(Path path) {
+        try {
+            return Files.isHidden(path);
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package synapse.client;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for FolderCrawler.
+ *
+ * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
+ */
+public class FolderCrawlerTest extends TestCase {
+
+    private File folder;
+
+    /*
+     * @see TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.folder = new File(ClientConfig.getTestFolder() + File.separator + "crawlerTest");
+        this.delete(this.folder);
+        this.folder.mkdirs();
+    }
+
+    /*
+     * @see TestCase#tearDown()
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        this.delete(this.folder);
+    }
+
+    /**
+     * Tests if every file of a folder tree is visited once, with its attributes.
+     */
+    public void testCrawl() throws Exception {
+        final Set expected = new HashSet();
+        for (int i = 0; i < 5; i++) {
+            File sub = new File(this.folder, "sub" + i);
+            for (int j = 0; j < 4; j++) {
+                File dir = new File(sub, "dir" + j);
+                dir.mkdirs();
+                for (int k = 0; k < 3; k++) {
+                    File file = new File(dir, "file" + k + ".dat");
+                    this.write(file, i + j + k);
+                    expected.add(file.getAbsolutePath());
+                }
+            }
+        }
+        File top = new File(this.folder, "top.dat");
+        this.write(top, 7);
+        expected.add(top.getAbsolutePath());
+
+        final Set visited = Collections.synchronizedSet(new HashSet());
+        final int[] wrong = new int[ 1 ];
+        int folders = new FolderCrawler(4).crawl(this.folder, new FolderCrawler.Visitor() {
+            public void visitFile(File file, long size, long modified) {
+                if (!visited.add(file.getAbsolutePath()) || size != file.length() || modified != file.lastModified()) {
+                    synchronized (wrong) {
+                        wrong[0]++;
+                    }
+                }
+            }
+        });
+        assertEquals(1 + 5 + 5 * 4, folders);
+        assertEquals(0, wrong[0]);
+        assertEquals(expected, visited);
+    }
+
+    /**
+     * Tests if the hidden files and folders are skipped.
+     */
+    public void testHidden() throws Exception {
+        File hidden = new File(this.folder, ".hidden");
+        hidden.mkdirs();
+        this.write(new File(hidden, "a.dat"), 1);
+        this.write(new File(this.folder, ".b.dat"), 1);
+        this.write(new File(this.folder, "c.dat"), 1);
+
+        final Set visited = Collections.synchronizedSet(new HashSet());
+        int folders = new FolderCrawler(2).crawl(this.folder, new FolderCrawler.Visitor() {
+            public void visitFile(File file, long size, long modified) {
+                visited.add(file.getName());
+            }
+        });
+        assertEquals(1, folders);
+        assertEquals(Collections.singleton("c.dat"), visited);
+    }
+
+    /**
+     * Tests if a folder that doesn't exist is walked without errors.
+     */
+    public void testMissingFolder() throws Exception {
+        int folders = new FolderCrawler(2).crawl(new File(this.folder, "missing"), new FolderCrawler.Visitor() {
+            public void visitFile(File file, long size, long modified) {
+                fail();
+            }
+        });
+        assertEquals(1, folders);
+    }
+
+    private void write(File file, int length) throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[ length ]);
+        out.close();
+    }
+
+    private void delete(File file) {
+        File[] files = file.listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            this.delete(files[i]);
+        }
+        file.delete();
+    }
+
+}
@@ -0,0 +1,248 @@
+package synapse.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.ourgrid.yal.Logger;
+
+/**
+ * Keeps a <code>FileSource</code> up to date with the shared folder. The folder and
+ * its subfolders are watched with a <code>WatchService</code>; a changed path is applied
+ * only after it stays quiet for <code>debounce</code> milliseconds, so a file being
+ * copied is hashed once. From time to time, and when the watch service loses events,
+ * the whole folder is reconciled with <code>FileSource.reconcile</code>.
+ *
+ * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
+ */
+public class FolderWatcher implements Runnable {
+
+    /**
+     * The default time a path must stay quiet before it's applied.
+     */
+    public static final long DEFAULT_DEBOUNCE = 2000;
+
+    /**
+     * The default time between two reconciliations.
+     */
+    public static final long DEFAULT_RECONCILE_INTERVAL = 10 * 60 * 1000;
+
+    private FileSource fileSource;
+
+    private File folder;
+
+    private long debounce;
+
+    private long reconcileInterval;
+
+    private WatchService watcher;
+
+    /**
+     * A map:
+     * WatchKey x Path (the watched folder)
+     */
+    private Map keys;
+
+    /**
+     * The watched folders.
+     */
+    private Set watched;
+
+    /**
+     * A map:
+     * Path x Long (time of the last event)
+     */
+    private Map pending;
+
+    private boolean reconcileNow;
+
+    private volatile boolean stopped;
+
+    private Logger logger;
+
+    /**
+     * Creates a watcher with the default intervals.
+     *
+     * @param fileSource The files shared.
+     * @param folder The shared folder.
+     * @throws IOException If the folder could not be watched.
+     */
+    public FolderWatcher(FileSource fileSource, File folder) throws IOException {
+        this(fileSource, folder, DEFAULT_DEBOUNCE, DEFAULT_RECONCILE_INTERVAL);
+    }
+
+    /**
+     * Creates a watcher.
+     *
+     * @param fileSource The files shared.
+     * @param folder The shared folder.
+     * @param debounce The time a path must stay quiet before it's applied.
+     * @param reconcileInterval The time between two reconciliations.
+     * @throws IOException If the folder could not be watched.
+     */
+    public FolderWatcher(FileSource fileSource, File folder, long debounce, long reconcileInterval) throws IOException {
+        this.fileSource = fileSource;
+        this.folder = folder.getAbsoluteFile();
+        this.debounce = debounce;
+        this.reconcileInterval = reconcileInterval;
+        this.watcher = FileSystems.getDefault().newWatchService();
+        this.keys = new HashMap();
+        this.watched = new HashSet();
+        this.pending = new HashMap();
+        this.logger = Logger.getInstance();
+        this.register(this.folder);
+    }
+
+    /**
+     * Starts watching in a new thread.
+     */
+    public void start() {
+        Thread thread = new Thread(this, "FolderWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching.
+     */
+    public void stop() {
+        this.stopped = true;
+        try {
+            this.watcher.close();
+        } catch (IOException e) {
+            // do nothing
+        }
+    }
+
+    /**
+     * The watcher thread.
+     */
+    public void run() {
+        long nextReconcile = System.currentTimeMillis() + this.reconcileInterval;
+        try {
+            while (!this.stopped) {
+                WatchKey key = this.watcher.poll(this.pending.isEmpty() ? this.reconcileInterval : this.debounce, TimeUnit.MILLISECONDS);
+                //junta as rajadas de eventos antes de aplicar
+                while (key != null) {
+                    this.collect(key);
+                    key = this.watcher.poll();
+                }
+
+                long now = System.currentTimeMillis();
+                this.applyQuietPaths(now);
+                if (this.reconcileNow || now >= nextReconcile) {
+                    this.reconcileNow = false;
+                    this.register(this.folder);
+                    int changes = this.fileSource.reconcile(this.folder.getPath());
+                    this.logger.debug(getClass().getName() + ".run()", "The reconciliation found " + changes + " changes.");
+                    nextReconcile = System.currentTimeMillis() + this.reconcileInterval;
+                }
+            }
+        } catch (InterruptedException e) {
+            // do nothing
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    /**
+     * Keeps the paths of the events of a key.
+     */
+    private void collect(WatchKey key) {
+        Path dir = (Path) this.keys.get(key);
+        long now = System.currentTimeMillis();
+        Iterator it = key.pollEvents().iterator();
+        while (it.hasNext()) {
+            WatchEvent event = (WatchEvent) it.next();
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                this.reconcileNow = true;
+                continue;
+            }
+            this.pending.put(dir.resolve((Path) event.context()), new Long(now));
+        }
+        if (!key.reset()) {
+            this.watched.remove(this.keys.remove(key));
+        }
+    }
+
+    /**
+     * Applies the paths without events in the last <code>debounce</code> milliseconds.
+     */
+    private void applyQuietPaths(long now) {
+        List quiet = new LinkedList();
+        Iterator it = this.pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry entry = (Map.Entry) it.next();
+            if (now - ((Long) entry.getValue()).longValue() >= this.debounce) {
+                quiet.add(entry.getKey());
+                it.remove();
+            }
+        }
+
+        it = quiet.iterator();
+        while (it.hasNext()) {
+            File file = ((Path) it.next()).toFile();
+            if (!file.exists() || !file.canRead() || file.isHidden()) {
+                this.fileSource.removeFiles(file);
+            }
+            else if (file.isDirectory()) {
+                //uma pasta nova ou movida para dentro do compartilhamento
+                this.register(file);
+                this.fileSource.reconcile(file.getPath());
+            }
+            else if (file.isFile()) {
+                this.fileSource.updateFile(file);
+            }
+        }
+        //as mudancas do lote aparecem juntas nas buscas
+        if (!quiet.isEmpty()) {
+            this.fileSource.publish();
+        }
+    }
+
+    /**
+     * Watches a folder and its subfolders that are not watched yet.
+     */
+    private void register(File dir) {
+        if (this.watched.contains(dir.toPath())) {
+            this.registerChildren(dir);
+            return;
+        }
+        try {
+            WatchKey key = dir.toPath().register(this.watcher, new WatchEvent.Kind[] {
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY });
+            this.keys.put(key, dir.toPath());
+            this.watched.add(dir.toPath());
+        } catch (IOException e) {
+            this.logger.error(getClass().getName() + ".register()", "Could not watch " + dir + ": " + e.getMessage());
+            return;
+        }
+        this.registerChildren(dir);
+    }
+
+    private void registerChildren(File dir) {
+        File[] files = dir.listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            if (files[i].isDirectory() && files[i].canRead() && !files[i].isHidden()) {
+                this.register(files[i]);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package synapse.client;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import junit.framework.TestCase;
+import synapse.util.HashUtil;
+
+/**
+ * Tests for FolderWatcher.
+ *
+ * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
+ */
+public class FolderWatcherTest extends TestCase {
+
+    private static final long TIMEOUT = 10000;
+
+    private File folder;
+
+    private FileSource fileSource;
+
+    private FolderWatcher watcher;
+
+    /*
+     * @see TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.folder = new File(ClientConfig.getTestFolder() + File.separator + "watcherTest");
+        this.folder.mkdirs();
+        this.fileSource = new FileSource();
+        this.fileSource.loadFiles(this.folder.getPath());
+    }
+
+    /*
+     * @see TestCase#tearDown()
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        if (this.watcher != null) {
+            this.watcher.stop();
+        }
+        this.delete(this.folder);
+    }
+
+    /**
+     * Tests if created, changed and removed files are seen.
+     */
+    public void testEvents() throws Exception {
+        this.watcher = new FolderWatcher(this.fileSource, this.folder, 100, 60000);
+        this.watcher.start();
+
+        File file = new File(this.folder, "watched.dat");
+        this.write(file, "first");
+        String first = HashUtil.createHash(file);
+        assertTrue(this.waitShared(first, true));
+
+        this.write(file, "second version");
+        String second = HashUtil.createHash(file);
+        assertTrue(this.waitShared(second, true));
+        assertNull(this.fileSource.getFileInfo(first));
+
+        File sub = new File(this.folder, "sub");
+        sub.mkdir();
+        File inner = new File(sub, "inner.dat");
+        this.write(inner, "inner");
+        String third = HashUtil.createHash(inner);
+        assertTrue(this.waitShared(third, true));
+
+        file.delete();
+        assertTrue(this.waitShared(second, false));
+        inner.delete();
+        sub.delete();
+        assertTrue(this.waitShared(third, false));
+        assertEquals(0, this.fileSource.getAllResources().size());
+    }
+
+    /**
+     * Tests if many events of a file are applied once.
+     */
+    public void testDebounce() throws Exception {
+        this.watcher = new FolderWatcher(this.fileSource, this.folder, 500, 60000);
+        this.watcher.start();
+
+        File file = new File(this.folder, "burst.dat");
+        FileOutputStream out = new FileOutputStream(file);
+        for (int i = 0; i < 10; i++) {
+            out.write(new byte[ 1000 ]);
+            out.flush();
+            Thread.sleep(20);
+            assertEquals(0, this.fileSource.getAllResources().size());
+        }
+        out.close();
+        assertTrue(this.waitShared(HashUtil.createHash(file), true));
+        assertEquals(1, this.fileSource.getAllResources().size());
+    }
+
+    /**
+     * Tests if the periodic reconciliation finds the changes.
+     */
+    public void testReconcile() throws Exception {
+        File file = new File(this.folder, "missed.dat");
+        this.write(file, "missed");
+
+        this.watcher = new FolderWatcher(this.fileSource, this.folder, 100, 300);
+        this.watcher.start();
+        assertTrue(this.waitShared(HashUtil.createHash(file), true));
+    }
+
+    private boolean waitShared(String hash, boolean shared) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (System.currentTimeMillis() < deadline) {
+            if ((this.fileSource.getFileInfo(hash) != null) == shared) {
+                return true;
+            }
+            Thread.sleep(20);
+        }
+        return false;
+    }
+
+    private void write(File file, String content) throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes());
+        out.close();
+    }
+
+    private void delete(File file) {
+        File[] files = file.listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            this.delete(files[i]);
+        }
+        file.delete();
+    }
+
+}
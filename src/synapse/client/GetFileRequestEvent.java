@@ -4,14 +4,14 @@ import java.rmi.RemoteException;
 
 import synapse.common.Consumer;
 import synapse.common.Provider;
-import synapse.common.events.ActionEvent;
+import synapse.common.events.PartitionedEvent;
 
 /**
  * 
  * 
  * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
  */
-public class GetFileRequestEvent implements ActionEvent {
+public class GetFileRequestEvent implements PartitionedEvent {
 
     private Provider provider;
     private String hash;
@@ -34,4 +34,13 @@ public class GetFileRequestEvent implements ActionEvent {
         }
     }
 
+    /**
+     * Returns the hash of the asked file.
+     * 
+     * @see synapse.common.events.PartitionedEvent#getPartitionKey()
+     */
+    public Object getPartitionKey() {
+        return this.hash;
+    }
+
 }
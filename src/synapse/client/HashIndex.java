@@ -0,0 +1,275 @@
+package synapse.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.ourgrid.yal.Logger;
+
+import synapse.common.PieceHashes;
+
+/**
+ * Keeps the hashes of the shared files on disk, so a file is hashed again only when
+ * its size or its modification time changed. The index is a binary file read in a
+ * single pass; it's written to a temporary file and renamed, so a crash never leaves
+ * a half written index.
+ * <p>
+ * Format: magic, version and number of entries, followed by the entries. Each entry
+ * has the absolute path, the size, the modification time, the file hash, the piece
+ * size, the number of pieces and the 16 bytes of each piece hash.
+ *
+ * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
+ */
+public class HashIndex {
+
+    /**
+     * The first bytes of an index file.
+     */
+    private static final int MAGIC = 0x53594849;
+
+    /**
+     * The version of the format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The size of a piece hash.
+     */
+    private static final int DIGEST_SIZE = 16;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private File file;
+
+    /**
+     * A map:
+     * Path x Entry
+     */
+    private HashMap entries;
+
+    private boolean modified;
+
+    private Logger logger;
+
+    /**
+     * Creates a new HashIndex and loads the entries of <code>file</code>, if it exists.
+     *
+     * @param file The index file.
+     */
+    public HashIndex(File file) {
+        this.file = file;
+        this.entries = new HashMap();
+        this.logger = Logger.getInstance();
+        this.load();
+    }
+
+    /**
+     * Returns the hashes of a file, if the file did not change since they were put.
+     *
+     * @param file The file.
+     * @return The hashes, or null if the file is not in the index or it changed.
+     */
+    public PieceHashes get(File file) {
+        return this.get(file, file.length(), file.lastModified());
+    }
+
+    /**
+     * Returns the hashes of a file whose size and modification time were already read.
+     *
+     * @param file The file.
+     * @param size The file size.
+     * @param modified The modification time of the file.
+     * @return The hashes, or null if the file is not in the index or it changed.
+     */
+    public synchronized PieceHashes get(File file, long size, long modified) {
+        Entry entry = (Entry) this.entries.get(file.getAbsolutePath());
+        if (entry == null || entry.hashes.getSize() != size || entry.modified != modified) {
+            return null;
+        }
+        return entry.hashes;
+    }
+
+    /**
+     * Puts the hashes of a file. The modification time should be read before the
+     * file is hashed, so a change during the hashing is seen in the next start.
+     *
+     * @param file The file.
+     * @param modified The modification time of the file hashed.
+     * @param hashes The hashes.
+     */
+    public synchronized void put(File file, long modified, PieceHashes hashes) {
+        this.entries.put(file.getAbsolutePath(), new Entry(modified, hashes));
+        this.modified = true;
+    }
+
+    /**
+     * Removes the hashes of a file.
+     *
+     * @param file The file.
+     */
+    public synchronized void remove(File file) {
+        if (this.entries.remove(file.getAbsolutePath()) != null) {
+            this.modified = true;
+        }
+    }
+
+    /**
+     * Removes the entries of the files that are not in <code>paths</code>.
+     *
+     * @param paths The absolute paths of the files that still exist.
+     */
+    public synchronized void retain(Set paths) {
+        Iterator it = this.entries.keySet().iterator();
+        while (it.hasNext()) {
+            if (!paths.contains(it.next())) {
+                it.remove();
+                this.modified = true;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of files in the index.
+     *
+     * @return The number of files.
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Writes the index, if it changed since it was loaded or saved.
+     */
+    public synchronized void save() {
+        if (!this.modified) {
+            return;
+        }
+        File temp = new File(this.file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(this.entries.size());
+
+            Iterator it = this.entries.keySet().iterator();
+            while (it.hasNext()) {
+                String path = (String) it.next();
+                Entry entry = (Entry) this.entries.get(path);
+                PieceHashes hashes = entry.hashes;
+
+                out.writeUTF(path);
+                out.writeLong(hashes.getSize());
+                out.writeLong(entry.modified);
+                out.writeUTF(hashes.getFileHash());
+                out.writeInt(hashes.getPieceSize());
+                out.writeInt(hashes.getNumberOfPieces());
+                for (int i = 0; i < hashes.getNumberOfPieces(); i++) {
+                    out.write(hashes.getPieceHash(i));
+                }
+            }
+            out.close();
+            out = null;
+
+            try {
+                Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            this.modified = false;
+        } catch (IOException e) {
+            this.logger.exception(getClass().getName() + ".save()", e);
+            temp.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // do nothing
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the index file. An index that can't be read is ignored and the files
+     * are hashed again.
+     */
+    private void load() {
+        if (!this.file.exists()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file), BUFFER_SIZE));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                this.logger.error(getClass().getName() + ".load()", "Ignoring the unknown index " + this.file + ".");
+                return;
+            }
+            int count = in.readInt();
+            for (int k = 0; k < count; k++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long modified = in.readLong();
+                String fileHash = in.readUTF();
+                int pieceSize = in.readInt();
+                byte[][] pieces = new byte[ in.readInt() ][ DIGEST_SIZE ];
+                for (int i = 0; i < pieces.length; i++) {
+                    in.readFully(pieces[i]);
+                }
+
+                long expected = size == 0 ? 0 : (size + pieceSize - 1) / pieceSize;
+                if (pieceSize <= 0 || pieces.length != expected) {
+                    throw new IOException("The entry of " + path + " is corrupted");
+                }
+                this.entries.put(path, new Entry(modified, new PieceHashes(fileHash, size, pieceSize, pieces)));
+            }
+        } catch (EOFException e) {
+            this.logger.error(getClass().getName() + ".load()", "The index " + this.file + " is truncated.");
+            this.entries.clear();
+        } catch (IOException e) {
+            this.logger.exception(getClass().getName() + ".load()", e);
+            this.entries.clear();
+        } catch (RuntimeException e) {
+            // a corrupted count or length
+            this.logger.exception(getClass().getName() + ".load()", e);
+            this.entries.clear();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // do nothing
+                }
+            }
+        }
+    }
+
+    /**
+     * The hashes of a file and the modification time of the file hashed.
+     */
+    private static class Entry {
+
+        private long modified;
+
+        private PieceHashes hashes;
+
+        private Entry(long modified, PieceHashes hashes) {
+            this.modified = modified;
+            this.hashes = hashes;
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+package synapse.client;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import synapse.common.FileInfo;
+import synapse.common.PieceHashes;
+import synapse.util.HashUtil;
+
+/**
+ * Tests for HashIndex.
+ *
+ * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
+ */
+public class HashIndexTest extends TestCase {
+
+    private File folder;
+
+    private File indexFile;
+
+    private File file;
+
+    /*
+     * @see TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.folder = new File(ClientConfig.getTestFolder() + File.separator + "indexTest");
+        this.folder.mkdirs();
+        this.indexFile = new File(ClientConfig.getTestFolder() + File.separator + "hashes.idx");
+        this.indexFile.delete();
+        this.file = new File(this.folder, "indexed.dat");
+        this.write(this.file, 3 * 1000 + 7);
+    }
+
+    /*
+     * @see TestCase#tearDown()
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        this.file.delete();
+        this.folder.delete();
+        this.indexFile.delete();
+    }
+
+    /**
+     * Tests if the saved hashes are loaded by a new index.
+     */
+    public void testSaveAndLoad() throws Exception {
+        PieceHashes hashes = HashUtil.createHashes(this.file);
+        HashIndex index = new HashIndex(this.indexFile);
+        index.put(this.file, this.file.lastModified(), hashes);
+        index.save();
+        assertTrue(this.indexFile.exists());
+        assertFalse(new File(this.indexFile.getPath() + ".tmp").exists());
+
+        HashIndex loaded = new HashIndex(this.indexFile);
+        assertEquals(1, loaded.size());
+        PieceHashes cached = loaded.get(this.file);
+        assertNotNull(cached);
+        assertEquals(hashes.getFileHash(), cached.getFileHash());
+        assertEquals(hashes.getSize(), cached.getSize());
+        assertEquals(hashes.getRoot(), cached.getRoot());
+        for (int i = 0; i < hashes.getNumberOfPieces(); i++) {
+            assertTrue(Arrays.equals(hashes.getPieceHash(i), cached.getPieceHash(i)));
+        }
+    }
+
+    /**
+     * Tests if the hashes of a changed file are not returned.
+     */
+    public void testChangedFile() throws Exception {
+        HashIndex index = new HashIndex(this.indexFile);
+        index.put(this.file, this.file.lastModified(), HashUtil.createHashes(this.file));
+        assertNotNull(index.get(this.file));
+
+        this.file.setLastModified(this.file.lastModified() - 10000);
+        assertNull(index.get(this.file));
+
+        index.put(this.file, this.file.lastModified(), HashUtil.createHashes(this.file));
+        this.write(this.file, 10);
+        this.file.setLastModified(this.file.lastModified() - 10000);
+        index.put(this.file, this.file.lastModified() + 1, HashUtil.createHashes(this.file));
+        assertNull(index.get(this.file));
+    }
+
+    /**
+     * Tests if the entries of removed files are discarded.
+     */
+    public void testRetain() throws Exception {
+        HashIndex index = new HashIndex(this.indexFile);
+        index.put(this.file, this.file.lastModified(), HashUtil.createHashes(this.file));
+        index.put(new File(this.folder, "removed.dat"), 0, HashUtil.createHashes(new byte[0], PieceHashes.PIECE_SIZE));
+        assertEquals(2, index.size());
+
+        Set paths = new HashSet();
+        paths.add(this.file.getAbsolutePath());
+        index.retain(paths);
+        index.save();
+        assertEquals(1, new HashIndex(this.indexFile).size());
+    }
+
+    /**
+     * Tests if an index that can't be read is ignored.
+     */
+    public void testCorruptedIndex() throws Exception {
+        HashIndex index = new HashIndex(this.indexFile);
+        index.put(this.file, this.file.lastModified(), HashUtil.createHashes(this.file));
+        index.save();
+
+        // trunca o indice no meio da entrada
+        FileOutputStream out = new FileOutputStream(this.indexFile, true);
+        out.getChannel().truncate(this.indexFile.length() - 5);
+        out.close();
+        assertEquals(0, new HashIndex(this.indexFile).size());
+
+        this.write(this.indexFile, 100);
+        assertEquals(0, new HashIndex(this.indexFile).size());
+    }
+
+    /**
+     * Tests if the <code>FileSource</code> uses the hashes of the index instead
+     * of reading the files again.
+     */
+    public void testFileSource() throws Exception {
+        FileSource source = new FileSource(new HashIndex(this.indexFile));
+        assertEquals(1, source.loadFiles(this.folder.getPath()));
+        String hash = HashUtil.createHash(this.file);
+        assertNotNull(source.getFileInfo(hash));
+        assertTrue(this.indexFile.exists());
+
+        // um hash falso no indice mostra que o arquivo nao foi lido de novo
+        HashIndex index = new HashIndex(this.indexFile);
+        byte[][] pieces = new byte[][] { new byte[ 16 ] };
+        index.put(this.file, this.file.lastModified(), new PieceHashes("fake", this.file.length(), PieceHashes.PIECE_SIZE, pieces));
+        source = new FileSource(index);
+        source.loadFiles(this.folder.getPath());
+        FileInfo info = source.getFileInfo("fake");
+        assertNotNull(info);
+        assertEquals(this.file.getAbsoluteFile(), info.getFile());
+        assertNull(source.getFileInfo(hash));
+    }
+
+    /**
+     * Tests if a changed file keeps its new hashes in the index, and a removed
+     * file loses them.
+     */
+    public void testUpdatedFile() throws Exception {
+        HashIndex index = new HashIndex(this.indexFile);
+        FileSource source = new FileSource(index);
+        assertEquals(1, source.loadFiles(this.folder.getPath()));
+
+        this.write(this.file, 2 * 1000);
+        this.file.setLastModified(this.file.lastModified() - 5000);
+        assertTrue(source.updateFile(this.file));
+        PieceHashes hashes = index.get(this.file);
+        assertNotNull(hashes);
+        assertEquals(HashUtil.createHash(this.file), hashes.getFileHash());
+
+        assertEquals(1, source.removeFiles(this.file));
+        assertNull(index.get(this.file));
+    }
+
+    private void write(File file, int length) throws Exception {
+        byte[] content = new byte[ length ];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content);
+        out.close();
+    }
+
+}
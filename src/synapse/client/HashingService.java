@@ -0,0 +1,168 @@
+package synapse.client;
+
+import java.io.File;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import synapse.common.PieceHashes;
+import synapse.util.HashUtil;
+
+/**
+ * Hashes files in a fixed number of threads. Each file is reported to its listener
+ * as soon as it's hashed, so the files already hashed can be shared while the others
+ * are still being read. The counters tell how much of the work is done.
+ *
+ * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
+ * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+ */
+public class HashingService {
+
+    /**
+     * The default number of threads: one for each processor.
+     */
+    public static final int DEFAULT_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private ThreadPoolExecutor executor;
+
+    private int submitted;
+
+    private int hashed;
+
+    private long submittedBytes;
+
+    private long hashedBytes;
+
+    /**
+     * Creates a new HashingService.
+     *
+     * @param threads The maximum number of files hashed at the same time.
+     */
+    public HashingService(int threads) {
+        threads = Math.max(1, threads);
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue(), new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "HashingService");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues a file to be hashed.
+     *
+     * @param file The file.
+     * @param listener Receives the hashes, or null if the file could not be read.
+     */
+    public void hash(final File file, final Listener listener) {
+        final long length = file.length();
+        synchronized (this) {
+            this.submitted++;
+            this.submittedBytes += length;
+        }
+        this.executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    listener.fileWasHashed(file, HashUtil.createHashes(file));
+                } finally {
+                    synchronized (HashingService.this) {
+                        hashed++;
+                        hashedBytes += length;
+                        HashingService.this.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the number of files queued since the service was created.
+     *
+     * @return The number of files.
+     */
+    public synchronized int getSubmitted() {
+        return this.submitted;
+    }
+
+    /**
+     * Returns the number of files already hashed.
+     *
+     * @return The number of files.
+     */
+    public synchronized int getHashed() {
+        return this.hashed;
+    }
+
+    /**
+     * Returns the number of files waiting to be hashed.
+     *
+     * @return The number of files.
+     */
+    public synchronized int getPending() {
+        return this.submitted - this.hashed;
+    }
+
+    /**
+     * Returns the size of the files queued since the service was created.
+     *
+     * @return The number of bytes.
+     */
+    public synchronized long getSubmittedBytes() {
+        return this.submittedBytes;
+    }
+
+    /**
+     * Returns the size of the files already hashed.
+     *
+     * @return The number of bytes.
+     */
+    public synchronized long getHashedBytes() {
+        return this.hashedBytes;
+    }
+
+    /**
+     * Waits until every queued file is hashed.
+     *
+     * @throws InterruptedException If the thread was interrupted while waiting.
+     */
+    public synchronized void awaitIdle() throws InterruptedException {
+        while (this.hashed < this.submitted) {
+            this.wait();
+        }
+    }
+
+    /**
+     * Stops the threads after the queued files are hashed.
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    /**
+     * Returns the String representation of this service.
+     * @return The String representation of this service.
+     */
+    public synchronized String toString() {
+        return this.hashed + "/" + this.submitted + " files hashed ("
+            + this.hashedBytes / (1024 * 1024) + "/" + this.submittedBytes / (1024 * 1024) + " MB)";
+    }
+
+    /**
+     * Receives the hashes of the files.
+     */
+    public interface Listener {
+
+        /**
+         * Informs that a file was hashed. It's called by the hashing threads.
+         *
+         * @param file The file.
+         * @param hashes The hashes, or null if the file could not be read.
+         */
+        public void fileWasHashed(File file, PieceHashes hashes);
+    }
+
+}
@@ -0,0 +1,91 @@
+package synapse.client;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import synapse.common.PieceHashes;
+import synapse.util.HashUtil;
+
+/**
+ * Tests for HashingService.
+ *
+ * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
+ */
+public class HashingServiceTest extends TestCase {
+
+    private HashingService service;
+
+    /*
+     * @see TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.service = new HashingService(3);
+    }
+
+    /*
+     * @see TestCase#tearDown()
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        this.service.shutdown();
+    }
+
+    /**
+     * Tests if every file is hashed and reported to the listener.
+     */
+    public void testHash() throws Exception {
+        final Map results = new HashMap();
+        HashingService.Listener listener = new HashingService.Listener() {
+            public void fileWasHashed(File file, PieceHashes hashes) {
+                synchronized (results) {
+                    results.put(file, hashes == null ? "null" : hashes.getFileHash());
+                }
+            }
+        };
+
+        File[] files = new File("testFiles").listFiles();
+        long bytes = 0;
+        for (int i = 0; i < files.length; i++) {
+            this.service.hash(files[i], listener);
+            bytes += files[i].length();
+        }
+        File missing = new File("testFiles" + File.separator + "missing.dat");
+        this.service.hash(missing, listener);
+        this.service.awaitIdle();
+
+        assertEquals(files.length + 1, this.service.getSubmitted());
+        assertEquals(files.length + 1, this.service.getHashed());
+        assertEquals(0, this.service.getPending());
+        assertEquals(bytes, this.service.getHashedBytes());
+        assertEquals(this.service.getSubmittedBytes(), this.service.getHashedBytes());
+
+        for (int i = 0; i < files.length; i++) {
+            assertEquals(HashUtil.createHash(files[i]), results.get(files[i]));
+        }
+        assertEquals("null", results.get(missing));
+    }
+
+    /**
+     * Tests if a <code>FileSource</code> loaded in many threads has the same files
+     * of one loaded in a single thread.
+     */
+    public void testFileSource() throws Exception {
+        FileSource expected = new FileSource();
+        int count = expected.loadFiles("testFiles");
+
+        FileSource source = new FileSource(null, this.service);
+        assertEquals(count, source.loadFiles("testFiles"));
+        assertFalse(source.isLoading());
+        assertEquals(expected.getAllResources().size(), source.getAllResources().size());
+        assertEquals(expected.searchForResources("test").size(), source.searchForResources("test").size());
+
+        source = new FileSource(null, this.service);
+        assertEquals(new File("testFiles").listFiles().length, source.startLoading("testFiles"));
+        source.waitLoading();
+        assertEquals(count, source.getAllResources().size());
+    }
+
+}
@@ -4,14 +4,14 @@ import java.rmi.RemoteException;
 
 import synapse.common.Consumer;
 import synapse.common.TransferPipe;
-import synapse.common.events.ActionEvent;
+import synapse.common.events.PartitionedEvent;
 
 /**
  * 
  * 
  * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
  */
-public class HereIsFileNotifyEvent implements ActionEvent {
+public class HereIsFileNotifyEvent implements PartitionedEvent {
 
     private Consumer consumer;
     private TransferPipe pipe;
@@ -33,4 +33,13 @@ public class HereIsFileNotifyEvent implements ActionEvent {
         }
     }
 
+    /**
+     * Returns the received pipe.
+     * 
+     * @see synapse.common.events.PartitionedEvent#getPartitionKey()
+     */
+    public Object getPartitionKey() {
+        return this.pipe;
+    }
+
 }
@@ -0,0 +1,461 @@
+package synapse.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import synapse.common.ContentHash;
+import synapse.common.FileInfo;
+import synapse.util.CompiledExpression;
+import synapse.util.CompiledExpressionAnalyzer;
+
+/**
+ * An inverted index of the shared file names. Each name is kept in upper case and
+ * every 3 characters of it point to the names that contain them, so a search term
+ * is looked up only in the names that have its rarest trigram. Terms shorter than a
+ * trigram are looked up in every name.
+ * <p>
+ * The expressions are compiled by <code>CompiledExpressionAnalyzer</code> and evaluated
+ * as set operations: a term adds the names that contain it, a <code>a+b</code> group
+ * replaces the result with the names that contain both and a <code>!a</code> term
+ * removes the names that contain <code>a</code>.
+ * <p>
+ * This class is not synchronized. The <code>FileSource</code> changes its own index
+ * and searches in copies of it, taken with <code>copy()</code>, that are not changed.
+ *
+ * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+ * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
+ */
+public class NameIndex {
+
+    /**
+     * The length of the indexed substrings.
+     */
+    private static final int GRAM = 3;
+
+    /**
+     * Orders the ranked files from the worst to the best: by score and, with the
+     * same score, the file indexed first is the best.
+     */
+    private static final Comparator RANKING = new Comparator() {
+        public int compare(Object o1, Object o2) {
+            Ranked r1 = (Ranked) o1;
+            Ranked r2 = (Ranked) o2;
+            if (r1.score != r2.score) {
+                return r1.score < r2.score ? -1 : 1;
+            }
+            return r1.id == r2.id ? 0 : (r1.id > r2.id ? -1 : 1);
+        }
+    };
+
+    /**
+     * The files, by id. A removed file leaves a null.
+     */
+    private FileInfo[] files;
+
+    /**
+     * The upper case names, by id.
+     */
+    private String[] names;
+
+    /**
+     * The number of ids used.
+     */
+    private int count;
+
+    /**
+     * The ids of the files not removed.
+     */
+    private BitSet alive;
+
+    /**
+     * A map:
+     * Hash x Integer (id)
+     */
+    private HashMap ids;
+
+    /**
+     * A map:
+     * Long (trigram) x Postings
+     */
+    private HashMap postings;
+
+    /**
+     * Creates an empty index.
+     */
+    public NameIndex() {
+        this.clear();
+    }
+
+    /**
+     * Puts a file in the index, replacing the file with the same hash.
+     *
+     * @param info The file.
+     */
+    public void add(FileInfo info) {
+        this.remove(info.getContentHash());
+
+        if (this.count == this.files.length) {
+            FileInfo[] files = new FileInfo[ this.count * 2 ];
+            String[] names = new String[ this.count * 2 ];
+            System.arraycopy(this.files, 0, files, 0, this.count);
+            System.arraycopy(this.names, 0, names, 0, this.count);
+            this.files = files;
+            this.names = names;
+        }
+
+        int id = this.count++;
+        String name = info.getFileName().toUpperCase();
+        this.files[id] = info;
+        this.names[id] = name;
+        this.alive.set(id);
+        this.ids.put(info.getContentHash(), new Integer(id));
+
+        for (int i = 0; i + GRAM <= name.length(); i++) {
+            Long gram = gram(name, i);
+            Postings list = (Postings) this.postings.get(gram);
+            if (list == null) {
+                list = new Postings();
+                this.postings.put(gram, list);
+            }
+            list.add(id);
+        }
+    }
+
+    /**
+     * Removes the file with a hash.
+     *
+     * @param hash The file hash.
+     */
+    public void remove(ContentHash hash) {
+        Integer id = (Integer) this.ids.remove(hash);
+        if (id == null) {
+            return;
+        }
+        this.files[id.intValue()] = null;
+        this.names[id.intValue()] = null;
+        this.alive.clear(id.intValue());
+
+        //recria o indice quando a maior parte dos ids foi removida
+        if (this.count > 1024 && this.ids.size() < this.count / 2) {
+            this.compact();
+        }
+    }
+
+    /**
+     * Returns a copy of this index. The copy doesn't change when this index changes.
+     * The ids of the posting lists are not copied: the lists only grow at the end, so
+     * the copy keeps the arrays of this index and the size each list had.
+     *
+     * @return The copy.
+     */
+    public NameIndex copy() {
+        NameIndex copy = new NameIndex();
+        copy.files = new FileInfo[ Math.max(16, this.count) ];
+        copy.names = new String[ copy.files.length ];
+        System.arraycopy(this.files, 0, copy.files, 0, this.count);
+        System.arraycopy(this.names, 0, copy.names, 0, this.count);
+        copy.count = this.count;
+        copy.alive = (BitSet) this.alive.clone();
+        copy.ids = new HashMap(this.ids);
+        copy.postings = new HashMap(this.postings.size() * 2);
+        Iterator it = this.postings.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry entry = (Map.Entry) it.next();
+            copy.postings.put(entry.getKey(), ((Postings) entry.getValue()).view());
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the number of files in the index.
+     *
+     * @return The number of files.
+     */
+    public int size() {
+        return this.ids.size();
+    }
+
+    /**
+     * Returns the files whose names match an expression.
+     *
+     * @param expression The search expression.
+     * @return A list of <code>FileInfo</code>s.
+     */
+    public List search(String expression) {
+        List found = new LinkedList();
+        Iterator it = this.cursor(expression);
+        while (it.hasNext()) {
+            found.add(it.next());
+        }
+        return found;
+    }
+
+    /**
+     * Returns the files whose names match an expression, one at a time. Only the ids
+     * of the files are kept, so a search that matches many files doesn't copy them.
+     * The index must not be changed while the cursor is used.
+     *
+     * @param expression The search expression.
+     * @return An <code>Iterator</code> of <code>FileInfo</code>s.
+     */
+    public Iterator cursor(String expression) {
+        return this.cursor(expression, 0, false);
+    }
+
+    /**
+     * Returns at most <code>limit</code> files whose names match an expression. Without
+     * ranking, the walk stops at the first <code>limit</code> files. With ranking, only the
+     * best <code>limit</code> files are kept while the result is walked, as scored by
+     * <code>CompiledExpression.score()</code>, and they are returned best first; the walk
+     * stops when all of them have the highest score.
+     *
+     * @param expression The search expression.
+     * @param limit The number of files wanted, or 0 for all of them.
+     * @param ranked true to return the best files, false to return the first ones.
+     * @return An <code>Iterator</code> of <code>FileInfo</code>s.
+     */
+    public Iterator cursor(String expression, int limit, boolean ranked) {
+        CompiledExpression compiled = CompiledExpressionAnalyzer.getInstance().compile(expression);
+        BitSet result = this.evaluate(compiled);
+        if (limit <= 0) {
+            return new Cursor(this.files, result, Integer.MAX_VALUE);
+        }
+        if (!ranked) {
+            return new Cursor(this.files, result, limit);
+        }
+        return this.best(compiled, result, limit).iterator();
+    }
+
+    /**
+     * The ids of the names that match an expression.
+     */
+    private BitSet evaluate(CompiledExpression compiled) {
+        BitSet result = new BitSet();
+        for (int step = 0; step < compiled.getNumberOfSteps(); step++) {
+            String[] terms = compiled.getTerms(step);
+            if (!compiled.isGroup(step)) {
+                result.or(this.match(terms[0]));
+            }
+            else if (terms == null) {
+                result = new BitSet();
+            }
+            else {
+                result = this.match(terms[0]);
+                for (int k = 1; k < terms.length && !result.isEmpty(); k++) {
+                    result.and(this.match(terms[k]));
+                }
+            }
+        }
+        String[] excluded = compiled.getExcluded();
+        for (int k = 0; k < excluded.length && !result.isEmpty(); k++) {
+            result.andNot(this.match(excluded[k]));
+        }
+        return result;
+    }
+
+    /**
+     * The best files of a result, best first.
+     */
+    private List best(CompiledExpression compiled, BitSet result, int limit) {
+        //o pior dos melhores fica no topo e e trocado quando aparece um nome melhor
+        PriorityQueue best = new PriorityQueue(Math.min(limit, 64), RANKING);
+        int max = compiled.getMaxScore();
+        for (int id = result.nextSetBit(0); id >= 0; id = result.nextSetBit(id + 1)) {
+            int score = compiled.score(this.names[id]);
+            if (best.size() < limit) {
+                best.add(new Ranked(id, score));
+            }
+            else if (score > ((Ranked) best.peek()).score) {
+                best.poll();
+                best.add(new Ranked(id, score));
+            }
+            //nenhum nome seguinte passa na frente dos que tem a nota maxima
+            if (best.size() == limit && ((Ranked) best.peek()).score >= max) {
+                break;
+            }
+        }
+
+        Ranked[] sorted = (Ranked[]) best.toArray(new Ranked[ best.size() ]);
+        Arrays.sort(sorted, Collections.reverseOrder(RANKING));
+        List files = new ArrayList(sorted.length);
+        for (int i = 0; i < sorted.length; i++) {
+            files.add(this.files[sorted[i].id]);
+        }
+        return files;
+    }
+
+    /**
+     * The names that contain a term.
+     */
+    private BitSet match(String term) {
+        BitSet result = new BitSet();
+        if (term.length() < GRAM) {
+            for (int id = this.alive.nextSetBit(0); id >= 0; id = this.alive.nextSetBit(id + 1)) {
+                if (this.names[id].indexOf(term) != -1) {
+                    result.set(id);
+                }
+            }
+            return result;
+        }
+
+        //procura os candidatos na lista do trigrama mais raro do termo
+        Postings rarest = null;
+        for (int i = 0; i + GRAM <= term.length(); i++) {
+            Postings list = (Postings) this.postings.get(gram(term, i));
+            if (list == null) {
+                return result;
+            }
+            if (rarest == null || list.size < rarest.size) {
+                rarest = list;
+            }
+        }
+        for (int k = 0; k < rarest.size; k++) {
+            int id = rarest.ids[k];
+            if (this.names[id] != null && this.names[id].indexOf(term) != -1) {
+                result.set(id);
+            }
+        }
+        return result;
+    }
+
+    private void compact() {
+        FileInfo[] files = this.files;
+        int count = this.count;
+        this.clear();
+        for (int id = 0; id < count; id++) {
+            if (files[id] != null) {
+                this.add(files[id]);
+            }
+        }
+    }
+
+    private void clear() {
+        this.files = new FileInfo[ 16 ];
+        this.names = new String[ 16 ];
+        this.count = 0;
+        this.alive = new BitSet();
+        this.ids = new HashMap();
+        this.postings = new HashMap();
+    }
+
+    private static Long gram(String name, int start) {
+        long gram = 0;
+        for (int i = start; i < start + GRAM; i++) {
+            gram = (gram << 16) | name.charAt(i);
+        }
+        return new Long(gram);
+    }
+
+    /**
+     * The ids of the names that contain a trigram, in increasing order.
+     */
+    private static class Postings {
+
+        private int[] ids;
+
+        private int size;
+
+        /**
+         * true if the array is shared with the list this one is a view of.
+         */
+        private boolean shared;
+
+        private Postings() {
+            this.ids = new int[ 4 ];
+        }
+
+        private Postings(int[] ids, int size) {
+            this.ids = ids;
+            this.size = size;
+            this.shared = true;
+        }
+
+        /**
+         * Returns the ids added so far. The view shares the array, since the ids
+         * before <code>size</code> are never changed: a full array is replaced.
+         */
+        private Postings view() {
+            return new Postings(this.ids, this.size);
+        }
+
+        private void add(int id) {
+            //um nome com o mesmo trigrama duas vezes entra uma vez so
+            if (this.size > 0 && this.ids[this.size - 1] == id) {
+                return;
+            }
+            //a lista original escreve depois do tamanho da vista no mesmo array
+            if (this.size == this.ids.length || this.shared) {
+                int[] ids = new int[ this.size + (this.size >> 1) + 1 ];
+                System.arraycopy(this.ids, 0, ids, 0, this.size);
+                this.ids = ids;
+                this.shared = false;
+            }
+            this.ids[this.size++] = id;
+        }
+    }
+
+    /**
+     * A file of a ranked search.
+     */
+    private static class Ranked {
+
+        private int id;
+
+        private int score;
+
+        private Ranked(int id, int score) {
+            this.id = id;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Walks the ids of a search result, up to a number of files.
+     */
+    private static class Cursor implements Iterator {
+
+        private FileInfo[] files;
+
+        private BitSet result;
+
+        private int next;
+
+        private int remaining;
+
+        private Cursor(FileInfo[] files, BitSet result, int limit) {
+            this.files = files;
+            this.result = result;
+            this.next = result.nextSetBit(0);
+            this.remaining = limit;
+        }
+
+        public boolean hasNext() {
+            return this.next >= 0 && this.remaining > 0;
+        }
+
+        public Object next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            FileInfo file = this.files[this.next];
+            this.next = this.result.nextSetBit(this.next + 1);
+            this.remaining--;
+            return file;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
@@ -0,0 +1,248 @@
+package synapse.client;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import synapse.common.ContentHash;
+import synapse.common.FileInfo;
+import synapse.util.SimpleExpressionAnalyzer;
+
+/**
+ * Tests for NameIndex.
+ *
+ * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+ */
+public class NameIndexTest extends TestCase {
+
+    private static final String[] NAMES = new String[] {
+        "Info.txt", "My File.zip", "  My File", " twO    SPACE  ", "Some        Spaces!",
+        "church turing ", "turing machine", "church - turing ", " turing ", " turing church",
+        " turing church thesis", " turing thesis ", " turing thesis church", " alonzo church machine",
+        " turing thesis church halt", " bla   church", "a+b.txt", "x!y.dat", "TU", "ab"
+    };
+
+    private static final String[] EXPRESSIONS = new String[] {
+        "", "!", "+", "-", "   ", "infO.TxT", "fiLe my", "y.f", " file  ", "    space   two ",
+        " turing machine  ", "turing !machine ", " !machine turing ", "!machine ",
+        "turing !thesis !church", "turing !thesis church", " !thesis ", " turing+thesis ",
+        " turing+thesis foo", " turing+thesis machine ", " machine turing+thesis", " turing+thesis !church",
+        " turing+thesis church !halt", "+turing", "turing+", "turing+-", "tu+ri+ng", "a+b", "x!y", "- turing",
+        "t", "tu", "u", "!t", "church+turing+thesis", "ch+tu !ha"
+    };
+
+    private NameIndex index;
+
+    /*
+     * @see TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.index = new NameIndex();
+        for (int i = 0; i < NAMES.length; i++) {
+            this.index.add(new FakeFileInfo(NAMES[i], "hash" + i, i));
+        }
+    }
+
+    /**
+     * Tests if the index finds the same names that <code>SimpleExpressionAnalyzer</code> accepts.
+     */
+    public void testSameResults() {
+        SimpleExpressionAnalyzer analyzer = new SimpleExpressionAnalyzer();
+        for (int e = 0; e < EXPRESSIONS.length; e++) {
+            List found = this.index.search(EXPRESSIONS[e]);
+            int expected = 0;
+            for (int i = 0; i < NAMES.length; i++) {
+                boolean accepted = analyzer.accept(EXPRESSIONS[e], NAMES[i]);
+                if (accepted) {
+                    expected++;
+                }
+                assertEquals("'" + EXPRESSIONS[e] + "' on '" + NAMES[i] + "'", accepted, this.contains(found, "hash" + i));
+            }
+            assertEquals(expected, found.size());
+        }
+    }
+
+    /**
+     * Tests random names and expressions against <code>SimpleExpressionAnalyzer</code>.
+     */
+    public void testRandomResults() {
+        Random random = new Random(7);
+        String alphabet = "abcAB +!-";
+        NameIndex index = new NameIndex();
+        String[] names = new String[ 300 ];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = this.random(random, alphabet, 1 + random.nextInt(8));
+            index.add(new FakeFileInfo(names[i], "hash" + i, i));
+        }
+
+        SimpleExpressionAnalyzer analyzer = new SimpleExpressionAnalyzer();
+        for (int e = 0; e < 500; e++) {
+            String expression = this.random(random, alphabet, random.nextInt(10));
+            List found = index.search(expression);
+            for (int i = 0; i < names.length; i++) {
+                assertEquals("'" + expression + "' on '" + names[i] + "'",
+                        analyzer.accept(expression, names[i]), this.contains(found, "hash" + i));
+            }
+        }
+    }
+
+    /**
+     * Tests the replacement and the removal of files.
+     */
+    public void testRemove() {
+        assertEquals(NAMES.length, this.index.size());
+        assertEquals(1, this.index.search("info").size());
+
+        this.index.add(new FakeFileInfo("renamed.txt", "hash0", 0));
+        assertEquals(NAMES.length, this.index.size());
+        assertEquals(0, this.index.search("info").size());
+        assertEquals(1, this.index.search("renamed").size());
+
+        this.index.remove(ContentHash.valueOf("hash0"));
+        this.index.remove(ContentHash.valueOf("unknown"));
+        assertEquals(NAMES.length - 1, this.index.size());
+        assertEquals(0, this.index.search("renamed").size());
+        assertEquals(0, this.index.search("re").size());
+    }
+
+    /**
+     * Tests many removals, which rebuild the index.
+     */
+    public void testCompact() {
+        NameIndex index = new NameIndex();
+        for (int i = 0; i < 5000; i++) {
+            index.add(new FakeFileInfo("file" + i + ".dat", "hash" + i, i));
+        }
+        for (int i = 0; i < 4000; i++) {
+            index.remove(ContentHash.valueOf("hash" + i));
+        }
+        assertEquals(1000, index.size());
+        assertEquals(1000, index.search("file").size());
+        assertEquals(1, index.search("file4321.").size());
+        assertEquals(0, index.search("file1234.").size());
+    }
+
+    /**
+     * Tests if a copy keeps its files when the index changes.
+     */
+    public void testCopy() {
+        NameIndex copy = this.index.copy();
+        this.index.remove(ContentHash.valueOf("hash0"));
+        this.index.add(new FakeFileInfo("added.txt", "added", 1));
+        assertEquals(1, copy.search("info").size());
+        assertEquals(0, copy.search("added").size());
+        assertEquals(NAMES.length, copy.size());
+
+        copy.add(new FakeFileInfo("copied.txt", "copied", 1));
+        assertEquals(0, this.index.search("copied").size());
+        assertEquals(1, this.index.search("added").size());
+    }
+
+    /**
+     * Tests if a copy and the index add to the posting lists they share
+     * without changing each other.
+     */
+    public void testCopySharesPostings() {
+        int turing = this.index.search("turing").size();
+        NameIndex copy = this.index.copy();
+        this.index.add(new FakeFileInfo("other.txt", "other", 1));
+        this.index.add(new FakeFileInfo("turing new.txt", "new", 1));
+        copy.add(new FakeFileInfo("turing copied.txt", "copied", 1));
+
+        assertEquals(turing + 1, this.index.search("turing").size());
+        assertEquals(1, this.index.search("turing+new").size());
+        assertEquals(0, this.index.search("copied").size());
+        assertEquals(turing + 1, copy.search("turing").size());
+        assertEquals(1, copy.search("turing+copied").size());
+        assertEquals(0, copy.search("new").size());
+    }
+
+    /**
+     * Tests if the cursor walks the same files of the search.
+     */
+    public void testCursor() {
+        List found = this.index.search("turing");
+        Iterator cursor = this.index.cursor("turing");
+        for (int i = 0; i < found.size(); i++) {
+            assertTrue(cursor.hasNext());
+            assertSame(found.get(i), cursor.next());
+        }
+        assertFalse(cursor.hasNext());
+        try {
+            cursor.next();
+            fail();
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+        assertFalse(this.index.cursor("nothing like this").hasNext());
+    }
+
+    /**
+     * Tests if a cursor with a limit stops at the first files found.
+     */
+    public void testLimitedCursor() {
+        List found = this.index.search("turing");
+        Iterator cursor = this.index.cursor("turing", 3, false);
+        for (int i = 0; i < 3; i++) {
+            assertSame(found.get(i), cursor.next());
+        }
+        assertFalse(cursor.hasNext());
+        assertEquals(found.size(), this.count(this.index.cursor("turing", 0, false)));
+        assertEquals(found.size(), this.count(this.index.cursor("turing", 1000, true)));
+    }
+
+    /**
+     * Tests if a ranked cursor returns the names that best match the expression, best first.
+     */
+    public void testRankedCursor() {
+        NameIndex index = new NameIndex();
+        String[] names = new String[] { "maturing.txt", "turingmachine.avi", "turing.pdf", "Alan Turing", "saturing", "church" };
+        for (int i = 0; i < names.length; i++) {
+            index.add(new FakeFileInfo(names[i], "hash" + i, i));
+        }
+
+        Iterator cursor = index.cursor("turing", 2, true);
+        assertEquals("turing.pdf", ((FileInfo) cursor.next()).getFileName());
+        assertEquals("Alan Turing", ((FileInfo) cursor.next()).getFileName());
+        assertFalse(cursor.hasNext());
+
+        cursor = index.cursor("turing", 10, true);
+        String[] expected = new String[] { "turing.pdf", "Alan Turing", "turingmachine.avi", "maturing.txt", "saturing" };
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], ((FileInfo) cursor.next()).getFileName());
+        }
+        assertFalse(cursor.hasNext());
+        assertFalse(index.cursor("nothing like this", 10, true).hasNext());
+    }
+
+    private int count(Iterator cursor) {
+        int count = 0;
+        while (cursor.hasNext()) {
+            cursor.next();
+            count++;
+        }
+        return count;
+    }
+
+    private boolean contains(List found, String hash) {
+        Iterator it = found.iterator();
+        while (it.hasNext()) {
+            if (((FileInfo) it.next()).getHash().equals(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String random(Random random, String alphabet, int length) {
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < length; i++) {
+            buffer.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return buffer.toString();
+    }
+
+}
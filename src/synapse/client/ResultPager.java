@@ -0,0 +1,106 @@
+package synapse.client;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import synapse.common.Consumer;
+import synapse.common.FileInfo;
+import synapse.common.Provider;
+
+/**
+ * Sends the results of a search to its consumer in pages, with
+ * <code>Consumer.filesWereFound()</code>, instead of a call for each file.
+ * A page is sent when it is full or when its first result waited the page time,
+ * so the consumer sees the first results of a slow search. The results are read
+ * from a cursor, so a search with many results is never copied whole.
+ *
+ * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
+ * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+ */
+public class ResultPager {
+
+    /**
+     * The default number of results of a page.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 256;
+
+    /**
+     * The default time, in milliseconds, a result waits for its page to be sent.
+     */
+    public static final long DEFAULT_PAGE_TIME = 200;
+
+    private int pageSize;
+
+    private long pageTime;
+
+    /**
+     * Creates a new ResultPager.
+     *
+     * @param pageSize The maximum number of results of a page.
+     * @param pageTime The time, in milliseconds, a result waits for its page to be sent.
+     */
+    public ResultPager(int pageSize, long pageTime) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("The page size must be positive: " + pageSize);
+        }
+        this.pageSize = pageSize;
+        this.pageTime = pageTime;
+    }
+
+    /**
+     * Sends the results of a cursor to a consumer.
+     *
+     * @param id The id of the search.
+     * @param consumer The consumer of the search.
+     * @param provider The provider given with the results.
+     * @param cursor An <code>Iterator</code> of <code>FileInfo</code>s.
+     * @return The number of results sent.
+     * @throws RemoteException If the consumer could not be contacted; the rest of the results are not sent.
+     */
+    public int send(long id, Consumer consumer, Provider provider, Iterator cursor) throws RemoteException {
+        List page = new ArrayList(Math.min(this.pageSize, 64));
+        long opened = 0;
+        int sent = 0;
+        while (cursor.hasNext()) {
+            if (page.isEmpty()) {
+                opened = System.currentTimeMillis();
+            }
+            page.add(cursor.next());
+            if (page.size() >= this.pageSize || System.currentTimeMillis() - opened >= this.pageTime) {
+                sent += this.flush(id, consumer, provider, page);
+            }
+        }
+        if (!page.isEmpty()) {
+            sent += this.flush(id, consumer, provider, page);
+        }
+        return sent;
+    }
+
+    private int flush(long id, Consumer consumer, Provider provider, List page) throws RemoteException {
+        FileInfo[] files = (FileInfo[]) page.toArray(new FileInfo[ page.size() ]);
+        page.clear();
+        consumer.filesWereFound(id, provider, files);
+        return files.length;
+    }
+
+    /**
+     * Returns the maximum number of results of a page.
+     *
+     * @return The page size.
+     */
+    public int getPageSize() {
+        return this.pageSize;
+    }
+
+    /**
+     * Returns the time a result waits for its page to be sent.
+     *
+     * @return The time, in milliseconds.
+     */
+    public long getPageTime() {
+        return this.pageTime;
+    }
+
+}
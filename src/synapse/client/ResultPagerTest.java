@@ -0,0 +1,138 @@
+package synapse.client;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+import synapse.common.FakeConsumer;
+import synapse.common.FakeProvider;
+import synapse.common.FileInfo;
+import synapse.common.Provider;
+
+/**
+ * Tests for ResultPager.
+ *
+ * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
+ */
+public class ResultPagerTest extends TestCase {
+
+    private PageConsumer consumer;
+
+    private FakeProvider provider;
+
+    /*
+     * @see TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.consumer = new PageConsumer();
+        this.provider = new FakeProvider();
+    }
+
+    /**
+     * Tests if the results are split in full pages and a last partial one.
+     */
+    public void testPageSize() throws Exception {
+        this.consumer.setExpectedFoundFiles(250);
+        ResultPager pager = new ResultPager(100, 10000);
+        int sent = pager.send(7, this.consumer, this.provider, this.createFiles(250).iterator());
+
+        assertEquals(250, sent);
+        assertEquals(3, this.consumer.pages.size());
+        assertEquals(100, ((FileInfo[]) this.consumer.pages.get(0)).length);
+        assertEquals(100, ((FileInfo[]) this.consumer.pages.get(1)).length);
+        assertEquals(50, ((FileInfo[]) this.consumer.pages.get(2)).length);
+        assertEquals("file249", ((FileInfo[]) this.consumer.pages.get(2))[49].getFileName());
+        this.consumer.verify();
+    }
+
+    /**
+     * Tests if a page is sent when its first result waited the page time, even if it is not full.
+     */
+    public void testPageTime() throws Exception {
+        final Iterator files = this.createFiles(6).iterator();
+        Iterator slow = new Iterator() {
+            public boolean hasNext() {
+                return files.hasNext();
+            }
+
+            public Object next() {
+                try {
+                    Thread.sleep(60);
+                } catch (InterruptedException e) {
+                    // do nothing
+                }
+                return files.next();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        ResultPager pager = new ResultPager(100, 100);
+        assertEquals(6, pager.send(7, this.consumer, this.provider, slow));
+
+        assertTrue(this.consumer.pages.size() >= 2);
+        assertTrue(this.consumer.pages.size() <= 6);
+    }
+
+    /**
+     * Tests if nothing is sent when there are no results.
+     */
+    public void testNoResults() throws Exception {
+        ResultPager pager = new ResultPager(100, 100);
+        assertEquals(0, pager.send(7, this.consumer, this.provider, Collections.EMPTY_LIST.iterator()));
+        assertEquals(0, this.consumer.pages.size());
+    }
+
+    /**
+     * Tests if the search stops when the consumer can't be contacted.
+     */
+    public void testConsumerFails() throws Exception {
+        this.consumer.failing = true;
+        ResultPager pager = new ResultPager(10, 10000);
+        Iterator files = this.createFiles(50).iterator();
+        try {
+            pager.send(7, this.consumer, this.provider, files);
+            fail();
+        } catch (RemoteException e) {
+            // expected
+        }
+        assertTrue(files.hasNext());
+    }
+
+    private List createFiles(int count) {
+        List files = new ArrayList();
+        for (int i = 0; i < count; i++) {
+            files.add(new FakeFileInfo("file" + i, "hash" + i, i));
+        }
+        return files;
+    }
+
+    /**
+     * A consumer that keeps the pages received.
+     */
+    private static class PageConsumer extends FakeConsumer {
+
+        private List pages = new ArrayList();
+
+        private boolean failing;
+
+        PageConsumer() throws RemoteException {
+            super();
+        }
+
+        public void filesWereFound(long id, Provider provider, FileInfo[] files) throws RemoteException {
+            if (this.failing) {
+                throw new RemoteException("The consumer is down.");
+            }
+            super.filesWereFound(id, provider, files);
+            this.pages.add(files);
+        }
+    }
+
+}
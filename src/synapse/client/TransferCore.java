@@ -1,8 +1,8 @@
 package synapse.client;
 
+import java.io.File;
+import java.io.IOException;
 import java.rmi.RemoteException;
-import java.util.Collection;
-import java.util.Iterator;
 
 import org.ourgrid.yal.Logger;
 
@@ -47,7 +47,12 @@ public class TransferCore implements Consumer, Provider {
 	 * The Provider given to other clients.
 	 */
 	private Provider client;
-	
+
+	/**
+	 * Sends the results of the searches in pages.
+	 */
+	private ResultPager pager;
+
 	/**
 	 * The logger.
 	 */
@@ -57,10 +62,19 @@ public class TransferCore implements Consumer, Provider {
 	 * Creates a TransferCore.
 	 */
 	public TransferCore () {
-		this(ReplyManager.getInstance(), UploadManager.getInstance(), DownloadManager.getInstance(), new FileSource());
+		this(ReplyManager.getInstance(), UploadManager.getInstance(), DownloadManager.getInstance(), new FileSource(new HashIndex(new File(ClientConfig.getHashIndexFilename())), new HashingService(HashingService.DEFAULT_THREADS)));
+		this.pager = new ResultPager(ClientConfig.getResultPageSize(), ClientConfig.getResultPageTime());
+
+		//os arquivos novos sao compartilhados a medida que o hash termina
+		int numberOfFiles = this.fileSource.startLoading(ClientConfig.getSharedFolder());
+		logger.debug(getClass().getName() + ".TransferCore()", "The FileSource is loading " + numberOfFiles + " files.");
 
-		int numberOfFiles = this.fileSource.loadFiles(ClientConfig.getSharedFolder());
-		logger.debug(getClass().getName() + ".TransferCore()", "The FileSource was loaded with " + numberOfFiles + " files.");
+		//mudancas na pasta compartilhada sao aplicadas sem reiniciar
+		try {
+			new FolderWatcher(this.fileSource, new File(ClientConfig.getSharedFolder())).start();
+		} catch (IOException e) {
+			logger.error(getClass().getName() + ".TransferCore()", "Could not watch the shared folder: " + e.getMessage());
+		}
 	}
 	
 	/**
@@ -76,6 +90,7 @@ public class TransferCore implements Consumer, Provider {
 		this.uploadManager = uploadManager;
 		this.downloadManager = downManager;
 		this.fileSource = fileSource;
+		this.pager = new ResultPager(ResultPager.DEFAULT_PAGE_SIZE, ResultPager.DEFAULT_PAGE_TIME);
 		this.logger = Logger.getInstance();
 	}
 
@@ -97,20 +112,30 @@ public class TransferCore implements Consumer, Provider {
         throw new OperationNotSupportedException();
     }
 
+    /* (non-Javadoc)
+     * @see synapse.common.Provider#searchFile(synapse.common.Consumer, java.lang.String, int, boolean)
+     */
+    public long searchFile(Consumer consumer, String fileName, int limit, boolean ranked) throws OperationNotSupportedException {
+        throw new OperationNotSupportedException();
+    }
+
     /* (non-Javadoc)
      * @see synapse.common.Provider#searchFile(long, synapse.common.Consumer, java.lang.String)
      */
     public void searchFile(long id, Consumer consumer, String fileName) {
+        this.searchFile(id, consumer, fileName, NO_LIMIT, false);
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.common.Provider#searchFile(long, synapse.common.Consumer, java.lang.String, int, boolean)
+     */
+    public void searchFile(long id, Consumer consumer, String fileName, int limit, boolean ranked) {
         logger.info(getClass().getName() + ".searchFile()", "The id <" + id + "> asked for the argument: " + fileName + ". Starting the local search...");
 
-    	Collection sources = this.fileSource.searchForResources(fileName);
-    	Iterator srcIterator = sources.iterator();
 		try {
-	    	while (srcIterator.hasNext()) {
-	    		FileInfo src = (FileInfo) srcIterator.next();
-	    		consumer.fileWasFound(id, this.client, src);
-	    	}
-	    	logger.info(getClass().getName() + ".searchFile()", "The search was finished and returned " + sources.size() + " files.");
+			//os resultados sao lidos do indice e enviados em paginas, sem uma chamada por arquivo
+			int sent = this.pager.send(id, consumer, this.client, this.fileSource.searchCursor(fileName, limit, ranked));
+	    	logger.info(getClass().getName() + ".searchFile()", "The search was finished and returned " + sent + " files.");
 		} catch (RemoteException e) {
 		    logger.info(getClass().getName() + ".searchFile()", "The search with id <" + id + "> was canceled because the consumer wasn't connected.");
 		}
@@ -143,6 +168,13 @@ public class TransferCore implements Consumer, Provider {
 		throw new OperationNotSupportedException();
 	}
 
+	/* (non-Javadoc)
+	 * @see synapse.common.Provider#searchForCommunity(long, synapse.common.Consumer, java.lang.String, int, boolean)
+	 */
+	public void searchForCommunity(long id, Consumer consumer, String fileName, int limit, boolean ranked) throws RemoteException {
+		throw new OperationNotSupportedException();
+	}
+
     /* (non-Javadoc)
      * @see synapse.common.Provider#getFile(java.lang.String)
      */
@@ -172,6 +204,15 @@ public class TransferCore implements Consumer, Provider {
     	replyManager.addReply(id, provider, fileInfo);
     }
 
+    /* (non-Javadoc)
+     * @see synapse.common.Consumer#filesWereFound(long, synapse.common.Provider, synapse.common.FileInfo[])
+     */
+    public void filesWereFound(long id, Provider provider, FileInfo[] files) {
+        logger.info(getClass().getName() + ".filesWereFound()", "The search id <" + id + "> received " + files.length + " files as result.");
+
+    	replyManager.addReplies(id, provider, files);
+    }
+
     /* (non-Javadoc)
      * @see synapse.common.Consumer#hereIsFile(synapse.common.TransferPipe)
      */
@@ -1,6 +1,7 @@
 package synapse.client;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.rmi.RemoteException;
 
 import junit.framework.TestCase;
@@ -11,6 +12,7 @@ import synapse.client.manager.UploadManager;
 import synapse.common.FakeConsumer;
 import synapse.common.FakeProvider;
 import synapse.common.FileInfo;
+import synapse.common.Provider;
 import synapse.common.TransferPipe;
 import synapse.util.HashUtil;
 
@@ -70,23 +72,78 @@ public class TransferCoreTest extends TestCase {
 	public void testSearchFilelongConsumerString() throws RemoteException {
 		this.fileSrc.putFile(new File(ClientConfig.getRootDir() + File.separator + "testFiles" + File.separator + "test1.dat"));
 		this.fileSrc.putFile(new File(ClientConfig.getRootDir() + File.separator + "testFiles" + File.separator + "test2.dat"));
-		this.fakeConsumer.setExpectedFileWasFound(2);
+		this.fileSrc.publish();
+		this.fakeConsumer.setExpectedFoundFiles(2);
 		this.transferCore.searchFile(1234, this.fakeConsumer, "test");
 		this.fakeConsumer.verify();
 		
 		//tests for only one file to be found
 		this.fakeConsumer.reset();
-		this.fakeConsumer.setExpectedFileWasFound(1);
+		this.fakeConsumer.setExpectedFoundFiles(1);
 		this.transferCore.searchFile(1234, this.fakeConsumer, "1");
 		this.fakeConsumer.verify();
 		
 		//tests for a file that will not be found
 		this.fakeConsumer.reset();
-		this.fakeConsumer.setExpectedFileWasFound(0);
+		this.fakeConsumer.setExpectedFoundFiles(0);
 		this.transferCore.searchFile(1234, this.fakeConsumer, "lala");
 		this.fakeConsumer.verify();
 	}
 
+	/**
+	 * Tests if a local search with a limit sends at most the files asked.
+	 * 
+	 * @throws RemoteException thrown in case a remote exception occurs.
+	 */
+	public void testSearchFileWithLimit() throws RemoteException {
+		this.fileSrc.putFile(new File(ClientConfig.getRootDir() + File.separator + "testFiles" + File.separator + "test1.dat"));
+		this.fileSrc.putFile(new File(ClientConfig.getRootDir() + File.separator + "testFiles" + File.separator + "test2.dat"));
+		this.fileSrc.publish();
+		this.fakeConsumer.setExpectedFoundFiles(1);
+		this.transferCore.searchFile(1234, this.fakeConsumer, "test", 1, false);
+		this.fakeConsumer.verify();
+
+		this.fakeConsumer.reset();
+		this.fakeConsumer.setExpectedFoundFiles(2);
+		this.transferCore.searchFile(1234, this.fakeConsumer, "test", Provider.NO_LIMIT, false);
+		this.fakeConsumer.verify();
+	}
+
+	/**
+	 * Tests if a local search with a limit is ranked only when the request asks for it.
+	 * 
+	 * @throws RemoteException thrown in case a remote exception occurs.
+	 */
+	public void testSearchFileRanked() throws Exception {
+		File inside = new File(ClientConfig.getTestFolder() + File.separator + "maturing.dat");
+		File whole = new File(ClientConfig.getTestFolder() + File.separator + "turing.dat");
+		try {
+			this.write(inside, "inside");
+			this.write(whole, "whole");
+			this.fileSrc.putFile(inside);
+			this.fileSrc.putFile(whole);
+			this.fileSrc.publish();
+
+			//sem ranking o primeiro arquivo encontrado eh enviado
+			this.transferCore.searchFile(1234, this.fakeConsumer, "turing", 1, false);
+			assertEquals(inside.getName(), this.fakeConsumer.getLastFound().getFileName());
+
+			//com ranking o nome que tem a palavra inteira eh o melhor
+			this.fakeConsumer.reset();
+			this.transferCore.searchFile(1234, this.fakeConsumer, "turing", 1, true);
+			assertEquals(whole.getName(), this.fakeConsumer.getLastFound().getFileName());
+		} finally {
+			inside.delete();
+			whole.delete();
+		}
+	}
+
+	private void write(File file, String content) throws Exception {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(content.getBytes());
+		out.close();
+	}
+
 	/**
 	 * Tests the serach method using the hash file.
 	 */
@@ -112,6 +169,19 @@ public class TransferCoreTest extends TestCase {
 		this.transferCore.fileWasFound(1234, fakeProvider, new FakeFileInfo("none", "bah", 0));
 		assertTrue (this.repManager.containsId(1234));
 	}
+
+	/**
+	 * Tests the <code>filesWereFound</code> method.
+	 * 
+	 * @throws Exception thrown in case an exception occurs.
+	 */
+	public void testFilesWereFound () throws Exception {
+		FileInfo[] files = new FileInfo[] { new FakeFileInfo("one", "hash1", 0), new FakeFileInfo("two", "hash2", 0), new FakeFileInfo("one", "hash1", 0) };
+		this.transferCore.filesWereFound(1234, fakeProvider, files);
+		assertTrue (this.repManager.containsHash(1234, "hash1"));
+		assertTrue (this.repManager.containsHash(1234, "hash2"));
+		assertEquals (2, this.repManager.getProviders(1234, "hash1").size());
+	}
 	
 	/**
 	 * Tests the <code>getFile</code> method.
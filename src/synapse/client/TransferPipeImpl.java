@@ -1,9 +1,11 @@
 package synapse.client;
 
+import synapse.common.ContentHash;
 import synapse.common.FileInfo;
 import synapse.common.OperationNotSupportedException;
+import synapse.common.PieceHashes;
 import synapse.common.TransferPipe;
-import java.io.*;
+import java.io.IOException;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 
@@ -29,9 +31,9 @@ public class TransferPipeImpl extends UnicastRemoteObject implements TransferPip
 	private FileInfo fileInfo;
 
 	/**
-	 * Stream used to read the file bytes.
+	 * The shared read-only channels used to read the file bytes.
 	 */
-	private RandomAccessFile input;
+	private FileRegionCache cache;
 	
 	private Logger logger;
 	
@@ -44,15 +46,14 @@ public class TransferPipeImpl extends UnicastRemoteObject implements TransferPip
 	    this.fileInfo = fileInfo;
 		invalidateMark = false;
 		this.logger = Logger.getInstance();
+		this.cache = FileRegionCache.getInstance();
 
 		try {
-			input = new RandomAccessFile(this.fileInfo.getFile(), "rw");
-			//
-			
-		} catch (FileNotFoundException e) {
+			this.cache.open(this.fileInfo.getFile());
+		} catch (IOException e) {
 			
 			logger.error(this.getClass().getName()+".TransferPipeImpl(FileInfo fileInfo)",
-					"FileNotFoundException occur, pipe will be invalidated" );
+					"IOException occur, pipe will be invalidated" );
 			this.invalidate();
 		}
 	}
@@ -99,6 +100,20 @@ public class TransferPipeImpl extends UnicastRemoteObject implements TransferPip
 		return this.fileInfo.getHash();
 	}
 	
+	/* (non-Javadoc)
+     * @see synapse.common.TransferPipe#getContentHash()
+     */
+	public ContentHash getContentHash() throws RemoteException{
+		return this.fileInfo.getContentHash();
+	}
+	
+	/* (non-Javadoc)
+     * @see synapse.common.TransferPipe#getPieceHashes()
+     */
+	public PieceHashes getPieceHashes() throws RemoteException {
+		return this.fileInfo.getPieceHashes();
+	}
+	
 	/* (non-Javadoc)
      * @see synapse.common.TransferPipe#getFile(int i, int len)
      */
@@ -107,16 +122,51 @@ public class TransferPipeImpl extends UnicastRemoteObject implements TransferPip
 	        throw new OperationNotSupportedException("The TransferPipe was invalidated");
 	    }
 
-	    byte[] array = new byte[ (int) len ];
+	    if (i < 0 || len < 0 || len > MAX_REQUEST_SIZE) {
+	        throw new RemoteException("Invalid range: " + i + " " + len);
+	    }
 
 		try {
-			input.seek(i);
-			input.read(array, 0, (int) len);
+			return this.cache.read(this.fileInfo.getFile(), i, (int) len);
 		} catch (IOException e) {
-			throw new RemoteException("Could not read the remote file");
+			throw new RemoteException("Could not read the remote file", e);
 		}
+	}
 
-		return array;
+	/* (non-Javadoc)
+     * @see synapse.common.TransferPipe#getFiles(long[], int[])
+     */
+	public byte[][] getFiles(long[] offsets, int[] lengths) throws RemoteException {
+	    if (this.isInvalidated()) {
+	        throw new OperationNotSupportedException("The TransferPipe was invalidated");
+	    }
+	    if (offsets.length != lengths.length) {
+	        throw new RemoteException("The number of offsets and lengths are different");
+	    }
+	    //o tamanho das respostas eh limitado antes de qualquer leitura
+	    if (offsets.length > MAX_RANGES) {
+	        throw new RemoteException("Too many ranges: " + offsets.length);
+	    }
+	    long total = 0;
+	    for (int k = 0; k < lengths.length; k++) {
+	        if (offsets[k] < 0 || lengths[k] < 0) {
+	            throw new RemoteException("Invalid range: " + offsets[k] + " " + lengths[k]);
+	        }
+	        total += lengths[k];
+	    }
+	    if (total > MAX_REQUEST_SIZE) {
+	        throw new RemoteException("Too many bytes asked: " + total);
+	    }
+
+	    byte[][] arrays = new byte[ offsets.length ][];
+		try {
+			for (int k = 0; k < offsets.length; k++) {
+				arrays[k] = this.cache.read(this.fileInfo.getFile(), offsets[k], lengths[k]);
+			}
+		} catch (IOException e) {
+			throw new RemoteException("Could not read the remote file", e);
+		}
+		return arrays;
 	}
 
     /**
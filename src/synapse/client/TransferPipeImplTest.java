@@ -7,6 +7,7 @@ import java.util.Arrays;
 
 import synapse.common.FileInfo;
 import synapse.common.OperationNotSupportedException;
+import synapse.common.TransferPipe;
 
 import junit.framework.TestCase;
 
@@ -133,6 +134,71 @@ public class TransferPipeImplTest extends TestCase {
 
 	}
 
+	public void testGetFiles() throws Exception {
+		long[] offsets = new long[] { 0, 20, transfer2.getSize() - 7 };
+		int[] lengths = new int[] { 17, 17, 17 };
+
+		byte[][] arrays = transfer2.getFiles(offsets, lengths);
+		assertEquals(3, arrays.length);
+		assertTrue(Arrays.equals(transfer2.getFile(0, 17), arrays[0]));
+		assertTrue(Arrays.equals(transfer2.getFile(20, 17), arrays[1]));
+		assertEquals(7, arrays[2].length);
+
+		transfer2.invalidate();
+		try {
+			transfer2.getFiles(offsets, lengths);
+			fail("An OperationNotSupportedException should be thrown here!");
+		} catch (OperationNotSupportedException e) {
+			// this line have to be executed
+		}
+	}
+
+	/**
+	 * Tests if the calls that ask for too many bytes or ranges, or for wrong
+	 * ranges, are refused before the file is read.
+	 */
+	public void testGetFilesLimits() throws Exception {
+		try {
+			transfer2.getFiles(new long[] { 0, 0 }, new int[] { TransferPipe.MAX_REQUEST_SIZE, 1 });
+			fail("A RemoteException should be thrown here!");
+		} catch (RemoteException e) {
+			// this line have to be executed
+		}
+		try {
+			transfer2.getFiles(new long[ TransferPipe.MAX_RANGES + 1 ], new int[ TransferPipe.MAX_RANGES + 1 ]);
+			fail("A RemoteException should be thrown here!");
+		} catch (RemoteException e) {
+			// this line have to be executed
+		}
+		try {
+			transfer2.getFiles(new long[] { 0 }, new int[] { 1, 1 });
+			fail("A RemoteException should be thrown here!");
+		} catch (RemoteException e) {
+			// this line have to be executed
+		}
+		try {
+			transfer2.getFiles(new long[] { 0 }, new int[] { -1 });
+			fail("A RemoteException should be thrown here!");
+		} catch (RemoteException e) {
+			// this line have to be executed
+		}
+		try {
+			transfer2.getFile(0, TransferPipe.MAX_REQUEST_SIZE + 1L);
+			fail("A RemoteException should be thrown here!");
+		} catch (RemoteException e) {
+			// this line have to be executed
+		}
+		assertEquals(TransferPipe.MAX_RANGES, transfer2.getFiles(new long[ TransferPipe.MAX_RANGES ], new int[ TransferPipe.MAX_RANGES ]).length);
+	}
+
+	public void testGetFileAtEndOfFile() throws Exception {
+		long size = transfer2.getSize();
+
+		assertEquals(17, transfer2.getFile(size - 17, 17).length);
+		assertEquals(7, transfer2.getFile(size - 7, 17).length);
+		assertEquals(0, transfer2.getFile(size, 17).length);
+	}
+
     public void testEquals() throws RemoteException {
     	assertFalse(transfer1.equals(transfer2));
     	
@@ -4,10 +4,14 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.rmi.RemoteException;
+import java.util.BitSet;
 import java.util.LinkedList;
 import java.util.Observable;
 
+import org.ourgrid.yal.Logger;
+
 import synapse.client.ClientConfig;
+import synapse.common.ContentHash;
 import synapse.common.TransferPipe;
 
 /**
@@ -17,6 +21,12 @@ import synapse.common.TransferPipe;
  */
 public abstract class AbstractDownload extends Observable implements Serializable {
 
+    /**
+     * The version of the class in the downloads.dat of the old clients, which
+     * is still read by the <code>DownloadManager</code>.
+     */
+    private static final long serialVersionUID = 3422237415930639341L;
+
     public static final int DOWNLOADING = 0,
 						    PAUSED = 1,
 						    COMPLETED = 2,
@@ -31,10 +41,20 @@ public abstract class AbstractDownload extends Observable implements Serializabl
 
     protected String hash;
 
+    /**
+     * The hash in its compact form, created when it's first asked.
+     */
+    private transient ContentHash contentHash;
+
     private int status;
 
     protected transient LinkedList transfersList;
 
+    /**
+     * The writer kept open while the download runs.
+     */
+    private transient DownloadWriter writer;
+
     /**
      * Constructs a <code>AbstractDownload</code> object
      * @param transfer
@@ -70,6 +90,33 @@ public abstract class AbstractDownload extends Observable implements Serializabl
         }
     }
 
+    /**
+     * Constructs a <code>AbstractDownload</code> of a file already being downloaded,
+     * without sources.
+     * @param hash The file hash.
+     * @param file The file being downloaded.
+     * @param size The file size.
+     */
+    protected AbstractDownload(String hash, File file, long size) {
+
+        prepareInstance();
+
+        this.size = size;
+
+        this.hash = hash;
+
+        this.file = file;
+
+        //o arquivo apagado enquanto o cliente estava parado eh criado de novo
+        if(!file.exists()){
+            try {
+                file.createNewFile();
+            } catch (IOException e) {
+                cancel();
+            }
+        }
+    }
+
     /**
      * Return the current download status value.
      *  
@@ -170,6 +217,17 @@ public abstract class AbstractDownload extends Observable implements Serializabl
         return this.hash;
     }
 
+    /**
+     * Returns download's Hash, to be compared and used as a map key.
+     * @return Hash.
+     */
+    public ContentHash getContentHash() {
+        if (this.contentHash == null) {
+            this.contentHash = ContentHash.valueOf(this.hash);
+        }
+        return this.contentHash;
+    }
+
     /**
      * Returns the Download's File.
      * @return The Download's File.
@@ -178,6 +236,59 @@ public abstract class AbstractDownload extends Observable implements Serializabl
         return this.file;
     }
 
+    /**
+     * Returns the pieces of the file that were written. It is used to keep a
+     * Download read from the downloads.dat of the old versions in the journal.
+     * @param pieceSize The piece size.
+     * @return The pieces written.
+     */
+    protected BitSet getWrittenPieces(int pieceSize) {
+        return new BitSet();
+    }
+
+    /**
+     * Sets the pieces that are entirely inside a range of bytes written.
+     * @param pieces The pieces written.
+     * @param start The first byte of the range.
+     * @param end The byte after the range.
+     * @param pieceSize The piece size.
+     */
+    protected void setWrittenPieces(BitSet pieces, long start, long end, int pieceSize) {
+        for (long piece = (start + pieceSize - 1) / pieceSize; piece * pieceSize < size && Math.min((piece + 1) * pieceSize, size) <= end; piece++) {
+            pieces.set((int) piece);
+        }
+    }
+
+    /**
+     * Returns the writer of the Download's File, opening it if necessary.
+     * @return The writer.
+     * @throws IOException If the file could not be opened or the Download was canceled.
+     */
+    protected synchronized DownloadWriter getWriter() throws IOException {
+        //o arquivo de um download cancelado nao pode ser recriado
+        if (getStatus() == CANCELED) {
+            throw new IOException("The Download was canceled.");
+        }
+        if (writer == null) {
+            writer = new DownloadWriter(getFile(), ClientConfig.getDownloadSync());
+        }
+        return writer;
+    }
+
+    /**
+     * Closes the writer of the Download's File, if it is open.
+     */
+    protected synchronized void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                Logger.getInstance().exception(getClass().getName() + ".closeWriter()", e);
+            }
+            writer = null;
+        }
+    }
+
     /**
      * Returns the percentage of bytes downloades so far.
      * @return The percentage of bytes downloades so far. 
@@ -191,6 +302,13 @@ public abstract class AbstractDownload extends Observable implements Serializabl
      */
     public abstract long getSpeed();
 
+    /**
+     * Returns the size of the ranges currently asked to the <code>TransferPipe</code>s.
+     * 
+     * @return The current chunk size, in bytes.
+     */
+    public abstract int getChunkSize();
+
     /**
      * Changes the Download status to DOWNLOADING and call the 
      * method run
@@ -211,11 +329,19 @@ public abstract class AbstractDownload extends Observable implements Serializabl
         }
     }
 
+    /**
+     * Informs that the <code>DownloadScheduler</code> gave a slot to this
+     * Download, which asked one and was waiting in the queue.
+     */
+    protected void scheduled() {
+    }
+
     /**
      * Changes the Download status to CANCELED.
      */
     public void cancel() {
         setStatus(CANCELED);
+        closeWriter();
         getFile().delete();
         setChanged();
         notifyObservers();
@@ -226,6 +352,7 @@ public abstract class AbstractDownload extends Observable implements Serializabl
      */
     public void pause(){
         setStatus(PAUSED);
+        closeWriter();
 
         setChanged();
         notifyObservers();
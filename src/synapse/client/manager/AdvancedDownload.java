@@ -1,10 +1,9 @@
 package synapse.client.manager;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.io.Serializable;
 import java.rmi.RemoteException;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -17,12 +16,19 @@ import synapse.common.TransferPipe;
 
 /**
  * This is a download heuristic that transfer a file using too many <code>TransferPipe</code>s.
+ * The parts of the file are downloaded in the pool of the <code>DownloadScheduler</code>,
+ * while the Download holds one of its slots.
  * 
  * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
  * @author <p>Thiago Emmanuel, thiago.manel@gmail.com</p>
  * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
  */
-public class AdvancedDownload extends AbstractDownload implements Runnable, Serializable {
+public class AdvancedDownload extends AbstractDownload implements Serializable {
+
+    /**
+     * The version of the class in the downloads.dat of the old clients.
+     */
+    private static final long serialVersionUID = 3849370813243866053L;
 
     private final int PARTS = 4;
 
@@ -30,13 +36,14 @@ public class AdvancedDownload extends AbstractDownload implements Runnable, Seri
     
     private transient Set deallocatedPipes;
     
-    private DownloadProcessor downloadProcessor;
-    
-    private transient RandomAccessFile output;
-    
     private transient Logger logger;
 
     private List downloadActions;
+
+    /**
+     * The number of parts running in the <code>DownloadScheduler</code>.
+     */
+    private transient int running;
     
     private int downloaded;
 
@@ -52,20 +59,10 @@ public class AdvancedDownload extends AbstractDownload implements Runnable, Seri
 
         this.downloadActions = new LinkedList();
         this.mountDownloadActions();
-
-        //cria um arquivo de acesso aleatorio a partir do arquivo anteriormente criado
-        try {
-            output = new RandomAccessFile(file, "rw");
-        } catch (FileNotFoundException e) {
-            cancel();
-        }
-
-        new Thread(this).start();
     }
 
     protected void prepareInstance() {
         super.prepareInstance();
-        this.downloadProcessor = new DownloadProcessor();
        
         this.logger = Logger.getInstance();
     }
@@ -80,27 +77,6 @@ public class AdvancedDownload extends AbstractDownload implements Runnable, Seri
         this.downloadActions.add(new DownloadAction(lastSize, 3 * partSize));
     }
 
-    /* (non-Javadoc)
-     * @see java.lang.Runnable#run()
-     */
-    public void run() {
-
-        while (true) {
-            downloadProcessor.waitConditions();
-
-            if (getStatus() == COMPLETED) break;
-
-            DownloadAction da = this.getFirstDeallocatedDownloadAction();
-            if (da == null) continue;
-            TransferPipe pipe = (TransferPipe) deallocatedPipes.iterator().next();
-            this.allocatePipe(pipe);
-            da.setTransferPipe(pipe);
-            da.start();
-
-        }
-//System.err.println("(Thread Principal acabou)");
-    }
-
     private void allocatePipe(TransferPipe pipe) {
         if (this.deallocatedPipes.remove(pipe)) {
             this.allocatedPipes.add(pipe);
@@ -108,41 +84,88 @@ public class AdvancedDownload extends AbstractDownload implements Runnable, Seri
     }
 
     private void deallocatePipe(TransferPipe pipe) {
-        if (this.allocatedPipes.remove(pipe)) {
-            this.deallocatedPipes.add(pipe);
+        synchronized (downloadActions) {
+            if (this.allocatedPipes.remove(pipe)) {
+                this.deallocatedPipes.add(pipe);
+            }
         }
     }
 
-    private DownloadAction getFirstDeallocatedDownloadAction() {
-        if (downloadActions != null) {
-	        Iterator it = this.downloadActions.iterator();
-	        
-	        while (it.hasNext()) {
-	            DownloadAction da = (DownloadAction) it.next();
-	            if (! da.isBusy() ) {
-	                return da; 
-	            }
-	        }
+    /**
+     * Gives the deallocated pipes to the parts without one and runs the parts in the
+     * pool of the <code>DownloadScheduler</code>, up to its maximum number of sources.
+     * The download holds a slot of the scheduler while it has parts running; without
+     * one, it waits in the queue.
+     */
+    private void download () {
+        DownloadScheduler downloads = DownloadScheduler.getInstance();
+
+        synchronized (downloadActions) {
+            if (running == 0 && (getStatus() != DOWNLOADING || !downloads.request(this))) {
+                return;
+            }
+            Iterator it = downloadActions.iterator();
+            while (it.hasNext() && running < downloads.getMaxSources()) {
+                DownloadAction da = (DownloadAction) it.next();
+                if (da.isRunning() || da.isDone()) {
+                    continue;
+                }
+                if (!da.isBusy()) {
+                    if (deallocatedPipes.isEmpty()) {
+                        continue;
+                    }
+                    TransferPipe pipe = (TransferPipe) deallocatedPipes.iterator().next();
+                    this.allocatePipe(pipe);
+                    da.setTransferPipe(pipe);
+                }
+                da.setRunning(true);
+                running++;
+                downloads.execute(da);
+            }
+            if (running == 0) {
+                downloads.release(this);
+            }
         }
-        return null;
     }
 
-    private void download () {
-        Iterator it = downloadActions.iterator();
+    /**
+     * Informs that a part stopped, giving its pipe to the other parts.
+     * 
+     * @param da The part.
+     */
+    private void actionStopped(DownloadAction da) {
+        synchronized (downloadActions) {
+            da.setRunning(false);
+            running--;
+        }
+        download();
+    }
 
-        while (it.hasNext()) {
-            DownloadAction da = (DownloadAction)it.next();
-            if (da.isBusy()) {
-                da.start();
+    /**
+     * Takes the download out of the scheduler queue. The slot of an active
+     * download is freed when its last part stops.
+     */
+    private void leaveQueue() {
+        synchronized (downloadActions) {
+            if (running == 0) {
+                DownloadScheduler.getInstance().release(this);
             }
         }
     }
 
+    /* (non-Javadoc)
+     * @see synapse.client.manager.AbstractDownload#scheduled()
+     */
+    protected void scheduled() {
+        download();
+    }
+
     /* (non-Javadoc)
      * @see synapse.client.manager.AbstractDownload#pause()
      */
     public void pause() {
         super.pause();
+        leaveQueue();
 
         logger.info(getClass().getName() + ".pause()", "The Download's status was changed to PAUSED.");
     }
@@ -157,7 +180,6 @@ public class AdvancedDownload extends AbstractDownload implements Runnable, Seri
 
         if (getStatus() == DOWNLOADING) {
             download();
-            this.downloadProcessor.notice();
         }
     }
 
@@ -166,6 +188,7 @@ public class AdvancedDownload extends AbstractDownload implements Runnable, Seri
      */
     public void cancel (){
         super.cancel();
+        leaveQueue();
 
         logger.info(getClass().getName() + ".cancel()", "The Download's status was changed to CANCELED.");
     }
@@ -182,7 +205,35 @@ public class AdvancedDownload extends AbstractDownload implements Runnable, Seri
      * @see synapse.client.manager.AbstractDownload#getSpeed()
      */
     public long getSpeed() {
-        return 0;
+        if (getStatus() != DOWNLOADING) {
+            return 0;
+        }
+        long speed = 0;
+        Iterator it = this.downloadActions.iterator();
+        while (it.hasNext()) {
+            DownloadAction da = (DownloadAction) it.next();
+            if (da.isBusy()) {
+                speed += da.getChunkSizeController().getSpeed();
+            }
+        }
+        return speed;
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.client.manager.AbstractDownload#getChunkSize()
+     */
+    public int getChunkSize() {
+        long total = 0;
+        int busy = 0;
+        Iterator it = this.downloadActions.iterator();
+        while (it.hasNext()) {
+            DownloadAction da = (DownloadAction) it.next();
+            if (da.isBusy()) {
+                total += da.getChunkSizeController().getChunkSize();
+                busy++;
+            }
+        }
+        return busy == 0 ? ChunkSizeController.INITIAL_CHUNK_SIZE : (int) (total / busy);
     }
 
     /* (non-Javadoc)
@@ -190,10 +241,12 @@ public class AdvancedDownload extends AbstractDownload implements Runnable, Seri
      */
     public boolean addTransferPipe(TransferPipe pipe) {
         if (super.addTransferPipe(pipe)) {
-            this.deallocatedPipes.add(pipe);
+            synchronized (downloadActions) {
+                this.deallocatedPipes.add(pipe);
+            }
             
-            if (this.allocatedPipes.size() < PARTS) {
-                this.downloadProcessor.notice();
+            if (getStatus() == DOWNLOADING && this.getNumberOfAllocatedPipes() < PARTS) {
+                download();
             }
             return true;
         }
@@ -206,8 +259,10 @@ public class AdvancedDownload extends AbstractDownload implements Runnable, Seri
     protected void removeTransferPipe(TransferPipe pipe) {
         super.removeTransferPipe(pipe);
         
-        this.allocatedPipes.remove(pipe);
-        this.deallocatedPipes.remove(pipe);
+        synchronized (downloadActions) {
+            this.allocatedPipes.remove(pipe);
+            this.deallocatedPipes.remove(pipe);
+        }
     }
 
     /**
@@ -234,41 +289,49 @@ public class AdvancedDownload extends AbstractDownload implements Runnable, Seri
      * @param array The byte array to be written.
      * @param position Start offset to write the array.
      */
-    private synchronized boolean writeOnDisk(byte[] array, long position) {
+    private boolean writeOnDisk(byte[] array, long position) {
         try {
-            output = new RandomAccessFile(getFile(), "rw");
-            output.seek(position);
-	        output.write(array);
-	        output.close();
+            //as partes escrevem ao mesmo tempo no canal aberto do download
+            getWriter().write(array, position);
 	    } catch (IOException e) {
-	        cancel();
+	        //o canal eh fechado quando o download eh pausado
+	        if (getStatus() == DOWNLOADING) {
+	            cancel();
+	        }
 	        return false;
         }
-	    this.downloaded += array.length;
+	    addDownloaded(array.length);
+	    return true;
+    }
+
+    /**
+     * Adds the written bytes to the downloaded size, completing the download.
+     * 
+     * @param length The number of bytes.
+     */
+    private synchronized void addDownloaded(int length) {
+	    this.downloaded += length;
 	    if (downloaded == size) {
 	        setStatus(COMPLETED);
+	        closeWriter();
 	        logger.info(getClass().getName() + ".writeOnDisk()", "The download of " + getFileName() + " finished.");
 	    }
-	    return true;
     }
 
-    private class DownloadProcessor {
-
-        public synchronized void waitConditions() {
-            try {
-	            while (getStatus() != DOWNLOADING || (allocatedPipes.size() == PARTS || allocatedPipes.size() == transfersList.size())) {
-//System.err.println("(Main Thread esperando)");
-	                wait();
-//System.err.println("(Main Thread acordou)");
-	            }
-            } catch (InterruptedException e) {
-                System.err.println("There is something wrong!");
+    /* (non-Javadoc)
+     * @see synapse.client.manager.AbstractDownload#getWrittenPieces(int)
+     */
+    protected BitSet getWrittenPieces(int pieceSize) {
+        BitSet pieces = new BitSet();
+        synchronized (downloadActions) {
+            Iterator it = downloadActions.iterator();
+            while (it.hasNext()) {
+                DownloadAction da = (DownloadAction) it.next();
+                //cada parte escreve a partir do seu inicio
+                setWrittenPieces(pieces, da.offset, da.offset + da.downloaded, pieceSize);
             }
         }
-
-        public synchronized void notice() {
-            notify();
-        }
+        return pieces;
     }
 
     /**
@@ -278,13 +341,11 @@ public class AdvancedDownload extends AbstractDownload implements Runnable, Seri
      * @author <p>Thiago Emmanuel, thiago.manel@gmail.com</p>
      * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
      */
-    private class DownloadAction extends Thread implements Serializable {
-        
-        private byte[] array;
+    private class DownloadAction implements Runnable, Serializable {
         
         private transient TransferPipe pipe;
         
-        private int downloaded;
+        private long downloaded;
 
         private long size;
         
@@ -292,9 +353,11 @@ public class AdvancedDownload extends AbstractDownload implements Runnable, Seri
         
         private transient boolean busy;
 
-        private final int BUFFER_SIZE = 32 * 1024;
+        private transient ChunkSizeController chunks;
         
         private boolean actionTransferCondition;
+
+        private transient boolean running;
         
         /**
          * Creates a new DownloadAction.
@@ -307,7 +370,6 @@ public class AdvancedDownload extends AbstractDownload implements Runnable, Seri
 
             this.size = size;
             this.offset = offset;
-            this.array = new byte[ BUFFER_SIZE ];
             actionTransferCondition = true;
         }
 
@@ -322,6 +384,33 @@ public class AdvancedDownload extends AbstractDownload implements Runnable, Seri
             return this.busy;
         }
 
+        /**
+         * Informs if all bytes of this part were downloaded.
+         * 
+         * @return true if the part is done, false otherwise.
+         */
+        public boolean isDone() {
+            return this.downloaded == this.size;
+        }
+
+        /**
+         * Informs if this action is running in the <code>DownloadScheduler</code>.
+         * 
+         * @return true if the action is running, false otherwise.
+         */
+        public boolean isRunning() {
+            return this.running;
+        }
+
+        /**
+         * Marks this action as running or stopped.
+         * 
+         * @param running true if the action is running.
+         */
+        public void setRunning(boolean running) {
+            this.running = running;
+        }
+
         /**
          * Configures the current transfer pipe.
          * 
@@ -331,12 +420,25 @@ public class AdvancedDownload extends AbstractDownload implements Runnable, Seri
         public boolean setTransferPipe(TransferPipe pipe) {
             if (this.pipe == null) {
                 this.pipe = pipe;
+                this.chunks = new ChunkSizeController(PipelinedFetcher.DEFAULT_RANGES);
                 this.busy = true;
                 return true;
             }
             return false;
         }
 
+        /**
+         * Returns the chunk size controller of the current pipe.
+         * 
+         * @return The controller.
+         */
+        public ChunkSizeController getChunkSizeController() {
+            if (this.chunks == null) {
+                this.chunks = new ChunkSizeController(PipelinedFetcher.DEFAULT_RANGES);
+            }
+            return this.chunks;
+        }
+
         /**
          * Sets the <code>pipe</code> to <code>null</code>.
          */
@@ -346,39 +448,68 @@ public class AdvancedDownload extends AbstractDownload implements Runnable, Seri
         }
 
         /**
-         * The thread action.
+         * The action, run in the pool of the <code>DownloadScheduler</code>.
          */
         public void run() {
+            PipelinedFetcher fetcher = new PipelinedFetcher(this.pipe, PipelinedFetcher.DEFAULT_DEPTH);
+            long requested = this.downloaded;
 
             while(busy && getStatus() == DOWNLOADING && actionTransferCondition){
 
-	            if (BUFFER_SIZE > this.size - this.downloaded) {
-	                array = new byte[(int)(this.size - this.downloaded)];
+	            if (this.downloaded == this.size) {
+	                this.actionTransferCondition = false;
+	                break;
 	            }
 	            try{
 
-	                //recebe um array de bytes do transferPipe q esta na primeira posicao
-	                array = pipe.getFile(offset + this.downloaded, array.length);
-
-		            if(writeOnDisk(array, this.offset + this.downloaded)) {
-		                //incrementa o numero de bytes transferidos
-		                this.downloaded += array.length;
-		                
-		                if (this.downloaded == this.size) {
-		                    this.actionTransferCondition = false;
-		                    busy = true;
-		                }
-		            }
+	                //mantem ate DEFAULT_DEPTH pedidos em andamento no transferPipe
+	                while (!fetcher.isFull() && requested < this.size) {
+	                    requested = fetcher.requestRange(this.offset + requested, this.offset + this.size, getChunkSizeController().getChunkSize(), PipelinedFetcher.DEFAULT_RANGES) - this.offset;
+	                }
+
+	                //recebe os arrays de bytes do pedido mais antigo
+	                PipelinedFetcher.Batch batch = fetcher.next();
+	                getChunkSizeController().record(batch.getBytes(), batch.getElapsed());
+
+	                for (int k = 0; k < batch.size(); k++) {
+	                    byte[] array = batch.getBlock(k);
+	                    if (array.length == 0) {
+	                        throw new RemoteException("The TransferPipe returned no bytes.");
+	                    }
+
+			            if(writeOnDisk(array, batch.getOffset(k))) {
+			                //incrementa o numero de bytes transferidos
+			                this.downloaded += array.length;
+			                
+			                if (this.downloaded == this.size) {
+			                    this.actionTransferCondition = false;
+			                    busy = true;
+			                }
+			            }
+
+			            //o arquivo remoto terminou antes do esperado, os pedidos em andamento sao refeitos
+			            if (array.length < batch.getLength(k)) {
+			                fetcher.cancel();
+			                requested = this.downloaded;
+			                break;
+			            }
+	                }
 	            }
 	            catch (RemoteException e) {
 	                logger.error(getClass().getName() + ".run()", "A TransferPipe with " + getFileName() + " is invalid and will be removed.");
+	                TransferPipe invalid = this.pipe;
 	                this.removeTransferPipe();
-	                AdvancedDownload.this.removeTransferPipe(pipe);
+	                AdvancedDownload.this.removeTransferPipe(invalid);
 	                logger.error(getClass().getName() + ".run()", "The total number of transfers is " + getNumberOfTransfers());
 	            }
             }
+            fetcher.close();
 			deallocatePipe(this.pipe);
-			downloadProcessor.notice();
+			//uma parte parada deixa o pipe para as outras e pega um de novo quando voltar
+			if (!this.isDone()) {
+			    this.removeTransferPipe();
+			}
+			actionStopped(this);
         }
     }
 
@@ -389,7 +520,7 @@ public class AdvancedDownload extends AbstractDownload implements Runnable, Seri
      */
     public String toString(){
         String temp;
-        temp = "[AdvancedDownload] " + file.getName() + " " + downloaded + "/"+ size + " " + hash + "  ";
+        temp = "[AdvancedDownload] " + file.getName() + " " + downloaded + "/"+ size + " (" + getSpeed() + " KB/s, " + getChunkSize() / 1024 + " KB chunks) " + hash + "  ";
         switch (getStatus()) {
         case DOWNLOADING:
             return temp + "Downloading.";
@@ -0,0 +1,142 @@
+package synapse.client.manager;
+
+import java.io.Serializable;
+
+import synapse.common.TransferPipe;
+
+/**
+ * Chooses the size of the ranges asked to a <code>TransferPipe</code>. Each answered
+ * request is measured, and the chunk size follows the observed throughput so that a
+ * request takes about <code>TARGET_ROUND_TRIP</code> milliseconds: fast links get
+ * big chunks and slow peers get small ones.
+ *
+ * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
+ * @author <p>Thiago Emmanuel, thiago.manel@gmail.com</p>
+ */
+public class ChunkSizeController implements Serializable {
+
+    /**
+     * The smallest chunk size.
+     */
+    public static final int MIN_CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * The largest chunk size. The ranges of a request fit in the bytes that a
+     * <code>TransferPipe</code> answers in one call.
+     */
+    public static final int MAX_CHUNK_SIZE = TransferPipe.MAX_REQUEST_SIZE / PipelinedFetcher.DEFAULT_RANGES;
+
+    /**
+     * The chunk size used before any measure.
+     */
+    public static final int INITIAL_CHUNK_SIZE = 32 * 1024;
+
+    /**
+     * The desired duration of a request, in milliseconds.
+     */
+    public static final long TARGET_ROUND_TRIP = 250;
+
+    /**
+     * The weight of a new measure in the averages.
+     */
+    private static final double WEIGHT = 0.25;
+
+    private int chunkSize;
+
+    /**
+     * The number of ranges asked in each request.
+     */
+    private int ranges;
+
+    /**
+     * Average throughput, in bytes per millisecond.
+     */
+    private double throughput;
+
+    /**
+     * Average round trip, in milliseconds.
+     */
+    private double roundTrip;
+
+    /**
+     * Creates a new ChunkSizeController.
+     *
+     * @param ranges The number of ranges asked in each request.
+     */
+    public ChunkSizeController(int ranges) {
+        this.ranges = Math.max(1, ranges);
+        this.chunkSize = INITIAL_CHUNK_SIZE;
+        this.throughput = 0;
+        this.roundTrip = 0;
+    }
+
+    /**
+     * Records an answered request and adjusts the chunk size.
+     *
+     * @param bytes The number of bytes received.
+     * @param millis The time spent, in milliseconds.
+     */
+    public synchronized void record(long bytes, long millis) {
+        if (bytes <= 0) {
+            return;
+        }
+        millis = Math.max(1, millis);
+
+        if (this.throughput == 0) {
+            this.throughput = (double) bytes / millis;
+            this.roundTrip = millis;
+        }
+        else {
+            this.throughput += WEIGHT * ((double) bytes / millis - this.throughput);
+            this.roundTrip += WEIGHT * (millis - this.roundTrip);
+        }
+
+        // the size that would make a request last TARGET_ROUND_TRIP at the current speed
+        double target = this.throughput * TARGET_ROUND_TRIP / this.ranges;
+
+        // changes at most by a factor of two at each measure
+        if (target > 2 * this.chunkSize) {
+            this.chunkSize *= 2;
+        }
+        else if (target < this.chunkSize / 2 && this.roundTrip > TARGET_ROUND_TRIP) {
+            this.chunkSize /= 2;
+        }
+        this.chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, this.chunkSize));
+    }
+
+    /**
+     * Returns the current chunk size.
+     *
+     * @return The chunk size, in bytes.
+     */
+    public synchronized int getChunkSize() {
+        return this.chunkSize;
+    }
+
+    /**
+     * Returns the average throughput.
+     *
+     * @return The throughput, in KB/s.
+     */
+    public synchronized long getSpeed() {
+        return (long) (this.throughput * 1000 / 1024);
+    }
+
+    /**
+     * Returns the average round trip.
+     *
+     * @return The round trip, in milliseconds.
+     */
+    public synchronized long getRoundTrip() {
+        return (long) this.roundTrip;
+    }
+
+    /**
+     * Returns the String representation of this controller.
+     * @return The String representation of this controller.
+     */
+    public synchronized String toString() {
+        return (this.chunkSize / 1024) + " KB chunks, " + getSpeed() + " KB/s, " + getRoundTrip() + " ms";
+    }
+
+}
@@ -0,0 +1,68 @@
+package synapse.client.manager;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for ChunkSizeController.
+ *
+ * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
+ */
+public class ChunkSizeControllerTest extends TestCase {
+
+    private ChunkSizeController controller;
+
+    /*
+     * @see TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.controller = new ChunkSizeController(4);
+    }
+
+    /**
+     * Verifies the initial conditions.
+     */
+    public void testInitialConditions() {
+        assertEquals(ChunkSizeController.INITIAL_CHUNK_SIZE, this.controller.getChunkSize());
+        assertEquals(0, this.controller.getSpeed());
+    }
+
+    /**
+     * Tests if the chunk grows on a fast link, up to the maximum size.
+     */
+    public void testFastLink() {
+        // 4 chunks in 5 ms
+        for (int i = 0; i < 40; i++) {
+            int chunk = this.controller.getChunkSize();
+            this.controller.record(4L * chunk, 5);
+            assertTrue(this.controller.getChunkSize() >= chunk);
+        }
+        assertEquals(ChunkSizeController.MAX_CHUNK_SIZE, this.controller.getChunkSize());
+    }
+
+    /**
+     * Tests if the chunk shrinks on a slow link, down to the minimum size.
+     */
+    public void testSlowLink() {
+        // 4 chunks in 4 seconds
+        for (int i = 0; i < 40; i++) {
+            int chunk = this.controller.getChunkSize();
+            this.controller.record(4L * chunk, 4000);
+            assertTrue(this.controller.getChunkSize() <= chunk);
+        }
+        assertEquals(ChunkSizeController.MIN_CHUNK_SIZE, this.controller.getChunkSize());
+        assertTrue(this.controller.getRoundTrip() > ChunkSizeController.TARGET_ROUND_TRIP);
+    }
+
+    /**
+     * Tests if the chunk stays the same when the request takes the desired time.
+     */
+    public void testStableLink() {
+        int chunk = this.controller.getChunkSize();
+        for (int i = 0; i < 20; i++) {
+            this.controller.record(4L * chunk, ChunkSizeController.TARGET_ROUND_TRIP);
+        }
+        assertEquals(chunk, this.controller.getChunkSize());
+    }
+
+}
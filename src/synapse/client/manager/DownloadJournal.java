@@ -0,0 +1,547 @@
+package synapse.client.manager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.ourgrid.yal.Logger;
+
+import synapse.common.ContentHash;
+import synapse.common.PieceHashes;
+
+/**
+ * Keeps the state of the downloads on disk while they run, so a crash loses only
+ * the pieces being written. Each change is appended to the journal as a record:
+ * a download was created, a piece was written or a download was removed. When the
+ * journal is opened, the records are read in a single pass; a record cut by a crash
+ * or with a wrong checksum ends the journal and is discarded.
+ * <p>
+ * From time to time, and when it's opened or closed, the journal is compacted: the
+ * state of each download is written as a single record to a temporary file that is
+ * renamed over the journal.
+ * <p>
+ * Format: magic and version, followed by the records. Each record has the length
+ * and the CRC32 of its data, and the data: the type, the file hash and the fields
+ * of the type. A download record has the file path, the size, the piece size, the
+ * piece hashes (if any) and the bitmap of the pieces written; a piece record has
+ * the piece number.
+ *
+ * @author <p>Thiago Emmanuel, thiago.manel@gmail.com</p>
+ * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
+ */
+public class DownloadJournal {
+
+    /**
+     * The default number of records appended between two compactions.
+     */
+    public static final int DEFAULT_COMPACT_INTERVAL = 10000;
+
+    /**
+     * The first bytes of a journal.
+     */
+    private static final int MAGIC = 0x53594a4e;
+
+    /**
+     * The version of the format.
+     */
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * The records larger than this are corrupted.
+     */
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    private static final byte DOWNLOAD = 1;
+
+    private static final byte PIECE = 2;
+
+    private static final byte REMOVE = 3;
+
+    private static final int DIGEST_SIZE = 16;
+
+    private File file;
+
+    private boolean sync;
+
+    private int compactInterval;
+
+    private FileChannel channel;
+
+    /**
+     * A map, in the order the downloads were created:
+     * ContentHash x Entry
+     */
+    private LinkedHashMap entries;
+
+    /**
+     * The number of records appended since the last compaction.
+     */
+    private int appended;
+
+    private Logger logger;
+
+    /**
+     * Opens a journal with the default compaction interval. The records are
+     * forced to disk if the download sync policy is <code>SYNC_ALWAYS</code>.
+     *
+     * @param file The journal file.
+     * @param syncPolicy The sync policy of the downloads.
+     */
+    public DownloadJournal(File file, String syncPolicy) {
+        this(file, DownloadWriter.SYNC_ALWAYS.equals(syncPolicy), DEFAULT_COMPACT_INTERVAL);
+    }
+
+    /**
+     * Opens a journal and reads the state of the downloads, creating the file if
+     * it doesn't exist.
+     *
+     * @param file The journal file.
+     * @param sync If each record is forced to disk.
+     * @param compactInterval The number of records appended between two compactions.
+     */
+    public DownloadJournal(File file, boolean sync, int compactInterval) {
+        this.file = file;
+        this.sync = sync;
+        this.compactInterval = Math.max(1, compactInterval);
+        this.entries = new LinkedHashMap();
+        this.logger = Logger.getInstance();
+        this.recover();
+        this.compact();
+    }
+
+    /**
+     * Returns the downloads kept in the journal, in the order they were created.
+     *
+     * @return A list of <code>Entry</code>s.
+     */
+    public synchronized List getEntries() {
+        List list = new ArrayList();
+        Iterator it = this.entries.values().iterator();
+        while (it.hasNext()) {
+            list.add(((Entry) it.next()).copy());
+        }
+        return list;
+    }
+
+    /**
+     * Returns the number of downloads kept in the journal.
+     *
+     * @return The number of downloads.
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Records a download, replacing the one with the same hash.
+     *
+     * @param hash The file hash.
+     * @param file The file being downloaded.
+     * @param size The file size.
+     * @param pieceSize The piece size.
+     * @param hashes The piece hashes, or null.
+     * @param done The pieces already written.
+     * @return true if the record was written to the journal.
+     */
+    public synchronized boolean putDownload(ContentHash hash, File file, long size, int pieceSize, PieceHashes hashes, BitSet done) {
+        Entry entry = new Entry(hash, file.getAbsolutePath(), size, pieceSize, hashes, (BitSet) done.clone());
+        this.entries.put(hash, entry);
+        return this.append(this.encode(entry));
+    }
+
+    /**
+     * Records that a piece of a download reached the file.
+     *
+     * @param hash The file hash.
+     * @param piece The piece.
+     */
+    public synchronized void putPiece(ContentHash hash, int piece) {
+        Entry entry = (Entry) this.entries.get(hash);
+        if (entry == null || entry.done.get(piece)) {
+            return;
+        }
+        entry.done.set(piece);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(48);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(PIECE);
+            out.writeUTF(hash.toString());
+            out.writeInt(piece);
+            out.close();
+            this.append(bytes.toByteArray());
+        } catch (IOException e) {
+            this.logger.exception(getClass().getName() + ".putPiece()", e);
+        }
+    }
+
+    /**
+     * Records that a download was removed.
+     *
+     * @param hash The file hash.
+     */
+    public synchronized void remove(ContentHash hash) {
+        if (this.entries.remove(hash) == null) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(48);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(REMOVE);
+            out.writeUTF(hash.toString());
+            out.close();
+            this.append(bytes.toByteArray());
+        } catch (IOException e) {
+            this.logger.exception(getClass().getName() + ".remove()", e);
+        }
+    }
+
+    /**
+     * Rewrites the journal with one record for each download.
+     */
+    public synchronized void compact() {
+        File temp = new File(this.file.getPath() + ".tmp");
+        this.closeChannel();
+        RandomAccessFile out = null;
+        try {
+            out = new RandomAccessFile(temp, "rw");
+            out.setLength(0);
+            FileChannel tempChannel = out.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            tempChannel.write(header);
+            Iterator it = this.entries.values().iterator();
+            while (it.hasNext()) {
+                tempChannel.write(frame(this.encode((Entry) it.next())));
+            }
+            tempChannel.force(true);
+            out.close();
+            out = null;
+
+            try {
+                Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            this.appended = 0;
+        } catch (IOException e) {
+            //o journal antigo continua valido e recebe os proximos registros
+            this.logger.exception(getClass().getName() + ".compact()", e);
+            temp.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // do nothing
+                }
+            }
+        }
+    }
+
+    /**
+     * Compacts and closes the journal.
+     */
+    public synchronized void close() {
+        this.compact();
+        this.closeChannel();
+    }
+
+    /**
+     * Closes and deletes the journal.
+     */
+    public synchronized void delete() {
+        this.closeChannel();
+        this.entries.clear();
+        this.file.delete();
+    }
+
+    /**
+     * Appends a record, compacting the journal after <code>compactInterval</code> records.
+     * Returns false if the record could not be written.
+     */
+    private boolean append(byte[] data) {
+        boolean written = false;
+        try {
+            if (this.channel == null) {
+                this.channel = new RandomAccessFile(this.file, "rw").getChannel();
+                this.channel.position(this.channel.size());
+            }
+            ByteBuffer record = frame(data);
+            while (record.hasRemaining()) {
+                this.channel.write(record);
+            }
+            if (this.sync) {
+                this.channel.force(false);
+            }
+            written = true;
+        } catch (IOException e) {
+            this.logger.exception(getClass().getName() + ".append()", e);
+            this.closeChannel();
+        }
+        if (++this.appended >= this.compactInterval) {
+            this.compact();
+        }
+        return written;
+    }
+
+    private void closeChannel() {
+        if (this.channel != null) {
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                // do nothing
+            }
+            this.channel = null;
+        }
+    }
+
+    /**
+     * Puts the length and the checksum before the data of a record.
+     */
+    private static ByteBuffer frame(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        ByteBuffer record = ByteBuffer.allocate(8 + data.length);
+        record.putInt(data.length).putInt((int) crc.getValue()).put(data).flip();
+        return record;
+    }
+
+    private byte[] encode(Entry entry) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(DOWNLOAD);
+            out.writeUTF(entry.hash.toString());
+            out.writeUTF(entry.path);
+            out.writeLong(entry.size);
+            out.writeInt(entry.pieceSize);
+            out.writeBoolean(entry.hashes != null);
+            if (entry.hashes != null) {
+                out.writeInt(entry.hashes.getPieceSize());
+                out.writeInt(entry.hashes.getNumberOfPieces());
+                for (int i = 0; i < entry.hashes.getNumberOfPieces(); i++) {
+                    out.write(entry.hashes.getPieceHash(i));
+                }
+            }
+            byte[] bitmap = entry.done.toByteArray();
+            out.writeInt(bitmap.length);
+            out.write(bitmap);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // a ByteArrayOutputStream doesn't fail
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the records of the journal and cuts the records that could not be read.
+     */
+    private void recover() {
+        if (!this.file.exists()) {
+            return;
+        }
+        try {
+            //o journal compactado eh pequeno e eh lido de uma vez
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(this.file.toPath()));
+            if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC || in.getInt() != VERSION) {
+                this.logger.error(getClass().getName() + ".recover()", "Ignoring the unknown journal " + this.file + ".");
+                return;
+            }
+
+            int records = 0;
+            CRC32 crc = new CRC32();
+            while (in.remaining() >= 8) {
+                int start = in.position();
+                int size = in.getInt();
+                int checksum = in.getInt();
+                if (size < 0 || size > MAX_RECORD_SIZE || size > in.remaining()) {
+                    in.position(start);
+                    break;
+                }
+                crc.reset();
+                crc.update(in.array(), in.position(), size);
+                if ((int) crc.getValue() != checksum || !this.apply(in.array(), in.position(), size)) {
+                    in.position(start);
+                    break;
+                }
+                in.position(in.position() + size);
+                records++;
+            }
+
+            if (in.position() < in.limit()) {
+                this.logger.error(getClass().getName() + ".recover()", "Discarding " + (in.limit() - in.position()) + " bytes after the record " + records + " of " + this.file + ".");
+                RandomAccessFile out = new RandomAccessFile(this.file, "rw");
+                try {
+                    out.setLength(in.position());
+                } finally {
+                    out.close();
+                }
+            }
+            this.logger.info(getClass().getName() + ".recover()", records + " records of " + this.entries.size() + " downloads were read.");
+        } catch (IOException e) {
+            this.logger.exception(getClass().getName() + ".recover()", e);
+        }
+    }
+
+    /**
+     * Applies a record read from the journal.
+     *
+     * @return false if the record has the right checksum and wrong fields.
+     */
+    private boolean apply(byte[] bytes, int offset, int length) {
+        try {
+            this.apply(new DataInputStream(new ByteArrayInputStream(bytes, offset, length)));
+            return true;
+        } catch (IOException e) {
+            return false;
+        } catch (RuntimeException e) {
+            // a corrupted count or length
+            return false;
+        }
+    }
+
+    private void apply(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        ContentHash hash = ContentHash.valueOf(in.readUTF());
+        switch (type) {
+            case DOWNLOAD:
+                String path = in.readUTF();
+                long size = in.readLong();
+                int pieceSize = in.readInt();
+                PieceHashes hashes = null;
+                if (in.readBoolean()) {
+                    int hashesPieceSize = in.readInt();
+                    byte[][] pieces = new byte[ in.readInt() ][ DIGEST_SIZE ];
+                    for (int i = 0; i < pieces.length; i++) {
+                        in.readFully(pieces[i]);
+                    }
+                    hashes = new PieceHashes(hash.toString(), size, hashesPieceSize, pieces);
+                }
+                byte[] bitmap = new byte[ in.readInt() ];
+                in.readFully(bitmap);
+                if (pieceSize <= 0 || size < 0) {
+                    throw new IOException("The record of " + path + " is corrupted");
+                }
+                this.entries.put(hash, new Entry(hash, path, size, pieceSize, hashes, BitSet.valueOf(bitmap)));
+                break;
+            case PIECE:
+                Entry entry = (Entry) this.entries.get(hash);
+                int piece = in.readInt();
+                if (entry != null && piece >= 0) {
+                    entry.done.set(piece);
+                }
+                break;
+            case REMOVE:
+                this.entries.remove(hash);
+                break;
+            default:
+                throw new IOException("Unknown record " + type);
+        }
+    }
+
+    /**
+     * The state of a download kept in the journal.
+     *
+     * @author <p>Thiago Emmanuel, thiago.manel@gmail.com</p>
+     */
+    public static class Entry {
+
+        private ContentHash hash;
+
+        private String path;
+
+        private long size;
+
+        private int pieceSize;
+
+        private PieceHashes hashes;
+
+        private BitSet done;
+
+        private Entry(ContentHash hash, String path, long size, int pieceSize, PieceHashes hashes, BitSet done) {
+            this.hash = hash;
+            this.path = path;
+            this.size = size;
+            this.pieceSize = pieceSize;
+            this.hashes = hashes;
+            this.done = done;
+        }
+
+        private Entry copy() {
+            return new Entry(this.hash, this.path, this.size, this.pieceSize, this.hashes, (BitSet) this.done.clone());
+        }
+
+        /**
+         * Returns the file hash.
+         *
+         * @return The hash.
+         */
+        public ContentHash getHash() {
+            return this.hash;
+        }
+
+        /**
+         * Returns the file being downloaded.
+         *
+         * @return The file.
+         */
+        public File getFile() {
+            return new File(this.path);
+        }
+
+        /**
+         * Returns the file size.
+         *
+         * @return The size.
+         */
+        public long getSize() {
+            return this.size;
+        }
+
+        /**
+         * Returns the piece size.
+         *
+         * @return The piece size.
+         */
+        public int getPieceSize() {
+            return this.pieceSize;
+        }
+
+        /**
+         * Returns the piece hashes.
+         *
+         * @return The hashes, or null if the sources didn't have them.
+         */
+        public PieceHashes getPieceHashes() {
+            return this.hashes;
+        }
+
+        /**
+         * Returns the pieces written.
+         *
+         * @return A bit for each piece.
+         */
+        public BitSet getDonePieces() {
+            return this.done;
+        }
+    }
+
+}
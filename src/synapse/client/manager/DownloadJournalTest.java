@@ -0,0 +1,186 @@
+package synapse.client.manager;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.BitSet;
+
+import junit.framework.TestCase;
+import synapse.client.ClientConfig;
+import synapse.common.ContentHash;
+import synapse.common.PieceHashes;
+
+/**
+ * Tests for DownloadJournal.
+ *
+ * @author <p>Thiago Emmanuel, thiago.manel@gmail.com</p>
+ */
+public class DownloadJournalTest extends TestCase {
+
+    private static final ContentHash HASH1 = ContentHash.valueOf("0123456789abcdef0123456789abcdef");
+
+    private static final ContentHash HASH2 = ContentHash.valueOf("fedcba9876543210fedcba9876543210");
+
+    private File journalFile;
+
+    private File file;
+
+    /*
+     * @see TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.journalFile = new File(ClientConfig.getTestFolder() + File.separator + "downloads.journal");
+        this.journalFile.delete();
+        this.file = new File(ClientConfig.getTestFolder() + File.separator + "journaled.dat");
+    }
+
+    /*
+     * @see TestCase#tearDown()
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        this.journalFile.delete();
+    }
+
+    /**
+     * Tests if the downloads and their pieces are read by a new journal,
+     * without closing the first one.
+     */
+    public void testRecover() throws Exception {
+        DownloadJournal journal = new DownloadJournal(this.journalFile, false, 1000);
+        BitSet done = new BitSet();
+        done.set(0);
+        journal.putDownload(HASH1, this.file, 10 * 1024, 1024, null, done);
+        journal.putPiece(HASH1, 3);
+        journal.putPiece(HASH1, 7);
+        journal.putDownload(HASH2, this.file, 4 * 1024, 1024, this.createHashes(HASH2, 4), new BitSet());
+        journal.putPiece(HASH2, 2);
+
+        DownloadJournal recovered = new DownloadJournal(this.journalFile, false, 1000);
+        assertEquals(2, recovered.size());
+        DownloadJournal.Entry entry1 = (DownloadJournal.Entry) recovered.getEntries().get(0);
+        DownloadJournal.Entry entry2 = (DownloadJournal.Entry) recovered.getEntries().get(1);
+
+        assertEquals(HASH1, entry1.getHash());
+        assertEquals(this.file.getAbsoluteFile(), entry1.getFile());
+        assertEquals(10 * 1024, entry1.getSize());
+        assertEquals(1024, entry1.getPieceSize());
+        assertNull(entry1.getPieceHashes());
+        assertEquals("{0, 3, 7}", entry1.getDonePieces().toString());
+
+        assertEquals(HASH2, entry2.getHash());
+        assertEquals(4, entry2.getPieceHashes().getNumberOfPieces());
+        assertEquals(HASH2.toString(), entry2.getPieceHashes().getFileHash());
+        assertTrue(entry2.getPieceHashes().matches(1, this.createHashes(HASH2, 4).getPieceHash(1)));
+        assertEquals("{2}", entry2.getDonePieces().toString());
+    }
+
+    /**
+     * Tests if the removed downloads are not read again.
+     */
+    public void testRemove() throws Exception {
+        DownloadJournal journal = new DownloadJournal(this.journalFile, false, 1000);
+        journal.putDownload(HASH1, this.file, 1024, 1024, null, new BitSet());
+        journal.putDownload(HASH2, this.file, 1024, 1024, null, new BitSet());
+        journal.remove(HASH1);
+        journal.putPiece(HASH1, 0);
+        journal.close();
+
+        DownloadJournal recovered = new DownloadJournal(this.journalFile, false, 1000);
+        assertEquals(1, recovered.size());
+        assertEquals(HASH2, ((DownloadJournal.Entry) recovered.getEntries().get(0)).getHash());
+    }
+
+    /**
+     * Tests if a record cut by a crash is discarded, and the records before it are kept.
+     */
+    public void testTornRecord() throws Exception {
+        DownloadJournal journal = new DownloadJournal(this.journalFile, false, 1000);
+        journal.putDownload(HASH1, this.file, 10 * 1024, 1024, null, new BitSet());
+        journal.putPiece(HASH1, 1);
+        long length = this.journalFile.length();
+        journal.putPiece(HASH1, 2);
+
+        //o ultimo registro foi escrito pela metade
+        this.truncate(this.journalFile.length() - 3);
+
+        DownloadJournal recovered = new DownloadJournal(this.journalFile, false, 1000);
+        assertEquals("{1}", ((DownloadJournal.Entry) recovered.getEntries().get(0)).getDonePieces().toString());
+        assertTrue(this.journalFile.length() <= length);
+
+        //o journal continua recebendo registros depois da recuperacao
+        recovered.putPiece(HASH1, 5);
+        DownloadJournal again = new DownloadJournal(this.journalFile, false, 1000);
+        assertEquals("{1, 5}", ((DownloadJournal.Entry) again.getEntries().get(0)).getDonePieces().toString());
+    }
+
+    /**
+     * Tests if a record with a wrong checksum ends the journal.
+     */
+    public void testCorruptRecord() throws Exception {
+        DownloadJournal journal = new DownloadJournal(this.journalFile, false, 1000);
+        journal.putDownload(HASH1, this.file, 10 * 1024, 1024, null, new BitSet());
+        journal.putPiece(HASH1, 1);
+        journal.putPiece(HASH1, 2);
+        journal.putPiece(HASH1, 3);
+
+        //um byte no meio do penultimo registro foi trocado
+        RandomAccessFile raf = new RandomAccessFile(this.journalFile, "rw");
+        long position = raf.length() - 50;
+        raf.seek(position);
+        int value = raf.read();
+        raf.seek(position);
+        raf.write(value ^ 0xff);
+        raf.close();
+
+        DownloadJournal recovered = new DownloadJournal(this.journalFile, false, 1000);
+        assertEquals("{1}", ((DownloadJournal.Entry) recovered.getEntries().get(0)).getDonePieces().toString());
+    }
+
+    /**
+     * Tests if the journal is compacted after some records.
+     */
+    public void testCompact() throws Exception {
+        DownloadJournal journal = new DownloadJournal(this.journalFile, false, 100);
+        journal.putDownload(HASH1, this.file, 10000L * 1024, 1024, null, new BitSet());
+        for (int piece = 0; piece < 10000; piece++) {
+            journal.putPiece(HASH1, piece);
+        }
+        //cada registro de peca tem mais de 40 bytes, o bitmap tem 1250
+        assertTrue(this.journalFile.length() < 100 * 50 + 2000);
+        assertFalse(new File(this.journalFile.getPath() + ".tmp").exists());
+
+        DownloadJournal recovered = new DownloadJournal(this.journalFile, false, 100);
+        assertEquals(10000, ((DownloadJournal.Entry) recovered.getEntries().get(0)).getDonePieces().cardinality());
+    }
+
+    /**
+     * Tests if an unknown file is ignored.
+     */
+    public void testUnknownFile() throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(this.journalFile, "rw");
+        raf.writeBytes("not a journal");
+        raf.close();
+
+        DownloadJournal journal = new DownloadJournal(this.journalFile, false, 1000);
+        assertEquals(0, journal.size());
+        journal.putDownload(HASH1, this.file, 1024, 1024, null, new BitSet());
+        assertEquals(1, new DownloadJournal(this.journalFile, false, 1000).size());
+    }
+
+    private void truncate(long length) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(this.journalFile, "rw");
+        raf.setLength(length);
+        raf.close();
+    }
+
+    private PieceHashes createHashes(ContentHash hash, int count) {
+        byte[][] pieces = new byte[ count ][ 16 ];
+        for (int i = 0; i < count; i++) {
+            pieces[i][0] = (byte) i;
+            pieces[i][15] = (byte) (i * 7);
+        }
+        return new PieceHashes(hash.toString(), count * 1024L, 1024, pieces);
+    }
+
+}
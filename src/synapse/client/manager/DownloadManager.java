@@ -3,27 +3,29 @@ package synapse.client.manager;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.ourgrid.yal.Logger;
 
 import synapse.client.ClientConfig;
 import synapse.client.InvalidTransferPipeException;
+import synapse.common.ContentHash;
 import synapse.common.TransferPipe;
 
 /**
  * A <code>DownloadManager</code> controls and manages <code>Download</code> instances.
  * It has as function:
- *  -manage persistence
+ *  -manage persistence, in a <code>DownloadJournal</code> kept up to date while the downloads run
  *  -create instances of  <code>Download</code>
  *  -to provide information about Downloads
  *  -to provide a way to control Download  
@@ -34,19 +36,47 @@ import synapse.common.TransferPipe;
 
 public class DownloadManager implements Observer {
 		
+	/**
+	 * The downloads, in the order they were created. Copied on each change,
+	 * so it's walked without locking.
+	 */
 	private List downloadsArray;
+	
+	/**
+	 * A map:
+	 * ContentHash x AbstractDownload
+	 */
+	private ConcurrentHashMap downloadsByHash;
+	
+	/**
+	 * The file where the old versions saved the downloads, read once.
+	 */
 	private final String FILE_NAME = "downloads.dat";
+	private final String JOURNAL_NAME = "downloads.journal";
 	private static DownloadManager uniqueInstance;
 	private Logger logger;
-	private ArrayList solicitesHash;
+	
+	/**
+	 * Records the downloads and their pieces.
+	 */
+	private DownloadJournal journal;
+	
+	private boolean closed;
+	
+	/**
+	 * The hashes (ContentHash) of the files asked to the providers, mapped to the
+	 * root of their piece hashes found in the search, or to "" if it's unknown.
+	 */
+	private ConcurrentHashMap solicitesHash;
 	
 	/**
 	 * Constructs a new DownloadManager 
 	 */
 	private DownloadManager() {		
 		logger = Logger.getInstance();
-		this.downloadsArray = new ArrayList();
-		solicitesHash = new ArrayList();
+		this.downloadsArray = new CopyOnWriteArrayList();
+		this.downloadsByHash = new ConcurrentHashMap();
+		solicitesHash = new ConcurrentHashMap();
 		logger.info(getClass().getName() + ".DownloadManager()", "DownloadManager was created.");
 		inicialize();
 	}
@@ -65,10 +95,14 @@ public class DownloadManager implements Observer {
 	}
 
 	/**
-	 * This a test method
+	 * This a test method. The journal of a manager that was not closed
+	 * is discarded, so the next manager starts without downloads.
 	 *
 	 */
 	public static void reset() {
+		if (uniqueInstance != null && !uniqueInstance.closed) {
+			uniqueInstance.journal.delete();
+		}
 		uniqueInstance = null;
 	}
 
@@ -81,9 +115,33 @@ public class DownloadManager implements Observer {
 	 *  in <code>DownloadManager</code>. 
 	 * @param hash the hash associate to resource that will transfered
 	 */
-	public synchronized void addSolicitation(String hash){
-		if(!solicitesHash.contains(hash)){
-			solicitesHash.add(hash);
+	public void addSolicitation(String hash){
+		this.addSolicitation(ContentHash.valueOf(hash));
+	}
+	
+	/**
+	 * Adds a solicitation to a hash. See <code>addSolicitation(String)</code>.
+	 * @param hash the hash associate to resource that will transfered
+	 */
+	public void addSolicitation(ContentHash hash){
+		if(solicitesHash.putIfAbsent(hash, "") == null){
+			logger.info(getClass().getName() + ".addSolicitation()", "Adding a new Solicitation to hash:" +hash);
+		}
+	}
+
+	/**
+	 * Adds a solicitation to a hash, with the root of the piece hashes found in
+	 * the search. The download uses the piece hashes of a source only if they
+	 * have this root.
+	 * @param hash the hash associate to resource that will transfered
+	 * @param pieceRoot the root of the piece hashes, or null if it's unknown
+	 */
+	public void addSolicitation(String hash, String pieceRoot){
+		if (pieceRoot == null) {
+			this.addSolicitation(hash);
+			return;
+		}
+		if(solicitesHash.put(ContentHash.valueOf(hash), pieceRoot) == null){
 			logger.info(getClass().getName() + ".addSolicitation()", "Adding a new Solicitation to hash:" +hash);
 		}
 	}
@@ -92,7 +150,7 @@ public class DownloadManager implements Observer {
 	 * 
 	 * @param hash
 	 */
-	private void removeSolicitation(String hash){
+	private void removeSolicitation(ContentHash hash){
 		logger.info(getClass().getName() + ".removeSolicitation()", "Removing the Solicitation with the hash:" +hash);
 		solicitesHash.remove(hash);
 	}
@@ -103,16 +161,23 @@ public class DownloadManager implements Observer {
 	 * @return Download The <code>Download</code> especified with Hash
 	 * @throws HashDoesNotExistException Throws if doesn't exist a <code>Download</code> specified with hash.
 	 */		
-	protected synchronized AbstractDownload getSelectedDownload(String hash) throws HashDoesNotExistException   {
+	protected AbstractDownload getSelectedDownload(String hash) throws HashDoesNotExistException   {
+		return this.getSelectedDownload(ContentHash.valueOf(hash));
+	}
+
+	/**
+	 * Get the Download especified with Hash.
+	 * @param hash The file hash.
+	 * @return Download The <code>Download</code> especified with Hash
+	 * @throws HashDoesNotExistException Throws if doesn't exist a <code>Download</code> specified with hash.
+	 */		
+	protected AbstractDownload getSelectedDownload(ContentHash hash) throws HashDoesNotExistException   {
 		//possivel mudanca de visibilidade, passara a ser protected
-	    AbstractDownload auxDown;
-	    Iterator itera = this.downloadsArray.iterator();
-		while (itera.hasNext()) {
-			auxDown = (AbstractDownload)itera.next();
-			if (auxDown.getHash().equals(hash))
-				return auxDown;
+	    AbstractDownload auxDown = hash == null ? null : (AbstractDownload)this.downloadsByHash.get(hash);
+		if (auxDown == null) {
+			throw new HashDoesNotExistException(String.valueOf(hash));
 		}
-		throw new HashDoesNotExistException(hash);
+		return auxDown;
 	}
 
 	/**
@@ -120,7 +185,7 @@ public class DownloadManager implements Observer {
 	 * @param hash The hash of looked  <code>Download</code>
 	 * @return True if looked download exist, false otherwise
 	 */
-	protected synchronized boolean contains(String hash){
+	protected boolean contains(String hash){
 		
 		try {
 			this.getSelectedDownload(hash);
@@ -133,12 +198,26 @@ public class DownloadManager implements Observer {
 	}
 	
 	/**
-	 * Adds a new <code>Download</code> to this DownloadManager  
+	 * Adds a new <code>Download</code> to this DownloadManager and records it in the journal  
 	 * @param download The <code>Download</code> to addition  
+	 * @return false if the download could not be recorded in the journal
 	 */
-	private void addDownload (AbstractDownload download){
+	private boolean addDownload (SwarmDownload download){
 		download.addObserver(this);
+		this.downloadsByHash.put(download.getContentHash(), download);
 		this.downloadsArray.add(download);
+		return download.setJournal(this.journal);
+	}
+
+	/**
+	 * Removes a finished <code>Download</code> from this DownloadManager
+	 * @param download The <code>Download</code> to remove
+	 */
+	private void removeDownload (AbstractDownload download){
+		if (this.downloadsByHash.remove(download.getContentHash(), download)) {
+			this.journal.remove(download.getContentHash());
+		}
+		this.downloadsArray.remove(download);
 	}
 
 	/**
@@ -148,24 +227,44 @@ public class DownloadManager implements Observer {
 	 * @param transfer	 A <code>TransferPipe</code> that will be added
 	 * @throws InvalidTransferPipeException It's thrown when the <code>TransferPipe</code> throws a <code>RemoteException</code>
 	 */
-	public synchronized void addTransferPipe (TransferPipe transfer) throws InvalidTransferPipeException {
+	public void addTransferPipe (TransferPipe transfer) throws InvalidTransferPipeException {
 		logger.info(getClass().getName() + ".addTransferPipe()", "Adding a new Transfer Pipe.");
 		AbstractDownload auxDown;	
+		ContentHash hash;
 		try {
-			auxDown = this.getSelectedDownload(transfer.getHash());
-			auxDown.addTransferPipe(transfer);
-            logger.info(getClass().getName() + ".addTransferPipe()", "The TransferPipe was added. This Download, now, has " + auxDown.getNumberOfTransfers() + " Transfers.");
-		} catch (HashDoesNotExistException e1) {
+			hash = transfer.getContentHash();
+		} catch (RemoteException e) {
+		    throw new InvalidTransferPipeException();
+		}
+		if (hash == null) {
+		    throw new InvalidTransferPipeException();
+		}
+		auxDown = (AbstractDownload)this.downloadsByHash.get(hash);
+		if (auxDown == null) {
+			String root = (String) solicitesHash.get(hash);
+			if (root == null) {
+				return;
+			}
+			//o download eh criado sem lock, pois le as hashes da fonte e verifica o arquivo que ja existia
+			SwarmDownload created;
 			try {
-				if(solicitesHash.contains(transfer.getHash())){
-					this.addDownload(new SimpleDownload(transfer));	
-				}
+				created = new SwarmDownload(transfer, root.length() == 0 ? null : root);
 			} catch (RemoteException e) {
 			    throw new InvalidTransferPipeException();
 			}
-		} catch (RemoteException e) {
-		    throw new InvalidTransferPipeException();
+			created.addObserver(this);
+			auxDown = (AbstractDownload)this.downloadsByHash.putIfAbsent(hash, created);
+			if (auxDown == null) {
+				this.downloadsArray.add(created);
+				created.setJournal(this.journal);
+				return;
+			}
+			//outro pipe do mesmo arquivo criou o download antes: o criado aqui, que
+			//ainda nao abriu o arquivo, eh descartado e o pipe vai para o outro
+			created.deleteObserver(this);
 		}
+		auxDown.addTransferPipe(transfer);
+        logger.info(getClass().getName() + ".addTransferPipe()", "The TransferPipe was added. This Download, now, has " + auxDown.getNumberOfTransfers() + " Transfers.");
 	}
 	
 	/**
@@ -173,7 +272,7 @@ public class DownloadManager implements Observer {
 	 * @param hash The hash of <code>Download</code> that it will be resumed
 	 * @throws HashDoesNotExistException Throws if doesn't a <code>Download</code> with this hash 
 	 */
-	public synchronized void resumeDownload(String hash) throws HashDoesNotExistException{
+	public void resumeDownload(String hash) throws HashDoesNotExistException{
 		logger.info(getClass().getName() + ".resumeDownload()", "Resuming the Download: "+ hash +".");
 		this.getSelectedDownload(hash).resume();
 	}
@@ -183,9 +282,9 @@ public class DownloadManager implements Observer {
 	 * @param hash The hash of <code>Download</code> that it will be canceled.
 	 * @throws HashDoesNotExistException Throws if doesn't a <code>Download</code> with this hash.
 	 */
-	public synchronized void cancelDownload(String hash) throws HashDoesNotExistException {
+	public void cancelDownload(String hash) throws HashDoesNotExistException {
 		logger.info(getClass().getName() + ".cancelDownload()", "Changing the Download, "+ hash +" status to CANCEL.");
-		this.solicitesHash.remove(hash);
+		this.solicitesHash.remove(ContentHash.valueOf(hash));
 		this.getSelectedDownload(hash).cancel();
 	}
 		
@@ -194,17 +293,30 @@ public class DownloadManager implements Observer {
 	 * @param hash The hash of <code>Download</code> that it will be paused 
 	 * @throws HashDoesNotExistException Throws if doesn't exist a <code>Download</code> with this hash.
 	 */
-	public synchronized void pauseDownload (String hash) throws HashDoesNotExistException {
+	public void pauseDownload (String hash) throws HashDoesNotExistException {
 		logger.info(getClass().getName() + ".pauseDownload()", "Changing the Download, "+ hash +" status to PAUSED.");
 		this.getSelectedDownload(hash).pause();
 	}
 	
+	/**
+	 * Changes the priority of a download. When there are more downloads than
+	 * the <code>DownloadScheduler</code> runs, the ones with greater priority
+	 * run first.
+	 * @param hash The hash of <code>Download</code>.
+	 * @param priority The priority, <code>DownloadScheduler.DEFAULT_PRIORITY</code> by default.
+	 * @throws HashDoesNotExistException Throws if doesn't exist a <code>Download</code> with this hash.
+	 */
+	public void setPriority (String hash, int priority) throws HashDoesNotExistException {
+		logger.info(getClass().getName() + ".setPriority()", "Changing the Download, "+ hash +" priority to " + priority + ".");
+		DownloadScheduler.getInstance().setPriority(this.getSelectedDownload(hash), priority);
+	}
+	
 	/**
 	 * Print informations of DownloadManager's downloads, if don't exist a <code>Download</code>.
 	 * in this DownloadManager will be return a empty String.
 	 * @return A information about DownloadManager's downloads.
 	 */
-	public synchronized List getAllDownloads (){
+	public List getAllDownloads (){
 		return new ArrayList(this.downloadsArray);
 	}
 	
@@ -212,8 +324,8 @@ public class DownloadManager implements Observer {
 	 * Returns a number of DownloadManager's download
 	 * @return Number of DownloadManager's download
 	 */
-	public synchronized int getNumberOfDownloads(){
-		return this.getAllDownloads().size();
+	public int getNumberOfDownloads(){
+		return this.downloadsArray.size();
 	}
 
 	/**
@@ -230,7 +342,7 @@ public class DownloadManager implements Observer {
 	/**
 	 * Pause all downloads 
 	 */
-	public synchronized void pauseAll(){
+	public void pauseAll(){
 		logger.info(getClass().getName() + ".pauseAll()", "Changing all the Download's status to PAUSED.");
 	  	Iterator apontador = downloadsArray.listIterator();
 	  	while(apontador.hasNext()){
@@ -239,11 +351,31 @@ public class DownloadManager implements Observer {
 	 }
 					
 	/**
-	 * Inicialize the DownloadManager in a consistent form 
+	 * Inicialize the DownloadManager in a consistent form: the downloads
+	 * of the journal, and of the old downloads.dat, are added without sources.
 	 */
 	private void inicialize(){
 		
 		logger.info(getClass().getName() + ".inicialize()", "Looking for Downloads safeds in hd.");
+		this.journal = new DownloadJournal(new File(ClientConfig.getRootDir() + File.separator + JOURNAL_NAME), ClientConfig.getDownloadSync());
+		
+		Iterator it = this.journal.getEntries().iterator();
+		while (it.hasNext()) {
+			DownloadJournal.Entry entry = (DownloadJournal.Entry) it.next();
+			addDownload(new SwarmDownload(entry));
+			addSolicitation(entry.getHash());
+		}
+		logger.info(getClass().getName() + ".inicialize()", this.downloadsArray.size() + " Downloads were recovered from the journal.");
+		
+		this.inicializeFromSerialized();
+	}
+	
+	/**
+	 * Reads the downloads saved by the old versions in downloads.dat. Each one
+	 * becomes a <code>SwarmDownload</code> recorded in the journal, with the
+	 * pieces it had written, and the file is deleted once all of them are recorded.
+	 */
+	private void inicializeFromSerialized(){
 	  	File file = new File(ClientConfig.getRootDir() + File.separator + FILE_NAME);
 	  	ObjectInputStream input = null;
 	  	Object[] fileInput;
@@ -257,14 +389,32 @@ public class DownloadManager implements Observer {
 				fileInput = (Object[])input.readObject();
 				input.close();
 				//adiciona os objetos lidos no DownloadManager
+				boolean recorded = true;
 				for (int i = 0; i < fileInput.length; i++){
-					addDownload((AbstractDownload)fileInput[i]);
-					((AbstractDownload)fileInput[i]).prepareInstance();
-					addSolicitation(((AbstractDownload)fileInput[i]).getHash());
-					
+					AbstractDownload download = (AbstractDownload)fileInput[i];
+					if (this.downloadsByHash.containsKey(download.getContentHash())) {
+						continue;
+					}
+					download.prepareInstance();
+					SwarmDownload swarm;
+					if (download instanceof SwarmDownload) {
+						swarm = (SwarmDownload) download;
+					}
+					else {
+						//os downloads antigos continuam como SwarmDownloads, a partir das pecas ja escritas
+						BitSet written = download.getWrittenPieces(PieceScheduler.PIECE_SIZE);
+						swarm = new SwarmDownload(download.getHash(), download.getFile(), download.getSize(), PieceScheduler.PIECE_SIZE, null, written);
+					}
+					if (!addDownload(swarm)) {
+						recorded = false;
+					}
+					addSolicitation(swarm.getContentHash());
 				}
 				logger.info(getClass().getName() + ".inicialize()", fileInput.length +" Downloads added successfully.");
-				file.delete();
+				//se algum download nao foi registrado, o arquivo eh lido de novo na proxima vez
+				if (recorded) {
+					file.delete();
+				}
 			} catch (FileNotFoundException e) {
 				logger.exception(getClass().getName() + ".inicialize()", e);
 			} catch (IOException e) {
@@ -277,55 +427,23 @@ public class DownloadManager implements Observer {
 	  }
 		
 	/**
-	 * Serializes and save the DownloadManager's downloads. The downloads
-	 * will be save at only one archive. In the next instance of DownloadManager
-	 * the download will be in a consistent state.
+	 * Pauses the downloads and compacts the journal. The pieces were recorded
+	 * while they were written, so the downloads are in a consistent state in
+	 * the next instance of DownloadManager even if this method is not called.
 	 */
 	public void close(){
 		logger.info(getClass().getName() + ".close()", "Closing the DownloadManager.");
 		
 		pauseAll();
-	  	
-	  	File file = new File(ClientConfig.getRootDir() + File.separator + FILE_NAME);
-	
-	  	try {
-	  		//cria um novo arquivo.
-			file.createNewFile();
-		} catch (IOException e2) {
-			logger.exception(getClass().getName() + ".close()", e2);
-		}
 		
-		//cria o object que seja armazenado
-		Object[] fileOutput = null;
-		synchronized (downloadsArray) {
-		    fileOutput = downloadsArray.toArray();
-		}
-	  	//COMO FACO PRA NAO PRECISAR INICIALIZAR COMO NULL?
-	  	ObjectOutputStream output = null;
-	  	
-	  	try {
-	  		output = new ObjectOutputStream(new FileOutputStream(file));
-			output.writeObject(fileOutput);
-		} catch (FileNotFoundException e) {
-			logger.exception(getClass().getName() + ".close()", e);
-		} catch (IOException e) {
-			logger.exception(getClass().getName() + ".close()", e);
-		}
-	
-		finally{
-			try {
-				if(output != null)
-					output.close();
-			} catch (IOException e1) {
-				logger.exception(getClass().getName() + ".close()", e1);
-			}
-		}
+		this.journal.close();
+		this.closed = true;
 	}
 	
 	/* (non-Javadoc)
 	 * @see java.util.Observer#update(java.util.Observable, java.lang.Object)
 	 */
-	public synchronized void update(Observable o, Object arg) {
+	public void update(Observable o, Object arg) {
 		
 		AbstractDownload download = (AbstractDownload)o;
 		logger.info(getClass().getName() + ".update()", "The method was called by: "+ download.getHash());
@@ -340,18 +458,18 @@ public class DownloadManager implements Observer {
 	    	break;
 		
 	    	case AbstractDownload.COMPLETED:
-	    	    this.removeSolicitation(download.getHash());
-	    		downloadsArray.remove(download);
+	    	    this.removeSolicitation(download.getContentHash());
+	    		this.removeDownload(download);
 	    	break;
 		
 	    	case AbstractDownload.ERROR:
-	    	    this.removeSolicitation(download.getHash());
-	    		downloadsArray.remove(download);
+	    	    this.removeSolicitation(download.getContentHash());
+	    		this.removeDownload(download);
 	    		break;
 		
 	    	case AbstractDownload.CANCELED:
-	    	    this.removeSolicitation(download.getHash());
-	    		downloadsArray.remove(download);
+	    	    this.removeSolicitation(download.getContentHash());
+	    		this.removeDownload(download);
 	    	break;
 		  
 	    	case AbstractDownload.NOTRANSFERS:          
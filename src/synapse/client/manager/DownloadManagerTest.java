@@ -1,6 +1,8 @@
 package synapse.client.manager;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.rmi.RemoteException;
 
 import synapse.client.ClientConfig;
@@ -8,6 +10,7 @@ import synapse.client.TransferPipeImpl;
 import synapse.util.*;
 import junit.framework.TestCase;
 import synapse.common.FileInfo;
+import synapse.common.PieceHashes;
 import synapse.common.TransferPipe;
 
 /**
@@ -334,4 +337,177 @@ public class DownloadManagerTest extends TestCase {
 
 	}
 
+	/**
+	 * Tests if the downloads.dat written by the old clients is read and deleted.
+	 * The file has a <code>SimpleDownload</code>, the only download they saved.
+	 */
+	public void testOldDownloads() throws Exception {
+		File saved = new File(ClientConfig.getRootDir() + File.separator + "downloads.dat");
+		this.copy(new File("testFiles" + File.separator + "oldDownloads.dat"), saved);
+
+		DownloadManager.reset();
+		manager = DownloadManager.getInstance();
+
+		assertFalse(saved.exists());
+		assertEquals(1, manager.getNumberOfDownloads());
+		AbstractDownload download = manager.getSelectedDownload("aebf46b6c055787881b63e18867959cb");
+		assertTrue(download instanceof SwarmDownload);
+		assertEquals(0, download.getNumberOfTransfers());
+		assertTrue(download.getFileName().endsWith(".mpg"));
+		String path = download.getFile().getAbsolutePath();
+
+		//o download continua no journal depois que o downloads.dat foi apagado
+		manager.close();
+		DownloadManager.reset();
+		manager = DownloadManager.getInstance();
+
+		assertEquals(1, manager.getNumberOfDownloads());
+		download = manager.getSelectedDownload("aebf46b6c055787881b63e18867959cb");
+		assertEquals(path, download.getFile().getAbsolutePath());
+		manager.cancelDownload("aebf46b6c055787881b63e18867959cb");
+	}
+
+	private void copy(File from, File to) throws Exception {
+		FileInputStream input = new FileInputStream(from);
+		FileOutputStream output = new FileOutputStream(to);
+		byte[] buffer = new byte[ 4096 ];
+		int n;
+		while ((n = input.read(buffer)) >= 0) {
+			output.write(buffer, 0, n);
+		}
+		input.close();
+		output.close();
+	}
+
+	/**
+	 * Tests if many pipes of the same file, added at the same time, create
+	 * only one download.
+	 */
+	public void testConcurrentAddTransferPipe() throws Exception {
+		manager.addSolicitation(transfer1.getHash());
+		Thread[] threads = new Thread[ 8 ];
+		final Exception[] failure = new Exception[ 1 ];
+		for (int i = 0; i < threads.length; i++) {
+			final TransferPipe pipe = i % 2 == 0 ? transfer1 : transfer3;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						manager.addTransferPipe(pipe);
+					} catch (Exception e) {
+						failure[0] = e;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+		assertNull(failure[0]);
+		assertEquals(1, manager.getNumberOfDownloads());
+		assertNotNull(manager.getSelectedDownload(transfer1.getHash()));
+		manager.cancelDownload(transfer1.getHash());
+		assertEquals(0, manager.getNumberOfDownloads());
+	}
+
+	/**
+	 * Tests if the lookups and the pipe registration don't wait for a thread
+	 * that holds the manager, like an observer callback used to do.
+	 */
+	public void testAddTransferPipeWhileLocked() throws Exception {
+		manager.addSolicitation(transfer1.getHash());
+		manager.addSolicitation(transfer5.getHash());
+		manager.addTransferPipe(transfer1);
+		Thread adder = new Thread() {
+			public void run() {
+				try {
+					manager.addTransferPipe(transfer5);
+					manager.addTransferPipe(transfer3);
+					manager.getSelectedDownload(transfer1.getHash());
+				} catch (Exception e) {
+					// verificado abaixo
+				}
+			}
+		};
+		synchronized (manager) {
+			adder.start();
+			adder.join(5000);
+			assertFalse(adder.isAlive());
+		}
+		assertTrue(manager.contains(transfer5.getHash()));
+		assertEquals(2, manager.getSelectedDownload(transfer1.getHash()).getNumberOfTransfers());
+		manager.cancelDownload(transfer1.getHash());
+		manager.cancelDownload(transfer5.getHash());
+	}
+
+	/**
+	 * Tests if a download whose source is slow to answer doesn't stop the
+	 * pipes of other files from being added.
+	 */
+	public void testSlowDownloadCreation() throws Exception {
+		final Object gate = new Object();
+		final boolean[] state = new boolean[ 2 ];
+		final TransferPipe slow = new TransferPipeImpl(resource1) {
+			public PieceHashes getPieceHashes() throws RemoteException {
+				synchronized (gate) {
+					state[0] = true;
+					gate.notifyAll();
+					while (!state[1]) {
+						try {
+							gate.wait();
+						} catch (InterruptedException e) {
+							break;
+						}
+					}
+				}
+				return super.getPieceHashes();
+			}
+		};
+		manager.addSolicitation(transfer1.getHash(), "unknown root");
+		manager.addSolicitation(transfer5.getHash());
+		Thread adder = new Thread() {
+			public void run() {
+				try {
+					manager.addTransferPipe(slow);
+				} catch (Exception e) {
+					// verificado abaixo
+				}
+			}
+		};
+		adder.start();
+		synchronized (gate) {
+			while (!state[0]) {
+				gate.wait();
+			}
+		}
+
+		//o outro arquivo nao espera a fonte lenta
+		Thread other = new Thread() {
+			public void run() {
+				try {
+					manager.addTransferPipe(transfer5);
+				} catch (Exception e) {
+					// verificado abaixo
+				}
+			}
+		};
+		try {
+			other.start();
+			other.join(5000);
+			assertFalse(other.isAlive());
+			assertTrue(manager.contains(transfer5.getHash()));
+			assertFalse(manager.contains(transfer1.getHash()));
+		} finally {
+			synchronized (gate) {
+				state[1] = true;
+				gate.notifyAll();
+			}
+		}
+		adder.join(5000);
+		assertFalse(adder.isAlive());
+		assertTrue(manager.contains(transfer1.getHash()));
+		manager.cancelDownload(transfer1.getHash());
+		manager.cancelDownload(transfer5.getHash());
+	}
+
 }
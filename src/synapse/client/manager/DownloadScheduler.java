@@ -0,0 +1,349 @@
+package synapse.client.manager;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.ourgrid.yal.Logger;
+
+import synapse.client.ClientConfig;
+import synapse.common.WorkerThreads;
+
+/**
+ * Decides which downloads run and runs their transfers. At most <code>maxDownloads</code>
+ * downloads are active at the same time, each with at most <code>maxSources</code>
+ * sources; the other downloads wait in a queue ordered by priority and, with the same
+ * priority, by the time they asked to run. A download is active only while it has
+ * transfers running, so the paused and the queued downloads hold no threads.
+ * <p>
+ * The transfers of every download run in one bounded pool of <code>WorkerThreads</code>,
+ * in virtual threads if they were turned on. The requests that the transfers keep in
+ * flight run in a second pool, also shared by every download, because a transfer
+ * waits for its requests and must not take the thread they need. The scheduler
+ * never calls a download while it holds its own lock: a download that gets a free
+ * slot is started by a task in the pool.
+ * <p>
+ * This object follow the Singleton pattern.
+ *
+ * @author <p>Thiago Emmanuel, thiago.manel@gmail.com</p>
+ * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
+ */
+public class DownloadScheduler {
+
+    /**
+     * The priority of a download that was not given one.
+     */
+    public static final int DEFAULT_PRIORITY = 0;
+
+    private static DownloadScheduler uniqueInstance;
+
+    private int maxDownloads;
+
+    private int maxSources;
+
+    private ExecutorService executor;
+
+    /**
+     * The pool of the requests in flight of the transfers.
+     */
+    private ExecutorService requests;
+
+    /**
+     * The downloads running.
+     */
+    private Set active;
+
+    /**
+     * The downloads waiting for a slot, the next one first.
+     */
+    private TreeSet waiting;
+
+    /**
+     * A map:
+     * AbstractDownload x Ticket (its place in <code>waiting</code>)
+     */
+    private Map tickets;
+
+    /**
+     * A map:
+     * AbstractDownload x Integer (priority)
+     */
+    private Map priorities;
+
+    private long sequence;
+
+    private Logger logger;
+
+    /**
+     * Creates a new scheduler.
+     *
+     * @param maxDownloads The maximum number of downloads active at the same time.
+     * @param maxSources The maximum number of sources used by a download at the same time.
+     */
+    public DownloadScheduler(int maxDownloads, int maxSources) {
+        this.maxDownloads = Math.max(1, maxDownloads);
+        this.maxSources = Math.max(1, maxSources);
+        this.active = new HashSet();
+        this.waiting = new TreeSet(new Comparator() {
+            public int compare(Object o1, Object o2) {
+                Ticket t1 = (Ticket) o1;
+                Ticket t2 = (Ticket) o2;
+                if (t1.priority != t2.priority) {
+                    return t1.priority > t2.priority ? -1 : 1;
+                }
+                return t1.sequence < t2.sequence ? -1 : (t1.sequence == t2.sequence ? 0 : 1);
+            }
+        });
+        this.tickets = new HashMap();
+        this.priorities = new WeakHashMap();
+        this.logger = Logger.getInstance();
+
+        //as transferencias de todos os downloads ativos cabem no pool
+        int threads = this.maxDownloads * this.maxSources;
+        this.executor = WorkerThreads.newPool("DownloadScheduler", threads);
+        this.requests = WorkerThreads.newPool("DownloadScheduler requests", threads * PipelinedFetcher.DEFAULT_DEPTH);
+    }
+
+    /**
+     * Returns a instance of <code>DownloadScheduler</code>, with the limits
+     * of the <code>ClientConfig</code>.
+     *
+     * @return The instance.
+     */
+    public static synchronized DownloadScheduler getInstance() {
+        if (uniqueInstance == null) {
+            uniqueInstance = new DownloadScheduler(ClientConfig.getMaxDownloads(), ClientConfig.getMaxSources());
+        }
+        return uniqueInstance;
+    }
+
+    /**
+     * This a test method
+     */
+    public static synchronized void reset() {
+        if (uniqueInstance != null) {
+            uniqueInstance.executor.shutdown();
+            uniqueInstance.requests.shutdown();
+        }
+        uniqueInstance = null;
+    }
+
+    /**
+     * Asks a slot to a download. If there is none, the download waits in the
+     * queue and its <code>scheduled()</code> is called when it gets one.
+     *
+     * @param download The download.
+     * @return true if the download is active.
+     */
+    public boolean request(AbstractDownload download) {
+        List started;
+        synchronized (this) {
+            if (this.active.contains(download)) {
+                return true;
+            }
+            if (!this.tickets.containsKey(download)) {
+                Ticket ticket = new Ticket(download, this.getPriority(download), this.sequence++);
+                this.tickets.put(download, ticket);
+                this.waiting.add(ticket);
+            }
+            started = this.admit();
+            if (!started.remove(download)) {
+                this.logger.debug(getClass().getName() + ".request()", download.getFileName() + " is waiting for a slot: " + this);
+            }
+        }
+        this.start(started);
+        return this.isActive(download);
+    }
+
+    /**
+     * Frees the slot of a download, or takes it out of the queue, and starts the
+     * next downloads of the queue.
+     *
+     * @param download The download.
+     */
+    public void release(AbstractDownload download) {
+        List started;
+        synchronized (this) {
+            Ticket ticket = (Ticket) this.tickets.remove(download);
+            if (ticket != null) {
+                this.waiting.remove(ticket);
+            }
+            if (!this.active.remove(download) && ticket == null) {
+                return;
+            }
+            started = this.admit();
+        }
+        this.start(started);
+    }
+
+    /**
+     * Changes the priority of a download. The downloads with the greatest
+     * priority leave the queue first.
+     *
+     * @param download The download.
+     * @param priority The priority.
+     */
+    public synchronized void setPriority(AbstractDownload download, int priority) {
+        this.priorities.put(download, new Integer(priority));
+        Ticket ticket = (Ticket) this.tickets.get(download);
+        if (ticket != null) {
+            //o download continua na mesma ordem de chegada, com a nova prioridade
+            this.waiting.remove(ticket);
+            ticket.priority = priority;
+            this.waiting.add(ticket);
+        }
+    }
+
+    /**
+     * Returns the priority of a download.
+     *
+     * @param download The download.
+     * @return The priority.
+     */
+    public synchronized int getPriority(AbstractDownload download) {
+        Integer priority = (Integer) this.priorities.get(download);
+        return priority == null ? DEFAULT_PRIORITY : priority.intValue();
+    }
+
+    /**
+     * Informs if a download has a slot.
+     *
+     * @param download The download.
+     * @return true if the download is active.
+     */
+    public synchronized boolean isActive(AbstractDownload download) {
+        return this.active.contains(download);
+    }
+
+    /**
+     * Informs if a download is waiting for a slot.
+     *
+     * @param download The download.
+     * @return true if the download is in the queue.
+     */
+    public synchronized boolean isWaiting(AbstractDownload download) {
+        return this.tickets.containsKey(download);
+    }
+
+    /**
+     * Returns the number of active downloads.
+     *
+     * @return The number of downloads.
+     */
+    public synchronized int getNumberOfActiveDownloads() {
+        return this.active.size();
+    }
+
+    /**
+     * Returns the number of downloads waiting for a slot.
+     *
+     * @return The number of downloads.
+     */
+    public synchronized int getNumberOfWaitingDownloads() {
+        return this.waiting.size();
+    }
+
+    /**
+     * Returns the maximum number of active downloads.
+     *
+     * @return The number of downloads.
+     */
+    public int getMaxDownloads() {
+        return this.maxDownloads;
+    }
+
+    /**
+     * Returns the maximum number of sources used by a download at the same time.
+     *
+     * @return The number of sources.
+     */
+    public int getMaxSources() {
+        return this.maxSources;
+    }
+
+    /**
+     * Runs a transfer in the pool.
+     *
+     * @param transfer The transfer.
+     */
+    public void execute(Runnable transfer) {
+        this.executor.execute(transfer);
+    }
+
+    /**
+     * Sends a request of a transfer in the pool of the requests.
+     *
+     * @param request The request.
+     * @return The answer of the request, when it comes.
+     */
+    public Future submit(Callable request) {
+        return this.requests.submit(request);
+    }
+
+    /**
+     * Returns the String representation of this scheduler.
+     * @return The String representation of this scheduler.
+     */
+    public synchronized String toString() {
+        return this.active.size() + "/" + this.maxDownloads + " downloads active, " + this.waiting.size() + " waiting";
+    }
+
+    /**
+     * Gives the free slots to the first downloads of the queue.
+     */
+    private List admit() {
+        List started = new LinkedList();
+        while (this.active.size() < this.maxDownloads && !this.waiting.isEmpty()) {
+            Ticket ticket = (Ticket) this.waiting.first();
+            this.waiting.remove(ticket);
+            this.tickets.remove(ticket.download);
+            this.active.add(ticket.download);
+            started.add(ticket.download);
+        }
+        return started;
+    }
+
+    /**
+     * Starts the downloads that got a slot, in the pool.
+     */
+    private void start(List started) {
+        Iterator it = started.iterator();
+        while (it.hasNext()) {
+            final AbstractDownload download = (AbstractDownload) it.next();
+            this.executor.execute(new Runnable() {
+                public void run() {
+                    download.scheduled();
+                }
+            });
+        }
+    }
+
+    /**
+     * The place of a download in the queue.
+     */
+    private static class Ticket {
+
+        private AbstractDownload download;
+
+        private int priority;
+
+        private long sequence;
+
+        private Ticket(AbstractDownload download, int priority, long sequence) {
+            this.download = download;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+
+}
@@ -0,0 +1,196 @@
+package synapse.client.manager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import synapse.client.ClientConfig;
+import synapse.common.FakeTransferPipe;
+import synapse.common.TransferPipe;
+import synapse.util.HashUtil;
+
+/**
+ * Tests for DownloadScheduler.
+ *
+ * @author <p>Thiago Emmanuel, thiago.manel@gmail.com</p>
+ */
+public class DownloadSchedulerTest extends TestCase {
+
+    private List created;
+
+    private List scheduled;
+
+    /*
+     * @see TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        ClientConfig.setProperty(ClientConfig.SHARED_FOLDER, ClientConfig.getTestFolder());
+        this.created = new LinkedList();
+        this.scheduled = Collections.synchronizedList(new LinkedList());
+    }
+
+    /*
+     * @see TestCase#tearDown()
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        for (int i = 0; i < this.created.size(); i++) {
+            AbstractDownload download = (AbstractDownload) this.created.get(i);
+            download.pause();
+            download.getFile().delete();
+        }
+        ClientConfig.setProperty(ClientConfig.MAX_DOWNLOADS, "4");
+        DownloadScheduler.reset();
+    }
+
+    /**
+     * Tests if the queued downloads get the free slots by priority and arrival.
+     */
+    public void testQueueOrder() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(2, 4);
+        AbstractDownload[] downloads = new AbstractDownload[ 5 ];
+        for (int i = 0; i < downloads.length; i++) {
+            downloads[i] = this.createDownload(i);
+        }
+        assertTrue(scheduler.request(downloads[0]));
+        assertTrue(scheduler.request(downloads[1]));
+        assertTrue(scheduler.request(downloads[1]));
+        assertFalse(scheduler.request(downloads[2]));
+        assertFalse(scheduler.request(downloads[3]));
+        assertFalse(scheduler.request(downloads[4]));
+        scheduler.setPriority(downloads[4], 5);
+        assertEquals(2, scheduler.getNumberOfActiveDownloads());
+        assertEquals(3, scheduler.getNumberOfWaitingDownloads());
+
+        scheduler.release(downloads[0]);
+        this.waitScheduled(1);
+        scheduler.release(downloads[1]);
+        this.waitScheduled(2);
+        scheduler.release(downloads[4]);
+        this.waitScheduled(3);
+        assertEquals(Arrays.asList(new Object[] { downloads[4], downloads[2], downloads[3] }), this.scheduled);
+        assertEquals(0, scheduler.getNumberOfWaitingDownloads());
+        assertTrue(scheduler.isActive(downloads[3]));
+    }
+
+    /**
+     * Tests if a download that leaves the queue doesn't get a slot.
+     */
+    public void testLeaveQueue() throws Exception {
+        DownloadScheduler scheduler = new DownloadScheduler(1, 4);
+        AbstractDownload first = this.createDownload(0);
+        AbstractDownload second = this.createDownload(1);
+        AbstractDownload third = this.createDownload(2);
+        assertTrue(scheduler.request(first));
+        assertFalse(scheduler.request(second));
+        assertFalse(scheduler.request(third));
+
+        scheduler.release(second);
+        assertFalse(scheduler.isWaiting(second));
+        scheduler.release(first);
+        this.waitScheduled(1);
+        assertEquals(Collections.singletonList(third), this.scheduled);
+        assertFalse(scheduler.isActive(second));
+        assertEquals(1, scheduler.getNumberOfActiveDownloads());
+    }
+
+    /**
+     * Tests if swarm downloads beyond the limit wait, without workers, until
+     * the running one completes.
+     */
+    public void testSwarmDownloads() throws Exception {
+        ClientConfig.setProperty(ClientConfig.MAX_DOWNLOADS, "1");
+        DownloadScheduler.reset();
+        DownloadScheduler scheduler = DownloadScheduler.getInstance();
+
+        byte[] content = new byte[ 2 * PieceScheduler.PIECE_SIZE ];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        String hash = HashUtil.createHashes(content, PieceScheduler.PIECE_SIZE).getFileHash();
+        FakeTransferPipe slow = new FakeTransferPipe("schedulerFirst.dat", hash, content);
+        slow.setLatency(300);
+        SwarmDownload first = new SwarmDownload(slow);
+        SwarmDownload second = new SwarmDownload(new FakeTransferPipe("schedulerSecond.dat", hash, content));
+        this.created.add(first);
+        this.created.add(second);
+
+        first.resume();
+        second.resume();
+        assertTrue(scheduler.isActive(first));
+        assertTrue(scheduler.isWaiting(second));
+        assertEquals(0, second.getNumberOfActiveSources());
+        assertTrue(second.toString().endsWith("Queued."));
+
+        this.waitStatus(first, AbstractDownload.COMPLETED);
+        this.waitStatus(second, AbstractDownload.COMPLETED);
+        assertTrue(Arrays.equals(content, this.read(second.getFile())));
+        assertEquals(0, scheduler.getNumberOfActiveDownloads());
+    }
+
+    private AbstractDownload createDownload(int i) throws RemoteException {
+        AbstractDownload download = new RecordingDownload(new FakeTransferPipe("scheduler" + i + ".dat", "hash" + i, new byte[ 10 ]));
+        this.created.add(download);
+        return download;
+    }
+
+    private void waitScheduled(int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (this.scheduled.size() < count && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, this.scheduled.size());
+    }
+
+    private void waitStatus(AbstractDownload download, int status) throws InterruptedException {
+        long end = System.currentTimeMillis() + 20000;
+        while (download.getStatus() != status && System.currentTimeMillis() < end) {
+            Thread.sleep(20);
+        }
+        assertEquals(status, download.getStatus());
+    }
+
+    private byte[] read(File file) throws Exception {
+        byte[] bytes = new byte[ (int) file.length() ];
+        FileInputStream in = new FileInputStream(file);
+        int read = 0;
+        while (read < bytes.length) {
+            read += in.read(bytes, read, bytes.length - read);
+        }
+        in.close();
+        return bytes;
+    }
+
+    /**
+     * A download that only records when it gets a slot.
+     */
+    private class RecordingDownload extends AbstractDownload {
+
+        private RecordingDownload(TransferPipe transfer) throws RemoteException {
+            super(transfer);
+        }
+
+        protected void scheduled() {
+            scheduled.add(this);
+        }
+
+        public float getDownloadProgress() {
+            return 0;
+        }
+
+        public long getSpeed() {
+            return 0;
+        }
+
+        public int getChunkSize() {
+            return 0;
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+package synapse.client.manager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes the bytes of a download. The file is opened once and kept open while the
+ * download runs, and the bytes are written with positional writes of a
+ * <code>FileChannel</code>, so many sources can write at the same time without a lock.
+ * Adjacent blocks are joined before being written, up to <code>coalesceSize</code> bytes.
+ *
+ * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
+ * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+ */
+public class DownloadWriter {
+
+    /**
+     * The bytes are never forced to disk.
+     */
+    public static final String SYNC_NEVER = "never";
+
+    /**
+     * The bytes are forced to disk when the writer is closed.
+     */
+    public static final String SYNC_ON_CLOSE = "close";
+
+    /**
+     * The bytes are forced to disk after each write.
+     */
+    public static final String SYNC_ALWAYS = "always";
+
+    /**
+     * The default maximum size of joined blocks.
+     */
+    public static final int DEFAULT_COALESCE_SIZE = 1024 * 1024;
+
+    private File file;
+
+    private RandomAccessFile output;
+
+    private FileChannel channel;
+
+    private String syncPolicy;
+
+    private int coalesceSize;
+
+    /**
+     * Opens a file to be written.
+     *
+     * @param file The file.
+     * @param syncPolicy When the bytes are forced to disk.
+     * @param coalesceSize The maximum size of joined blocks, or 0 to write each block alone.
+     * @throws IOException If the file could not be opened.
+     */
+    public DownloadWriter(File file, String syncPolicy, int coalesceSize) throws IOException {
+        this.file = file;
+        this.syncPolicy = syncPolicy;
+        this.coalesceSize = coalesceSize;
+        this.output = new RandomAccessFile(file, "rw");
+        this.channel = this.output.getChannel();
+    }
+
+    /**
+     * Opens a file to be written, with the default coalesce size.
+     *
+     * @param file The file.
+     * @param syncPolicy When the bytes are forced to disk.
+     * @throws IOException If the file could not be opened.
+     */
+    public DownloadWriter(File file, String syncPolicy) throws IOException {
+        this(file, syncPolicy, DEFAULT_COALESCE_SIZE);
+    }
+
+    /**
+     * Returns the file written.
+     *
+     * @return The file.
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Writes a block at its position.
+     *
+     * @param block The bytes.
+     * @param position The position.
+     * @throws IOException If the bytes could not be written.
+     */
+    public void write(byte[] block, long position) throws IOException {
+        this.write(block, 0, block.length, position);
+        this.syncIfAlways();
+    }
+
+    /**
+     * Writes the remaining bytes of a buffer at a position.
+     *
+     * @param buffer The bytes.
+     * @param position The position.
+     * @throws IOException If the bytes could not be written.
+     */
+    public void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += this.channel.write(buffer, position);
+        }
+        this.syncIfAlways();
+    }
+
+    /**
+     * Writes many blocks, joining the adjacent ones.
+     *
+     * @param offsets The position of each block.
+     * @param blocks The blocks.
+     * @throws IOException If the bytes could not be written.
+     */
+    public void write(long[] offsets, byte[][] blocks) throws IOException {
+        int k = 0;
+        while (k < blocks.length) {
+            //procura os blocos seguintes que continuam o bloco k
+            int last = k;
+            long length = blocks[k].length;
+            while (last + 1 < blocks.length
+                    && offsets[last + 1] == offsets[last] + blocks[last].length
+                    && length + blocks[last + 1].length <= this.coalesceSize) {
+                last++;
+                length += blocks[last].length;
+            }
+
+            if (last == k) {
+                this.write(blocks[k], 0, blocks[k].length, offsets[k]);
+            }
+            else {
+                byte[] joined = new byte[ (int) length ];
+                int position = 0;
+                for (int i = k; i <= last; i++) {
+                    System.arraycopy(blocks[i], 0, joined, position, blocks[i].length);
+                    position += blocks[i].length;
+                }
+                this.write(joined, 0, joined.length, offsets[k]);
+            }
+            k = last + 1;
+        }
+        this.syncIfAlways();
+    }
+
+    /**
+     * Changes the file length.
+     *
+     * @param length The new length.
+     * @throws IOException If the length could not be changed.
+     */
+    public void setLength(long length) throws IOException {
+        if (this.channel.size() > length) {
+            this.channel.truncate(length);
+        }
+        else if (this.channel.size() < length) {
+            this.output.setLength(length);
+        }
+    }
+
+    /**
+     * Forces the written bytes to disk.
+     *
+     * @throws IOException If the bytes could not be forced.
+     */
+    public void sync() throws IOException {
+        this.channel.force(false);
+    }
+
+    /**
+     * Closes the file, forcing the bytes to disk if the policy is not <code>SYNC_NEVER</code>.
+     *
+     * @throws IOException If the file could not be closed.
+     */
+    public void close() throws IOException {
+        try {
+            if (this.channel.isOpen() && !SYNC_NEVER.equals(this.syncPolicy)) {
+                this.sync();
+            }
+        } finally {
+            this.output.close();
+        }
+    }
+
+    private void write(byte[] array, int offset, int length, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(array, offset, length);
+        while (buffer.hasRemaining()) {
+            position += this.channel.write(buffer, position);
+        }
+    }
+
+    private void syncIfAlways() throws IOException {
+        if (SYNC_ALWAYS.equals(this.syncPolicy)) {
+            this.sync();
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+package synapse.client.manager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import synapse.client.ClientConfig;
+
+/**
+ * Tests for DownloadWriter.
+ *
+ * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
+ */
+public class DownloadWriterTest extends TestCase {
+
+    private File file;
+
+    private byte[] content;
+
+    /*
+     * @see TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.file = new File(ClientConfig.getTestFolder() + File.separator + "writerTest.dat");
+        this.file.delete();
+
+        this.content = new byte[ 100000 ];
+        for (int i = 0; i < this.content.length; i++) {
+            this.content[i] = (byte) (i % 253);
+        }
+    }
+
+    /*
+     * @see TestCase#tearDown()
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        this.file.delete();
+    }
+
+    /**
+     * Tests if blocks written out of order build the file.
+     */
+    public void testWrite() throws Exception {
+        DownloadWriter writer = new DownloadWriter(this.file, DownloadWriter.SYNC_ON_CLOSE);
+        for (int start = this.content.length - 1000; start >= 0; start -= 1000) {
+            writer.write(this.block(start, 1000), start);
+        }
+        writer.close();
+
+        assertTrue(Arrays.equals(this.content, this.readFile()));
+    }
+
+    /**
+     * Tests the write of adjacent and not adjacent blocks, with and without coalescing.
+     */
+    public void testWriteBlocks() throws Exception {
+        long[] offsets = new long[] { 0, 10000, 20000, 50000, 60000, 70000, 90000 };
+        int[] lengths = new int[] { 10000, 10000, 30000, 10000, 10000, 20000, 10000 };
+        byte[][] blocks = new byte[ offsets.length ][];
+        for (int k = 0; k < offsets.length; k++) {
+            blocks[k] = this.block((int) offsets[k], lengths[k]);
+        }
+
+        DownloadWriter writer = new DownloadWriter(this.file, DownloadWriter.SYNC_ALWAYS, 25000);
+        writer.write(offsets, blocks);
+        writer.close();
+        assertTrue(Arrays.equals(this.content, this.readFile()));
+
+        this.file.delete();
+        writer = new DownloadWriter(this.file, DownloadWriter.SYNC_NEVER, 0);
+        writer.write(offsets, blocks);
+        writer.close();
+        assertTrue(Arrays.equals(this.content, this.readFile()));
+    }
+
+    /**
+     * Tests many threads writing at the same time.
+     */
+    public void testConcurrentWrites() throws Exception {
+        final DownloadWriter writer = new DownloadWriter(this.file, DownloadWriter.SYNC_ON_CLOSE);
+        final boolean[] failed = new boolean[1];
+        Thread[] threads = new Thread[ 4 ];
+        for (int i = 0; i < threads.length; i++) {
+            final int part = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int start = part * 1000; start < content.length; start += 4000) {
+                            writer.write(block(start, 1000), start);
+                        }
+                    } catch (Exception e) {
+                        failed[0] = true;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+        writer.close();
+
+        assertFalse(failed[0]);
+        assertTrue(Arrays.equals(this.content, this.readFile()));
+    }
+
+    /**
+     * Tests the <code>setLength</code> method.
+     */
+    public void testSetLength() throws Exception {
+        DownloadWriter writer = new DownloadWriter(this.file, DownloadWriter.SYNC_NEVER);
+        writer.write(this.content, 0);
+        writer.setLength(5000);
+        assertEquals(5000, this.file.length());
+        writer.setLength(8000);
+        assertEquals(8000, this.file.length());
+        writer.close();
+    }
+
+    private byte[] block(int start, int length) {
+        byte[] array = new byte[ length ];
+        System.arraycopy(this.content, start, array, 0, length);
+        return array;
+    }
+
+    private byte[] readFile() throws Exception {
+        byte[] array = new byte[ (int) this.file.length() ];
+        FileInputStream input = new FileInputStream(this.file);
+        int read = 0;
+        while (read < array.length) {
+            read += input.read(array, read, array.length - read);
+        }
+        input.close();
+        return array;
+    }
+
+}
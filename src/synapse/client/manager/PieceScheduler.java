@@ -0,0 +1,514 @@
+package synapse.client.manager;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synapse.common.PieceHashes;
+
+/**
+ * Divides a file in many small pieces and gives them to the sources of a download.
+ * Any free source takes the next unclaimed piece. When there is no unclaimed piece
+ * left (the "endgame"), a free source takes the second half of the in-flight range
+ * that would take longer to finish, so a slow source never holds the tail of the file.
+ * A piece that fails the integrity check goes back to the queue and is not given
+ * again to the sources that sent it.
+ *
+ * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+ * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
+ */
+public class PieceScheduler implements Serializable {
+
+    /**
+     * The default piece size, the same of the piece hashes.
+     */
+    public static final int PIECE_SIZE = PieceHashes.PIECE_SIZE;
+
+    /**
+     * Ranges with less bytes to be asked than twice this value are not split.
+     */
+    public static final int MIN_SPLIT_SIZE = 64 * 1024;
+
+    private long size;
+
+    private int pieceSize;
+
+    /**
+     * The segments that nobody is downloading.
+     */
+    private LinkedList unclaimed;
+
+    /**
+     * The segments being downloaded.
+     */
+    private List active;
+
+    /**
+     * The number of bytes written.
+     */
+    private long completed;
+
+    /**
+     * The number of bytes written of each piece.
+     */
+    private long[] pieceDone;
+
+    /**
+     * The number of in-flight ranges split in endgame.
+     */
+    private int splits;
+
+    /**
+     * The number of pieces that failed the integrity check.
+     */
+    private int badPieces;
+
+    /**
+     * A map:
+     * Piece x Set of sources that wrote bytes of the piece
+     */
+    private transient Map contributors;
+
+    /**
+     * A map:
+     * Piece x Set of sources that must not download the piece
+     */
+    private transient Map excluded;
+
+    /**
+     * Creates a new PieceScheduler.
+     *
+     * @param size The file size.
+     * @param pieceSize The piece size.
+     */
+    public PieceScheduler(long size, int pieceSize) {
+        this.size = size;
+        this.pieceSize = pieceSize;
+        this.unclaimed = new LinkedList();
+        this.active = new LinkedList();
+        this.completed = 0;
+        this.splits = 0;
+        this.badPieces = 0;
+        this.pieceDone = new long[ (int) ((size + pieceSize - 1) / pieceSize) ];
+
+        for (int piece = 0; piece < this.pieceDone.length; piece++) {
+            this.unclaimed.add(this.createSegment(piece));
+        }
+    }
+
+    /**
+     * Gives a segment to a free source that does not have an owner.
+     *
+     * @return The segment, or <code>null</code> if there is nothing to be done.
+     */
+    public Segment claim() {
+        return this.claim(null);
+    }
+
+    /**
+     * Gives a segment to a free source.
+     *
+     * @param owner The source.
+     * @return The segment, or <code>null</code> if there is nothing to be done.
+     */
+    public synchronized Segment claim(Object owner) {
+        Iterator unclaimedIt = this.unclaimed.iterator();
+        while (unclaimedIt.hasNext()) {
+            Segment segment = (Segment) unclaimedIt.next();
+            if (!this.isExcluded(segment.piece, owner)) {
+                unclaimedIt.remove();
+                segment.owner = owner;
+                this.active.add(segment);
+                return segment;
+            }
+        }
+
+        // endgame: splits the range that would take longer to be finished
+        Segment slowest = null;
+        double slowestTime = 0;
+        Iterator it = this.active.iterator();
+        while (it.hasNext()) {
+            Segment segment = (Segment) it.next();
+            long remaining = segment.end - segment.next;
+            if (remaining >= 2 * MIN_SPLIT_SIZE && !this.isExcluded(segment.piece, owner)) {
+                double time = remaining / Math.max(1.0, segment.rate);
+                if (slowest == null || time > slowestTime) {
+                    slowest = segment;
+                    slowestTime = time;
+                }
+            }
+        }
+        if (slowest == null) {
+            return null;
+        }
+
+        long middle = slowest.next + (slowest.end - slowest.next) / 2;
+        Segment segment = new Segment(slowest.piece, middle, slowest.end);
+        segment.owner = owner;
+        slowest.end = middle;
+        this.active.add(segment);
+        this.splits++;
+        return segment;
+    }
+
+    /**
+     * Reserves the next bytes of a segment to be asked.
+     *
+     * @param segment The segment.
+     * @param maxBytes The maximum number of bytes.
+     * @return The offset and the length of the reserved range, or <code>null</code>
+     * if all the bytes of the segment were already reserved.
+     */
+    public synchronized long[] reserve(Segment segment, long maxBytes) {
+        if (segment.next >= segment.end) {
+            return null;
+        }
+        long length = Math.min(maxBytes, segment.end - segment.next);
+        long[] range = new long[] { segment.next, length };
+        segment.next += length;
+        return range;
+    }
+
+    /**
+     * Informs that bytes of a segment were written. The bytes must be committed
+     * in the same order they were reserved.
+     *
+     * @param segment The segment.
+     * @param offset The offset of the bytes.
+     * @param length The number of bytes.
+     * @param rate The source speed, in KB/s.
+     * @return The piece completed by these bytes, or -1.
+     */
+    public synchronized int commit(Segment segment, long offset, int length, long rate) {
+        if (offset != segment.done) {
+            throw new IllegalStateException("Bytes committed out of order: " + offset + " " + segment);
+        }
+        segment.done += length;
+        segment.rate = rate;
+        this.completed += length;
+        this.pieceDone[segment.piece] += length;
+        if (segment.owner != null && length > 0) {
+            this.getSet(this.getContributors(), segment.piece).add(segment.owner);
+        }
+
+        if (segment.done >= segment.end) {
+            this.active.remove(segment);
+        }
+        return this.pieceDone[segment.piece] == this.getLength(segment.piece) ? segment.piece : -1;
+    }
+
+    /**
+     * Informs that a piece failed the integrity check. Its bytes go back to the queue.
+     * If only one source sent them, that source will not download the piece again;
+     * a piece sent by many sources does not say which one was wrong.
+     *
+     * @param piece The piece.
+     * @return The sources that sent the bytes of the piece.
+     */
+    public synchronized Set invalidate(int piece) {
+        this.completed -= this.pieceDone[piece];
+        this.pieceDone[piece] = 0;
+        this.badPieces++;
+
+        Set sources = (Set) this.getContributors().remove(new Integer(piece));
+        if (sources == null) {
+            sources = new HashSet();
+        }
+        if (sources.size() == 1) {
+            this.getSet(this.getExcluded(), piece).addAll(sources);
+        }
+        this.unclaimed.addFirst(this.createSegment(piece));
+        return sources;
+    }
+
+    /**
+     * Informs that a piece is already in the file, before any segment is claimed.
+     *
+     * @param piece The piece.
+     */
+    public synchronized void markDone(int piece) {
+        Iterator it = this.unclaimed.iterator();
+        while (it.hasNext()) {
+            Segment segment = (Segment) it.next();
+            if (segment.piece == piece) {
+                it.remove();
+            }
+        }
+        this.completed += this.getLength(piece) - this.pieceDone[piece];
+        this.pieceDone[piece] = this.getLength(piece);
+    }
+
+    /**
+     * Returns the pieces with all their bytes written.
+     *
+     * @return A bit for each piece.
+     */
+    public synchronized BitSet getDonePieces() {
+        BitSet done = new BitSet(this.pieceDone.length);
+        for (int piece = 0; piece < this.pieceDone.length; piece++) {
+            if (this.pieceDone[piece] == this.getLength(piece)) {
+                done.set(piece);
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Informs if there are pieces to be downloaded but none of them can be given to
+     * a source, because it sent bad bytes of all of them.
+     *
+     * @param owner The source.
+     * @return true if the source is excluded from all the unclaimed pieces.
+     */
+    public synchronized boolean isExcluded(Object owner) {
+        if (this.unclaimed.isEmpty()) {
+            return false;
+        }
+        Iterator it = this.unclaimed.iterator();
+        while (it.hasNext()) {
+            if (!this.isExcluded(((Segment) it.next()).piece, owner)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gives back the bytes of a segment that were not written, so another
+     * source can download them. It does nothing if the segment is finished.
+     *
+     * @param segment The segment.
+     */
+    public synchronized void release(Segment segment) {
+        if (this.active.remove(segment) && segment.done < segment.end) {
+            this.unclaimed.addFirst(new Segment(segment.piece, segment.done, segment.end));
+        }
+    }
+
+    /**
+     * Gives back all the segments being downloaded.
+     */
+    public synchronized void releaseAll() {
+        while (!this.active.isEmpty()) {
+            this.release((Segment) this.active.get(0));
+        }
+    }
+
+    /**
+     * Returns the number of bytes written.
+     *
+     * @return The number of bytes.
+     */
+    public synchronized long getCompleted() {
+        return this.completed;
+    }
+
+    /**
+     * Informs if all the bytes were written.
+     *
+     * @return true if the download is complete.
+     */
+    public synchronized boolean isComplete() {
+        return this.completed >= this.size;
+    }
+
+    /**
+     * Informs if there is no unclaimed piece and the download is not complete.
+     *
+     * @return true if the scheduler is in endgame mode.
+     */
+    public synchronized boolean isEndgame() {
+        return this.unclaimed.isEmpty() && !this.isComplete();
+    }
+
+    /**
+     * Returns the number of segments being downloaded.
+     *
+     * @return The number of segments.
+     */
+    public synchronized int getNumberOfActiveSegments() {
+        return this.active.size();
+    }
+
+    /**
+     * Returns the number of segments that nobody is downloading.
+     *
+     * @return The number of segments.
+     */
+    public synchronized int getNumberOfUnclaimedSegments() {
+        return this.unclaimed.size();
+    }
+
+    /**
+     * Returns the number of ranges split in endgame.
+     *
+     * @return The number of splits.
+     */
+    public synchronized int getNumberOfSplits() {
+        return this.splits;
+    }
+
+    /**
+     * Returns the number of pieces that failed the integrity check.
+     *
+     * @return The number of bad pieces.
+     */
+    public synchronized int getNumberOfBadPieces() {
+        return this.badPieces;
+    }
+
+    /**
+     * Returns the piece size.
+     *
+     * @return The piece size.
+     */
+    public int getPieceSize() {
+        return this.pieceSize;
+    }
+
+    /**
+     * Returns the number of pieces.
+     *
+     * @return The number of pieces.
+     */
+    public int getNumberOfPieces() {
+        return this.pieceDone.length;
+    }
+
+    /**
+     * Returns the length of a piece. Only the last one may be shorter.
+     *
+     * @param piece The piece.
+     * @return The length.
+     */
+    public int getLength(int piece) {
+        return (int) Math.min(this.pieceSize, this.size - (long) piece * this.pieceSize);
+    }
+
+    private Segment createSegment(int piece) {
+        long start = (long) piece * this.pieceSize;
+        return new Segment(piece, start, start + this.getLength(piece));
+    }
+
+    private boolean isExcluded(int piece, Object owner) {
+        Set sources = (Set) this.getExcluded().get(new Integer(piece));
+        return owner != null && sources != null && sources.contains(owner);
+    }
+
+    private Map getContributors() {
+        if (this.contributors == null) {
+            this.contributors = new HashMap();
+        }
+        return this.contributors;
+    }
+
+    private Map getExcluded() {
+        if (this.excluded == null) {
+            this.excluded = new HashMap();
+        }
+        return this.excluded;
+    }
+
+    private Set getSet(Map map, int piece) {
+        Integer key = new Integer(piece);
+        Set set = (Set) map.get(key);
+        if (set == null) {
+            set = new HashSet();
+            map.put(key, set);
+        }
+        return set;
+    }
+
+    /**
+     * Writes the scheduler without being changed by the sources.
+     */
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+    }
+
+    /**
+     * A range of the file given to a source.
+     *
+     * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+     */
+    public static class Segment implements Serializable {
+
+        /**
+         * The piece of the segment.
+         */
+        private int piece;
+
+        /**
+         * The source downloading the segment.
+         */
+        private transient Object owner;
+
+        /**
+         * The first byte not written.
+         */
+        private long done;
+
+        /**
+         * The first byte not reserved.
+         */
+        private long next;
+
+        /**
+         * The byte after the last one.
+         */
+        private long end;
+
+        /**
+         * The speed of the source, in KB/s.
+         */
+        private long rate;
+
+        private Segment(int piece, long start, long end) {
+            this.piece = piece;
+            this.done = start;
+            this.next = start;
+            this.end = end;
+            this.rate = 0;
+        }
+
+        /**
+         * Returns the piece of the segment.
+         *
+         * @return The piece.
+         */
+        public int getPiece() {
+            return this.piece;
+        }
+
+        /**
+         * Returns the first byte not written.
+         *
+         * @return The offset.
+         */
+        public long getDone() {
+            return this.done;
+        }
+
+        /**
+         * Returns the byte after the last one.
+         *
+         * @return The offset.
+         */
+        public long getEnd() {
+            return this.end;
+        }
+
+        public String toString() {
+            return "[" + this.done + ", " + this.next + ", " + this.end + ")";
+        }
+    }
+
+}
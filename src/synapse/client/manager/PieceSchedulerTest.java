@@ -0,0 +1,229 @@
+package synapse.client.manager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for PieceScheduler.
+ *
+ * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+ */
+public class PieceSchedulerTest extends TestCase {
+
+    private static final int PIECE = 256 * 1024;
+
+    private PieceScheduler scheduler;
+
+    /*
+     * @see TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.scheduler = new PieceScheduler(3 * PIECE + 100, PIECE);
+    }
+
+    /**
+     * Tests if each piece is claimed once and the last one is shorter.
+     */
+    public void testClaim() {
+        assertEquals(4, this.scheduler.getNumberOfUnclaimedSegments());
+
+        PieceScheduler.Segment first = this.scheduler.claim();
+        assertEquals(0, first.getDone());
+        assertEquals(PIECE, first.getEnd());
+
+        this.scheduler.claim();
+        this.scheduler.claim();
+        PieceScheduler.Segment last = this.scheduler.claim();
+        assertEquals(3 * PIECE, last.getDone());
+        assertEquals(3 * PIECE + 100, last.getEnd());
+
+        assertEquals(0, this.scheduler.getNumberOfUnclaimedSegments());
+        assertEquals(4, this.scheduler.getNumberOfActiveSegments());
+        assertTrue(this.scheduler.isEndgame());
+    }
+
+    /**
+     * Tests the reserve and commit of the bytes of a segment.
+     */
+    public void testReserveAndCommit() {
+        PieceScheduler.Segment segment = this.scheduler.claim();
+
+        long[] range = this.scheduler.reserve(segment, 100 * 1024);
+        assertEquals(0, range[0]);
+        assertEquals(100 * 1024, range[1]);
+        range = this.scheduler.reserve(segment, 200 * 1024);
+        assertEquals(100 * 1024, range[0]);
+        assertEquals(PIECE - 100 * 1024, range[1]);
+        assertNull(this.scheduler.reserve(segment, 1));
+
+        this.scheduler.commit(segment, 0, 100 * 1024, 10);
+        assertEquals(100 * 1024, this.scheduler.getCompleted());
+        try {
+            this.scheduler.commit(segment, 0, 10, 10);
+            fail();
+        } catch (IllegalStateException e) {
+            // ok
+        }
+
+        this.scheduler.commit(segment, 100 * 1024, PIECE - 100 * 1024, 10);
+        assertEquals(0, this.scheduler.getNumberOfActiveSegments());
+        assertFalse(this.scheduler.isComplete());
+    }
+
+    /**
+     * Tests if the bytes not written go back to the queue.
+     */
+    public void testRelease() {
+        PieceScheduler.Segment segment = this.scheduler.claim();
+        this.scheduler.reserve(segment, 1000);
+        this.scheduler.commit(segment, 0, 1000, 10);
+        this.scheduler.reserve(segment, 1000);
+
+        this.scheduler.release(segment);
+        assertEquals(0, this.scheduler.getNumberOfActiveSegments());
+        assertEquals(4, this.scheduler.getNumberOfUnclaimedSegments());
+
+        PieceScheduler.Segment again = this.scheduler.claim();
+        assertEquals(1000, again.getDone());
+        assertEquals(PIECE, again.getEnd());
+    }
+
+    /**
+     * Tests if the slowest range is split in endgame.
+     */
+    public void testEndgameSplit() {
+        PieceScheduler.Segment fast = null;
+        PieceScheduler.Segment slow = null;
+        for (int i = 0; i < 4; i++) {
+            PieceScheduler.Segment segment = this.scheduler.claim();
+            if (i == 0) {
+                slow = segment;
+            }
+            else {
+                fast = segment;
+                long[] range;
+                while ((range = this.scheduler.reserve(segment, 64 * 1024)) != null) {
+                    this.scheduler.commit(segment, range[0], (int) range[1], 1000);
+                }
+            }
+        }
+        assertEquals(fast.getDone(), fast.getEnd());
+        this.scheduler.reserve(slow, 64 * 1024);
+        this.scheduler.commit(slow, 0, 64 * 1024, 1);
+
+        PieceScheduler.Segment half = this.scheduler.claim();
+        assertEquals(64 * 1024 + (PIECE - 64 * 1024) / 2, half.getDone());
+        assertEquals(PIECE, half.getEnd());
+        assertEquals(half.getDone(), slow.getEnd());
+        assertEquals(1, this.scheduler.getNumberOfSplits());
+
+        // the remaining ranges are too small to be split
+        long[] range;
+        while ((range = this.scheduler.reserve(half, PIECE)) != null) {
+            this.scheduler.commit(half, range[0], (int) range[1], 1000);
+        }
+        this.scheduler.reserve(slow, PIECE);
+        assertNull(this.scheduler.claim());
+    }
+
+    /**
+     * Tests if the segments being downloaded are released after a restore.
+     */
+    public void testSerialization() throws Exception {
+        PieceScheduler.Segment segment = this.scheduler.claim();
+        this.scheduler.reserve(segment, 5000);
+        this.scheduler.commit(segment, 0, 5000, 10);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeObject(this.scheduler);
+        output.close();
+        ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        PieceScheduler restored = (PieceScheduler) input.readObject();
+
+        restored.releaseAll();
+        assertEquals(5000, restored.getCompleted());
+        assertEquals(0, restored.getNumberOfActiveSegments());
+        assertEquals(4, restored.getNumberOfUnclaimedSegments());
+        assertEquals(5000, restored.claim().getDone());
+    }
+
+    /**
+     * Tests if a bad piece goes back to the queue and is not given to its sources.
+     */
+    public void testInvalidate() {
+        Object bad = "bad";
+        Object good = "good";
+
+        PieceScheduler.Segment segment = this.scheduler.claim(bad);
+        long[] range = this.scheduler.reserve(segment, PIECE);
+        assertEquals(0, segment.getPiece());
+        assertEquals(0, this.scheduler.commit(segment, range[0], (int) range[1], 10));
+
+        Set sources = this.scheduler.invalidate(0);
+        assertEquals(1, sources.size());
+        assertTrue(sources.contains(bad));
+        assertEquals(0, this.scheduler.getCompleted());
+        assertEquals(1, this.scheduler.getNumberOfBadPieces());
+
+        // the bad source gets the next piece, the good one gets the bad piece
+        PieceScheduler.Segment next = this.scheduler.claim(bad);
+        assertEquals(1, next.getPiece());
+        assertEquals(0, this.scheduler.claim(good).getPiece());
+        assertFalse(this.scheduler.isExcluded(bad));
+
+        // in endgame the bad piece is not split to the bad source
+        this.scheduler.reserve(next, PIECE);
+        this.scheduler.reserve(this.scheduler.claim(good), PIECE);
+        this.scheduler.reserve(this.scheduler.claim(good), PIECE);
+        assertNull(this.scheduler.claim(bad));
+        assertEquals(0, this.scheduler.claim(good).getPiece());
+    }
+
+    /**
+     * Tests if a source sent bad bytes of all the pieces left.
+     */
+    public void testIsExcluded() {
+        PieceScheduler small = new PieceScheduler(PIECE, PIECE);
+        PieceScheduler.Segment segment = small.claim("bad");
+        small.reserve(segment, PIECE);
+        small.commit(segment, 0, PIECE, 10);
+        assertTrue(small.isComplete());
+
+        small.invalidate(0);
+        assertFalse(small.isComplete());
+        assertTrue(small.isExcluded("bad"));
+        assertFalse(small.isExcluded("good"));
+        assertNull(small.claim("bad"));
+    }
+
+    /**
+     * Tests the pieces found in the file before the download.
+     */
+    public void testMarkDone() {
+        this.scheduler.markDone(1);
+        this.scheduler.markDone(3);
+
+        assertEquals(PIECE + 100, this.scheduler.getCompleted());
+        assertEquals(2, this.scheduler.getNumberOfUnclaimedSegments());
+        assertEquals(0, this.scheduler.claim().getPiece());
+        assertEquals(2, this.scheduler.claim().getPiece());
+    }
+
+    /**
+     * Tests a scheduler of an empty file.
+     */
+    public void testEmptyFile() {
+        PieceScheduler empty = new PieceScheduler(0, PIECE);
+        assertTrue(empty.isComplete());
+        assertFalse(empty.isEndgame());
+        assertNull(empty.claim());
+    }
+
+}
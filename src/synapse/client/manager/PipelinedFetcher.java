@@ -0,0 +1,272 @@
+package synapse.client.manager;
+
+import java.rmi.RemoteException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import synapse.common.TransferPipe;
+
+/**
+ * Keeps up to <code>depth</code> <code>getFiles()</code> calls in flight on the
+ * same <code>TransferPipe</code>, so the downloader does not wait a whole round
+ * trip before asking for the next bytes. The answers are returned in the same
+ * order of the requests. The calls run in the pool of requests of the
+ * <code>DownloadScheduler</code>, shared by all the fetchers, at most
+ * <code>depth</code> at the same time on the pipe.
+ *
+ * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
+ * @author <p>Thiago Emmanuel, thiago.manel@gmail.com</p>
+ */
+public class PipelinedFetcher {
+
+    /**
+     * The default number of requests in flight.
+     */
+    public static final int DEFAULT_DEPTH = 2;
+
+    /**
+     * The default number of ranges asked in each request.
+     */
+    public static final int DEFAULT_RANGES = 4;
+
+    private TransferPipe pipe;
+
+    private int depth;
+
+    private DownloadScheduler scheduler;
+
+    /**
+     * The requests in flight, the oldest first.
+     */
+    private LinkedList inFlight;
+
+    /**
+     * Creates a new PipelinedFetcher.
+     *
+     * @param pipe The pipe used to download the bytes.
+     * @param depth The maximum number of requests in flight.
+     */
+    public PipelinedFetcher(TransferPipe pipe, int depth) {
+        this.pipe = pipe;
+        this.depth = Math.max(1, depth);
+        this.inFlight = new LinkedList();
+        this.scheduler = DownloadScheduler.getInstance();
+    }
+
+    /**
+     * Returns the pipe used by this fetcher.
+     *
+     * @return The pipe.
+     */
+    public TransferPipe getTransferPipe() {
+        return this.pipe;
+    }
+
+    /**
+     * Returns the number of requests in flight.
+     *
+     * @return The number of requests in flight.
+     */
+    public int getInFlight() {
+        return this.inFlight.size();
+    }
+
+    /**
+     * Informs if there are <code>depth</code> requests in flight.
+     *
+     * @return true if no more requests should be made before calling <code>next()</code>.
+     */
+    public boolean isFull() {
+        return this.inFlight.size() >= this.depth;
+    }
+
+    /**
+     * Asks for the ranges without waiting for the answer.
+     *
+     * @param offsets The start offset of each range.
+     * @param lengths The length of each range.
+     */
+    public void request(final long[] offsets, final int[] lengths) {
+        final Batch batch = new Batch(offsets, lengths);
+        batch.future = this.scheduler.submit(new Callable() {
+            public Object call() throws Exception {
+                long start = System.currentTimeMillis();
+                byte[][] blocks = pipe.getFiles(offsets, lengths);
+                batch.elapsed = System.currentTimeMillis() - start;
+                return blocks;
+            }
+        });
+        this.inFlight.addLast(batch);
+    }
+
+    /**
+     * Asks for the bytes from <code>start</code> to <code>end</code>, split in up to
+     * <code>maxRanges</code> ranges of <code>chunkSize</code> bytes.
+     *
+     * @param start The first byte.
+     * @param end The byte after the last one.
+     * @param chunkSize The size of each range.
+     * @param maxRanges The maximum number of ranges.
+     * @return The offset of the first byte not asked.
+     */
+    public long requestRange(long start, long end, int chunkSize, int maxRanges) {
+        int count = (int) Math.min(maxRanges, (end - start + chunkSize - 1) / chunkSize);
+        long[] offsets = new long[ count ];
+        int[] lengths = new int[ count ];
+
+        long position = start;
+        for (int k = 0; k < count; k++) {
+            offsets[k] = position;
+            lengths[k] = (int) Math.min(chunkSize, end - position);
+            position += lengths[k];
+        }
+        this.request(offsets, lengths);
+        return position;
+    }
+
+    /**
+     * Waits for the oldest request in flight.
+     *
+     * @return The answered request.
+     * @throws RemoteException If the pipe failed or there is no request in flight.
+     */
+    public Batch next() throws RemoteException {
+        if (this.inFlight.isEmpty()) {
+            throw new RemoteException("There is no request in flight");
+        }
+        Batch batch = (Batch) this.inFlight.removeFirst();
+        try {
+            batch.blocks = (byte[][]) batch.future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RemoteException) {
+                throw (RemoteException) e.getCause();
+            }
+            throw new RemoteException("The request failed", e.getCause());
+        } catch (InterruptedException e) {
+            throw new RemoteException("The request was interrupted", e);
+        }
+        return batch;
+    }
+
+    /**
+     * Forgets all the requests in flight.
+     */
+    public void cancel() {
+        while (!this.inFlight.isEmpty()) {
+            ((Batch) this.inFlight.removeFirst()).future.cancel(true);
+        }
+    }
+
+    /**
+     * Forgets all the requests in flight. The threads belong to the
+     * <code>DownloadScheduler</code> and are not stopped.
+     */
+    public void close() {
+        this.cancel();
+    }
+
+    /**
+     * A request made to the pipe and its answer.
+     *
+     * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
+     */
+    public static class Batch {
+
+        private long[] offsets;
+
+        private int[] lengths;
+
+        private byte[][] blocks;
+
+        private Future future;
+
+        private long elapsed;
+
+        private Batch(long[] offsets, int[] lengths) {
+            this.offsets = offsets;
+            this.lengths = lengths;
+        }
+
+        /**
+         * Returns the number of ranges.
+         *
+         * @return The number of ranges.
+         */
+        public int size() {
+            return this.offsets.length;
+        }
+
+        /**
+         * Returns the offset of a range.
+         *
+         * @param k The range index.
+         * @return The offset.
+         */
+        public long getOffset(int k) {
+            return this.offsets[k];
+        }
+
+        /**
+         * Returns the length asked for a range.
+         *
+         * @param k The range index.
+         * @return The length.
+         */
+        public int getLength(int k) {
+            return this.lengths[k];
+        }
+
+        /**
+         * Returns the bytes read of a range.
+         *
+         * @param k The range index.
+         * @return The bytes.
+         */
+        public byte[] getBlock(int k) {
+            return this.blocks[k];
+        }
+
+        /**
+         * Returns the offsets of all ranges.
+         *
+         * @return The offsets.
+         */
+        public long[] getOffsets() {
+            return this.offsets;
+        }
+
+        /**
+         * Returns the bytes read of all ranges.
+         *
+         * @return The bytes.
+         */
+        public byte[][] getBlocks() {
+            return this.blocks;
+        }
+
+        /**
+         * Returns the number of bytes read in all ranges.
+         *
+         * @return The number of bytes.
+         */
+        public long getBytes() {
+            long total = 0;
+            for (int k = 0; k < this.blocks.length; k++) {
+                total += this.blocks[k].length;
+            }
+            return total;
+        }
+
+        /**
+         * Returns the time the pipe took to answer this request.
+         *
+         * @return The time, in milliseconds.
+         */
+        public long getElapsed() {
+            return this.elapsed;
+        }
+    }
+
+}
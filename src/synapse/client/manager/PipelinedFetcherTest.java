@@ -0,0 +1,113 @@
+package synapse.client.manager;
+
+import java.rmi.RemoteException;
+
+import junit.framework.TestCase;
+import synapse.common.FakeTransferPipe;
+
+/**
+ * Tests for PipelinedFetcher.
+ *
+ * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
+ */
+public class PipelinedFetcherTest extends TestCase {
+
+    private byte[] content;
+
+    private FakeTransferPipe pipe;
+
+    private PipelinedFetcher fetcher;
+
+    /*
+     * @see TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.content = new byte[ 10000 ];
+        for (int i = 0; i < this.content.length; i++) {
+            this.content[i] = (byte) i;
+        }
+        this.pipe = new FakeTransferPipe("fake.dat", "fakehash", this.content);
+        this.fetcher = new PipelinedFetcher(this.pipe, 3);
+    }
+
+    /*
+     * @see TestCase#tearDown()
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        this.fetcher.close();
+    }
+
+    /**
+     * Tests if the ranges are split and answered in order.
+     */
+    public void testRequestRange() throws Exception {
+        long next = this.fetcher.requestRange(0, this.content.length, 1000, 4);
+        assertEquals(4000, next);
+        next = this.fetcher.requestRange(next, this.content.length, 1000, 4);
+        assertEquals(8000, next);
+        next = this.fetcher.requestRange(next, this.content.length, 1500, 4);
+        assertEquals(this.content.length, next);
+        assertTrue(this.fetcher.isFull());
+
+        long position = 0;
+        for (int b = 0; b < 3; b++) {
+            PipelinedFetcher.Batch batch = this.fetcher.next();
+            for (int k = 0; k < batch.size(); k++) {
+                assertEquals(position, batch.getOffset(k));
+                byte[] block = batch.getBlock(k);
+                assertEquals(batch.getLength(k), block.length);
+                for (int i = 0; i < block.length; i++) {
+                    assertEquals(this.content[(int) position + i], block[i]);
+                }
+                position += block.length;
+            }
+        }
+        assertEquals(this.content.length, position);
+        assertEquals(0, this.fetcher.getInFlight());
+
+        this.pipe.setExpectedGetFiles(3);
+        this.pipe.verify();
+        assertEquals(10, this.pipe.getRangesCount());
+    }
+
+    /**
+     * Tests if the requests are really in flight at the same time.
+     */
+    public void testPipelining() throws Exception {
+        this.pipe.setLatency(200);
+
+        long before = System.currentTimeMillis();
+        this.fetcher.requestRange(0, 3000, 1000, 1);
+        this.fetcher.requestRange(1000, 3000, 1000, 1);
+        this.fetcher.requestRange(2000, 3000, 1000, 1);
+        for (int b = 0; b < 3; b++) {
+            this.fetcher.next();
+        }
+        assertTrue(System.currentTimeMillis() - before < 550);
+    }
+
+    /**
+     * Tests a broken pipe.
+     */
+    public void testBrokenPipe() throws Exception {
+        this.pipe.setBroken(true);
+        this.fetcher.requestRange(0, 1000, 1000, 1);
+
+        try {
+            this.fetcher.next();
+            fail("A RemoteException should be thrown here!");
+        } catch (RemoteException e) {
+            // this line have to be executed
+        }
+
+        try {
+            this.fetcher.next();
+            fail("A RemoteException should be thrown here!");
+        } catch (RemoteException e) {
+            // there is no request in flight
+        }
+    }
+
+}
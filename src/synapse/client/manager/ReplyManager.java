@@ -1,12 +1,16 @@
 package synapse.client.manager;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import synapse.common.ContentHash;
 import synapse.common.FileInfo;
 import synapse.common.Provider;
+import synapse.util.CompiledExpression;
+import synapse.util.CompiledExpressionAnalyzer;
 
 
 /**
@@ -19,8 +23,16 @@ public class ReplyManager {
 	
 	/**
 	 * Map of resultByID, contains de ID as Key and a SearchResult as Value.
+	 * A SearchResult is a map:
+	 * ContentHash x Reply
 	 */
 	private Map resultByID;
+
+	/**
+	 * The searches that keep only their best files. A map:
+	 * Long (id) x Limit
+	 */
+	private Map limits;
 	
 	/**
 	 * ReplyManager used for Singleton Design Pattern.
@@ -32,6 +44,7 @@ public class ReplyManager {
 	 */
 	private ReplyManager() {
 		resultByID = new HashMap();
+		limits = new HashMap();
 	}
 	
 	/**
@@ -56,6 +69,41 @@ public class ReplyManager {
 		this.resultByID.put(new Long(id), null);
 	}
 
+	/**
+	 * Adds a search that keeps at most <code>limit</code> files. When the search is full,
+	 * a new file takes the place of the worst file kept only if it's better: with ranking,
+	 * a file is better if it has more sources or, with the same sources, if its name
+	 * matches the search better; without ranking, the first files found are kept.
+	 * 
+	 * @param id Search ID
+	 * @param expression The search expression.
+	 * @param limit The number of files kept, or <code>Provider.NO_LIMIT</code>.
+	 * @param ranked true to keep the best files, false to keep the first ones.
+	 */
+	public synchronized void addNewSearch(long id, String expression, int limit, boolean ranked) {
+		Long key = new Long(id);
+		//os resultados que chegaram antes da busca ser registrada sao mantidos
+		if (!this.resultByID.containsKey(key)) {
+			this.resultByID.put(key, null);
+		}
+		if (limit <= 0) {
+			return;
+		}
+		Limit searchLimit = new Limit(limit, ranked ? CompiledExpressionAnalyzer.getInstance().compile(expression) : null);
+		this.limits.put(key, searchLimit);
+
+		Map result = (Map) this.resultByID.get(key);
+		if (result != null) {
+			Iterator it = result.values().iterator();
+			while (it.hasNext()) {
+				searchLimit.score((Reply) it.next());
+			}
+			while (result.size() > limit) {
+				result.remove(this.getWorst(result).fileInfo.getContentHash());
+			}
+		}
+	}
+
 	/**
 	 * Adds an obtained result.
 	 * 
@@ -64,23 +112,88 @@ public class ReplyManager {
 	 * @param fileInfo A file information.
 	 */
 	public synchronized void addReply(long id, Provider provider, FileInfo fileInfo) {
-		if(resultByID.get(new Long(id)) != null) { //If the search has already returned any result
-			Map result = (Map) resultByID.get(new Long(id));
-			if(result.containsKey(fileInfo.getHash())) { //If the hash of the file has been already found in another provider
-				Reply reply = (Reply) result.get(fileInfo.getHash());
-				reply.providers.add(provider);
+		this.addReply(this.getResult(id), (Limit) this.limits.get(new Long(id)), provider, fileInfo);
+	}
+
+	/**
+	 * Adds a page of results from the same provider, looking up the search once.
+	 * 
+	 * @param id Search ID
+	 * @param provider Provider who has the files
+	 * @param files The files information.
+	 */
+	public synchronized void addReplies(long id, Provider provider, FileInfo[] files) {
+		Map result = this.getResult(id);
+		Limit limit = (Limit) this.limits.get(new Long(id));
+		for (int i = 0; i < files.length; i++) {
+			this.addReply(result, limit, provider, files[i]);
+		}
+	}
+
+	/**
+	 * Returns the results of a search, created if the search has not returned any result.
+	 */
+	private Map getResult(long id) {
+		Map result = (Map) resultByID.get(new Long(id));
+		if (result == null) {
+			result = new HashMap();
+			resultByID.put(new Long(id), result);
+		}
+		return result;
+	}
+
+	private void addReply(Map result, Limit limit, Provider provider, FileInfo fileInfo) {
+		Reply reply = (Reply) result.get(fileInfo.getContentHash());
+		if(reply != null) { //If the hash of the file has been already found in another provider
+			reply.providers.add(provider);
+			return;
+		}
+
+		reply = new Reply(fileInfo, provider);
+		if (limit == null || result.size() < limit.size) {
+			if (limit != null) {
+				limit.score(reply);
+			}
+			result.put(fileInfo.getContentHash(), reply);
+		}
+		else if (limit.expression != null) {
+			//a busca esta cheia: o novo arquivo so entra no lugar de um pior
+			limit.score(reply);
+			Reply worst = this.getWorst(result);
+			if (compare(reply, worst) > 0) {
+				result.remove(worst.fileInfo.getContentHash());
+				result.put(fileInfo.getContentHash(), reply);
 			}
-			else {
-				Reply newReply = new Reply(fileInfo, provider);
-				result.put(fileInfo.getHash(), newReply);
+		}
+	}
+
+	/**
+	 * Returns the worst reply of a search. The search is walked, since it keeps
+	 * at most its limit of replies.
+	 */
+	private Reply getWorst(Map result) {
+		Reply worst = null;
+		Iterator it = result.values().iterator();
+		while (it.hasNext()) {
+			Reply reply = (Reply) it.next();
+			if (worst == null || compare(reply, worst) < 0) {
+				worst = reply;
 			}
 		}
-		else{
-			Map newResult = new HashMap();
-			Reply newReply = new Reply(fileInfo, provider);
-			newResult.put(fileInfo.getHash(), newReply);
-			resultByID.put(new Long(id), newResult);
+		return worst;
+	}
+
+	/**
+	 * Compares two replies by their number of sources and then by how well their
+	 * names match the search.
+	 */
+	private static int compare(Reply r1, Reply r2) {
+		int sources1 = r1.providers.size();
+		int sources2 = r2.providers.size();
+		if (sources1 != sources2) {
+			return sources1 < sources2 ? -1 : 1;
 		}
+		return r1.score == r2.score ? 0 : (r1.score < r2.score ? -1 : 1);
 	}
 
 	/**
@@ -94,6 +207,7 @@ public class ReplyManager {
 			throw new RequestIDDoesNotExistException(id);
 		}
 		resultByID.remove(new Long(id));
+		limits.remove(new Long(id));
 	}
 
 	/**
@@ -114,9 +228,9 @@ public class ReplyManager {
 	 * @throws HashDoesNotExistException
 	 * @throws RequestIDDoesNotExistException
 	 */
-	private Reply getReply(long id, String hash) throws RequestIDDoesNotExistException, HashDoesNotExistException {
+	private Reply getReply(long id, ContentHash hash) throws RequestIDDoesNotExistException, HashDoesNotExistException {
 		if (!this.containsHash(id, hash)) {
-			throw new HashDoesNotExistException(hash);
+			throw new HashDoesNotExistException(String.valueOf(hash));
 		}
 		HashMap resultMap = (HashMap)resultByID.get(new Long (id));
 		Reply replySet = (Reply)resultMap.get(hash);
@@ -133,6 +247,19 @@ public class ReplyManager {
 	 * @throws RequestIDDoesNotExistException
 	 */
 	public synchronized FileInfo getFileInfo(long id, String hash) throws RequestIDDoesNotExistException, HashDoesNotExistException {
+		return this.getFileInfo(id, ContentHash.valueOf(hash));
+	}
+
+	/**
+	 * Returns the file info object containing the file information.
+	 * 
+	 * @param id Search ID
+	 * @param hash File's hash.
+	 * @return The file information object.
+	 * @throws HashDoesNotExistException
+	 * @throws RequestIDDoesNotExistException
+	 */
+	public synchronized FileInfo getFileInfo(long id, ContentHash hash) throws RequestIDDoesNotExistException, HashDoesNotExistException {
 		Reply reply = this.getReply(id, hash);
 
 		return reply.fileInfo;
@@ -148,6 +275,19 @@ public class ReplyManager {
 	 * @throws RequestIDDoesNotExistException If the request ID does not exist.
 	 */
 	public synchronized List getProviders (long id, String hash) throws RequestIDDoesNotExistException, HashDoesNotExistException {
+		return this.getProviders(id, ContentHash.valueOf(hash));
+	}
+
+	/**
+	 * Gets <code>Providers</code> for a certain search.
+	 * 
+	 * @param id Search ID
+	 * @param hash File's hash.
+	 * @return The providers list.
+	 * @throws HashDoesNotExistException If the hash does not exist.
+	 * @throws RequestIDDoesNotExistException If the request ID does not exist.
+	 */
+	public synchronized List getProviders (long id, ContentHash hash) throws RequestIDDoesNotExistException, HashDoesNotExistException {
 		Reply reply = this.getReply(id, hash);
 
 		return new LinkedList(reply.providers);
@@ -172,6 +312,18 @@ public class ReplyManager {
 	 * @throws RequestIDDoesNotExistException
 	 */
 	public synchronized boolean containsHash (long id, String hash) throws RequestIDDoesNotExistException {
+		return this.containsHash(id, ContentHash.valueOf(hash));
+	}
+
+	/**
+	 * Checks if a Hash exists in the result HashMap.
+	 * 
+	 * @param id The search ID.
+	 * @param hash The hash that was found.
+	 * @return True if exists.
+	 * @throws RequestIDDoesNotExistException
+	 */
+	public synchronized boolean containsHash (long id, ContentHash hash) throws RequestIDDoesNotExistException {
 		if (!resultByID.containsKey(new Long(id))) {
 			 throw new RequestIDDoesNotExistException (id);
 		}
@@ -182,6 +334,30 @@ public class ReplyManager {
 		return resultMap.containsKey(hash);
 	}
 
+	/**
+	 * The number of files kept by a search and the expression used to rank them.
+	 */
+	private static class Limit {
+
+		private int size;
+
+		/**
+		 * The search expression, or null if the files are not ranked.
+		 */
+		private CompiledExpression expression;
+
+		private Limit(int size, CompiledExpression expression) {
+			this.size = size;
+			this.expression = expression;
+		}
+
+		private void score(Reply reply) {
+			if (this.expression != null) {
+				reply.score = this.expression.score(reply.fileInfo.getFileName().toUpperCase());
+			}
+		}
+	}
+
 	/**
 	 * Represents a reply obtained when a search is executed.
 	 * 
@@ -200,6 +376,11 @@ public class ReplyManager {
 		 */
 		public List providers;
 
+		/**
+		 * How well the file name matches the search, if the search is ranked.
+		 */
+		public int score;
+
 		/**
 		 * Creates a new Reply
 		 * @param fileInfo
@@ -5,7 +5,9 @@ import java.util.Map;
 
 import junit.framework.TestCase;
 import synapse.client.FakeFileInfo;
+import synapse.common.ContentHash;
 import synapse.common.FakeProvider;
+import synapse.common.FileInfo;
 
 /**
  * Test for the the <code>ReplyManager</code>.
@@ -55,7 +57,7 @@ public class ReplyManagerTest extends TestCase {
 		Map result = (Map) resultByID.get(new Long(1234));
 		assertNotNull(result);
 		assertEquals(1, result.keySet().size());
-		assertTrue(result.containsKey("hash"));
+		assertTrue(result.containsKey(ContentHash.valueOf("hash")));
 		
 		replyManager.addReply(1234, fakeProvider, new FakeFileInfo("blah", "hash2", 0));
 		
@@ -63,10 +65,79 @@ public class ReplyManagerTest extends TestCase {
 		result = (Map) resultByID.get(new Long(1234));
 		assertNotNull(result);
 		assertEquals(2, result.keySet().size());
-		assertTrue(result.containsKey("hash"));
-		assertTrue(result.containsKey("hash2"));
+		assertTrue(result.containsKey(ContentHash.valueOf("hash")));
+		assertTrue(result.containsKey(ContentHash.valueOf("hash2")));
 	}
 	
+	/**
+	 * Tests if a page of replies is added as the replies one by one.
+	 * @throws Exception
+	 */
+	public void testAddReplies() throws Exception {
+		replyManager.addNewSearch(1234);
+		FileInfo[] files = new FileInfo[] { new FakeFileInfo("testMe", "hash", 0), new FakeFileInfo("blah", "hash2", 0), new FakeFileInfo("imNotTheSame", "hash", 0) };
+		replyManager.addReplies(1234, fakeProvider, files);
+		replyManager.addReplies(1234, fakeProvider, new FileInfo[0]);
+
+		assertEquals(2, replyManager.getProviders(1234, "hash").size());
+		assertEquals(1, replyManager.getProviders(1234, "hash2").size());
+		assertEquals("testMe", replyManager.getFileInfo(1234, "hash").getFileName());
+		Map result = (Map) replyManager.getSearchResult().get(new Long(1234));
+		assertEquals(2, result.keySet().size());
+	}
+
+	/**
+	 * Tests if a search with a limit keeps the first files found when it's not ranked.
+	 * @throws Exception
+	 */
+	public void testLimit() throws Exception {
+		replyManager.addNewSearch(1234, "file", 2, false);
+		replyManager.addReplies(1234, fakeProvider, new FileInfo[] { new FakeFileInfo("file1", "hash1", 0), new FakeFileInfo("file2", "hash2", 0) });
+		replyManager.addReply(1234, fakeProvider, new FakeFileInfo("file 3", "hash3", 0));
+		replyManager.addReply(1234, fakeProvider, new FakeFileInfo("file2", "hash2", 0));
+
+		Map result = (Map) replyManager.getSearchResult().get(new Long(1234));
+		assertEquals(2, result.size());
+		assertFalse(replyManager.containsHash(1234, "hash3"));
+		assertEquals(2, replyManager.getProviders(1234, "hash2").size());
+	}
+
+	/**
+	 * Tests if a ranked search with a limit keeps the files with more sources and the best names.
+	 * @throws Exception
+	 */
+	public void testRankedLimit() throws Exception {
+		replyManager.addNewSearch(1234, "turing", 2, true);
+		replyManager.addReply(1234, fakeProvider, new FakeFileInfo("maturing.txt", "hash1", 0));
+		replyManager.addReply(1234, fakeProvider, new FakeFileInfo("turingmachine.avi", "hash2", 0));
+
+		// a name that matches better takes the place of the worst
+		replyManager.addReply(1234, fakeProvider, new FakeFileInfo("turing.pdf", "hash3", 0));
+		assertFalse(replyManager.containsHash(1234, "hash1"));
+		assertTrue(replyManager.containsHash(1234, "hash3"));
+
+		// more sources count before the name
+		replyManager.addReply(1234, new FakeProvider(), new FakeFileInfo("turingmachine.avi", "hash2", 0));
+		replyManager.addReply(1234, fakeProvider, new FakeFileInfo("Alan Turing", "hash4", 0));
+		assertTrue(replyManager.containsHash(1234, "hash2"));
+		assertTrue(replyManager.containsHash(1234, "hash3"));
+		assertFalse(replyManager.containsHash(1234, "hash4"));
+		assertEquals(2, ((Map) replyManager.getSearchResult().get(new Long(1234))).size());
+	}
+
+	/**
+	 * Tests if the files found before the search was added are cut to its limit.
+	 * @throws Exception
+	 */
+	public void testLimitAfterReplies() throws Exception {
+		replyManager.addReply(1234, fakeProvider, new FakeFileInfo("maturing.txt", "hash1", 0));
+		replyManager.addReply(1234, fakeProvider, new FakeFileInfo("turing.pdf", "hash2", 0));
+		replyManager.addNewSearch(1234, "turing", 1, true);
+
+		assertTrue(replyManager.containsHash(1234, "hash2"));
+		assertFalse(replyManager.containsHash(1234, "hash1"));
+	}
+
 	/**
 	 * Tests if the RequestIDDoesntExistException is being thrown.
 	 */
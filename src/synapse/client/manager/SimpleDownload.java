@@ -1,14 +1,17 @@
 package synapse.client.manager;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.io.Serializable;
 import java.rmi.RemoteException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.ourgrid.yal.Logger;
 
+import synapse.common.PieceHashes;
 import synapse.common.TransferPipe;
+import synapse.util.HashUtil;
 
 /**
  * This class represents a Download. An object <code>Download</code> know as transfer data
@@ -25,10 +28,10 @@ import synapse.common.TransferPipe;
 
 public class SimpleDownload extends AbstractDownload implements Runnable, Serializable {
 
-	/**
-	 * The largest downloaded block size.
-	 */
-    private final int BUFFER_SIZE = 32 * 1024;
+    /**
+     * The version of the class in the downloads.dat of the old clients.
+     */
+    private static final long serialVersionUID = -6418628308289869435L;
 
     /**
      * The downloaded size.
@@ -36,18 +39,26 @@ public class SimpleDownload extends AbstractDownload implements Runnable, Serial
     private long downloaded;
 
     /**
-     * Initial time.
+     * A map:
+     * TransferPipe x ChunkSizeController
      */
-    private long time1;
+    private transient Map controllers;
 
     /**
-     * Final time.
+     * The controller of the pipe being used.
      */
-    private long time2;
+    private transient ChunkSizeController controller;
 
-    private byte[] buffer;
+    /**
+     * The piece hashes of a new download, kept until the file that already
+     * existed is verified.
+     */
+    private transient PieceHashes unverified;
 
-    private transient RandomAccessFile output;
+    /**
+     * Informs if the transfer is running in the <code>DownloadScheduler</code>.
+     */
+    private transient boolean running;
 
     private transient Logger logger;
 
@@ -59,17 +70,28 @@ public class SimpleDownload extends AbstractDownload implements Runnable, Serial
     public SimpleDownload(TransferPipe transfer) throws RemoteException {
         super(transfer);
 
-        this.setDownloaded(file.length());
+        //o arquivo que ja existia eh verificado quando o download ganhar uma vaga
+        this.unverified = transfer.getPieceHashes();
+        this.setDownloaded(-1);
+    }
 
-        this.time1 = 0;
-        this.time2 = 0;
-        
-        //cria um arquivo de acesso aleatorio a partir do arquivo anteriormente criado
-        try {
-            output = new RandomAccessFile(file, "rw");
-        } catch (FileNotFoundException e) {
-            cancel();
+    /**
+     * Returns the number of bytes of the file that can be kept. If the piece hashes
+     * are known, only the correct pieces from the start of the file are kept;
+     * otherwise the whole file is trusted.
+     * @param hashes The piece hashes, or null.
+     * @return The number of bytes already downloaded.
+     */
+    private long verifiedLength(PieceHashes hashes) {
+        if (hashes == null || !hashes.isConsistent() || hashes.getSize() != size) {
+            return Math.min(file.length(), size);
+        }
+        boolean[] valid = HashUtil.verifyPieces(file, hashes);
+        long length = 0;
+        for (int i = 0; i < valid.length && valid[i]; i++) {
+            length += hashes.getLength(i);
         }
+        return length;
     }
 
     /**
@@ -79,6 +101,7 @@ public class SimpleDownload extends AbstractDownload implements Runnable, Serial
         super.prepareInstance();
         
         this.logger = Logger.getInstance();
+        this.controllers = new HashMap();
     }
 
     /* (non-Javadoc)
@@ -86,6 +109,7 @@ public class SimpleDownload extends AbstractDownload implements Runnable, Serial
      */
     public void pause() {
         super.pause();
+        leaveQueue();
 
         logger.info(getClass().getName() + ".pause()", "The Download's status was changed to PAUSED.");
     }
@@ -109,16 +133,27 @@ public class SimpleDownload extends AbstractDownload implements Runnable, Serial
      */
     public void cancel (){
         super.cancel();
+        leaveQueue();
 
         logger.info(getClass().getName() + ".cancel()", "The Download's status was changed to CANCELED.");
     }
     
     /**
-     * Returns the number of bytes transfered.
+     * Returns the number of bytes transfered. The file that already existed
+     * counts only after it is verified.
      * @return The number of bytes transfered.
      */
     public synchronized long getDownloaded(){
-        return downloaded;
+        return Math.max(0, downloaded);
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.client.manager.AbstractDownload#getWrittenPieces(int)
+     */
+    protected BitSet getWrittenPieces(int pieceSize) {
+        BitSet pieces = new BitSet();
+        setWrittenPieces(pieces, 0, getDownloaded(), pieceSize);
+        return pieces;
     }
 
     /**
@@ -130,94 +165,167 @@ public class SimpleDownload extends AbstractDownload implements Runnable, Serial
     }
 
     /**
-     * Marks the initial time used to calculates the download speed.
-     */
-    private synchronized void markBefore() {
-        time1 = System.currentTimeMillis();
-    }
-
-    /**
-     * Marks the final time used to calculates the download speed.
+     * Returns the chunk size controller of the pipe, creating it if necessary.
+     * @param pipe The pipe.
+     * @return The controller.
      */
-    private synchronized void markAfter() {
-        time2 = System.currentTimeMillis();
+    private synchronized ChunkSizeController getController(TransferPipe pipe) {
+        ChunkSizeController aux = (ChunkSizeController) controllers.get(pipe);
+        if (aux == null) {
+            aux = new ChunkSizeController(PipelinedFetcher.DEFAULT_RANGES);
+            controllers.put(pipe, aux);
+        }
+        this.controller = aux;
+        return aux;
     }
 
     /* (non-Javadoc)
      * @see synapse.client.manager.AbstractDownload#getDownloadProgress()
      */
     public synchronized float getDownloadProgress() {
-        return (downloaded * 100) / getSize();
+        return (getDownloaded() * 100) / getSize();
     }
 
     /* (non-Javadoc)
      * @see synapse.client.manager.AbstractDownload#getSpeed()
      */
     public synchronized long getSpeed() {
-        if (time1 == time2) {
+        if (controller == null || getStatus() != DOWNLOADING) {
             return 0;
         }
-        return BUFFER_SIZE / ((time2 - time1) * 1000);
+        return controller.getSpeed();
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.client.manager.AbstractDownload#getChunkSize()
+     */
+    public synchronized int getChunkSize() {
+        if (controller == null) {
+            return ChunkSizeController.INITIAL_CHUNK_SIZE;
+        }
+        return controller.getChunkSize();
     }
     
     /**
-     * Start  transference of data
+     * Start  transference of data. The transfer runs when the <code>DownloadScheduler</code>
+     * gives a slot to this Download; without one, it waits in the queue.
      */
     private void download () {
-        Thread thread = new Thread (this);
         logger.info(getClass().getName() + ".download()", "Starting the transfer.");
-        thread.start();
+        DownloadScheduler downloads = DownloadScheduler.getInstance();
+        if (downloads.request(this)) {
+            downloads.execute(this);
+        }
     }
-    
+
+    /* (non-Javadoc)
+     * @see synapse.client.manager.AbstractDownload#scheduled()
+     */
+    protected void scheduled() {
+        run();
+    }
+
     /**
-     * Utilitary method. Close a file used in a tranference
+     * Takes the download out of the scheduler queue. The slot of a running
+     * download is freed when its transfer stops.
      */
-    private void closeFile(){
-        try {
-            output.close();
-        } catch (IOException e1) {
-            logger.exception(getClass().getName() + ".closeFile()", e1);
+    private void leaveQueue() {
+        synchronized (this) {
+            if (running) {
+                return;
+            }
         }
+        DownloadScheduler.getInstance().release(this);
     }
-    
+
     /* (non-Javadoc)
      * @see java.lang.Runnable#run()
      */
     public void run(){
-        int read = 0;
-        
-        while(getStatus() == DOWNLOADING && transfersList.size() > 0){
-            //confere se a parte do arquivo restante eh maior do que o buffer
-            if(size - downloaded > BUFFER_SIZE){
-                buffer = new byte[BUFFER_SIZE];
+        synchronized (this) {
+            if (running) {
+                return;
             }
-            else{
-                buffer = new byte[(int)(size - downloaded)];
+            running = true;
+        }
+        try {
+            transfer();
+        }
+        finally {
+            synchronized (this) {
+                running = false;
             }
+            DownloadScheduler.getInstance().release(this);
+        }
+        //um resume() chamado enquanto a transferencia parava nao a iniciou de novo
+        if (getStatus() == DOWNLOADING && transfersList.size() > 0) {
+            download();
+        }
+    }
+
+    /**
+     * Verifies the file that already existed, on the first run, and transfers
+     * the bytes until the Download stops.
+     */
+    private void transfer(){
+        if (downloaded < 0) {
+            setDownloaded(verifiedLength(unverified));
+            unverified = null;
+        }
+
+        PipelinedFetcher fetcher = null;
+        ChunkSizeController chunks = null;
+        long requested = downloaded;
+        
+        while(getStatus() == DOWNLOADING && transfersList.size() > 0){
+            TransferPipe pipe = (TransferPipe)transfersList.getFirst();
             
             try{
+                //um novo fetcher eh criado quando o transferPipe da primeira posicao muda
+                if(fetcher == null || fetcher.getTransferPipe() != pipe){
+                    if(fetcher != null){
+                        fetcher.close();
+                    }
+                    fetcher = new PipelinedFetcher(pipe, PipelinedFetcher.DEFAULT_DEPTH);
+                    chunks = getController(pipe);
+                    requested = downloaded;
+                }
+                
+                //mantem ate DEFAULT_DEPTH pedidos em andamento
+                while(!fetcher.isFull() && requested < size){
+                    requested = fetcher.requestRange(requested, size, chunks.getChunkSize(), PipelinedFetcher.DEFAULT_RANGES);
+                }
                 
-                //recebe um array de bytes do transferPipe q esta na primeira posicao
-            	markBefore();
-                buffer = ((TransferPipe)transfersList.getFirst()).getFile(downloaded, buffer.length);
-                markAfter();
-                //cria o arquivo que recebera a transferencia dos bytes
-                output = new RandomAccessFile(file, "rw");                
-                //coloca o ponteiro no final do arquivo
-                output.seek(downloaded);                
-                //escreve o buffer que foi transferido no arquivo
-                output.write(buffer);                
-                //incrementa o numero de bytes transferidos
-                setDownloaded(downloaded + buffer.length);                
+                if(fetcher.getInFlight() > 0){
+                    PipelinedFetcher.Batch batch = fetcher.next();
+                    chunks.record(batch.getBytes(), batch.getElapsed());
+                    //escreve os blocos na posicao de cada um, juntando os adjacentes
+                    getWriter().write(batch.getOffsets(), batch.getBlocks());
+                    for(int k = 0; k < batch.size(); k++){
+                        byte[] buffer = batch.getBlock(k);
+                        if(buffer.length == 0){
+                            throw new RemoteException("The TransferPipe returned no bytes.");
+                        }
+                        //incrementa o numero de bytes transferidos
+                        setDownloaded(downloaded + buffer.length);
+                        //o arquivo remoto terminou antes do esperado, os pedidos em andamento sao refeitos
+                        if(buffer.length < batch.getLength(k)){
+                            fetcher.cancel();
+                            requested = downloaded;
+                            break;
+                        }
+                    }
+                }
                 //Se completou, muda o status e notifica aos Observadores
                 if(downloaded == size){
                     setStatus(COMPLETED);
                 }
             }
             catch(RemoteException e){               
-                 //manda remover o transfer q lan?ou a remote exception q aqui sempre sera
-                 // q aqui sempre sera o primeiro da lista                       	
-                removeTransferPipe((TransferPipe)transfersList.getFirst());
+                //manda remover o transfer q lancou a remote exception
+                fetcher.close();
+                fetcher = null;
+                removeTransferPipe(pipe);
                 logger.exception(getClass().getName() + ".run()", e);
                 logger.info(getClass().getName() + ".run()", "The TransferPipe was removed. This Download, now, has "+transfersList.size()+" Transfers.");
             }
@@ -227,14 +335,18 @@ public class SimpleDownload extends AbstractDownload implements Runnable, Serial
             
             //Fecha o arquivo
             finally{
-                closeFile();
                 if(getStatus() == COMPLETED) {
+                    closeWriter();
                     logger.info(getClass().getName() + ".run()", "The Download is completed.");
                     setChanged();
                     notifyObservers();
                 }
             }           
-        }        
+        }
+        
+        if(fetcher != null){
+            fetcher.close();
+        }
     }
 
     /**
@@ -243,7 +355,7 @@ public class SimpleDownload extends AbstractDownload implements Runnable, Serial
      */
     public synchronized String toString(){
         String temp;
-        temp = "[SimpleDownload] Seeds: " + getNumberOfTransfers() + " " + file.getName() + " " + downloaded + "/" + size + " [" + this.getDownloadProgress() + "%] " + " (" + getSpeed() + " KB/s) " + hash + "  ";
+        temp = "[SimpleDownload] Seeds: " + getNumberOfTransfers() + " " + file.getName() + " " + getDownloaded() + "/" + size + " [" + this.getDownloadProgress() + "%] " + " (" + getSpeed() + " KB/s, " + getChunkSize() / 1024 + " KB chunks) " + hash + "  ";
         switch (getStatus()) {
 	        case DOWNLOADING:
 	            return temp + "Downloading.";
@@ -1,10 +1,12 @@
 package synapse.client.manager;
 
 import java.io.File;
+import java.io.FileOutputStream;
 
 import junit.framework.TestCase;
 import synapse.client.ClientConfig;
 import synapse.client.TransferPipeImpl;
+import synapse.common.FakeTransferPipe;
 import synapse.common.FileInfo;
 import synapse.util.HashUtil;
 
@@ -208,6 +210,64 @@ public class SimpleDownloadTest extends TestCase {
 		
 	}
 	
+	/**
+	 * Tests if the download uses the bulk <code>getFiles</code> method.
+	 */
+	public void testDownloadWithBulkRequests() throws Exception {
+		byte[] content = new byte[ 300 * 1024 ];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) (i % 251);
+		}
+		FakeTransferPipe pipe = new FakeTransferPipe("bulkTest.dat", "bulkhash", content);
+		SimpleDownload download = new SimpleDownload(pipe);
+
+		download.resume();
+		while(download.getStatus() == AbstractDownload.DOWNLOADING){
+		}
+		assertEquals(AbstractDownload.COMPLETED, download.getStatus());
+		assertEquals(content.length, download.getFile().length());
+
+		// 300 KB in requests of 4 ranges of 32 KB
+		pipe.setExpectedGetFile(0);
+		pipe.setExpectedGetFiles(3);
+		pipe.verify();
+		download.getFile().delete();
+	}
+
+	/**
+	 * Tests if the resume keeps only the correct pieces from the start of the file.
+	 */
+	public void testVerifiedResume() throws Exception {
+		byte[] content = new byte[ 3 * 1024 * 1024 ];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) (i % 251);
+		}
+		String hash = HashUtil.createHashes(content, 1024 * 1024).getFileHash();
+		FakeTransferPipe pipe = new FakeTransferPipe("simpleResume.dat", hash, content);
+		pipe.createPieceHashes(1024 * 1024);
+
+		//o segundo pedaco do arquivo parcial esta corrompido
+		byte[] partial = new byte[ 2 * 1024 * 1024 + 10 ];
+		System.arraycopy(content, 0, partial, 0, partial.length);
+		partial[1024 * 1024 + 5]++;
+		File file = new File(ClientConfig.getSharedFolder() + File.separator + "simpleResume.dat");
+		FileOutputStream output = new FileOutputStream(file);
+		output.write(partial);
+		output.close();
+
+		//o arquivo so eh verificado quando o download ganha uma vaga
+		SimpleDownload download = new SimpleDownload(pipe);
+		assertEquals(0, download.getDownloaded());
+
+		download.resume();
+		while(download.getStatus() == AbstractDownload.DOWNLOADING){
+		}
+		assertEquals(AbstractDownload.COMPLETED, download.getStatus());
+		assertEquals(content.length, download.getDownloaded());
+		assertEquals(hash, HashUtil.createHash(download.getFile()));
+		download.getFile().delete();
+	}
+
 	/**
 	 * Tests the <code>removeTransferPipe</code> method.
 	 * @throws Exception
@@ -0,0 +1,801 @@
+package synapse.client.manager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ourgrid.yal.Logger;
+
+import synapse.client.ClientConfig;
+import synapse.common.PieceHashes;
+import synapse.common.TransferPipe;
+import synapse.util.HashUtil;
+
+/**
+ * A Download that uses all its <code>TransferPipe</code>s at the same time. The file is
+ * divided in small pieces by a <code>PieceScheduler</code> and each source takes a new
+ * piece as soon as it finishes the last one, so fast sources download more than slow
+ * ones. When only in-flight pieces are left, idle sources split the slowest of them.
+ * If the sources give the piece hashes, each piece is checked as soon as it is written
+ * and a bad piece is downloaded again from another source.
+ * <p>
+ * The pieces that reach the file, and were checked if there are hashes, are recorded
+ * in the <code>DownloadJournal</code>, so the download goes on from them after a crash.
+ *
+ * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
+ * @author <p>Thiago Emmanuel, thiago.manel@gmail.com</p>
+ */
+public class SwarmDownload extends AbstractDownload implements Serializable {
+
+    /**
+     * The number of bad pieces that makes a source be removed.
+     */
+    public static final int MAX_BAD_PIECES = 3;
+
+    /**
+     * The number of pieces recorded together in the journal, after their bytes
+     * are forced to disk, when the downloads are forced only on close.
+     */
+    public static final int FORCE_BATCH = 16;
+
+    private PieceScheduler scheduler;
+
+    /**
+     * The piece hashes, or null if the sources do not have them.
+     */
+    private PieceHashes pieceHashes;
+
+    /**
+     * A map:
+     * TransferPipe x Number of bad pieces sent
+     */
+    private transient Map badSources;
+
+    /**
+     * A map:
+     * TransferPipe x SourceWorker
+     */
+    private transient Map workers;
+
+    /**
+     * The bytes received waiting to be written.
+     */
+    private transient WriteBehindQueue queue;
+
+    /**
+     * Gives the slots to the downloads and runs the workers.
+     */
+    private transient DownloadScheduler downloads;
+
+    /**
+     * Records the pieces written, or null.
+     */
+    private transient DownloadJournal journal;
+
+    /**
+     * The pieces written but not forced to disk yet. They are recorded in the
+     * journal after the next force.
+     */
+    private transient BitSet unforced;
+
+    private transient Logger logger;
+
+    /**
+     * Constructs a new SwarmDownload that does not know the piece hashes, so
+     * the file is only checked when it is complete.
+     * @param transfer The first source.
+     * @throws RemoteException
+     */
+    public SwarmDownload(TransferPipe transfer) throws RemoteException {
+        this(transfer, null);
+    }
+
+    /**
+     * Constructs a new SwarmDownload. The piece hashes of the source are used only
+     * if their root is the one found in the search, since a source could send hashes
+     * of other bytes.
+     * @param transfer The first source.
+     * @param pieceRoot The root of the piece hashes found in the search, or null.
+     * @throws RemoteException
+     */
+    public SwarmDownload(TransferPipe transfer, String pieceRoot) throws RemoteException {
+        super(transfer);
+
+        PieceHashes hashes = pieceRoot == null ? null : transfer.getPieceHashes();
+        if (hashes != null && hashes.isConsistent() && pieceRoot.equals(hashes.getRoot()) && hashes.getSize() == size && hash.equals(hashes.getFileHash())) {
+            this.pieceHashes = hashes;
+            this.scheduler = new PieceScheduler(size, hashes.getPieceSize());
+            this.verifyExistingPieces();
+        }
+        else {
+            this.scheduler = new PieceScheduler(size, PieceScheduler.PIECE_SIZE);
+        }
+    }
+
+    /**
+     * Constructs a SwarmDownload kept by a <code>DownloadJournal</code>, without sources.
+     * The pieces written are not checked again, but a piece that is not in the file
+     * any more is downloaded again.
+     * @param entry The state of the download.
+     */
+    public SwarmDownload(DownloadJournal.Entry entry) {
+        this(entry.getHash().toString(), entry.getFile(), entry.getSize(), entry.getPieceSize(), entry.getPieceHashes(), entry.getDonePieces());
+    }
+
+    /**
+     * Constructs a SwarmDownload of a file already being downloaded, without sources.
+     * A piece that is not in the file any more is downloaded again.
+     * @param hash The file hash.
+     * @param file The file being downloaded.
+     * @param size The file size.
+     * @param pieceSize The piece size.
+     * @param hashes The piece hashes, or null.
+     * @param done The pieces already written.
+     */
+    SwarmDownload(String hash, File file, long size, int pieceSize, PieceHashes hashes, BitSet done) {
+        super(hash, file, size);
+
+        if (hashes != null && hashes.getSize() == size && hashes.getPieceSize() == pieceSize) {
+            this.pieceHashes = hashes;
+        }
+        this.scheduler = new PieceScheduler(size, pieceSize);
+
+        long length = file.length();
+        for (int piece = done.nextSetBit(0); piece >= 0 && piece < scheduler.getNumberOfPieces(); piece = done.nextSetBit(piece + 1)) {
+            if ((long) piece * scheduler.getPieceSize() + scheduler.getLength(piece) <= length) {
+                scheduler.markDone(piece);
+            }
+        }
+    }
+
+    /**
+     * Keeps the correct pieces of a file that was already in the shared folder.
+     */
+    private void verifyExistingPieces() {
+        if (file.length() == 0) {
+            return;
+        }
+        boolean[] valid = HashUtil.verifyPieces(file, pieceHashes);
+        int count = 0;
+        for (int i = 0; i < valid.length; i++) {
+            if (valid[i]) {
+                scheduler.markDone(i);
+                count++;
+            }
+        }
+        logger.info(getClass().getName() + ".verifyExistingPieces()", count + " of " + valid.length + " pieces of " + getFileName() + " were already downloaded.");
+    }
+
+    /**
+     * Put a <code>SwarmDownload</code> in a consistent form
+     */
+    protected void prepareInstance() {
+        super.prepareInstance();
+
+        this.logger = Logger.getInstance();
+        this.workers = new HashMap();
+        this.badSources = new HashMap();
+        this.downloads = DownloadScheduler.getInstance();
+        this.unforced = new BitSet();
+
+        //os segmentos que estavam sendo baixados quando o download foi salvo voltam para a fila
+        if (scheduler != null) {
+            scheduler.releaseAll();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.client.manager.AbstractDownload#addTransferPipe(synapse.common.TransferPipe)
+     */
+    public boolean addTransferPipe(TransferPipe transfer) {
+        if (super.addTransferPipe(transfer)) {
+            if (getStatus() == DOWNLOADING) {
+                startWorkers();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.client.manager.AbstractDownload#pause()
+     */
+    public void pause() {
+        super.pause();
+        leaveQueue();
+
+        logger.info(getClass().getName() + ".pause()", "The Download's status was changed to PAUSED.");
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.client.manager.AbstractDownload#resume()
+     */
+    public void resume() {
+        super.resume();
+
+        logger.info(getClass().getName() + ".resume()", "The Download has " + transfersList.size() + " transfers.");
+
+        if (getStatus() == DOWNLOADING) {
+            if (scheduler.isComplete()) {
+                finish();
+            }
+            else {
+                startWorkers();
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.client.manager.AbstractDownload#cancel()
+     */
+    public void cancel() {
+        super.cancel();
+        leaveQueue();
+
+        logger.info(getClass().getName() + ".cancel()", "The Download's status was changed to CANCELED.");
+    }
+
+    /**
+     * Records the state of the download in a journal, and the pieces written
+     * from now on.
+     * @param journal The journal, or null to stop recording.
+     * @return false if the state could not be written to the journal.
+     */
+    boolean setJournal(DownloadJournal journal) {
+        boolean written = true;
+        if (journal != null) {
+            written = journal.putDownload(getContentHash(), file, size, scheduler.getPieceSize(), pieceHashes, scheduler.getDonePieces());
+        }
+        this.journal = journal;
+        return written;
+    }
+
+    /**
+     * Records that a piece reached the file. When the bytes are forced to disk only
+     * on close, the pieces are recorded in batches after a force, so the journal
+     * never has a piece that a crash could lose.
+     * @param piece The piece.
+     * @param from The queue that wrote the piece.
+     */
+    private void pieceWritten(int piece, WriteBehindQueue from) {
+        DownloadJournal aux = journal;
+        if (aux == null) {
+            return;
+        }
+        if (!DownloadWriter.SYNC_ON_CLOSE.equals(ClientConfig.getDownloadSync())) {
+            aux.putPiece(getContentHash(), piece);
+            return;
+        }
+        synchronized (unforced) {
+            unforced.set(piece);
+            if (unforced.cardinality() < FORCE_BATCH) {
+                return;
+            }
+        }
+        journalUnforced(from);
+    }
+
+    /**
+     * Forces the written bytes to disk and records the pieces that were waiting for it.
+     * @param from The queue that wrote the pieces.
+     */
+    private void journalUnforced(WriteBehindQueue from) {
+        BitSet pieces;
+        synchronized (unforced) {
+            pieces = (BitSet) unforced.clone();
+            unforced.clear();
+        }
+        DownloadJournal aux = journal;
+        if (aux == null || pieces.isEmpty()) {
+            return;
+        }
+        try {
+            from.sync();
+        } catch (IOException e) {
+            //as pecas nao sao registradas e serao baixadas de novo depois de uma queda
+            logger.exception(getClass().getName() + ".journalUnforced()", e);
+            return;
+        }
+        for (int piece = pieces.nextSetBit(0); piece >= 0; piece = pieces.nextSetBit(piece + 1)) {
+            aux.putPiece(getContentHash(), piece);
+        }
+    }
+
+    /**
+     * Returns the number of bytes transfered.
+     * @return The number of bytes transfered.
+     */
+    public long getDownloaded() {
+        return scheduler.getCompleted();
+    }
+
+    /**
+     * Returns the number of sources downloading.
+     * @return The number of sources downloading.
+     */
+    public int getNumberOfActiveSources() {
+        synchronized (workers) {
+            return workers.size();
+        }
+    }
+
+    /**
+     * Returns the scheduler of the pieces.
+     * @return The scheduler.
+     */
+    protected PieceScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.client.manager.AbstractDownload#getDownloadProgress()
+     */
+    public float getDownloadProgress() {
+        if (size == 0) {
+            return 100;
+        }
+        return (getDownloaded() * 100) / size;
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.client.manager.AbstractDownload#getSpeed()
+     */
+    public long getSpeed() {
+        if (getStatus() != DOWNLOADING) {
+            return 0;
+        }
+        long speed = 0;
+        Iterator it = getWorkers().iterator();
+        while (it.hasNext()) {
+            speed += ((SourceWorker) it.next()).chunks.getSpeed();
+        }
+        return speed;
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.client.manager.AbstractDownload#getChunkSize()
+     */
+    public int getChunkSize() {
+        List list = getWorkers();
+        if (list.isEmpty()) {
+            return ChunkSizeController.INITIAL_CHUNK_SIZE;
+        }
+        long total = 0;
+        Iterator it = list.iterator();
+        while (it.hasNext()) {
+            total += ((SourceWorker) it.next()).chunks.getChunkSize();
+        }
+        return (int) (total / list.size());
+    }
+
+    /**
+     * Returns a copy of the workers list.
+     */
+    private List getWorkers() {
+        synchronized (workers) {
+            return new ArrayList(workers.values());
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.client.manager.AbstractDownload#scheduled()
+     */
+    protected void scheduled() {
+        startWorkers();
+    }
+
+    /**
+     * Takes the download out of the scheduler queue. The slot of an active
+     * download is freed when its last worker stops.
+     */
+    private void leaveQueue() {
+        synchronized (workers) {
+            if (workers.isEmpty()) {
+                downloads.release(this);
+            }
+        }
+    }
+
+    /**
+     * Starts a worker to each source that is not downloading, up to the maximum
+     * number of sources of the <code>DownloadScheduler</code>. The download holds a
+     * slot of the scheduler while it has workers; without one, it waits in the queue.
+     */
+    private void startWorkers() {
+        List pipes = new ArrayList(transfersList);
+
+        synchronized (workers) {
+            if (workers.isEmpty() && (getStatus() != DOWNLOADING || !downloads.request(this))) {
+                return;
+            }
+            Iterator it = pipes.iterator();
+            while (it.hasNext() && workers.size() < downloads.getMaxSources()) {
+                TransferPipe pipe = (TransferPipe) it.next();
+                if (!workers.containsKey(pipe)) {
+                    SourceWorker worker = new SourceWorker(pipe);
+                    workers.put(pipe, worker);
+                    downloads.execute(worker);
+                }
+            }
+            if (workers.isEmpty()) {
+                downloads.release(this);
+            }
+        }
+    }
+
+    /**
+     * Returns the write-behind queue of the download, creating it if necessary.
+     * @return The queue.
+     * @throws IOException If the file could not be opened or the download is not running.
+     */
+    private synchronized WriteBehindQueue getQueue() throws IOException {
+        if (queue == null) {
+            //uma fila fechada por pause() nao eh recriada por um worker atrasado
+            if (getStatus() != DOWNLOADING) {
+                throw new IOException("The Download is not running.");
+            }
+            queue = new WriteBehindQueue(getWriter(), WriteBehindQueue.DEFAULT_CAPACITY);
+        }
+        return queue;
+    }
+
+    /**
+     * Writes the queued bytes before closing the writer. If they could not be
+     * written, the download changes to ERROR. The queue is closed without the
+     * Download lock, because its thread checks pieces and may need it.
+     */
+    protected void closeWriter() {
+        WriteBehindQueue aux;
+        synchronized (this) {
+            aux = queue;
+            queue = null;
+        }
+        if (aux != null) {
+            try {
+                aux.close();
+                //o writer ainda esta aberto e as pecas que esperavam um force sao registradas
+                journalUnforced(aux);
+            } catch (IOException e) {
+                logger.exception(getClass().getName() + ".closeWriter()", e);
+                synchronized (this) {
+                    if (getStatus() != CANCELED) {
+                        setStatus(ERROR);
+                    }
+                }
+            }
+        }
+        synchronized (this) {
+            //um resume() durante o close() ja abriu outra fila com o mesmo writer
+            if (queue == null) {
+                super.closeWriter();
+            }
+        }
+    }
+
+    /**
+     * Changes the status to ERROR and notifies the Observers.
+     */
+    private void fail() {
+        synchronized (this) {
+            if (getStatus() != DOWNLOADING) {
+                return;
+            }
+            setStatus(ERROR);
+        }
+        closeWriter();
+        logger.error(getClass().getName() + ".fail()", "The bytes of " + getFileName() + " could not be written.");
+        setChanged();
+        notifyObservers();
+    }
+
+    /**
+     * Changes the status to COMPLETED, or to ERROR if the hash of the file is
+     * wrong, and notifies the Observers, only once.
+     */
+    private void finish() {
+        WriteBehindQueue aux;
+        synchronized (this) {
+            if (getStatus() != DOWNLOADING) {
+                return;
+            }
+            aux = queue;
+        }
+        try {
+            //os bytes na fila sao escritos e as pecas verificadas antes do download ser dado como completo,
+            //sem o lock do download, que a thread da fila usa para baixar de novo uma peca corrompida
+            if (aux != null) {
+                aux.drain();
+            }
+            synchronized (this) {
+                if (getStatus() != DOWNLOADING || !scheduler.isComplete()) {
+                    //uma peca estava corrompida e sera baixada de novo, ou outro worker ja terminou
+                    return;
+                }
+                //o arquivo pode ter lixo de uma versao maior, que eh descartado
+                getWriter().setLength(size);
+            }
+            //sem as hashes das pecas, so o hash do arquivo inteiro mostra se os bytes estao certos
+            String md5 = HashUtil.createHash(file);
+            synchronized (this) {
+                if (getStatus() != DOWNLOADING) {
+                    return;
+                }
+                if (hash.equals(md5)) {
+                    setStatus(COMPLETED);
+                }
+                else {
+                    logger.error(getClass().getName() + ".finish()", "The hash of " + getFileName() + " is " + md5 + " instead of " + hash + ".");
+                    setStatus(ERROR);
+                }
+            }
+        } catch (IOException e) {
+            logger.exception(getClass().getName() + ".finish()", e);
+            synchronized (this) {
+                if (getStatus() != DOWNLOADING) {
+                    return;
+                }
+                setStatus(ERROR);
+            }
+        }
+        closeWriter();
+        if (getStatus() == COMPLETED) {
+            logger.info(getClass().getName() + ".finish()", "The Download is completed.");
+        }
+        setChanged();
+        notifyObservers();
+    }
+
+    /**
+     * Counts a bad piece to the source that sent it. A piece sent by many
+     * sources is not counted.
+     * @param sources The sources.
+     */
+    private void addBadPiece(Set sources) {
+        if (sources.size() != 1) {
+            return;
+        }
+        synchronized (badSources) {
+            Iterator it = sources.iterator();
+            while (it.hasNext()) {
+                Object pipe = it.next();
+                Integer count = (Integer) badSources.get(pipe);
+                badSources.put(pipe, new Integer(count == null ? 1 : count.intValue() + 1));
+            }
+        }
+    }
+
+    /**
+     * Informs if a source sent <code>MAX_BAD_PIECES</code> bad pieces.
+     * @param pipe The source.
+     * @return true if the source must be removed.
+     */
+    private boolean isBadSource(TransferPipe pipe) {
+        synchronized (badSources) {
+            Integer count = (Integer) badSources.get(pipe);
+            return count != null && count.intValue() >= MAX_BAD_PIECES;
+        }
+    }
+
+    /**
+     * Returns the String representation of this Download.
+     * @return The String representation of this Download.
+     */
+    public String toString() {
+        WriteBehindQueue aux = queue;
+        String temp;
+        temp = "[SwarmDownload] Seeds: " + getNumberOfActiveSources() + "/" + getNumberOfTransfers() + " " + file.getName() + " " + getDownloaded() + "/" + size + " [" + this.getDownloadProgress() + "%] " + " (" + getSpeed() + " KB/s, " + getChunkSize() / 1024 + " KB chunks, " + scheduler.getNumberOfActiveSegments() + " pieces" + (scheduler.isEndgame() ? ", endgame" : "") + (aux != null ? ", " + aux : "") + ") " + hash + "  ";
+        switch (getStatus()) {
+            case DOWNLOADING:
+                return temp + (downloads.isWaiting(this) ? "Queued." : "Downloading.");
+            case PAUSED:
+                return temp + "Paused.";
+            case CANCELED:
+                return temp + "Canceled.";
+            case COMPLETED:
+                return temp + "Completed.";
+            case ERROR:
+                return temp + "Error.";
+            case NOTRANSFERS:
+                return temp + "No Transfers.";
+            default:
+                return temp + "Searching.";
+        }
+    }
+
+    /**
+     * Checks a piece after its bytes are written. A corrupt piece goes back to
+     * the scheduler and its sources are blamed.
+     *
+     * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
+     */
+    private class PieceCheck implements Runnable {
+
+        private int piece;
+
+        private WriteBehindQueue from;
+
+        private PieceCheck(int piece, WriteBehindQueue from) {
+            this.piece = piece;
+            this.from = from;
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        public void run() {
+            try {
+                byte[] digest = HashUtil.createPieceHash(file, pieceHashes.getOffset(piece), pieceHashes.getLength(piece));
+                if (digest != null && pieceHashes.matches(piece, digest)) {
+                    pieceWritten(piece, from);
+                    return;
+                }
+            } catch (IOException e) {
+                logger.exception(getClass().getName() + ".run()", e);
+            }
+            Set sources = scheduler.invalidate(piece);
+            addBadPiece(sources);
+            logger.error(getClass().getName() + ".run()", "The piece " + piece + " of " + getFileName() + " is corrupt and will be downloaded again.");
+            //os workers sao iniciados fora da thread da fila, que finish() e closeWriter() esperam
+            downloads.execute(new Runnable() {
+                public void run() {
+                    startWorkers();
+                }
+            });
+        }
+    }
+
+    /**
+     * Downloads pieces from one source while there are pieces to be downloaded.
+     *
+     * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
+     */
+    private class SourceWorker implements Runnable {
+
+        private TransferPipe pipe;
+
+        private ChunkSizeController chunks;
+
+        private SourceWorker(TransferPipe pipe) {
+            this.pipe = pipe;
+            this.chunks = new ChunkSizeController(PipelinedFetcher.DEFAULT_RANGES);
+        }
+
+        /**
+         * Informs if this source should keep downloading.
+         */
+        private boolean isWanted() {
+            return getStatus() == DOWNLOADING && contains(pipe) && !isBadSource(pipe);
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        public void run() {
+            PipelinedFetcher fetcher = new PipelinedFetcher(pipe, PipelinedFetcher.DEFAULT_DEPTH);
+            boolean failed = false;
+            boolean diskFailed = false;
+
+            try {
+                PieceScheduler.Segment segment;
+                while (isWanted() && (segment = scheduler.claim(pipe)) != null) {
+                    try {
+                        download(segment, fetcher);
+                    } finally {
+                        //o que nao foi escrito volta para a fila
+                        fetcher.cancel();
+                        scheduler.release(segment);
+                    }
+                }
+            } catch (RemoteException e) {
+                failed = true;
+                logger.exception(getClass().getName() + ".run()", e);
+            } catch (IOException e) {
+                //depois de uma pausa a fila esta fechada, o que nao eh um erro
+                diskFailed = getStatus() == DOWNLOADING;
+                logger.exception(getClass().getName() + ".run()", e);
+            } finally {
+                fetcher.close();
+                synchronized (workers) {
+                    workers.remove(pipe);
+                    //o ultimo worker libera a vaga para o proximo download da fila
+                    if (workers.isEmpty()) {
+                        downloads.release(SwarmDownload.this);
+                    }
+                }
+            }
+
+            //a fonte mandou pecas corrompidas demais, ou todas as pecas que faltam vieram erradas dela
+            if (!failed && contains(pipe) && (isBadSource(pipe) || scheduler.isExcluded(pipe))) {
+                failed = true;
+                logger.error(getClass().getName() + ".run()", "A TransferPipe with " + getFileName() + " sent corrupt pieces.");
+            }
+
+            if (failed) {
+                removeTransferPipe(pipe);
+                logger.info(getClass().getName() + ".run()", "The TransferPipe was removed. This Download, now, has " + getNumberOfTransfers() + " Transfers.");
+            }
+
+            if (diskFailed) {
+                fail();
+            }
+            else if (scheduler.isComplete()) {
+                finish();
+            }
+            else if (getStatus() == DOWNLOADING && scheduler.getNumberOfUnclaimedSegments() > 0) {
+                //as fontes que ja terminaram voltam a baixar os segmentos devolvidos
+                startWorkers();
+            }
+        }
+
+        /**
+         * Commits the written bytes and, when they complete a piece, asks the
+         * piece to be checked after it reaches the disk. It's done holding the
+         * Download lock, so <code>finish()</code> sees all the checks in the queue.
+         */
+        private void commit(PieceScheduler.Segment segment, long offset, int length) throws IOException {
+            synchronized (SwarmDownload.this) {
+                //depois de uma pausa os bytes nao sao contados e serao baixados de novo
+                if (getStatus() != DOWNLOADING) {
+                    throw new IOException("The Download is not running.");
+                }
+                final int piece = scheduler.commit(segment, offset, length, chunks.getSpeed());
+                if (piece >= 0 && pieceHashes != null) {
+                    WriteBehindQueue aux = getQueue();
+                    aux.afterWrites(new PieceCheck(piece, aux));
+                }
+                else if (piece >= 0) {
+                    //sem hashes, a peca eh registrada quando chega ao arquivo
+                    final WriteBehindQueue aux = getQueue();
+                    aux.afterWrites(new Runnable() {
+                        public void run() {
+                            pieceWritten(piece, aux);
+                        }
+                    });
+                }
+            }
+        }
+
+        /**
+         * Downloads a segment until it ends or the download stops.
+         */
+        private void download(PieceScheduler.Segment segment, PipelinedFetcher fetcher) throws IOException {
+            while (isWanted()) {
+                //mantem ate DEFAULT_DEPTH pedidos em andamento
+                while (!fetcher.isFull()) {
+                    int chunkSize = chunks.getChunkSize();
+                    long[] range = scheduler.reserve(segment, (long) chunkSize * PipelinedFetcher.DEFAULT_RANGES);
+                    if (range == null) {
+                        break;
+                    }
+                    fetcher.requestRange(range[0], range[0] + range[1], chunkSize, PipelinedFetcher.DEFAULT_RANGES);
+                }
+
+                if (fetcher.getInFlight() == 0) {
+                    return;
+                }
+
+                PipelinedFetcher.Batch batch = fetcher.next();
+                chunks.record(batch.getBytes(), batch.getElapsed());
+                //os bytes sao escritos por outra thread enquanto os proximos sao pedidos
+                getQueue().put(batch.getOffsets(), batch.getBlocks());
+                for (int k = 0; k < batch.size(); k++) {
+                    byte[] block = batch.getBlock(k);
+                    commit(segment, batch.getOffset(k), block.length);
+                    //a fonte tem menos bytes do que o esperado
+                    if (block.length < batch.getLength(k)) {
+                        throw new RemoteException("The TransferPipe returned " + block.length + " of " + batch.getLength(k) + " bytes.");
+                    }
+                }
+            }
+        }
+    }
+
+}
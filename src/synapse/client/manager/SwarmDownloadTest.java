@@ -0,0 +1,337 @@
+package synapse.client.manager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import synapse.client.ClientConfig;
+import synapse.client.TransferPipeImpl;
+import synapse.common.FakeTransferPipe;
+import synapse.common.FileInfo;
+import synapse.common.PieceHashes;
+import synapse.util.HashUtil;
+
+/**
+ * Tests for SwarmDownload.
+ *
+ * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
+ */
+public class SwarmDownloadTest extends TestCase {
+
+    private byte[] content;
+
+    private String hash;
+
+    private SwarmDownload download;
+
+    /*
+     * @see TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        ClientConfig.setProperty(ClientConfig.SHARED_FOLDER, ClientConfig.getTestFolder());
+
+        this.content = new byte[ 4 * PieceScheduler.PIECE_SIZE + 1000 ];
+        for (int i = 0; i < this.content.length; i++) {
+            this.content[i] = (byte) (i % 251);
+        }
+        this.hash = HashUtil.createHashes(this.content, PieceScheduler.PIECE_SIZE).getFileHash();
+    }
+
+    /*
+     * @see TestCase#tearDown()
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        if (this.download != null) {
+            this.download.pause();
+            this.download.getFile().delete();
+        }
+    }
+
+    /**
+     * Tests a download from two real pipes.
+     */
+    public void testResume() throws Exception {
+        File file = new File(ClientConfig.getRootDir() + File.separator + "testFiles/test1.dat");
+        FileInfo resource = new FileInfo(file);
+
+        this.download = new SwarmDownload(new TransferPipeImpl(resource));
+        this.download.addTransferPipe(new TransferPipeImpl(resource));
+        this.download.resume();
+        this.waitDownload();
+
+        assertEquals(AbstractDownload.COMPLETED, this.download.getStatus());
+        assertEquals(HashUtil.createHash(file), HashUtil.createHash(this.download.getFile()));
+    }
+
+    /**
+     * Tests the download of an empty file.
+     */
+    public void testEmptyFile() throws Exception {
+        FakeTransferPipe pipe = new FakeTransferPipe("swarmEmpty.dat", HashUtil.createHashes(new byte[0], PieceScheduler.PIECE_SIZE).getFileHash(), new byte[0]);
+
+        this.download = new SwarmDownload(pipe);
+        this.download.resume();
+
+        assertEquals(AbstractDownload.COMPLETED, this.download.getStatus());
+        assertEquals(0, this.download.getFile().length());
+        assertEquals(100, this.download.getDownloadProgress(), 0);
+    }
+
+    /**
+     * Tests if a fast source downloads most of the file and a slow source does
+     * not hold the end of the download.
+     */
+    public void testSlowSource() throws Exception {
+        FakeTransferPipe fast = new FakeTransferPipe("swarmTest.dat", this.hash, this.content);
+        FakeTransferPipe slow = new FakeTransferPipe("swarmTest.dat", this.hash, this.content);
+        slow.setLatency(2000);
+
+        this.download = new SwarmDownload(slow);
+        this.download.addTransferPipe(fast);
+        this.download.resume();
+        this.waitDownload();
+
+        assertEquals(AbstractDownload.COMPLETED, this.download.getStatus());
+        assertTrue(Arrays.equals(this.content, this.readFile()));
+        assertTrue(this.download.getScheduler().getNumberOfSplits() > 0);
+        assertTrue(fast.getRangesCount() > slow.getRangesCount());
+    }
+
+    /**
+     * Tests if a broken source is removed and its pieces are downloaded by the others.
+     */
+    public void testBrokenSource() throws Exception {
+        FakeTransferPipe good = new FakeTransferPipe("swarmTest.dat", this.hash, this.content);
+        FakeTransferPipe broken = new FakeTransferPipe("swarmTest.dat", this.hash, this.content);
+        broken.setBroken(true);
+        good.setLatency(20);
+
+        this.download = new SwarmDownload(broken);
+        this.download.addTransferPipe(good);
+        this.download.resume();
+        this.waitDownload();
+
+        assertEquals(AbstractDownload.COMPLETED, this.download.getStatus());
+        assertTrue(Arrays.equals(this.content, this.readFile()));
+        assertFalse(this.download.contains(broken));
+        assertEquals(1, this.download.getNumberOfTransfers());
+    }
+
+    /**
+     * Tests if a paused download is saved and finished after being restored.
+     */
+    public void testRestore() throws Exception {
+        FakeTransferPipe pipe = new FakeTransferPipe("swarmTest.dat", this.hash, this.content);
+        pipe.setLatency(100);
+
+        this.download = new SwarmDownload(pipe);
+        this.download.resume();
+        Thread.sleep(300);
+        this.download.pause();
+        while (this.download.getNumberOfActiveSources() > 0) {
+            Thread.sleep(10);
+        }
+        long downloaded = this.download.getDownloaded();
+        assertTrue(downloaded > 0);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeObject(this.download);
+        output.close();
+        ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        this.download = (SwarmDownload) input.readObject();
+        this.download.prepareInstance();
+
+        assertEquals(AbstractDownload.NOTRANSFERS, this.download.getStatus());
+        assertEquals(0, this.download.getNumberOfTransfers());
+        assertEquals(downloaded, this.download.getDownloaded());
+
+        pipe.setLatency(0);
+        this.download.addTransferPipe(pipe);
+        this.waitDownload();
+
+        assertEquals(AbstractDownload.COMPLETED, this.download.getStatus());
+        assertTrue(Arrays.equals(this.content, this.readFile()));
+    }
+
+    /**
+     * Tests if the pieces recorded in the journal are kept by a download created
+     * from it, as after a crash.
+     */
+    public void testJournalRestore() throws Exception {
+        File journalFile = new File(ClientConfig.getTestFolder() + File.separator + "swarm.journal");
+        journalFile.delete();
+        try {
+            FakeTransferPipe pipe = new FakeTransferPipe("swarmTest.dat", this.hash, this.content);
+            pipe.setLatency(100);
+
+            ClientConfig.setProperty(ClientConfig.DOWNLOAD_SYNC, DownloadWriter.SYNC_ON_CLOSE);
+            DownloadJournal journal = new DownloadJournal(journalFile, false, 1000);
+            this.download = new SwarmDownload(pipe);
+            this.download.setJournal(journal);
+            this.download.resume();
+            while (this.download.getScheduler().getDonePieces().cardinality() < 2) {
+                Thread.sleep(10);
+            }
+            //as pecas so vao para o journal depois que os bytes sao forcados para o disco
+            Thread.sleep(200);
+            assertEquals(0, ((DownloadJournal.Entry) journal.getEntries().get(0)).getDonePieces().cardinality());
+            this.download.pause();
+            while (this.download.getNumberOfActiveSources() > 0) {
+                Thread.sleep(10);
+            }
+
+            //o journal nao foi fechado
+            DownloadJournal.Entry entry = (DownloadJournal.Entry) new DownloadJournal(journalFile, false, 1000).getEntries().get(0);
+            assertEquals(this.download.getScheduler().getDonePieces(), entry.getDonePieces());
+            this.download = new SwarmDownload(entry);
+
+            assertEquals(AbstractDownload.NOTRANSFERS, this.download.getStatus());
+            assertEquals(entry.getDonePieces().cardinality() * (long) PieceScheduler.PIECE_SIZE, this.download.getDownloaded());
+
+            pipe.setLatency(0);
+            this.download.addTransferPipe(pipe);
+            this.waitDownload();
+
+            assertEquals(AbstractDownload.COMPLETED, this.download.getStatus());
+            assertTrue(Arrays.equals(this.content, this.readFile()));
+        } finally {
+            journalFile.delete();
+        }
+    }
+
+    /**
+     * Tests if the pieces of a source that sends wrong bytes are downloaded again
+     * from another source, and the bad source is removed.
+     */
+    public void testCorruptSource() throws Exception {
+        FakeTransferPipe good = new FakeTransferPipe("swarmTest.dat", this.hash, this.content);
+        FakeTransferPipe bad = new FakeTransferPipe("swarmTest.dat", this.hash, this.content);
+        String root = good.createPieceHashes(PieceScheduler.PIECE_SIZE).getRoot();
+        good.setLatency(20);
+        bad.setCorrupt(0, this.content.length);
+
+        this.download = new SwarmDownload(good, root);
+        this.download.addTransferPipe(bad);
+        this.download.resume();
+        this.waitDownload();
+
+        assertEquals(AbstractDownload.COMPLETED, this.download.getStatus());
+        assertTrue(Arrays.equals(this.content, this.readFile()));
+        assertTrue(this.download.getScheduler().getNumberOfBadPieces() > 0);
+        assertFalse(this.download.contains(bad));
+        assertTrue(this.download.contains(good));
+    }
+
+    /**
+     * Tests if a download whose last piece is corrupt does not stop while the
+     * piece is checked, and gets the piece again from a new source.
+     */
+    public void testCorruptLastPiece() throws Exception {
+        FakeTransferPipe bad = new FakeTransferPipe("swarmTest.dat", this.hash, this.content);
+        String root = bad.createPieceHashes(PieceScheduler.PIECE_SIZE).getRoot();
+        bad.setCorrupt(4 * PieceScheduler.PIECE_SIZE, this.content.length);
+
+        this.download = new SwarmDownload(bad, root);
+        this.download.resume();
+
+        //a fonte eh removida quando so falta a peca que ela corrompeu
+        long deadline = System.currentTimeMillis() + 10000;
+        while (this.download.contains(bad) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(this.download.contains(bad));
+        assertEquals(AbstractDownload.NOTRANSFERS, this.download.getStatus());
+        assertEquals(4 * PieceScheduler.PIECE_SIZE, this.download.getDownloaded());
+        assertEquals(1, this.download.getScheduler().getNumberOfBadPieces());
+
+        FakeTransferPipe good = new FakeTransferPipe("swarmTest.dat", this.hash, this.content);
+        good.createPieceHashes(PieceScheduler.PIECE_SIZE);
+        this.download.addTransferPipe(good);
+
+        deadline = System.currentTimeMillis() + 10000;
+        while (this.download.getStatus() == AbstractDownload.DOWNLOADING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(AbstractDownload.COMPLETED, this.download.getStatus());
+        assertTrue(Arrays.equals(this.content, this.readFile()));
+    }
+
+    /**
+     * Tests if only the correct pieces of a file found in the shared folder are kept.
+     */
+    public void testVerifiedResume() throws Exception {
+        FakeTransferPipe pipe = new FakeTransferPipe("swarmTest.dat", this.hash, this.content);
+        String root = pipe.createPieceHashes(PieceScheduler.PIECE_SIZE).getRoot();
+
+        // the first two pieces are right, the third is wrong and the file stops in the fourth
+        byte[] partial = new byte[ 3 * PieceScheduler.PIECE_SIZE + 1000 ];
+        System.arraycopy(this.content, 0, partial, 0, partial.length);
+        partial[2 * PieceScheduler.PIECE_SIZE + 10]++;
+        File file = new File(ClientConfig.getSharedFolder() + File.separator + "swarmTest.dat");
+        FileOutputStream output = new FileOutputStream(file);
+        output.write(partial);
+        output.close();
+
+        this.download = new SwarmDownload(pipe, root);
+        assertEquals(2 * PieceScheduler.PIECE_SIZE, this.download.getDownloaded());
+
+        this.download.resume();
+        this.waitDownload();
+
+        assertEquals(AbstractDownload.COMPLETED, this.download.getStatus());
+        assertTrue(Arrays.equals(this.content, this.readFile()));
+        assertEquals(0, this.download.getScheduler().getNumberOfBadPieces());
+    }
+
+    /**
+     * Tests if the piece hashes of a source are ignored when their root is not the
+     * one of the search, and if a file with wrong bytes is not completed.
+     */
+    public void testForgedHashes() throws Exception {
+        String root = HashUtil.createHashes(this.content, PieceScheduler.PIECE_SIZE).getRoot();
+        PieceHashes other = HashUtil.createHashes(new byte[ this.content.length ], PieceScheduler.PIECE_SIZE);
+        byte[][] pieces = new byte[ other.getNumberOfPieces() ][];
+        for (int i = 0; i < pieces.length; i++) {
+            pieces[i] = other.getPieceHash(i);
+        }
+        //hashes consistentes de outros bytes, com o hash do arquivo certo
+        FakeTransferPipe bad = new FakeTransferPipe("swarmTest.dat", this.hash, this.content);
+        bad.setPieceHashes(new PieceHashes(this.hash, this.content.length, PieceScheduler.PIECE_SIZE, pieces));
+        bad.setCorrupt(10, 20);
+
+        this.download = new SwarmDownload(bad, root);
+        this.download.resume();
+        this.waitDownload();
+
+        assertEquals(AbstractDownload.ERROR, this.download.getStatus());
+        assertEquals(0, this.download.getScheduler().getNumberOfBadPieces());
+    }
+
+    private void waitDownload() throws InterruptedException {
+        while (this.download.getStatus() == AbstractDownload.DOWNLOADING) {
+            Thread.sleep(10);
+        }
+    }
+
+    private byte[] readFile() throws Exception {
+        File file = this.download.getFile();
+        byte[] array = new byte[ (int) file.length() ];
+        FileInputStream input = new FileInputStream(file);
+        int read = 0;
+        while (read < array.length) {
+            read += input.read(array, read, array.length - read);
+        }
+        input.close();
+        return array;
+    }
+
+}
@@ -6,14 +6,21 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
 
 import synapse.client.TransferPipeImpl;
+import synapse.common.ContentHash;
 import synapse.common.Consumer;
+import synapse.common.WorkerThreads;
 
 /**
  * Class that represents a manager for the <code>TransferPipe</code>s. It's
  * important to keeps track the <code>TransferPipe</code> s and use its to
  * communicate (see information, ivalidate etc) with the pipes.
+ * <p>
+ * The calls to the consumers are made out of the lock of the manager, and the
+ * consumers are pinged in the threads of <code>WorkerThreads</code>, so a slow
+ * consumer doesn't hold the other uploads.
  * 
  * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
  */
@@ -22,6 +29,7 @@ public class UploadManager {
 	private LinkedList runningUploads, waitQueue;
 	public static final int  MAX_UPLOADS_RUNNING = 5;
 	private static UploadManager uniqueInstance;
+	private ExecutorService pingers;
 
 	/**
 	 * Constructs a new UploadManager that contains an ArrayList of
@@ -30,26 +38,26 @@ public class UploadManager {
 	private UploadManager() {
 		this.runningUploads = new LinkedList();
 		this.waitQueue = new LinkedList();
+		this.pingers = WorkerThreads.newPool("UploadManager", MAX_UPLOADS_RUNNING);
 
 		Timer timer = new Timer();
 		timer.schedule(new TimerTask() {
 
 			public void run() {
 
-				Iterator it = new LinkedList(runningUploads).iterator();
+				Iterator it = getRunningUploads().iterator();
 				while (it.hasNext()) {
-				    Upload upload = (Upload) it.next();
-					try {
-						upload.consumer.ping();
-					} catch (RemoteException e) {
-						upload.pipe.invalidate();
-						
-						runningUploads.remove(upload);
-						if (!waitQueue.isEmpty()) {
-							Upload aux = (Upload) waitQueue.removeFirst();
-							deliverFile(aux.consumer, aux.pipe);
-						}
-					}
+				    final Upload upload = (Upload) it.next();
+				    pingers.execute(new Runnable() {
+				    	public void run() {
+				    		try {
+				    			upload.consumer.ping();
+				    		} catch (RemoteException e) {
+				    			upload.pipe.invalidate();
+				    			finished(upload);
+				    		}
+				    	}
+				    });
 				}
 
 			}
@@ -82,19 +90,43 @@ public class UploadManager {
 	 * @param consumer The consumer that will receive the file.
 	 * @param pipe The <code>Upload</code> object.
 	 */
-	public synchronized void deliverFile(Consumer consumer, TransferPipeImpl pipe) {
+	public void deliverFile(Consumer consumer, TransferPipeImpl pipe) {
 	    
 		Upload up =  new Upload(consumer, pipe);
 		
-	    if (this.runningUploads.size() < UploadManager.MAX_UPLOADS_RUNNING) {
-	    	try {
-				up.consumer.hereIsFile(pipe);
-				this.runningUploads.add(up);
-			} catch (RemoteException e) {
+		synchronized (this) {
+		    if (this.runningUploads.size() >= UploadManager.MAX_UPLOADS_RUNNING) {
+		    	this.waitQueue.add(up);
+		    	return;
+		    }
+		    //a vaga e reservada antes da chamada remota, feita fora do lock
+		    this.runningUploads.add(up);
+		}
+		
+		try {
+			up.consumer.hereIsFile(pipe);
+		} catch (RemoteException e) {
+			this.finished(up);
+		}
+	}
+	
+	/**
+	 * Frees the place of an upload and delivers the first upload waiting.
+	 * 
+	 * @param upload The upload finished.
+	 */
+	private void finished(Upload upload) {
+		Upload next = null;
+		synchronized (this) {
+			if (!this.runningUploads.remove(upload)) {
+				return;
+			}
+			if (!this.waitQueue.isEmpty()) {
+				next = (Upload) this.waitQueue.removeFirst();
 			}
-	    }
-		else {
-			this.waitQueue.add(up);
+		}
+		if (next != null) {
+			this.deliverFile(next.consumer, next.pipe);
 		}
 	}
 	
@@ -154,20 +186,17 @@ public class UploadManager {
 	 * @param hash The hash of the file to be canceled.
 	 * @throws HashDoesNotExistException If the specified hash does not exist.
 	 */
-	public synchronized void invalidate(String hash) throws HashDoesNotExistException {
+	public void invalidate(String hash) throws HashDoesNotExistException {
+		ContentHash contentHash = ContentHash.valueOf(hash);
 		Iterator it = this.getAllUploads().iterator();
 		Upload up;
 		boolean hashExists = false;
 		while (it.hasNext()) {
 			up = (Upload) it.next();
 			try {
-				if (up.pipe.getHash().equals(hash)) {
+				if (up.pipe.getContentHash().equals(contentHash)) {
 					up.pipe.invalidate();
-					this.runningUploads.remove(up);
-					if (!this.waitQueue.isEmpty()) {
-						Upload aux = (Upload)this.waitQueue.removeFirst();
-						this.deliverFile(aux.consumer, aux.pipe);
-					}
+					this.finished(up);
 					hashExists = true;
 				}
 			} catch (RemoteException e) {}
@@ -0,0 +1,389 @@
+package synapse.client.manager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+
+import org.ourgrid.yal.Logger;
+
+/**
+ * Writes the bytes of a download in its own thread, so the sources can ask for the
+ * next bytes while the last ones are written. The blocks are copied to pooled direct
+ * buffers and kept in a queue of at most <code>capacity</code> bytes; when the disk
+ * falls behind, <code>put</code> waits for space. A failed write is thrown by the next
+ * call to <code>put</code>, <code>drain</code> or <code>close</code>.
+ *
+ * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
+ * @author <p>Thiago Emmanuel, thiago.manel@gmail.com</p>
+ */
+public class WriteBehindQueue implements Runnable {
+
+    /**
+     * The default maximum number of bytes waiting to be written.
+     */
+    public static final int DEFAULT_CAPACITY = 8 * 1024 * 1024;
+
+    /**
+     * The size of the pooled buffers.
+     */
+    public static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * The maximum number of buffers kept in the pool.
+     */
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    /**
+     * The free direct buffers, shared by all queues.
+     */
+    private static LinkedList pool = new LinkedList();
+
+    private DownloadWriter writer;
+
+    private int capacity;
+
+    /**
+     * The entries waiting to be written, the oldest first.
+     */
+    private LinkedList entries;
+
+    private long queuedBytes;
+
+    /**
+     * true while the writer thread is writing an entry.
+     */
+    private boolean writing;
+
+    private boolean closed;
+
+    private IOException failure;
+
+    private int maxDepth;
+
+    private long writes;
+
+    private long writeTime;
+
+    private long blockedPuts;
+
+    /**
+     * Creates a new WriteBehindQueue and starts its thread.
+     *
+     * @param writer The writer of the download.
+     * @param capacity The maximum number of bytes waiting to be written.
+     */
+    public WriteBehindQueue(DownloadWriter writer, int capacity) {
+        this.writer = writer;
+        this.capacity = Math.max(BUFFER_SIZE, capacity);
+        this.entries = new LinkedList();
+
+        Thread thread = new Thread(this, "WriteBehindQueue");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a block to be written, waiting while the queue is full.
+     *
+     * @param block The bytes.
+     * @param position The position of the bytes in the file.
+     * @throws IOException If a previous write failed or the queue is closed.
+     */
+    public void put(byte[] block, long position) throws IOException {
+        int offset = 0;
+        while (offset < block.length) {
+            int length = Math.min(BUFFER_SIZE, block.length - offset);
+            this.waitSpace(length);
+
+            ByteBuffer buffer = borrow();
+            buffer.put(block, offset, length);
+            buffer.flip();
+
+            synchronized (this) {
+                //a fila pode ter sido fechada enquanto o bloco era copiado
+                if (this.closed || this.failure != null) {
+                    this.queuedBytes -= length;
+                    this.notifyAll();
+                    giveBack(buffer);
+                    this.checkFailure();
+                    throw new IOException("The queue is closed");
+                }
+                this.entries.addLast(new Entry(buffer, position + offset));
+                this.maxDepth = Math.max(this.maxDepth, this.entries.size());
+                this.notifyAll();
+            }
+            offset += length;
+        }
+    }
+
+    /**
+     * Queues the blocks of a batch.
+     *
+     * @param offsets The position of each block.
+     * @param blocks The blocks.
+     * @throws IOException If a previous write failed or the queue is closed.
+     */
+    public void put(long[] offsets, byte[][] blocks) throws IOException {
+        for (int k = 0; k < blocks.length; k++) {
+            this.put(blocks[k], offsets[k]);
+        }
+    }
+
+    /**
+     * Runs an action in the writer thread after all the blocks queued so far
+     * are written. The action is skipped if a write failed.
+     *
+     * @param action The action.
+     * @throws IOException If a previous write failed or the queue is closed.
+     */
+    public synchronized void afterWrites(Runnable action) throws IOException {
+        this.checkFailure();
+        if (this.closed) {
+            throw new IOException("The queue is closed");
+        }
+        this.entries.addLast(new Entry(action));
+        this.notifyAll();
+    }
+
+    /**
+     * Waits until all the queued bytes are written.
+     *
+     * @throws IOException If a write failed.
+     */
+    public synchronized void drain() throws IOException {
+        try {
+            while ((!this.entries.isEmpty() || this.writing) && this.failure == null) {
+                this.wait();
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while waiting the queued bytes");
+        }
+        this.checkFailure();
+    }
+
+    /**
+     * Writes the queued bytes and stops the thread. New blocks are not accepted.
+     *
+     * @throws IOException If a write failed.
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.notifyAll();
+        }
+        this.drain();
+    }
+
+    /**
+     * Forces the bytes written so far to disk. The queued bytes are not waited;
+     * an action calls it to force the bytes queued before the action.
+     *
+     * @throws IOException If the bytes could not be forced.
+     */
+    public void sync() throws IOException {
+        this.writer.sync();
+    }
+
+    /**
+     * The writer thread.
+     */
+    public void run() {
+        while (true) {
+            Entry entry;
+            synchronized (this) {
+                while (this.entries.isEmpty() && !this.closed) {
+                    try {
+                        this.wait();
+                    } catch (InterruptedException e) {
+                        // do nothing
+                    }
+                }
+                if (this.entries.isEmpty()) {
+                    return;
+                }
+                entry = (Entry) this.entries.removeFirst();
+                this.writing = true;
+            }
+
+            if (entry.action != null) {
+                try {
+                    if (this.getFailure() == null) {
+                        entry.action.run();
+                    }
+                } catch (RuntimeException e) {
+                    //uma acao com erro nao para a escrita das outras
+                    Logger.getInstance().exception(getClass().getName() + ".run()", e);
+                }
+                synchronized (this) {
+                    this.writing = false;
+                    this.notifyAll();
+                }
+                continue;
+            }
+
+            int length = entry.buffer.remaining();
+            long start = System.nanoTime();
+            IOException error = null;
+            try {
+                if (this.getFailure() == null) {
+                    this.writer.write(entry.buffer, entry.position);
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+            long elapsed = System.nanoTime() - start;
+            giveBack(entry.buffer);
+
+            synchronized (this) {
+                if (error != null && this.failure == null) {
+                    this.failure = error;
+                }
+                this.queuedBytes -= length;
+                this.writes++;
+                this.writeTime += elapsed;
+                this.writing = false;
+                this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of blocks waiting to be written.
+     *
+     * @return The queue depth.
+     */
+    public synchronized int getDepth() {
+        return this.entries.size();
+    }
+
+    /**
+     * Returns the largest depth reached by the queue.
+     *
+     * @return The largest depth.
+     */
+    public synchronized int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    /**
+     * Returns the number of bytes waiting to be written.
+     *
+     * @return The number of bytes.
+     */
+    public synchronized long getQueuedBytes() {
+        return this.queuedBytes;
+    }
+
+    /**
+     * Returns the number of blocks written.
+     *
+     * @return The number of writes.
+     */
+    public synchronized long getWrites() {
+        return this.writes;
+    }
+
+    /**
+     * Returns the average time spent writing a block.
+     *
+     * @return The average write latency, in microseconds.
+     */
+    public synchronized long getAverageWriteLatency() {
+        return this.writes == 0 ? 0 : this.writeTime / this.writes / 1000;
+    }
+
+    /**
+     * Returns the number of times a source waited because the queue was full.
+     *
+     * @return The number of blocked puts.
+     */
+    public synchronized long getBlockedPuts() {
+        return this.blockedPuts;
+    }
+
+    /**
+     * Returns the String representation of this queue.
+     * @return The String representation of this queue.
+     */
+    public synchronized String toString() {
+        return this.entries.size() + " queued (" + this.queuedBytes / 1024 + " KB), " + this.getAverageWriteLatency() + " us/write";
+    }
+
+    private synchronized IOException getFailure() {
+        return this.failure;
+    }
+
+    private void checkFailure() throws IOException {
+        if (this.failure != null) {
+            IOException exception = new IOException("A queued write failed: " + this.failure.getMessage());
+            exception.initCause(this.failure);
+            throw exception;
+        }
+    }
+
+    /**
+     * Waits until there is space to <code>length</code> bytes and reserves it.
+     */
+    private synchronized void waitSpace(int length) throws IOException {
+        boolean blocked = false;
+        try {
+            while (this.queuedBytes + length > this.capacity && this.failure == null && !this.closed) {
+                blocked = true;
+                this.wait();
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while waiting space in the queue");
+        }
+        this.checkFailure();
+        if (this.closed) {
+            throw new IOException("The queue is closed");
+        }
+        if (blocked) {
+            this.blockedPuts++;
+        }
+        this.queuedBytes += length;
+    }
+
+    private static ByteBuffer borrow() {
+        synchronized (pool) {
+            if (!pool.isEmpty()) {
+                return (ByteBuffer) pool.removeFirst();
+            }
+        }
+        return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private static void giveBack(ByteBuffer buffer) {
+        buffer.clear();
+        synchronized (pool) {
+            if (pool.size() < MAX_POOLED_BUFFERS) {
+                pool.addLast(buffer);
+            }
+        }
+    }
+
+    /**
+     * A buffer and its position in the file, or an action to be run.
+     */
+    private static class Entry {
+
+        private ByteBuffer buffer;
+
+        private long position;
+
+        private Runnable action;
+
+        private Entry(ByteBuffer buffer, long position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        private Entry(Runnable action) {
+            this.action = action;
+        }
+    }
+
+}
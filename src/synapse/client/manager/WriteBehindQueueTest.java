@@ -0,0 +1,204 @@
+package synapse.client.manager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import synapse.client.ClientConfig;
+
+/**
+ * Tests for WriteBehindQueue.
+ *
+ * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
+ */
+public class WriteBehindQueueTest extends TestCase {
+
+    private File file;
+
+    private byte[] content;
+
+    /*
+     * @see TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.file = new File(ClientConfig.getTestFolder() + File.separator + "queueTest.dat");
+        this.file.delete();
+
+        this.content = new byte[ 3 * WriteBehindQueue.BUFFER_SIZE + 1000 ];
+        for (int i = 0; i < this.content.length; i++) {
+            this.content[i] = (byte) (i % 253);
+        }
+    }
+
+    /*
+     * @see TestCase#tearDown()
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        this.file.delete();
+    }
+
+    /**
+     * Tests if the queued blocks are written after <code>drain</code>.
+     */
+    public void testPutAndDrain() throws Exception {
+        DownloadWriter writer = new DownloadWriter(this.file, DownloadWriter.SYNC_NEVER);
+        WriteBehindQueue queue = new WriteBehindQueue(writer, WriteBehindQueue.DEFAULT_CAPACITY);
+
+        // a block bigger than a buffer and two blocks out of order
+        int half = this.content.length / 2;
+        queue.put(this.block(half, this.content.length - half), half);
+        queue.put(new long[] { 0, 1000 }, new byte[][] { this.block(0, 1000), this.block(1000, half - 1000) });
+        queue.drain();
+
+        assertEquals(0, queue.getDepth());
+        assertEquals(0, queue.getQueuedBytes());
+        assertTrue(queue.getWrites() >= 4);
+        queue.close();
+        writer.close();
+        assertTrue(Arrays.equals(this.content, this.readFile()));
+    }
+
+    /**
+     * Tests if <code>put</code> waits when the disk is slower than the sources.
+     */
+    public void testBackpressure() throws Exception {
+        DownloadWriter writer = new SlowWriter(this.file, 50);
+        WriteBehindQueue queue = new WriteBehindQueue(writer, WriteBehindQueue.BUFFER_SIZE);
+
+        long start = System.currentTimeMillis();
+        for (int k = 0; k < 4; k++) {
+            queue.put(this.block(k * 1000, 1000), k * 1000);
+            queue.put(this.block(0, WriteBehindQueue.BUFFER_SIZE), 10000);
+        }
+        assertTrue(queue.getBlockedPuts() > 0);
+        assertTrue(queue.getQueuedBytes() <= WriteBehindQueue.BUFFER_SIZE);
+
+        queue.close();
+        assertTrue(System.currentTimeMillis() - start >= 300);
+        assertTrue(queue.getAverageWriteLatency() >= 50000);
+        writer.close();
+    }
+
+    /**
+     * Tests if a failed write is thrown by the next calls.
+     */
+    public void testFailure() throws Exception {
+        DownloadWriter writer = new SlowWriter(this.file, -1);
+        WriteBehindQueue queue = new WriteBehindQueue(writer, WriteBehindQueue.DEFAULT_CAPACITY);
+
+        queue.put(this.block(0, 1000), 0);
+        try {
+            queue.drain();
+            fail();
+        } catch (IOException e) {
+            // ok
+        }
+        try {
+            queue.put(this.block(0, 1000), 0);
+            fail();
+        } catch (IOException e) {
+            // ok
+        }
+        writer.close();
+    }
+
+    /**
+     * Tests if a closed queue does not accept blocks.
+     */
+    public void testClose() throws Exception {
+        DownloadWriter writer = new DownloadWriter(this.file, DownloadWriter.SYNC_NEVER);
+        WriteBehindQueue queue = new WriteBehindQueue(writer, WriteBehindQueue.DEFAULT_CAPACITY);
+
+        queue.put(this.block(0, 1000), 0);
+        queue.close();
+        assertEquals(1000, this.file.length());
+        try {
+            queue.put(this.block(0, 1000), 0);
+            fail();
+        } catch (IOException e) {
+            // ok
+        }
+        writer.close();
+    }
+
+    /**
+     * Tests if a block put while the queue is closed is written or rejected, never
+     * left in the queue.
+     */
+    public void testPutWhileClosing() throws Exception {
+        DownloadWriter writer = new DownloadWriter(this.file, DownloadWriter.SYNC_NEVER);
+        final byte[] block = this.block(0, this.content.length);
+
+        for (int k = 0; k < 100; k++) {
+            final WriteBehindQueue queue = new WriteBehindQueue(writer, WriteBehindQueue.DEFAULT_CAPACITY);
+            Thread source = new Thread() {
+                public void run() {
+                    try {
+                        while (true) {
+                            queue.put(block, 0);
+                        }
+                    } catch (IOException e) {
+                        // fechada
+                    }
+                }
+            };
+            source.start();
+            Thread.sleep(1);
+            queue.close();
+            source.join(5000);
+
+            assertFalse(source.isAlive());
+            assertEquals(0, queue.getDepth());
+            assertEquals(0, queue.getQueuedBytes());
+        }
+        writer.close();
+    }
+
+    private byte[] block(int start, int length) {
+        byte[] array = new byte[ length ];
+        System.arraycopy(this.content, start, array, 0, length);
+        return array;
+    }
+
+    private byte[] readFile() throws Exception {
+        byte[] array = new byte[ (int) this.file.length() ];
+        FileInputStream input = new FileInputStream(this.file);
+        int read = 0;
+        while (read < array.length) {
+            read += input.read(array, read, array.length - read);
+        }
+        input.close();
+        return array;
+    }
+
+    /**
+     * A writer that sleeps before each write, or fails when the delay is negative.
+     */
+    private static class SlowWriter extends DownloadWriter {
+
+        private long delay;
+
+        private SlowWriter(File file, long delay) throws IOException {
+            super(file, DownloadWriter.SYNC_NEVER);
+            this.delay = delay;
+        }
+
+        public void write(ByteBuffer buffer, long position) throws IOException {
+            if (this.delay < 0) {
+                throw new IOException("The disk is full");
+            }
+            try {
+                Thread.sleep(this.delay);
+            } catch (InterruptedException e) {
+                // do nothing
+            }
+            super.write(buffer, position);
+        }
+    }
+
+}
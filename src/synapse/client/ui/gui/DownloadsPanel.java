@@ -73,8 +73,9 @@ public class DownloadsPanel extends JPanel implements ActionListener, Refreshabl
 	private final int FILE_NAME = 1;
 	private final int FILE_SIZE = 2;
 	private final int SPEED = 3;
-	private final int PROGRESS = 4;
-	private final int FILE_HASH = 5;
+	private final int CHUNK_SIZE = 4;
+	private final int PROGRESS = 5;
+	private final int FILE_HASH = 6;
 	
 	
 	/**
@@ -139,7 +140,7 @@ public class DownloadsPanel extends JPanel implements ActionListener, Refreshabl
 			if(!this.downloadsTable.containsDownload(download)) {
 				try {
 					float speed = DownloadManager.getInstance().getSpeed(download.getHash());
-					this.downloadsTable.addRow(download.getNumberOfTransfers(),download.getFileName(),download.getSize(),speed, download.getDownloadProgress(),download.getHash());
+					this.downloadsTable.addRow(download.getNumberOfTransfers(),download.getFileName(),download.getSize(),speed, download.getChunkSize(), download.getDownloadProgress(),download.getHash());
 				}
 				catch(Exception e){
 					
@@ -218,7 +219,7 @@ public class DownloadsPanel extends JPanel implements ActionListener, Refreshabl
 		 * @param downloads
 		 */
 		public DownloadsTable(Vector downloads){
-			super(downloads, new Vector(Arrays.asList(new Object[] {"Seeds", "File Name", "File Size", "Speed","Status","Hash"})));
+			super(downloads, new Vector(Arrays.asList(new Object[] {"Seeds", "File Name", "File Size", "Speed", "Chunk", "Status","Hash"})));
 			this.downloads = downloads;
 			super.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 			TableColumn column = this.getColumn("Seeds");
@@ -230,6 +231,9 @@ public class DownloadsPanel extends JPanel implements ActionListener, Refreshabl
 			column = this.getColumn("Speed");
 			column.setMaxWidth(70);
 			column.setMinWidth(50);
+			column = this.getColumn("Chunk");
+			column.setMaxWidth(70);
+			column.setMinWidth(50);
 		}
 		
 		/**
@@ -239,15 +243,17 @@ public class DownloadsPanel extends JPanel implements ActionListener, Refreshabl
 		 * @param fileName
 		 * @param fileSize
 		 * @param speed
+		 * @param chunkSize
 		 * @param progress
 		 * @param hash
 		 */
-		public void addRow(int seeds, String fileName, long fileSize, float speed, float progress, String hash) {
+		public void addRow(int seeds, String fileName, long fileSize, float speed, int chunkSize, float progress, String hash) {
 			Vector newRow = new Vector();
 			JProgressBar status = new JProgressBar();
 			status.setValue((int) progress);
 			String downloadSpeed = speed + " KB/s";
-			Object newRowInfo[]= new Object[] {new Integer(seeds).toString(), fileName, fileSize/1024 +" KB", downloadSpeed, status, hash}; 
+			String downloadChunk = chunkSize/1024 + " KB";
+			Object newRowInfo[]= new Object[] {new Integer(seeds).toString(), fileName, fileSize/1024 +" KB", downloadSpeed, downloadChunk, status, hash}; 
 			newRow.addAll(Arrays.asList(newRowInfo));
 			downloads.add(newRow);
 			TableColumn column = this.getColumn("Status");
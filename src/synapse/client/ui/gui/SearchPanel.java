@@ -31,6 +31,7 @@ import javax.swing.table.TableColumn;
 import synapse.client.manager.HashDoesNotExistException;
 import synapse.client.manager.ReplyManager;
 import synapse.client.manager.RequestIDDoesNotExistException;
+import synapse.common.ContentHash;
 import synapse.common.FileInfo;
 
 /**
@@ -214,7 +215,7 @@ public class SearchPanel extends JPanel implements ActionListener, RefreshablePa
 				Set hashSet = resultMap.keySet();
 				Iterator hashIterator = hashSet.iterator();
 				while(hashIterator.hasNext()) {
-					String fileHash = (String)hashIterator.next();
+					ContentHash fileHash = (ContentHash)hashIterator.next();
 					FileInfo fileInfo;
 					String seeds;
 					try {
@@ -222,7 +223,7 @@ public class SearchPanel extends JPanel implements ActionListener, RefreshablePa
 						seeds = Integer.toString(replyManager.getProviders(idInUse.longValue(), fileHash).size());
 						String fileName = fileInfo.getFileName();
 						String fileSize = Long.toString(fileInfo.getSize())+"Kb";
-						resultTable.addRow(seeds, fileName, fileSize, fileHash);
+						resultTable.addRow(seeds, fileName, fileSize, fileHash.toString());
 					} catch (RequestIDDoesNotExistException e) {
 						// do nothing
 					} catch (HashDoesNotExistException e) {
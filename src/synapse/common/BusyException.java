@@ -0,0 +1,32 @@
+package synapse.common;
+
+import java.rmi.RemoteException;
+
+/**
+ * This exception is thrown when an event is rejected because the queue
+ * of the <code>EventProcessor</code> is full. The peer is alive, only busy,
+ * so the request may be made again later.
+ * 
+ * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+ * 
+ * @see EventLimit
+ */
+public class BusyException extends RemoteException {
+
+    /**
+     * Creates the exception.
+     */
+    public BusyException() {
+        super("The peer is busy");
+    }
+
+    /**
+     * Creates the exception with another message.
+     * 
+     * @param msg The message.
+     */
+    public BusyException(String msg) {
+    	super(msg);
+    }
+
+}
@@ -1,5 +1,9 @@
 package synapse.common;
 
+import java.util.Properties;
+
+import org.ourgrid.yal.Logger;
+
 /**
  * It's the configuration superclass.
  * 
@@ -15,4 +19,31 @@ public class Config {
         return (prop == null ? "." : prop);
     }
 
+    /**
+     * Returns the policy of an event type when the queue is full.
+     * 
+     * @param properties The properties where the policy is defined.
+     * @param prefix The prefix of the policy property names.
+     * @param type The event type.
+     * @param defaultPolicy The policy used if the property is not defined or is unknown.
+     * @return The policy, as defined by <code>EventLimit</code>.
+     */
+    protected static int getEventPolicy(Properties properties, String prefix, Class type, int defaultPolicy) {
+        String name = type.getName().substring(type.getName().lastIndexOf('.') + 1);
+        return EventLimit.parsePolicy(properties.getProperty(prefix + "." + name), defaultPolicy);
+    }
+
+    /**
+     * Returns a positive number property, or its default if it's not a positive number.
+     */
+    protected static int getInt(Properties properties, String key, int defaultValue) {
+        try {
+            int value = Integer.parseInt(properties.getProperty(key, Integer.toString(defaultValue)).trim());
+            return value > 0 ? value : defaultValue;
+        } catch (NumberFormatException e) {
+            Logger.getInstance().error(Config.class.getName() + ".getInt()", "The property " + key + " is not a number.");
+            return defaultValue;
+        }
+    }
+
 }
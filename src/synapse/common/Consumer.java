@@ -24,6 +24,18 @@ public interface Consumer extends Remote {
      */
     public void fileWasFound(long id, Provider provider, FileInfo fileInfo) throws RemoteException;
 
+    /**
+     * This method is invoked with a page of the files found by a search, so a search
+     * that finds many files doesn't make a call for each one. A search may send
+     * many pages.
+     * 
+     * @param id The id of the search.
+     * @param provider The files owner.
+     * @param files The files info.
+     * @throws RemoteException It's thrown when the consumer can't be contacted.
+     */
+    public void filesWereFound(long id, Provider provider, FileInfo[] files) throws RemoteException;
+
     /**
      * It's possible to download the file using this method.
      * The <code>TransferPipe</code> is the way used to download the file.
@@ -0,0 +1,195 @@
+package synapse.common;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * The hash of a file content. A MD5 hash is kept in its 16 bytes, as two longs,
+ * and is written in 17 bytes when serialized, instead of the 32 hex characters
+ * given by <code>MD5.asHex()</code>. Any other hash, like the ones used by the
+ * tests, is kept as the text it was created from.
+ * <p>
+ * The hash code is computed once, so the maps keyed by <code>ContentHash</code>
+ * don't hash strings.
+ *
+ * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
+ */
+public final class ContentHash implements Serializable {
+
+    /**
+     * The number of bytes of a MD5 hash.
+     */
+    public static final int LENGTH = 16;
+
+    /**
+     * The first and the last 8 bytes of the MD5 hash.
+     */
+    private transient long high;
+
+    private transient long low;
+
+    /**
+     * The hash, when it's not a MD5 hash in hex.
+     */
+    private transient String text;
+
+    private transient int hashCode;
+
+    private ContentHash(long high, long low, String text) {
+        this.high = high;
+        this.low = low;
+        this.text = text;
+        this.hashCode = this.computeHashCode();
+    }
+
+    /**
+     * Returns the hash of a hex string, as given by <code>MD5.asHex()</code>.
+     *
+     * @param hash The hash in hex.
+     * @return The hash, or null if <code>hash</code> is null.
+     */
+    public static ContentHash valueOf(String hash) {
+        if (hash == null) {
+            return null;
+        }
+        if (hash.length() != 2 * LENGTH) {
+            return new ContentHash(0, 0, hash);
+        }
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < hash.length(); i++) {
+            int digit = Character.digit(hash.charAt(i), 16);
+            //so os hashes em minusculas voltam iguais de toString()
+            if (digit < 0 || Character.isUpperCase(hash.charAt(i))) {
+                return new ContentHash(0, 0, hash);
+            }
+            if (i < LENGTH) {
+                high = (high << 4) | digit;
+            }
+            else {
+                low = (low << 4) | digit;
+            }
+        }
+        return new ContentHash(high, low, null);
+    }
+
+    /**
+     * Returns the hash of the bytes of a MD5 hash.
+     *
+     * @param bytes The 16 bytes of the hash.
+     * @return The hash.
+     */
+    public static ContentHash valueOf(byte[] bytes) {
+        if (bytes.length != LENGTH) {
+            throw new IllegalArgumentException("A hash has " + LENGTH + " bytes, not " + bytes.length + ".");
+        }
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 8; i++) {
+            high = (high << 8) | (bytes[i] & 0xff);
+            low = (low << 8) | (bytes[i + 8] & 0xff);
+        }
+        return new ContentHash(high, low, null);
+    }
+
+    /**
+     * Returns the bytes of the hash.
+     *
+     * @return The 16 bytes of a MD5 hash, or null if this is not a MD5 hash.
+     */
+    public byte[] getBytes() {
+        if (this.text != null) {
+            return null;
+        }
+        byte[] bytes = new byte[ LENGTH ];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (this.high >>> (8 * (7 - i)));
+            bytes[i + 8] = (byte) (this.low >>> (8 * (7 - i)));
+        }
+        return bytes;
+    }
+
+    /**
+     * Compares this hash with another object.
+     *
+     * @param other The object.
+     * @return true if the object is a <code>ContentHash</code> with the same value.
+     */
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ContentHash)) {
+            return false;
+        }
+        ContentHash hash = (ContentHash) other;
+        if (this.hashCode != hash.hashCode) {
+            return false;
+        }
+        if (this.text != null || hash.text != null) {
+            return this.text != null && this.text.equals(hash.text);
+        }
+        return this.high == hash.high && this.low == hash.low;
+    }
+
+    /**
+     * Returns the hash code, computed when the hash was created.
+     *
+     * @return The hash code.
+     */
+    public int hashCode() {
+        return this.hashCode;
+    }
+
+    /**
+     * Returns the hash in hex, as given by <code>MD5.asHex()</code>.
+     *
+     * @return The hash in hex.
+     */
+    public String toString() {
+        if (this.text != null) {
+            return this.text;
+        }
+        char[] hex = new char[ 2 * LENGTH ];
+        for (int i = 0; i < LENGTH; i++) {
+            hex[i] = Character.forDigit((int) (this.high >>> (4 * (LENGTH - 1 - i))) & 0xf, 16);
+            hex[i + LENGTH] = Character.forDigit((int) (this.low >>> (4 * (LENGTH - 1 - i))) & 0xf, 16);
+        }
+        return new String(hex);
+    }
+
+    private int computeHashCode() {
+        if (this.text != null) {
+            return this.text.hashCode();
+        }
+        return (int) (this.high ^ (this.high >>> 32) ^ this.low ^ (this.low >>> 32));
+    }
+
+    /**
+     * Writes a MD5 hash as a flag and its two longs.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.writeBoolean(this.text == null);
+        if (this.text == null) {
+            out.writeLong(this.high);
+            out.writeLong(this.low);
+        }
+        else {
+            out.writeUTF(this.text);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException {
+        if (in.readBoolean()) {
+            this.high = in.readLong();
+            this.low = in.readLong();
+        }
+        else {
+            this.text = in.readUTF();
+        }
+        this.hashCode = this.computeHashCode();
+    }
+
+}
@@ -0,0 +1,95 @@
+package synapse.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import synapse.util.HashUtil;
+
+/**
+ * Tests for ContentHash.
+ *
+ * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
+ */
+public class ContentHashTest extends TestCase {
+
+    /**
+     * Tests if the hex form of a hash is kept.
+     */
+    public void testValueOf() {
+        String md5 = HashUtil.createHash(new File("testFiles/test1.dat"));
+        assertEquals(md5, ContentHash.valueOf(md5).toString());
+        assertEquals("00ff00000000000000000000000000a1", ContentHash.valueOf("00ff00000000000000000000000000a1").toString());
+        assertEquals("00FF00000000000000000000000000A1", ContentHash.valueOf("00FF00000000000000000000000000A1").toString());
+        assertEquals("fake", ContentHash.valueOf("fake").toString());
+        assertNull(ContentHash.valueOf((String) null));
+
+        assertEquals(ContentHash.valueOf(md5), ContentHash.valueOf(new String(md5)));
+        assertEquals(ContentHash.valueOf(md5).hashCode(), ContentHash.valueOf(new String(md5)).hashCode());
+        assertFalse(ContentHash.valueOf(md5).equals(ContentHash.valueOf("fake")));
+        assertFalse(ContentHash.valueOf("00ff00000000000000000000000000a1").equals(ContentHash.valueOf("00FF00000000000000000000000000A1")));
+
+        Map map = new HashMap();
+        map.put(ContentHash.valueOf(md5), "a");
+        assertEquals("a", map.get(ContentHash.valueOf(md5)));
+    }
+
+    /**
+     * Tests the conversion to and from the bytes of a MD5 hash.
+     */
+    public void testBytes() {
+        byte[] bytes = new byte[ ContentHash.LENGTH ];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 17 - 100);
+        }
+        ContentHash hash = ContentHash.valueOf(bytes);
+        assertTrue(Arrays.equals(bytes, hash.getBytes()));
+        assertEquals(hash, ContentHash.valueOf(hash.toString()));
+        assertNull(ContentHash.valueOf("fake").getBytes());
+        try {
+            ContentHash.valueOf(new byte[ 3 ]);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // esperado
+        }
+    }
+
+    /**
+     * Tests if a MD5 hash is serialized in less bytes than its hex form.
+     */
+    public void testSerialization() throws Exception {
+        String md5 = HashUtil.createHash(new File("testFiles/test1.dat"));
+        ContentHash[] hashes = new ContentHash[] { ContentHash.valueOf(md5), ContentHash.valueOf("fake") };
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(hashes);
+        out.close();
+        ContentHash[] read = (ContentHash[]) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(hashes[0], read[0]);
+        assertEquals(hashes[0].hashCode(), read[0].hashCode());
+        assertEquals(hashes[1], read[1]);
+
+        //depois da descricao da classe, cada hash ocupa menos que o seu texto
+        ByteArrayOutputStream compact = new ByteArrayOutputStream();
+        ObjectOutputStream compactOut = new ObjectOutputStream(compact);
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        ObjectOutputStream textOut = new ObjectOutputStream(text);
+        byte[] md5Bytes = new byte[ ContentHash.LENGTH ];
+        for (int i = 0; i < 100; i++) {
+            md5Bytes[0] = (byte) i;
+            ContentHash hash = ContentHash.valueOf(md5Bytes);
+            compactOut.writeObject(hash);
+            textOut.writeObject(hash.toString());
+        }
+        compactOut.close();
+        textOut.close();
+        assertTrue(compact.size() < text.size());
+    }
+
+}
@@ -0,0 +1,248 @@
+package synapse.common;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import synapse.common.events.Event;
+import synapse.common.events.ShutdownRequestEvent;
+
+/**
+ * The limit of the events waiting in an <code>EventQueue</code> or an
+ * <code>EventProcessor</code>. When the limit is reached, the policy of the
+ * type of the new event says what happens to it:
+ * <ul>
+ * <li><code>BLOCK</code>: the caller waits until there is space;</li>
+ * <li><code>DROP_OLDEST</code>: the oldest waiting event that can be dropped is
+ * discarded to give space to the new one, or the new one is discarded if there
+ * is no such event;</li>
+ * <li><code>REJECT</code>: the caller receives a <code>BusyException</code>;</li>
+ * <li><code>ACCEPT</code>: the event is accepted over the limit, as the
+ * <code>ShutdownRequestEvent</code>.</li>
+ * </ul>
+ * It also counts the waits, the dropped and the rejected events, so the limit can
+ * be sized.
+ *
+ * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+ * @author <p>Thiago Emmanuel, thiago.manel@gmail.com</p>
+ */
+public class EventLimit {
+
+	/**
+	 * The caller waits until there is space.
+	 */
+	public static final int BLOCK = 0;
+
+	/**
+	 * The oldest event that can be dropped is discarded.
+	 */
+	public static final int DROP_OLDEST = 1;
+
+	/**
+	 * The event is rejected with a <code>BusyException</code>.
+	 */
+	public static final int REJECT = 2;
+
+	/**
+	 * The event is accepted over the limit.
+	 */
+	public static final int ACCEPT = 3;
+
+	/**
+	 * The names of the policies, used in the configuration files.
+	 */
+	private static final String[] NAMES = { "block", "dropoldest", "reject", "accept" };
+
+	private int capacity;
+
+	private int defaultPolicy;
+
+	/**
+	 * The policies of the event types, in the order they were set.
+	 */
+	private Map policies;
+
+	private long blocked;
+
+	private long waitTime;
+
+	private long maxWaitTime;
+
+	private long dropped;
+
+	private long rejected;
+
+	/**
+	 * Creates a new EventLimit.
+	 *
+	 * @param capacity The number of events that may be waiting.
+	 * @param defaultPolicy The policy of the event types without one.
+	 */
+	public EventLimit(int capacity, int defaultPolicy) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("The capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+		this.defaultPolicy = checkPolicy(defaultPolicy);
+		this.policies = new LinkedHashMap();
+		this.policies.put(ShutdownRequestEvent.class, new Integer(ACCEPT));
+	}
+
+	/**
+	 * Returns the number of events that may be waiting.
+	 *
+	 * @return The capacity.
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * Sets the policy of an event type and its subtypes.
+	 *
+	 * @param type The class of the events.
+	 * @param policy The policy.
+	 */
+	public synchronized void setPolicy(Class type, int policy) {
+		this.policies.put(type, new Integer(checkPolicy(policy)));
+	}
+
+	/**
+	 * Returns the policy of an event.
+	 *
+	 * @param event The event.
+	 * @return The policy of its type, or the default one.
+	 */
+	public synchronized int getPolicy(Event event) {
+		Integer policy = (Integer) this.policies.get(event.getClass());
+		if (policy == null) {
+			Iterator it = this.policies.entrySet().iterator();
+			while (it.hasNext() && policy == null) {
+				Map.Entry entry = (Map.Entry) it.next();
+				if (((Class) entry.getKey()).isInstance(event)) {
+					policy = (Integer) entry.getValue();
+				}
+			}
+		}
+		return policy == null ? this.defaultPolicy : policy.intValue();
+	}
+
+	/**
+	 * Returns the policy with a name, as "block", "dropoldest", "reject" or "accept".
+	 *
+	 * @param name The name of the policy.
+	 * @param defaultPolicy The policy returned if the name is unknown.
+	 * @return The policy.
+	 */
+	public static int parsePolicy(String name, int defaultPolicy) {
+		if (name != null) {
+			for (int i = 0; i < NAMES.length; i++) {
+				if (NAMES[i].equalsIgnoreCase(name.trim())) {
+					return i;
+				}
+			}
+		}
+		return defaultPolicy;
+	}
+
+	/**
+	 * Returns the name of a policy.
+	 *
+	 * @param policy The policy.
+	 * @return The name.
+	 */
+	public static String getPolicyName(int policy) {
+		return NAMES[checkPolicy(policy)];
+	}
+
+	/**
+	 * Counts a caller that waited for space.
+	 *
+	 * @param time The time waited, in milliseconds.
+	 */
+	synchronized void waited(long time) {
+		this.blocked++;
+		this.waitTime += time;
+		this.maxWaitTime = Math.max(this.maxWaitTime, time);
+	}
+
+	/**
+	 * Counts a dropped event.
+	 */
+	synchronized void dropped() {
+		this.dropped++;
+	}
+
+	/**
+	 * Counts a rejected event.
+	 *
+	 * @param event The event.
+	 * @return The exception to be thrown to the caller.
+	 */
+	synchronized BusyException rejected(Event event) {
+		this.rejected++;
+		return new BusyException("The queue is full and the event " + event.getClass().getName() + " was rejected.");
+	}
+
+	/**
+	 * Returns the number of callers that waited for space.
+	 *
+	 * @return The number of callers.
+	 */
+	public synchronized long getBlocked() {
+		return this.blocked;
+	}
+
+	/**
+	 * Returns the time the callers waited for space, in milliseconds.
+	 *
+	 * @return The total time.
+	 */
+	public synchronized long getWaitTime() {
+		return this.waitTime;
+	}
+
+	/**
+	 * Returns the longest time a caller waited for space, in milliseconds.
+	 *
+	 * @return The longest time.
+	 */
+	public synchronized long getMaxWaitTime() {
+		return this.maxWaitTime;
+	}
+
+	/**
+	 * Returns the number of dropped events.
+	 *
+	 * @return The number of events.
+	 */
+	public synchronized long getDropped() {
+		return this.dropped;
+	}
+
+	/**
+	 * Returns the number of rejected events.
+	 *
+	 * @return The number of events.
+	 */
+	public synchronized long getRejected() {
+		return this.rejected;
+	}
+
+	/**
+	 * Returns the String representation of the counters.
+	 * @return The String representation of the counters.
+	 */
+	public synchronized String toString() {
+		return "capacity " + this.capacity + ", " + this.blocked + " blocked (" + this.waitTime + " ms, max " + this.maxWaitTime + " ms), "
+				+ this.dropped + " dropped, " + this.rejected + " rejected";
+	}
+
+	private static int checkPolicy(int policy) {
+		if (policy < BLOCK || policy > ACCEPT) {
+			throw new IllegalArgumentException("Unknown policy: " + policy);
+		}
+		return policy;
+	}
+
+}
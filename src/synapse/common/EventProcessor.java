@@ -12,9 +12,12 @@ public interface EventProcessor extends Runnable {
 
 	/**
 	 * Includes an <code>Event</code> to be processed by this <code>EventProcessor</code>.
+	 * If the processor has an <code>EventLimit</code> and is full, the caller may wait
+	 * or the event may be dropped or rejected.
 	 * @param event The <code>Event</code> to be included.
+	 * @throws BusyException If the event was rejected because the processor is full.
 	 */
-    public void putEvent(Event event);
+    public void putEvent(Event event) throws BusyException;
 
 	/**
 	 * Starts processing its events.
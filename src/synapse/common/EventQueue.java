@@ -1,5 +1,6 @@
 package synapse.common;
 
+import java.util.Iterator;
 import java.util.LinkedList;
 
 import org.ourgrid.yal.Logger;
@@ -7,7 +8,9 @@ import org.ourgrid.yal.Logger;
 import synapse.common.events.Event;
 
 /**
- * This class is desired to queue events in a synchronized way.
+ * This class is desired to queue events in a synchronized way. A queue created
+ * with an <code>EventLimit</code> is bounded: the events given to <code>offer()</code>
+ * when it is full are blocked, dropped or rejected according to their policies.
  * 
  * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p> 
  */
@@ -17,6 +20,11 @@ public class EventQueue {
 	 * The queued events.
 	 */
 	private LinkedList eventQueue;
+
+	/**
+	 * The limit of the queue, or null if it is unbounded.
+	 */
+	private EventLimit limit;
 	
 	/**
 	 * Object responsible for logging events.
@@ -27,18 +35,80 @@ public class EventQueue {
 	 * The constructor.
 	 */
 	public EventQueue() {
+		this(null);
+	}
+
+	/**
+	 * Creates a bounded queue.
+	 * 
+	 * @param limit The limit of the queue, or null if it is unbounded.
+	 */
+	public EventQueue(EventLimit limit) {
 		eventQueue = new LinkedList();
 		logger = Logger.getInstance();
+		this.limit = limit;
 	}
 
 	/**
-	 * Adds an event to the end of the queue.
+	 * Adds an event to the end of the queue, even if the queue is full.
 	 * 
 	 * @param event The event to be queued.
 	 */
 	public synchronized void put(Event event) {
 		eventQueue.addLast( event );
-		notify();
+		notifyAll();
+	}
+
+	/**
+	 * Adds an event to the end of the queue if there is space. Otherwise the policy
+	 * of the event is applied: the caller waits, an event is dropped or the event
+	 * is rejected.
+	 * 
+	 * @param event The event to be queued.
+	 * @throws BusyException If the event was rejected.
+	 */
+	public synchronized void offer(Event event) throws BusyException {
+		if (limit != null && eventQueue.size() >= limit.getCapacity()) {
+			switch (limit.getPolicy(event)) {
+			case EventLimit.BLOCK:
+				long start = System.currentTimeMillis();
+				try {
+					while (eventQueue.size() >= limit.getCapacity()) {
+						wait();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw limit.rejected(event);
+				}
+				limit.waited(System.currentTimeMillis() - start);
+				break;
+			case EventLimit.DROP_OLDEST:
+				limit.dropped();
+				if (!dropOldest()) {
+					return;
+				}
+				break;
+			case EventLimit.REJECT:
+				throw limit.rejected(event);
+			}
+		}
+		put(event);
+	}
+
+	/**
+	 * Removes the oldest event that can be dropped.
+	 * 
+	 * @return true if an event was removed.
+	 */
+	private boolean dropOldest() {
+		Iterator it = eventQueue.iterator();
+		while (it.hasNext()) {
+			if (limit.getPolicy((Event) it.next()) == EventLimit.DROP_OLDEST) {
+				it.remove();
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -48,6 +118,7 @@ public class EventQueue {
 	 */
 	public synchronized Event unblockingRemove() {
 		if ( eventQueue.size() > 0 ) {
+			notifyAll();
 			return (Event) eventQueue.removeFirst();	
 		} else {
 			return null;
@@ -68,6 +139,7 @@ public class EventQueue {
 		} catch (InterruptedException e) {
 			logger.exception(getClass().getName() + ".blockingRemove()", e);
 		}
+		notifyAll();
 		return (Event) eventQueue.removeFirst();
 	}
 	
@@ -80,4 +152,13 @@ public class EventQueue {
 		return eventQueue.size();
 	}
 
+	/**
+	 * Returns the limit of the queue.
+	 * 
+	 * @return The limit, or null if the queue is unbounded.
+	 */
+	public EventLimit getLimit() {
+		return limit;
+	}
+
 }
\ No newline at end of file
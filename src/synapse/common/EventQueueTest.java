@@ -0,0 +1,143 @@
+package synapse.common;
+
+import junit.framework.TestCase;
+import synapse.common.events.Event;
+import synapse.common.events.ShutdownRequestEvent;
+
+/**
+ * Tests the bounded <code>EventQueue</code> and its <code>EventLimit</code>.
+ *
+ * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+ */
+public class EventQueueTest extends TestCase {
+
+	private EventLimit limit;
+
+	private EventQueue queue;
+
+	/*
+	 * @see TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.limit = new EventLimit(2, EventLimit.BLOCK);
+		this.limit.setPolicy(DroppableEvent.class, EventLimit.DROP_OLDEST);
+		this.limit.setPolicy(ServerTestResponseEvent.class, EventLimit.REJECT);
+		this.queue = new EventQueue(this.limit);
+	}
+
+	/**
+	 * Tests if the policies are found by the type of the events.
+	 */
+	public void testPolicies() {
+		assertEquals(EventLimit.DROP_OLDEST, this.limit.getPolicy(new DroppableEvent()));
+		assertEquals(EventLimit.DROP_OLDEST, this.limit.getPolicy(new DroppableEvent() { }));
+		assertEquals(EventLimit.REJECT, this.limit.getPolicy(new ServerTestResponseEvent()));
+		assertEquals(EventLimit.BLOCK, this.limit.getPolicy(new ServerTestRequestEvent(null)));
+		assertEquals(EventLimit.ACCEPT, this.limit.getPolicy(new ShutdownRequestEvent(null, null)));
+
+		assertEquals(EventLimit.DROP_OLDEST, EventLimit.parsePolicy(" DropOldest", EventLimit.BLOCK));
+		assertEquals(EventLimit.BLOCK, EventLimit.parsePolicy("unknown", EventLimit.BLOCK));
+		assertEquals(EventLimit.REJECT, EventLimit.parsePolicy(null, EventLimit.REJECT));
+		assertEquals("reject", EventLimit.getPolicyName(EventLimit.REJECT));
+	}
+
+	/**
+	 * Tests if an unbounded queue accepts any number of events.
+	 */
+	public void testUnbounded() throws Exception {
+		EventQueue unbounded = new EventQueue();
+		for (int i = 0; i < 1000; i++) {
+			unbounded.offer(new ServerTestResponseEvent());
+		}
+		assertEquals(1000, unbounded.size());
+		assertNull(unbounded.getLimit());
+	}
+
+	/**
+	 * Tests if the oldest droppable event is discarded when the queue is full.
+	 */
+	public void testDropOldest() throws Exception {
+		Event first = new DroppableEvent();
+		Event blocking = new ServerTestRequestEvent(null);
+		Event last = new DroppableEvent();
+		this.queue.offer(first);
+		this.queue.offer(blocking);
+		this.queue.offer(last);
+
+		assertEquals(2, this.queue.size());
+		assertSame(blocking, this.queue.unblockingRemove());
+		assertSame(last, this.queue.unblockingRemove());
+		assertEquals(1, this.limit.getDropped());
+	}
+
+	/**
+	 * Tests if the new droppable event is discarded when no waiting event can be dropped.
+	 */
+	public void testDropNewest() throws Exception {
+		Event blocking = new ServerTestRequestEvent(null);
+		this.queue.offer(blocking);
+		this.queue.offer(blocking);
+		this.queue.offer(new DroppableEvent());
+
+		assertEquals(2, this.queue.size());
+		assertSame(blocking, this.queue.unblockingRemove());
+		assertSame(blocking, this.queue.unblockingRemove());
+		assertEquals(1, this.limit.getDropped());
+	}
+
+	/**
+	 * Tests if an event is rejected with a <code>BusyException</code> when the queue is full.
+	 */
+	public void testReject() throws Exception {
+		this.queue.offer(new ServerTestResponseEvent());
+		this.queue.offer(new ServerTestResponseEvent());
+		try {
+			this.queue.offer(new ServerTestResponseEvent());
+			fail("The event should be rejected.");
+		} catch (BusyException e) {
+			// expected
+		}
+		assertEquals(2, this.queue.size());
+		assertEquals(1, this.limit.getRejected());
+
+		//o shutdown e aceito mesmo com a fila cheia
+		this.queue.offer(new ShutdownRequestEvent(null, null));
+		assertEquals(3, this.queue.size());
+	}
+
+	/**
+	 * Tests if the caller waits until an event is removed.
+	 */
+	public void testBlock() throws Exception {
+		this.queue.offer(new ServerTestRequestEvent(null));
+		this.queue.offer(new ServerTestRequestEvent(null));
+
+		Thread consumer = new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					// do nothing
+				}
+				queue.blockingRemove();
+			}
+		};
+		consumer.start();
+
+		long start = System.currentTimeMillis();
+		this.queue.offer(new ServerTestRequestEvent(null));
+		assertTrue(System.currentTimeMillis() - start >= 150);
+		assertEquals(2, this.queue.size());
+		assertEquals(1, this.limit.getBlocked());
+		assertTrue(this.limit.getMaxWaitTime() >= 150);
+		assertEquals(this.limit.getMaxWaitTime(), this.limit.getWaitTime());
+	}
+
+	/**
+	 * An event that may be dropped.
+	 */
+	private static class DroppableEvent implements Event {
+	}
+
+}
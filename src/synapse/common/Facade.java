@@ -58,7 +58,13 @@ public abstract class Facade {
 		EventQueue responseQueue = new EventQueue();
 		ShutdownRequestEvent shutdownRequestEvent = new ShutdownRequestEvent(responseQueue, eventProcessor);
 		if ( eventProcessor.isAlive() ) {
-			eventProcessor.putEvent(shutdownRequestEvent);
+			try {
+				eventProcessor.putEvent(shutdownRequestEvent);
+			} catch (BusyException e) {
+				// the shutdown is accepted over the limit of the events
+				Logger.getInstance().exception(getClass().getName() + ".shutdown()", e);
+			}
+			Logger.getInstance().info(getClass().getName() + ".shutdown()", "Events: " + eventProcessor);
 		} else {
 			responseQueue.put(new ShutdownResponseEvent());
 		}
@@ -18,6 +18,7 @@ public class FakeClient extends UnicastRemoteObject implements Provider, Consume
 	private int expectedSearchForCommunity;
 	private int expectedGetFile;
 	private int expectedFileWasFound;
+	private int expectedFilesWereFound;
 	private int expectedHereIsFile;
 	private int expectedPing;
 
@@ -28,6 +29,7 @@ public class FakeClient extends UnicastRemoteObject implements Provider, Consume
 	private int searchForCommunityCount;
 	private int getFileCount;
 	private int fileWasFoundCount;
+	private int filesWereFoundCount;
 	private int hereIsFileCount;
 	private int pingCount;
 
@@ -43,6 +45,7 @@ public class FakeClient extends UnicastRemoteObject implements Provider, Consume
 	    this.expectedSearchForCommunity = 0;
 	    this.expectedGetFile = 0;
 	    this.expectedFileWasFound = 0;
+	    this.expectedFilesWereFound = 0;
 	    this.expectedHereIsFile = 0;
 	    this.expectedPing = 0;
 
@@ -53,6 +56,7 @@ public class FakeClient extends UnicastRemoteObject implements Provider, Consume
 	    this.searchForCommunityCount = 0;
 	    this.getFileCount = 0;
 	    this.fileWasFoundCount = 0;
+	    this.filesWereFoundCount = 0;
 	    this.hereIsFileCount = 0;
 	    this.pingCount = 0;
 	}
@@ -87,6 +91,10 @@ public class FakeClient extends UnicastRemoteObject implements Provider, Consume
             throw new RuntimeException( "fileWasFound() was expected to be called " + this.expectedFileWasFound + " times but was " + this.fileWasFoundCount);
         }
 
+	    if (this.filesWereFoundCount != this.expectedFilesWereFound) {
+            throw new RuntimeException( "filesWereFound() was expected to be called " + this.expectedFilesWereFound + " times but was " + this.filesWereFoundCount);
+        }
+
 	    if (this.hereIsFileCount != this.expectedHereIsFile) {
             throw new RuntimeException( "hereIsFile() was expected to be called " + this.expectedHereIsFile + " times but was " + this.hereIsFileCount);
         }
@@ -125,6 +133,10 @@ public class FakeClient extends UnicastRemoteObject implements Provider, Consume
 		this.expectedFileWasFound = calls;
 	}
 
+	public void setExpectedFilesWereFound(int calls) {
+		this.expectedFilesWereFound = calls;
+	}
+
 	public void setExpectedHereIsFile(int calls) {
 		this.expectedHereIsFile = calls;
 	}
@@ -144,6 +156,13 @@ public class FakeClient extends UnicastRemoteObject implements Provider, Consume
      * @see synapse.common.Provider#searchFile(synapse.common.Consumer, java.lang.String)
      */
     public long searchFile(Consumer consumer, String fileName) {
+        return this.searchFile(consumer, fileName, NO_LIMIT, false);
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.common.Provider#searchFile(synapse.common.Consumer, java.lang.String, int, boolean)
+     */
+    public long searchFile(Consumer consumer, String fileName, int limit, boolean ranked) {
         this.searchFileLongCount++;
         
         return 0;
@@ -153,6 +172,13 @@ public class FakeClient extends UnicastRemoteObject implements Provider, Consume
      * @see synapse.common.Provider#searchFile(long, synapse.common.Consumer, java.lang.String)
      */
     public void searchFile(long id, Consumer consumer, String fileName) {
+        this.searchFile(id, consumer, fileName, NO_LIMIT, false);
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.common.Provider#searchFile(long, synapse.common.Consumer, java.lang.String, int, boolean)
+     */
+    public void searchFile(long id, Consumer consumer, String fileName, int limit, boolean ranked) {
         this.searchFileVoidCount++;
     }
 
@@ -167,6 +193,13 @@ public class FakeClient extends UnicastRemoteObject implements Provider, Consume
 	 * @see synapse.common.Provider#searchForCommunity(long, synapse.common.Consumer, java.lang.String)
 	 */
 	public void searchForCommunity(long id, Consumer consumer, String fileName) throws RemoteException {
+		this.searchForCommunity(id, consumer, fileName, NO_LIMIT, false);
+	}
+
+	/* (non-Javadoc)
+	 * @see synapse.common.Provider#searchForCommunity(long, synapse.common.Consumer, java.lang.String, int, boolean)
+	 */
+	public void searchForCommunity(long id, Consumer consumer, String fileName, int limit, boolean ranked) throws RemoteException {
 		this.searchForCommunityCount++;
 	}
 
@@ -184,6 +217,13 @@ public class FakeClient extends UnicastRemoteObject implements Provider, Consume
         this.fileWasFoundCount++;
     }
 
+    /* (non-Javadoc)
+     * @see synapse.common.Consumer#filesWereFound(long, synapse.common.Provider, synapse.common.FileInfo[])
+     */
+    public void filesWereFound(long id, Provider provider, FileInfo[] files) {
+        this.filesWereFoundCount++;
+    }
+
     /* (non-Javadoc)
      * @see synapse.common.Consumer#hereIsFile(synapse.common.TransferPipe)
      */
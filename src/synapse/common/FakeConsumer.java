@@ -18,10 +18,15 @@ public class FakeConsumer extends UnicastRemoteObject implements Consumer {
 	private int expectedHereIsFile;
 	private int expectedPing;
 
+	private int expectedFoundFiles;
+
 	private int fileWasFoundCount;
+	private int foundFilesCount;
 	private int hereIsFileCount;
 	private int pingCount;
 
+	private FileInfo lastFound;
+
 	public FakeConsumer() throws RemoteException {
 	    this.reset();
 	}
@@ -31,9 +36,12 @@ public class FakeConsumer extends UnicastRemoteObject implements Consumer {
 	    this.expectedHereIsFile = 0;
 	    this.expectedPing = 0;
 
+	    this.expectedFoundFiles = 0;
 	    this.fileWasFoundCount = 0;
+	    this.foundFilesCount = 0;
 	    this.hereIsFileCount = 0;
 	    this.pingCount = 0;
+	    this.lastFound = null;
 	}
 
 	public void verify () {
@@ -42,6 +50,10 @@ public class FakeConsumer extends UnicastRemoteObject implements Consumer {
             throw new RuntimeException( "fileWasFound() was expected to be called " + this.expectedFileWasFound + " times but was " + this.fileWasFoundCount);
         }
 
+	    if (this.foundFilesCount != this.expectedFoundFiles) {
+            throw new RuntimeException( this.expectedFoundFiles + " files were expected to be found but were " + this.foundFilesCount);
+        }
+
 	    if (this.hereIsFileCount != this.expectedHereIsFile) {
             throw new RuntimeException( "hereIsFile() was expected to be called " + this.expectedHereIsFile + " times but was " + this.hereIsFileCount);
         }
@@ -55,6 +67,10 @@ public class FakeConsumer extends UnicastRemoteObject implements Consumer {
 		this.expectedFileWasFound = calls;
 	}
 
+	public void setExpectedFoundFiles(int files) {
+		this.expectedFoundFiles = files;
+	}
+
 	public void setExpectedHereIsFile(int calls) {
 		this.expectedHereIsFile = calls;
 	}
@@ -63,11 +79,27 @@ public class FakeConsumer extends UnicastRemoteObject implements Consumer {
 		this.expectedPing = calls;
 	}
 
+	public FileInfo getLastFound() {
+		return this.lastFound;
+	}
+
     /* (non-Javadoc)
      * @see synapse.common.Consumer#fileWasFound(synapse.common.Provider, java.lang.String, java.lang.String)
      */
     public void fileWasFound(long id, Provider provider, FileInfo fileInfo) {
         this.fileWasFoundCount++;
+        this.foundFilesCount++;
+        this.lastFound = fileInfo;
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.common.Consumer#filesWereFound(long, synapse.common.Provider, synapse.common.FileInfo[])
+     */
+    public void filesWereFound(long id, Provider provider, FileInfo[] files) throws RemoteException {
+        this.foundFilesCount += files.length;
+        if (files.length > 0) {
+            this.lastFound = files[files.length - 1];
+        }
     }
 
     /* (non-Javadoc)
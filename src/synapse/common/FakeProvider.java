@@ -109,6 +109,13 @@ public class FakeProvider extends UnicastRemoteObject implements Provider {
      * @see synapse.common.Provider#searchFile(synapse.common.Consumer, java.lang.String)
      */
     public long searchFile(Consumer consumer, String fileName) {
+        return this.searchFile(consumer, fileName, NO_LIMIT, false);
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.common.Provider#searchFile(synapse.common.Consumer, java.lang.String, int, boolean)
+     */
+    public long searchFile(Consumer consumer, String fileName, int limit, boolean ranked) {
         this.searchFileLongCount++;
         
         return 0;
@@ -118,6 +125,13 @@ public class FakeProvider extends UnicastRemoteObject implements Provider {
      * @see synapse.common.Provider#searchFile(long, synapse.common.Consumer, java.lang.String)
      */
     public void searchFile(long id, Consumer consumer, String fileName) {
+        this.searchFile(id, consumer, fileName, NO_LIMIT, false);
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.common.Provider#searchFile(long, synapse.common.Consumer, java.lang.String, int, boolean)
+     */
+    public void searchFile(long id, Consumer consumer, String fileName, int limit, boolean ranked) {
         this.searchFileVoidCount++;
     }
 
@@ -132,6 +146,13 @@ public class FakeProvider extends UnicastRemoteObject implements Provider {
 	 * @see synapse.common.Provider#searchForCommunity(long, synapse.common.Consumer, java.lang.String)
 	 */
 	public void searchForCommunity(long id, Consumer consumer, String fileName) throws RemoteException {
+		this.searchForCommunity(id, consumer, fileName, NO_LIMIT, false);
+	}
+
+	/* (non-Javadoc)
+	 * @see synapse.common.Provider#searchForCommunity(long, synapse.common.Consumer, java.lang.String, int, boolean)
+	 */
+	public void searchForCommunity(long id, Consumer consumer, String fileName, int limit, boolean ranked) throws RemoteException {
 		this.searchForCommunityCount++;
 	}
 
@@ -0,0 +1,225 @@
+package synapse.common;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+
+import synapse.util.HashUtil;
+
+/**
+ * A fake pipe used by tests. It serves an array of bytes kept in memory
+ * and may sleep before answering, simulating a slow link.
+ *
+ * @author <p>Vinicius Ferraz C. Florentino, vinicius.ferraz@gmail.com</p>
+ */
+public class FakeTransferPipe extends UnicastRemoteObject implements TransferPipe {
+
+    private String fileName;
+    private String hash;
+    private byte[] content;
+    private long latency;
+    private boolean broken;
+    private PieceHashes pieceHashes;
+    private long corruptFrom;
+    private long corruptTo;
+
+    private int expectedGetFile;
+    private int expectedGetFiles;
+
+    private int getFileCount;
+    private int getFilesCount;
+    private int rangesCount;
+
+    public FakeTransferPipe(String fileName, String hash, byte[] content) throws RemoteException {
+        this.fileName = fileName;
+        this.hash = hash;
+        this.content = content;
+        this.latency = 0;
+        this.broken = false;
+        this.corruptFrom = 0;
+        this.corruptTo = 0;
+        this.reset();
+    }
+
+    public void reset() {
+        this.expectedGetFile = 0;
+        this.expectedGetFiles = 0;
+
+        this.getFileCount = 0;
+        this.getFilesCount = 0;
+        this.rangesCount = 0;
+    }
+
+    public void verify() {
+
+        if (this.getFileCount != this.expectedGetFile) {
+            throw new RuntimeException( "getFile() was expected to be called " + this.expectedGetFile + " times but was " + this.getFileCount);
+        }
+
+        if (this.getFilesCount != this.expectedGetFiles) {
+            throw new RuntimeException( "getFiles() was expected to be called " + this.expectedGetFiles + " times but was " + this.getFilesCount);
+        }
+    }
+
+    public void setExpectedGetFile(int calls) {
+        this.expectedGetFile = calls;
+    }
+
+    public void setExpectedGetFiles(int calls) {
+        this.expectedGetFiles = calls;
+    }
+
+    /**
+     * Sets the time each call sleeps before answering.
+     *
+     * @param millis The latency in milliseconds.
+     */
+    public void setLatency(long millis) {
+        this.latency = millis;
+    }
+
+    /**
+     * When it's true, every read throws a <code>RemoteException</code>.
+     *
+     * @param broken The new value.
+     */
+    public void setBroken(boolean broken) {
+        this.broken = broken;
+    }
+
+    /**
+     * Sets the hashes returned by <code>getPieceHashes()</code>.
+     *
+     * @param pieceHashes The hashes, or null.
+     */
+    public void setPieceHashes(PieceHashes pieceHashes) {
+        this.pieceHashes = pieceHashes;
+    }
+
+    /**
+     * Makes the pipe answer wrong bytes between two offsets, like a bad peer.
+     *
+     * @param from The first corrupt byte.
+     * @param to The byte after the last corrupt one.
+     */
+    public void setCorrupt(long from, long to) {
+        this.corruptFrom = from;
+        this.corruptTo = to;
+    }
+
+    /**
+     * Creates the hashes of the content and returns them from now on.
+     *
+     * @param pieceSize The piece size.
+     * @return The hashes.
+     */
+    public PieceHashes createPieceHashes(int pieceSize) {
+        this.pieceHashes = HashUtil.createHashes(this.content, pieceSize);
+        return this.pieceHashes;
+    }
+
+    public synchronized int getGetFileCount() {
+        return this.getFileCount;
+    }
+
+    public synchronized int getGetFilesCount() {
+        return this.getFilesCount;
+    }
+
+    /**
+     * Returns the number of ranges read by <code>getFiles()</code>.
+     *
+     * @return The number of ranges.
+     */
+    public synchronized int getRangesCount() {
+        return this.rangesCount;
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.common.TransferPipe#getSize()
+     */
+    public long getSize() {
+        return this.content.length;
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.common.TransferPipe#getFile(long, long)
+     */
+    public byte[] getFile(long i, long len) throws RemoteException {
+        synchronized (this) {
+            this.getFileCount++;
+        }
+        this.sleep();
+        return this.read(i, (int) len);
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.common.TransferPipe#getFiles(long[], int[])
+     */
+    public byte[][] getFiles(long[] offsets, int[] lengths) throws RemoteException {
+        synchronized (this) {
+            this.getFilesCount++;
+            this.rangesCount += offsets.length;
+        }
+        this.sleep();
+
+        byte[][] arrays = new byte[ offsets.length ][];
+        for (int k = 0; k < offsets.length; k++) {
+            arrays[k] = this.read(offsets[k], lengths[k]);
+        }
+        return arrays;
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.common.TransferPipe#getFileName()
+     */
+    public String getFileName() {
+        return this.fileName;
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.common.TransferPipe#getHash()
+     */
+    public String getHash() {
+        return this.hash;
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.common.TransferPipe#getContentHash()
+     */
+    public ContentHash getContentHash() {
+        return ContentHash.valueOf(this.hash);
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.common.TransferPipe#getPieceHashes()
+     */
+    public PieceHashes getPieceHashes() {
+        return this.pieceHashes;
+    }
+
+    private byte[] read(long i, int len) throws RemoteException {
+        if (this.broken) {
+            throw new RemoteException("The pipe is broken");
+        }
+        int available = (int) Math.max(0, Math.min(len, this.content.length - i));
+        byte[] array = new byte[ available ];
+        System.arraycopy(this.content, (int) Math.min(i, this.content.length), array, 0, available);
+        for (int k = 0; k < available; k++) {
+            if (i + k >= this.corruptFrom && i + k < this.corruptTo) {
+                array[k] = (byte) ~array[k];
+            }
+        }
+        return array;
+    }
+
+    private void sleep() {
+        if (this.latency > 0) {
+            try {
+                Thread.sleep(this.latency);
+            } catch (InterruptedException e) {
+                // do nothing
+            }
+        }
+    }
+
+}
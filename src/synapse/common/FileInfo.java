@@ -1,6 +1,8 @@
 package synapse.common;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 import synapse.util.HashUtil;
@@ -8,6 +10,10 @@ import synapse.util.HashUtil;
 /**
  * Encapsulates the basic information about a file. These object instances
  * will be transfered between the peers.
+ * <p>
+ * Many of these objects are kept by the <code>FileSource</code> and by the search
+ * results, so they are kept small: the names are interned and the hash is kept
+ * in a <code>ContentHash</code>.
  * 
  * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
  */
@@ -21,13 +27,24 @@ public class FileInfo implements Serializable {
     /**
      * The file hash.
      */
-    private String hash;
+    private ContentHash hash;
 
     /**
      * The file size.
      */
     private long size;
 
+    /**
+     * The Merkle root of the piece hashes.
+     */
+    private String pieceRoot;
+
+    /**
+     * The piece hashes. They are not sent with the search results, only
+     * the root; a downloader asks for them to the <code>TransferPipe</code>.
+     */
+    private transient PieceHashes pieceHashes;
+
     /**
      * The resource.
      */
@@ -37,13 +54,28 @@ public class FileInfo implements Serializable {
 	 * Constructs a new resource.
 	 */
 	public FileInfo(File file) {
-		this.file = file;
-		this.fileName = file.getName();
 		/*
 		 * This hash creation sometimes takes several minutes
-		 * to be concluded.
+		 * to be concluded. The piece hashes are created in the same pass.
 		 */
-		this.hash = HashUtil.createHash(file);
+		this(file, HashUtil.createHashes(file));
+	}
+
+	/**
+	 * Constructs a new resource with hashes already computed, without
+	 * reading the file.
+	 * 
+	 * @param file The file.
+	 * @param pieceHashes The hashes of the file, or null if it could not be read.
+	 */
+	public FileInfo(File file, PieceHashes pieceHashes) {
+		this.file = file;
+		this.fileName = file.getName().intern();
+		this.pieceHashes = pieceHashes;
+		if (this.pieceHashes != null) {
+			this.hash = ContentHash.valueOf(this.pieceHashes.getFileHash());
+			this.pieceRoot = this.pieceHashes.getRoot();
+		}
 		this.size = file.length();
 	}
 
@@ -55,11 +87,21 @@ public class FileInfo implements Serializable {
 	 * @param size The file size.
 	 */
 	protected FileInfo(String fileName, String hash, long size) {
-	    this.fileName = fileName;
-	    this.hash = hash;
+	    this.fileName = fileName == null ? null : fileName.intern();
+	    this.hash = ContentHash.valueOf(hash);
 	    this.size = size;
 	}
 
+	/**
+	 * Interns the name of a <code>FileInfo</code> received from another peer.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (this.fileName != null) {
+			this.fileName = this.fileName.intern();
+		}
+	}
+
 	/**
 	 * Method that returns the fileName of this resource.
 	 * @return the fileName of this resource.
@@ -73,6 +115,14 @@ public class FileInfo implements Serializable {
 	 * @return the hash of the file that is in this resource.
 	 */
 	public String getHash() {
+		return this.hash == null ? null : this.hash.toString();
+	}
+
+	/**
+	 * Returns the hash of the file, to be used as a map key.
+	 * @return The hash, or null if the file could not be read.
+	 */
+	public ContentHash getContentHash() {
 		return this.hash;
 	}
 
@@ -85,6 +135,25 @@ public class FileInfo implements Serializable {
         return this.size;
     }
 
+	/**
+	 * Returns the hashes of the file pieces. It's null when the
+	 * <code>FileInfo</code> was received from another peer.
+	 * 
+	 * @return The piece hashes.
+	 */
+	public PieceHashes getPieceHashes() {
+		return this.pieceHashes;
+	}
+
+	/**
+	 * Returns the Merkle root of the piece hashes.
+	 * 
+	 * @return The root, or null if it's unknown.
+	 */
+	public String getPieceRoot() {
+		return this.pieceRoot;
+	}
+
 	/**
 	 * Method that returns the File that is in resource.
 	 * @return the File that is in resource.
@@ -105,7 +174,15 @@ public class FileInfo implements Serializable {
 			return false;
 		}
 		FileInfo aux = (FileInfo) other;
-		return this.getHash().equals(aux.getHash());
+		return this.hash.equals(aux.hash);
+	}
+
+	/**
+	 * Returns the hash code of this <code>FileInfo</code>, the hash code of its hash.
+	 * @return The hash code.
+	 */
+	public int hashCode() {
+		return this.hash == null ? 0 : this.hash.hashCode();
 	}
 	
 	/**
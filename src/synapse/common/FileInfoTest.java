@@ -1,6 +1,10 @@
 package synapse.common;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 
 import junit.framework.TestCase;
 import synapse.util.HashUtil;
@@ -60,4 +64,26 @@ public class FileInfoTest extends TestCase {
 		assertEquals(HashUtil.createHash(g), HashUtil.createHash(h));
 	}
 
+	/**
+	 * Tests if the hash kept as two longs is returned as it was given, and if
+	 * the other hashes are kept as they are.
+	 */
+	public void testHash() throws Exception {
+		assertEquals(HashUtil.createHash(a), one.getHash());
+		assertEquals(one.hashCode(), five.hashCode());
+		assertEquals("00ff00000000000000000000000000a1", new FileInfo("a", "00ff00000000000000000000000000a1", 1).getHash());
+		assertEquals("FAKE", new FileInfo("a", "FAKE", 1).getHash());
+		assertEquals("00FF00000000000000000000000000A1", new FileInfo("a", "00FF00000000000000000000000000A1", 1).getHash());
+		assertNull(new FileInfo("a", null, 1).getHash());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(six);
+		out.close();
+		FileInfo read = (FileInfo) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertEquals(six, read);
+		assertEquals(six.getHash(), read.getHash());
+		assertSame(six.getFileName(), read.getFileName());
+	}
+
 }
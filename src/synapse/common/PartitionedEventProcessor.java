@@ -0,0 +1,383 @@
+package synapse.common;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ourgrid.yal.Logger;
+
+import synapse.common.events.ActionEvent;
+import synapse.common.events.Event;
+import synapse.common.events.PartitionedEvent;
+import synapse.common.events.ShutdownResponseEvent;
+
+/**
+ * An <code>EventProcessor</code> that processes many events at the same time, in a
+ * pool of <code>WorkerThreads</code>. The events are split in partitions: each one
+ * has its own lock-free queue and is processed by one thread at a time, so the
+ * events with the same key (see <code>PartitionedEvent</code>) keep their order
+ * while an event that waits on a RMI call doesn't hold the events of the other keys.
+ * The events without a key are spread over the partitions.
+ * <p>
+ * With an <code>EventLimit</code>, the events put and not processed yet are limited:
+ * when the limit is reached, the policy of the new event is applied (see
+ * <code>EventLimit</code>), so a burst of requests doesn't grow the heap without limit.
+ * <p>
+ * A <code>ShutdownRequestEvent</code> stops the processor after the events put before
+ * it were processed; then a <code>ShutdownResponseEvent</code> is put in the queue it
+ * carries, as in <code>SimpleEventProcessor</code>. The events put after the shutdown
+ * are ignored.
+ *
+ * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+ * @author <p>Thiago Emmanuel, thiago.manel@gmail.com</p>
+ *
+ * @see Facade
+ */
+public class PartitionedEventProcessor implements EventProcessor {
+
+	/**
+	 * The default number of threads processing events.
+	 */
+	public static final int DEFAULT_THREADS = 16;
+
+	/**
+	 * The number of events a partition processes before giving its thread to another partition.
+	 */
+	private static final int BATCH = 64;
+
+	private Partition[] partitions;
+
+	private ExecutorService executor;
+
+	private int threads;
+
+	/**
+	 * Used to spread the events without a key.
+	 */
+	private AtomicInteger next;
+
+	/**
+	 * The events put and not processed yet.
+	 */
+	private AtomicInteger pending;
+
+	private volatile boolean started;
+
+	private volatile boolean mustShutdown;
+
+	private volatile boolean isAlive;
+
+	private AtomicBoolean finished;
+
+	/**
+	 * The limit of the pending events, or null if there is no limit.
+	 */
+	private EventLimit limit;
+
+	/**
+	 * Where the callers wait for space.
+	 */
+	private Object space;
+
+	/**
+	 * When the processing shutdowns, this queue receives a <code>ShutdownResponseEvent</code>.
+	 */
+	private volatile EventQueue shutdownEventQueue;
+
+	private Logger logger;
+
+	/**
+	 * Creates a new <code>PartitionedEventProcessor</code> with <code>DEFAULT_THREADS</code> threads.
+	 */
+	public PartitionedEventProcessor() {
+		this(DEFAULT_THREADS);
+	}
+
+	/**
+	 * Creates a new <code>PartitionedEventProcessor</code>.
+	 *
+	 * @param threads The maximum number of events processed at the same time.
+	 */
+	public PartitionedEventProcessor(int threads) {
+		this(threads, null);
+	}
+
+	/**
+	 * Creates a new <code>PartitionedEventProcessor</code> with a limit of pending events.
+	 *
+	 * @param threads The maximum number of events processed at the same time.
+	 * @param limit The limit of the pending events, or null if there is no limit.
+	 */
+	public PartitionedEventProcessor(int threads, EventLimit limit) {
+		this(threads, 4 * threads, limit);
+	}
+
+	/**
+	 * Creates a new <code>PartitionedEventProcessor</code>.
+	 *
+	 * @param threads The maximum number of events processed at the same time.
+	 * @param partitions The number of partitions the keys are split in.
+	 * @param limit The limit of the pending events, or null if there is no limit.
+	 */
+	public PartitionedEventProcessor(int threads, int partitions, EventLimit limit) {
+		this.threads = threads;
+		this.partitions = new Partition[ partitions ];
+		for (int i = 0; i < partitions; i++) {
+			this.partitions[i] = new Partition();
+		}
+		this.next = new AtomicInteger();
+		this.pending = new AtomicInteger();
+		this.finished = new AtomicBoolean();
+		this.limit = limit;
+		this.space = new Object();
+		this.logger = Logger.getInstance();
+	}
+
+	/**
+	 * Begins the processing of the events, including the ones put before.
+	 */
+	public void startProcessing() {
+		this.executor = WorkerThreads.newPool("PartitionedEventProcessor", this.threads);
+		this.mustShutdown = false;
+		this.isAlive = true;
+		this.started = true;
+		for (int i = 0; i < this.partitions.length; i++) {
+			this.partitions[i].schedule();
+		}
+	}
+
+	/**
+	 * Inserts an <code>Event</code> - to be processed - into the queue of its partition.
+	 *
+	 * @param event An <code>ActionEvent</code> to be processed.
+	 * @throws BusyException If the processor is full and the event was rejected.
+	 */
+	public void putEvent(Event event) throws BusyException {
+		Partition partition = this.partitionOf(event);
+
+		//contado antes de testar o shutdown, para o shutdown nao terminar antes deste evento
+		if (this.limit == null) {
+			this.pending.incrementAndGet();
+		}
+		else if (!this.reserve(event, partition)) {
+			return;
+		}
+		if (this.mustShutdown) {
+			this.logger.debug(getClass().getName() + ".putEvent()", "The event " + event + " was put after the shutdown and was ignored.");
+			this.processed();
+			return;
+		}
+
+		partition.events.offer(event);
+		if (this.started) {
+			partition.schedule();
+		}
+	}
+
+	/**
+	 * Does nothing: the events are processed by the threads of the pool, started
+	 * by <code>startProcessing()</code>.
+	 */
+	public void run() {
+	}
+
+	/**
+	 * @see EventProcessor#shutdown(EventQueue)
+	 */
+	public void shutdown(EventQueue eq) {
+		this.shutdownEventQueue = eq;
+		this.mustShutdown = true;
+	}
+
+	/**
+	 * @see EventProcessor#isAlive()
+	 */
+	public boolean isAlive() {
+		return this.isAlive;
+	}
+
+	/**
+	 * Returns the number of events put and not processed yet.
+	 *
+	 * @return The number of events.
+	 */
+	public int getPending() {
+		return this.pending.get();
+	}
+
+	/**
+	 * Returns the limit of the pending events.
+	 *
+	 * @return The limit, or null if there is no limit.
+	 */
+	public EventLimit getLimit() {
+		return this.limit;
+	}
+
+	/**
+	 * Returns the String representation of the pending events and the limit.
+	 * @return The String representation.
+	 */
+	public String toString() {
+		return this.pending.get() + " pending events" + (this.limit == null ? "" : ", " + this.limit);
+	}
+
+	private Partition partitionOf(Event event) {
+		int index;
+		if (event instanceof PartitionedEvent) {
+			index = ((PartitionedEvent) event).getPartitionKey().hashCode();
+		}
+		else {
+			index = this.next.getAndIncrement();
+		}
+		return this.partitions[(index & 0x7fffffff) % this.partitions.length];
+	}
+
+	/**
+	 * Counts an event in the pending ones if there is space, or applies its policy.
+	 *
+	 * @param event The event.
+	 * @param partition The partition of the event.
+	 * @return false if the event was dropped.
+	 * @throws BusyException If the event was rejected.
+	 */
+	private boolean reserve(Event event, Partition partition) throws BusyException {
+		long start = 0;
+		while (true) {
+			int count = this.pending.get();
+			//depois do shutdown os eventos sao ignorados, nao precisam esperar
+			if (count < this.limit.getCapacity() || this.mustShutdown) {
+				if (this.pending.compareAndSet(count, count + 1)) {
+					if (start > 0) {
+						this.limit.waited(System.currentTimeMillis() - start);
+					}
+					return true;
+				}
+				continue;
+			}
+
+			switch (this.limit.getPolicy(event)) {
+			case EventLimit.ACCEPT:
+				this.pending.incrementAndGet();
+				return true;
+			case EventLimit.DROP_OLDEST:
+				this.limit.dropped();
+				//o evento descartado ja estava contado, este fica com a sua vaga
+				return this.dropOldest(partition);
+			case EventLimit.REJECT:
+				throw this.limit.rejected(event);
+			default:
+				if (start == 0) {
+					start = System.currentTimeMillis();
+				}
+				synchronized (this.space) {
+					if (this.pending.get() >= this.limit.getCapacity() && !this.mustShutdown) {
+						try {
+							//com prazo, o aviso pode chegar antes deste wait
+							this.space.wait(100);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							throw this.limit.rejected(event);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the oldest event that can be dropped, looking first in the partition of the new event.
+	 *
+	 * @param first The partition of the new event.
+	 * @return true if an event was removed.
+	 */
+	private boolean dropOldest(Partition first) {
+		if (first.dropOldest()) {
+			return true;
+		}
+		for (int i = 0; i < this.partitions.length; i++) {
+			if (this.partitions[i] != first && this.partitions[i].dropOldest()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Counts a processed event and ends the processing if it was the last before the shutdown.
+	 */
+	private void processed() {
+		int count = this.pending.decrementAndGet();
+		if (this.limit != null && count == this.limit.getCapacity() - 1) {
+			synchronized (this.space) {
+				this.space.notifyAll();
+			}
+		}
+		if (count == 0 && this.mustShutdown && this.finished.compareAndSet(false, true)) {
+			this.isAlive = false;
+			this.executor.shutdown();
+			this.shutdownEventQueue.put(new ShutdownResponseEvent());
+		}
+	}
+
+	/**
+	 * The events of some keys, processed in order by one thread at a time.
+	 */
+	private class Partition implements Runnable {
+
+		private ConcurrentLinkedQueue events = new ConcurrentLinkedQueue();
+
+		/**
+		 * True while the partition is in the pool, waiting or running.
+		 */
+		private AtomicBoolean scheduled = new AtomicBoolean();
+
+		/**
+		 * Gives the partition to the pool, if it has events and is not there yet.
+		 */
+		void schedule() {
+			if (!this.events.isEmpty() && this.scheduled.compareAndSet(false, true)) {
+				executor.execute(this);
+			}
+		}
+
+		/**
+		 * Removes the oldest event of this partition that can be dropped.
+		 */
+		boolean dropOldest() {
+			Iterator it = this.events.iterator();
+			while (it.hasNext()) {
+				Object event = it.next();
+				//o evento pode ter sido retirado por quem processa a particao
+				if (limit.getPolicy((Event) event) == EventLimit.DROP_OLDEST && this.events.remove(event)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public void run() {
+			for (int i = 0; i < BATCH; i++) {
+				ActionEvent event = (ActionEvent) this.events.poll();
+				if (event == null) {
+					break;
+				}
+				try {
+					event.process();
+				} catch (RuntimeException e) {
+					logger.exception(PartitionedEventProcessor.class.getName() + ".run()", e);
+				} finally {
+					processed();
+				}
+			}
+			this.scheduled.set(false);
+			//um evento pode ter chegado depois do ultimo poll
+			if (!finished.get()) {
+				this.schedule();
+			}
+		}
+	}
+
+}
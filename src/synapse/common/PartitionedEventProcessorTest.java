@@ -0,0 +1,277 @@
+package synapse.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import synapse.common.events.ActionEvent;
+import synapse.common.events.PartitionedEvent;
+import synapse.common.events.ShutdownRequestEvent;
+import synapse.common.events.ShutdownResponseEvent;
+
+/**
+ * Tests the <code>PartitionedEventProcessor</code> functions.
+ *
+ * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+ */
+public class PartitionedEventProcessorTest extends TestCase {
+
+    /**
+     * The object to be tested.
+     */
+	private PartitionedEventProcessor eventProcessor;
+
+	/*
+	 * @see TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		eventProcessor = new PartitionedEventProcessor(8);
+	}
+
+	/*
+	 * @see TestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		if (eventProcessor.isAlive()) {
+			EventQueue eventQueue = new EventQueue();
+			eventProcessor.putEvent(new ShutdownRequestEvent(eventQueue, eventProcessor));
+			eventQueue.blockingRemove();
+		}
+	}
+
+	/**
+	 * Tests if the events are been received by the <code>PartitionedEventProcessor</code>.
+	 */
+	public void testAll() throws Exception {
+		EventQueue eventQueue = new EventQueue();
+		ActionEvent requestEvent = new ServerTestRequestEvent(eventQueue);
+
+		// Put Event, StartProcessing and isAlive
+		eventProcessor.putEvent(requestEvent);
+
+		Object response = eventQueue.unblockingRemove();
+		assertNull(response);
+		assertFalse(eventProcessor.isAlive());
+
+		eventProcessor.startProcessing();
+		assertTrue(eventProcessor.isAlive());
+		response = eventQueue.blockingRemove();
+		assertNotNull(response);
+		assertTrue(response instanceof ServerTestResponseEvent);
+
+		int numberOfEventQueues = 1000;
+		EventQueue[] eventQueues = new EventQueue[numberOfEventQueues];
+		for (int k = 0; k < eventQueues.length; k++) {
+			eventQueues[k] = new EventQueue();
+			ActionEvent event = new ServerTestRequestEvent(eventQueues[k]);
+			eventProcessor.putEvent(event);
+		}
+
+		for (int k = 0; k < eventQueues.length; k++) {
+			Object responseEvent = eventQueues[k].blockingRemove();
+			assertNotNull(responseEvent);
+			assertTrue(responseEvent instanceof ServerTestResponseEvent);
+		}
+
+		// Shutdown, isAlive
+		assertTrue(eventProcessor.isAlive());
+		eventProcessor.putEvent(new ShutdownRequestEvent(eventQueue, eventProcessor));
+		response = eventQueue.blockingRemove();
+		assertFalse(eventProcessor.isAlive());
+		assertTrue(response instanceof ShutdownResponseEvent);
+	}
+
+	/**
+	 * Tests if the events with the same key are processed in the order they were put.
+	 */
+	public void testOrderByKey() throws Exception {
+		int keys = 20;
+		int events = 200;
+		List[] processed = new List[ keys ];
+		for (int k = 0; k < keys; k++) {
+			processed[k] = Collections.synchronizedList(new ArrayList());
+		}
+
+		eventProcessor.startProcessing();
+		for (int i = 0; i < events; i++) {
+			for (int k = 0; k < keys; k++) {
+				eventProcessor.putEvent(new KeyedEvent(new Integer(k), i, processed[k], 0));
+			}
+		}
+		this.shutdown();
+
+		for (int k = 0; k < keys; k++) {
+			assertEquals(events, processed[k].size());
+			for (int i = 0; i < events; i++) {
+				assertEquals(new Integer(i), processed[k].get(i));
+			}
+		}
+	}
+
+	/**
+	 * Tests if the events of different keys are processed at the same time, so a
+	 * slow event doesn't hold the others.
+	 */
+	public void testParallel() throws Exception {
+		List processed = Collections.synchronizedList(new ArrayList());
+		eventProcessor.startProcessing();
+
+		long start = System.currentTimeMillis();
+		for (int k = 0; k < 8; k++) {
+			eventProcessor.putEvent(new KeyedEvent(new Integer(k), k, processed, 300));
+		}
+		this.shutdown();
+
+		assertEquals(8, processed.size());
+		assertTrue(System.currentTimeMillis() - start < 8 * 300);
+	}
+
+	/**
+	 * Tests if the shutdown waits for the events put before it, and the events
+	 * put after it are ignored.
+	 */
+	public void testShutdownWaitsPending() throws Exception {
+		List processed = Collections.synchronizedList(new ArrayList());
+		eventProcessor.startProcessing();
+
+		eventProcessor.putEvent(new KeyedEvent("slow", 1, processed, 300));
+		EventQueue eventQueue = new EventQueue();
+		eventProcessor.putEvent(new ShutdownRequestEvent(eventQueue, eventProcessor));
+		Object response = eventQueue.blockingRemove();
+
+		assertTrue(response instanceof ShutdownResponseEvent);
+		assertFalse(eventProcessor.isAlive());
+		assertEquals(1, processed.size());
+		assertEquals(0, eventProcessor.getPending());
+
+		eventProcessor.putEvent(new KeyedEvent("late", 2, processed, 0));
+		Thread.sleep(100);
+		assertEquals(1, processed.size());
+		assertEquals(0, eventProcessor.getPending());
+	}
+
+	/**
+	 * Tests if an event that fails doesn't stop the others of its key.
+	 */
+	public void testFailedEvent() throws Exception {
+		List processed = Collections.synchronizedList(new ArrayList());
+		eventProcessor.startProcessing();
+
+		eventProcessor.putEvent(new KeyedEvent("key", 1, processed, 0));
+		eventProcessor.putEvent(new KeyedEvent("key", 2, null, 0));
+		eventProcessor.putEvent(new KeyedEvent("key", 3, processed, 0));
+		this.shutdown();
+
+		assertEquals(2, processed.size());
+		assertEquals(new Integer(3), processed.get(1));
+	}
+
+	/**
+	 * Tests if an event is rejected when the processor is full.
+	 */
+	public void testReject() throws Exception {
+		List processed = Collections.synchronizedList(new ArrayList());
+		EventLimit limit = new EventLimit(2, EventLimit.REJECT);
+		eventProcessor = new PartitionedEventProcessor(2, limit);
+
+		eventProcessor.putEvent(new KeyedEvent("a", 1, processed, 0));
+		eventProcessor.putEvent(new KeyedEvent("b", 2, processed, 0));
+		try {
+			eventProcessor.putEvent(new KeyedEvent("c", 3, processed, 0));
+			fail("The event should be rejected.");
+		} catch (BusyException e) {
+			// expected
+		}
+		assertEquals(2, eventProcessor.getPending());
+		assertEquals(1, limit.getRejected());
+
+		eventProcessor.startProcessing();
+		this.shutdown();
+		assertEquals(2, processed.size());
+		assertFalse(processed.contains(new Integer(3)));
+	}
+
+	/**
+	 * Tests if the oldest droppable event is discarded when the processor is full.
+	 */
+	public void testDropOldest() throws Exception {
+		List processed = Collections.synchronizedList(new ArrayList());
+		EventLimit limit = new EventLimit(2, EventLimit.DROP_OLDEST);
+		eventProcessor = new PartitionedEventProcessor(2, limit);
+
+		for (int i = 1; i <= 4; i++) {
+			eventProcessor.putEvent(new KeyedEvent("key", i, processed, 0));
+		}
+		assertEquals(2, eventProcessor.getPending());
+		assertEquals(2, limit.getDropped());
+
+		eventProcessor.startProcessing();
+		this.shutdown();
+		assertEquals(2, processed.size());
+		assertEquals(new Integer(3), processed.get(0));
+		assertEquals(new Integer(4), processed.get(1));
+	}
+
+	/**
+	 * Tests if the caller waits for space when the processor is full.
+	 */
+	public void testBlock() throws Exception {
+		List processed = Collections.synchronizedList(new ArrayList());
+		EventLimit limit = new EventLimit(1, EventLimit.BLOCK);
+		eventProcessor = new PartitionedEventProcessor(2, limit);
+		eventProcessor.startProcessing();
+
+		eventProcessor.putEvent(new KeyedEvent("a", 1, processed, 300));
+		long start = System.currentTimeMillis();
+		eventProcessor.putEvent(new KeyedEvent("b", 2, processed, 0));
+		assertTrue(System.currentTimeMillis() - start >= 200);
+		assertEquals(1, limit.getBlocked());
+		assertTrue(limit.getWaitTime() >= 200);
+
+		this.shutdown();
+		assertEquals(2, processed.size());
+	}
+
+	private void shutdown() throws Exception {
+		EventQueue eventQueue = new EventQueue();
+		eventProcessor.putEvent(new ShutdownRequestEvent(eventQueue, eventProcessor));
+		assertTrue(eventQueue.blockingRemove() instanceof ShutdownResponseEvent);
+	}
+
+	/**
+	 * An event that adds its number to a list.
+	 */
+	private static class KeyedEvent implements PartitionedEvent {
+
+		private Object key;
+
+		private int number;
+
+		private List processed;
+
+		private long time;
+
+		KeyedEvent(Object key, int number, List processed, long time) {
+			this.key = key;
+			this.number = number;
+			this.processed = processed;
+			this.time = time;
+		}
+
+		public Object getPartitionKey() {
+			return this.key;
+		}
+
+		public void process() {
+			try {
+				Thread.sleep(this.time);
+			} catch (InterruptedException e) {
+				// do nothing
+			}
+			this.processed.add(new Integer(this.number));
+		}
+	}
+
+}
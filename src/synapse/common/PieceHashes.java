@@ -0,0 +1,198 @@
+package synapse.common;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import com.twmacinta.util.MD5;
+
+/**
+ * The hashes of a file: the MD5 of the whole file, the MD5 of each fixed-size
+ * piece and the root of a Merkle tree built over the piece hashes. A downloader
+ * checks each piece as soon as it is written, instead of waiting the whole file.
+ *
+ * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
+ */
+public class PieceHashes implements Serializable {
+
+    /**
+     * The default piece size.
+     */
+    public static final int PIECE_SIZE = 1024 * 1024;
+
+    /**
+     * The file hash.
+     */
+    private String fileHash;
+
+    /**
+     * The file size.
+     */
+    private long size;
+
+    /**
+     * The piece size.
+     */
+    private int pieceSize;
+
+    /**
+     * The MD5 of each piece.
+     */
+    private byte[][] pieces;
+
+    /**
+     * The Merkle root.
+     */
+    private byte[] root;
+
+    /**
+     * Creates a new PieceHashes.
+     *
+     * @param fileHash The file hash.
+     * @param size The file size.
+     * @param pieceSize The piece size.
+     * @param pieces The MD5 of each piece.
+     */
+    public PieceHashes(String fileHash, long size, int pieceSize, byte[][] pieces) {
+        this.fileHash = fileHash;
+        this.size = size;
+        this.pieceSize = pieceSize;
+        this.pieces = pieces;
+        this.root = createRoot(pieces);
+    }
+
+    /**
+     * Returns the MD5 of the whole file.
+     *
+     * @return The file hash.
+     */
+    public String getFileHash() {
+        return this.fileHash;
+    }
+
+    /**
+     * Returns the file size.
+     *
+     * @return The file size.
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+    /**
+     * Returns the piece size.
+     *
+     * @return The piece size.
+     */
+    public int getPieceSize() {
+        return this.pieceSize;
+    }
+
+    /**
+     * Returns the number of pieces.
+     *
+     * @return The number of pieces.
+     */
+    public int getNumberOfPieces() {
+        return this.pieces.length;
+    }
+
+    /**
+     * Returns the offset of a piece.
+     *
+     * @param piece The piece index.
+     * @return The offset.
+     */
+    public long getOffset(int piece) {
+        return (long) piece * this.pieceSize;
+    }
+
+    /**
+     * Returns the length of a piece. Only the last one may be shorter.
+     *
+     * @param piece The piece index.
+     * @return The length.
+     */
+    public int getLength(int piece) {
+        return (int) Math.min(this.pieceSize, this.size - this.getOffset(piece));
+    }
+
+    /**
+     * Returns the MD5 of a piece.
+     *
+     * @param piece The piece index.
+     * @return The piece hash.
+     */
+    public byte[] getPieceHash(int piece) {
+        return this.pieces[piece];
+    }
+
+    /**
+     * Informs if a digest is the MD5 of a piece.
+     *
+     * @param piece The piece index.
+     * @param digest The digest of the bytes read.
+     * @return true if the piece is correct.
+     */
+    public boolean matches(int piece, byte[] digest) {
+        return Arrays.equals(this.pieces[piece], digest);
+    }
+
+    /**
+     * Returns the Merkle root.
+     *
+     * @return The root, in hexadecimal.
+     */
+    public String getRoot() {
+        return MD5.asHex(this.root);
+    }
+
+    /**
+     * Informs if the piece hashes agree with the root and the file size. Hashes
+     * received from a source should be checked before being used, and their root
+     * compared to the one found in the search.
+     *
+     * @return true if the hashes are consistent.
+     */
+    public boolean isConsistent() {
+        long expected = this.size == 0 ? 0 : (this.size + this.pieceSize - 1) / this.pieceSize;
+        return this.pieceSize > 0
+            && this.pieces.length == expected
+            && Arrays.equals(this.root, createRoot(this.pieces));
+    }
+
+    /**
+     * Builds the Merkle root: each level hashes the pairs of the level below, and a
+     * node without a pair goes up unchanged.
+     */
+    private static byte[] createRoot(byte[][] leaves) {
+        if (leaves.length == 0) {
+            return new MD5().Final();
+        }
+        byte[][] level = leaves;
+        while (level.length > 1) {
+            byte[][] parents = new byte[ (level.length + 1) / 2 ][];
+            for (int i = 0; i < parents.length; i++) {
+                if (2 * i + 1 < level.length) {
+                    MD5 md5 = new MD5();
+                    md5.Update(level[2 * i]);
+                    md5.Update(level[2 * i + 1]);
+                    parents[i] = md5.Final();
+                }
+                else {
+                    parents[i] = level[2 * i];
+                }
+            }
+            level = parents;
+        }
+        return level[0];
+    }
+
+    /**
+     * Method that returns a string representation of the <code>PieceHashes</code>.
+     * @return A string representation of this PieceHashes.
+     */
+    public String toString() {
+        return this.pieces.length + " pieces of " + this.pieceSize / 1024 + " KB, root " + this.getRoot();
+    }
+
+}
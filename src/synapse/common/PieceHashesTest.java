@@ -0,0 +1,76 @@
+package synapse.common;
+
+import junit.framework.TestCase;
+import synapse.util.HashUtil;
+
+import com.twmacinta.util.MD5;
+
+/**
+ * Tests the <code>PieceHashes</code> class.
+ * 
+ * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
+ */
+public class PieceHashesTest extends TestCase {
+
+    private byte[] content;
+
+    /*
+     * @see TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        content = new byte[ 10000 ];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 97);
+        }
+    }
+
+    /**
+     * Tests the pieces offsets and lengths.
+     */
+    public void testPieces() {
+        PieceHashes hashes = HashUtil.createHashes(content, 3000);
+
+        assertEquals(4, hashes.getNumberOfPieces());
+        assertEquals(6000, hashes.getOffset(2));
+        assertEquals(3000, hashes.getLength(2));
+        assertEquals(1000, hashes.getLength(3));
+        assertEquals(content.length, hashes.getSize());
+        assertTrue(hashes.isConsistent());
+    }
+
+    /**
+     * Tests if the root changes when a piece changes.
+     */
+    public void testRoot() {
+        PieceHashes hashes = HashUtil.createHashes(content, 3000);
+        assertEquals(hashes.getRoot(), HashUtil.createHashes(content, 3000).getRoot());
+
+        content[7000]++;
+        PieceHashes other = HashUtil.createHashes(content, 3000);
+        assertFalse(hashes.getRoot().equals(other.getRoot()));
+        assertTrue(hashes.matches(0, other.getPieceHash(0)));
+        assertFalse(hashes.matches(2, other.getPieceHash(2)));
+
+        // a root with one piece is the piece hash itself
+        PieceHashes single = HashUtil.createHashes(content, content.length);
+        assertEquals(single.getRoot(), MD5.asHex(single.getPieceHash(0)));
+    }
+
+    /**
+     * Tests if hashes that do not agree with the root or the size are found.
+     */
+    public void testIsConsistent() {
+        PieceHashes hashes = HashUtil.createHashes(content, 3000);
+        byte[][] pieces = new byte[ 4 ][];
+        for (int i = 0; i < pieces.length; i++) {
+            pieces[i] = hashes.getPieceHash(i);
+        }
+        assertFalse(new PieceHashes(hashes.getFileHash(), 20000, 3000, pieces).isConsistent());
+        assertTrue(new PieceHashes(hashes.getFileHash(), 10000, 3000, pieces).isConsistent());
+
+        assertTrue(HashUtil.createHashes(new byte[0], 3000).isConsistent());
+        assertEquals(0, HashUtil.createHashes(new byte[0], 3000).getNumberOfPieces());
+    }
+
+}
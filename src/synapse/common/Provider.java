@@ -11,6 +11,11 @@ import java.rmi.RemoteException;
  * @author <p>Flavio Vinicius Diniz de Figueiredo, flaviov@lcc.ufcg.edu.br</p>
  */
 public interface Provider extends Remote {
+
+	/**
+	 * The limit of a search that accepts all the files found.
+	 */
+	public static final int NO_LIMIT = 0;
 	
 	/**
 	 * Method that identifies a client. It's necessary to allow
@@ -31,6 +36,19 @@ public interface Provider extends Remote {
      */
     public long searchFile(Consumer consumer, String fileName) throws RemoteException;
 
+    /**
+     * Sends the search file request to the provider, asking for at most <code>limit</code>
+     * files from each provider. The providers stop looking when they have found them.
+     * 
+     * @param consumer The consumer that requested the file.
+     * @param fileName The name of the file, or substring of its name.
+     * @param limit The number of files wanted, or <code>NO_LIMIT</code>.
+     * @param ranked true to ask for the files that best match the name, false for the first ones found.
+     * @return The ID that represents this request.
+     * @throws RemoteException It's thrown when the provider can't be contacted.
+     */
+    public long searchFile(Consumer consumer, String fileName, int limit, boolean ranked) throws RemoteException;
+
     /**
      * Sends to server the search file request with the ID already defined.
 	 *
@@ -40,9 +58,24 @@ public interface Provider extends Remote {
      * @throws RemoteException It's thrown when the provider can't be contacted.
      */
     public void searchFile(long id, Consumer consumer, String fileName) throws RemoteException;
+
+    /**
+     * Sends to server the search file request with the ID already defined, asking for
+     * at most <code>limit</code> files.
+	 *
+	 * @param id The ID that represents this request.
+	 * @param consumer The consumer that requested the file.
+     * @param fileName The name of the file, or substring of its name.
+     * @param limit The number of files wanted, or <code>NO_LIMIT</code>.
+     * @param ranked true to ask for the files that best match the name, false for the first ones found.
+     * @throws RemoteException It's thrown when the provider can't be contacted.
+     */
+    public void searchFile(long id, Consumer consumer, String fileName, int limit, boolean ranked) throws RemoteException;
     
     public void searchForCommunity(long id, Consumer consumer, String fileName) throws RemoteException;
 
+    public void searchForCommunity(long id, Consumer consumer, String fileName, int limit, boolean ranked) throws RemoteException;
+
     /**
      * Sends the search to server informing the hash and who is submitting the search.
      * This method is useful to find more download sources.
@@ -31,7 +31,8 @@ public class SimpleEventProcessor implements EventProcessor {
 	private EventQueue shutdownEventQueue;
 
 	/**
-	 * Thread that performs <code>Event</code> consuming.
+	 * Thread that performs <code>Event</code> consuming. It's a virtual thread if
+	 * <code>WorkerThreads</code> was asked for them.
 	 */
 	private Thread myThread;
 
@@ -44,9 +45,18 @@ public class SimpleEventProcessor implements EventProcessor {
 	 * Creates a new <code>SimpleEventProcessor</code>.
 	 */
 	public SimpleEventProcessor() {
-		this.eventQueue = new EventQueue();
+		this(null);
+	}
+
+	/**
+	 * Creates a new <code>SimpleEventProcessor</code> with a bounded queue.
+	 * 
+	 * @param limit The limit of the queue, or null if it is unbounded.
+	 */
+	public SimpleEventProcessor(EventLimit limit) {
+		this.eventQueue = new EventQueue(limit);
 		this.isAlive = false;
-		this.myThread = new Thread(this);
+		this.myThread = WorkerThreads.newThread(this, "SimpleEventProcessor");
 	}
 
 	/**
@@ -63,9 +73,10 @@ public class SimpleEventProcessor implements EventProcessor {
 	 * Inserts an <code>Event</code> - to be processed - into a internal <code>EventQueue</code>.
 	 * 
 	 * @param event An <code>Event</code> to be processed.
+	 * @throws BusyException If the queue is full and the event was rejected.
 	 */
-	public void putEvent(Event event) {
-		this.eventQueue.put(event);
+	public void putEvent(Event event) throws BusyException {
+		this.eventQueue.offer(event);
 	}
 
 	/**
@@ -97,4 +108,13 @@ public class SimpleEventProcessor implements EventProcessor {
 	public boolean isAlive() {
 		return this.isAlive;
 	}
+
+	/**
+	 * Returns the String representation of the queued events and the limit.
+	 * @return The String representation.
+	 */
+	public String toString() {
+		EventLimit limit = this.eventQueue.getLimit();
+		return this.eventQueue.size() + " pending events" + (limit == null ? "" : ", " + limit);
+	}
 }
@@ -35,7 +35,7 @@ public class SimpleEventProcessorTest extends TestCase {
 	/**
 	 * Tests if the events are been received by the <code>SimpleEventProcessor</code>.
 	 */
-	public void testAll() {
+	public void testAll() throws Exception {
 		EventQueue eventQueue = new EventQueue();
 		ActionEvent requestEvent = new ServerTestRequestEvent(eventQueue);
 
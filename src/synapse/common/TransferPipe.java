@@ -14,6 +14,17 @@ import java.rmi.RemoteException;
 
 public interface TransferPipe extends Remote {
 
+	/**
+	 * The largest number of bytes asked in one call. A pipe refuses the calls
+	 * that ask for more, so a caller cannot make it allocate too much memory.
+	 */
+	public static final int MAX_REQUEST_SIZE = 8 * 1024 * 1024;
+
+	/**
+	 * The largest number of ranges asked in one <code>getFiles()</code> call.
+	 */
+	public static final int MAX_RANGES = 64;
+
 	/**
 	 * Returns the file size to be transfered.
 	 * @return File size to be transfered.
@@ -23,8 +34,8 @@ public interface TransferPipe extends Remote {
 	
 	/**
 	 * Reads up to len bytes of data from this file
-	 * into an array of bytes. This method blocks until
-	 * at least one byte of input is available.
+	 * into an array of bytes. The array is shorter than
+	 * len only when the end of the file is reached.
 	 * 
 	 * @param i The start offset of the data.
 	 * @param len The maximum number of bytes read.
@@ -32,6 +43,21 @@ public interface TransferPipe extends Remote {
 	 * @throws RemoteException Thrown in case a remote problem occurs.
 	 */
 	public byte[] getFile(long i, long len) throws RemoteException;
+
+	/**
+	 * Reads many ranges of this file in only one call. The range k starts
+	 * at offsets[k] and has at most lengths[k] bytes, like in
+	 * <code>getFile()</code>.
+	 * 
+	 * The call may ask for up to <code>MAX_RANGES</code> ranges and
+	 * <code>MAX_REQUEST_SIZE</code> bytes in total.
+	 * 
+	 * @param offsets The start offset of each range.
+	 * @param lengths The maximum number of bytes read in each range.
+	 * @return The buffers into which the ranges are read, in the same order.
+	 * @throws RemoteException Thrown in case a remote problem occurs, or the call asks too much.
+	 */
+	public byte[][] getFiles(long[] offsets, int[] lengths) throws RemoteException;
 	
 	/**
 	 * Gets the name of the file to be transfered.
@@ -46,6 +72,21 @@ public interface TransferPipe extends Remote {
 	 * @throws RemoteException Thrown in case a remote problem occurs.
 	 */
 	public String getHash() throws RemoteException;
+	
+	/**
+	 * Gets the hash of the file to be transfered, in its compact form.
+	 * @return The hash of the file.
+	 * @throws RemoteException Thrown in case a remote problem occurs.
+	 */
+	public ContentHash getContentHash() throws RemoteException;
+
+	/**
+	 * Gets the hashes of the pieces of the file to be transfered, used to
+	 * check each piece as soon as it is downloaded.
+	 * @return The piece hashes, or null if they are unknown.
+	 * @throws RemoteException Thrown in case a remote problem occurs.
+	 */
+	public PieceHashes getPieceHashes() throws RemoteException;
 
 }
 
@@ -0,0 +1,245 @@
+package synapse.common;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.ourgrid.yal.Logger;
+
+/**
+ * Creates the threads of the work that waits on RMI calls: the transfers, the
+ * uploads and the events. By default they are platform threads and each pool
+ * has a fixed number of them.
+ * <p>
+ * When the system property <code>SYNAPSE_VIRTUAL_THREADS</code> is true and the
+ * JVM has virtual threads, each task runs in a new virtual thread instead, and the
+ * limit of a pool is kept by a <code>Semaphore</code>: a task over the limit waits
+ * in its virtual thread, which costs no platform thread. So a download can have
+ * thousands of sources in flight without thousands of platform threads.
+ *
+ * @author <p>Thiago Emmanuel, thiago.manel@gmail.com</p>
+ * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+ */
+public class WorkerThreads {
+
+    /**
+     * The system property that turns on the virtual threads.
+     */
+    public static final String VIRTUAL_THREADS = "SYNAPSE_VIRTUAL_THREADS";
+
+    /**
+     * <code>Thread.ofVirtual()</code>, or null if the JVM has no virtual threads.
+     */
+    private static final Method OF_VIRTUAL;
+
+    private static final Method NAME;
+
+    private static final Method FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            //procurado por reflexao, o codigo compila e roda em JVMs sem threads virtuais
+            Class builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual", new Class[0]);
+            name = builder.getMethod("name", new Class[] { String.class });
+            factory = builder.getMethod("factory", new Class[0]);
+        } catch (Exception e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+    }
+
+    private WorkerThreads() {
+    }
+
+    /**
+     * Informs if the JVM has virtual threads.
+     *
+     * @return true if virtual threads can be created.
+     */
+    public static boolean isVirtualSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Informs if the new workers run in virtual threads.
+     *
+     * @return true if the virtual threads were asked and the JVM has them.
+     */
+    public static boolean isVirtual() {
+        return isVirtualSupported() && Boolean.getBoolean(VIRTUAL_THREADS);
+    }
+
+    /**
+     * Creates a thread, not started. It's a virtual thread if <code>isVirtual()</code>.
+     * A virtual thread is always a daemon.
+     *
+     * @param runnable The work of the thread.
+     * @param name The thread name.
+     * @return The thread.
+     */
+    public static Thread newThread(Runnable runnable, String name) {
+        ThreadFactory factory = isVirtual() ? virtualFactory(name) : null;
+        if (factory == null) {
+            return new Thread(runnable, name);
+        }
+        return factory.newThread(runnable);
+    }
+
+    /**
+     * Creates a pool that runs at most <code>threads</code> tasks at the same time;
+     * the other tasks wait their turn. The platform threads of the pool are daemons
+     * and die after 30 seconds without work.
+     *
+     * @param name The name of the threads.
+     * @param threads The maximum number of tasks running at the same time.
+     * @return The pool.
+     */
+    public static ExecutorService newPool(final String name, int threads) {
+        threads = Math.max(1, threads);
+        ThreadFactory factory = isVirtual() ? virtualFactory(name) : null;
+        if (factory != null) {
+            return newThreadPerTaskPool(factory, threads);
+        }
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue(), new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Creates a pool that runs each task in a new thread of a factory, with at
+     * most <code>permits</code> tasks running at the same time.
+     */
+    static ExecutorService newThreadPerTaskPool(ThreadFactory factory, int permits) {
+        return new ThreadPerTaskExecutor(factory, Math.max(1, permits));
+    }
+
+    /**
+     * A factory of virtual threads, or null if they could not be created.
+     */
+    private static ThreadFactory virtualFactory(String name) {
+        try {
+            Object builder = OF_VIRTUAL.invoke(null, new Object[0]);
+            builder = NAME.invoke(builder, new Object[] { name });
+            return (ThreadFactory) FACTORY.invoke(builder, new Object[0]);
+        } catch (Exception e) {
+            Logger.getInstance().error(WorkerThreads.class.getName() + ".virtualFactory()", "Could not create virtual threads: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Runs each task in a new thread, with at most <code>permits</code> tasks
+     * running at the same time. The tasks over the limit wait in their threads.
+     */
+    private static class ThreadPerTaskExecutor extends AbstractExecutorService {
+
+        private ThreadFactory factory;
+
+        private Semaphore permits;
+
+        /**
+         * The threads started and not finished.
+         */
+        private Set threads;
+
+        private boolean shutdown;
+
+        private ThreadPerTaskExecutor(ThreadFactory factory, int permits) {
+            this.factory = factory;
+            this.permits = new Semaphore(permits, true);
+            this.threads = new HashSet();
+        }
+
+        public void execute(final Runnable task) {
+            Thread thread = this.factory.newThread(new Runnable() {
+                public void run() {
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        //o pool foi desligado antes da vez desta tarefa
+                        finished();
+                        return;
+                    }
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                        finished();
+                    }
+                }
+            });
+            synchronized (this) {
+                if (this.shutdown) {
+                    throw new RejectedExecutionException("The pool was shut down");
+                }
+                this.threads.add(thread);
+            }
+            thread.start();
+        }
+
+        private synchronized void finished() {
+            this.threads.remove(Thread.currentThread());
+            this.notifyAll();
+        }
+
+        public synchronized void shutdown() {
+            this.shutdown = true;
+        }
+
+        public List shutdownNow() {
+            List running;
+            synchronized (this) {
+                this.shutdown = true;
+                running = new LinkedList(this.threads);
+            }
+            for (int i = 0; i < running.size(); i++) {
+                ((Thread) running.get(i)).interrupt();
+            }
+            return new LinkedList();
+        }
+
+        public synchronized boolean isShutdown() {
+            return this.shutdown;
+        }
+
+        public synchronized boolean isTerminated() {
+            return this.shutdown && this.threads.isEmpty();
+        }
+
+        public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+            while (!this.isTerminated()) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    return false;
+                }
+                this.wait(left);
+            }
+            return true;
+        }
+    }
+
+}
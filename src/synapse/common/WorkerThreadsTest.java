@@ -0,0 +1,132 @@
+package synapse.common;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the <code>WorkerThreads</code> pools.
+ *
+ * @author <p>Thiago Emmanuel, thiago.manel@gmail.com</p>
+ */
+public class WorkerThreadsTest extends TestCase {
+
+    /**
+     * Tests if a pool runs at most its number of tasks at the same time.
+     */
+    public void testPoolLimit() throws Exception {
+        this.checkLimit(WorkerThreads.newPool("WorkerThreadsTest", 3), 3);
+    }
+
+    /**
+     * Tests the limit of a pool that makes a thread for each task, as the pools
+     * of virtual threads do.
+     */
+    public void testThreadPerTaskLimit() throws Exception {
+        ExecutorService pool = WorkerThreads.newThreadPerTaskPool(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "WorkerThreadsTest");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, 3);
+        this.checkLimit(pool, 3);
+        assertTrue(pool.isTerminated());
+    }
+
+    /**
+     * Tests if the tasks waiting for their turn are dropped by <code>shutdownNow()</code>.
+     */
+    public void testThreadPerTaskShutdownNow() throws Exception {
+        ExecutorService pool = WorkerThreads.newThreadPerTaskPool(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "WorkerThreadsTest");
+            }
+        }, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final int[] ran = new int[ 1 ];
+        for (int i = 0; i < 5; i++) {
+            pool.execute(new Runnable() {
+                public void run() {
+                    synchronized (ran) {
+                        ran[0]++;
+                    }
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        // stopped
+                    }
+                }
+            });
+        }
+        pool.shutdownNow();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(ran[0] <= 1);
+
+        try {
+            pool.execute(new Runnable() {
+                public void run() {
+                }
+            });
+            fail("A pool shut down should not take tasks");
+        } catch (RejectedExecutionException e) {
+            // this line have to be executed
+        }
+    }
+
+    /**
+     * Tests if the threads are made as asked.
+     */
+    public void testNewThread() {
+        Thread thread = WorkerThreads.newThread(new Runnable() {
+            public void run() {
+            }
+        }, "WorkerThreadsTest");
+        assertEquals("WorkerThreadsTest", thread.getName());
+        //as threads virtuais sao sempre daemons
+        assertEquals(WorkerThreads.isVirtual(), thread.isDaemon());
+        if (!WorkerThreads.isVirtualSupported()) {
+            System.setProperty(WorkerThreads.VIRTUAL_THREADS, "true");
+            try {
+                assertFalse(WorkerThreads.isVirtual());
+            } finally {
+                System.getProperties().remove(WorkerThreads.VIRTUAL_THREADS);
+            }
+        }
+    }
+
+    private void checkLimit(ExecutorService pool, int limit) throws Exception {
+        final int[] running = new int[ 2 ];
+        final CountDownLatch done = new CountDownLatch(20);
+        for (int i = 0; i < 20; i++) {
+            pool.execute(new Runnable() {
+                public void run() {
+                    synchronized (running) {
+                        running[0]++;
+                        running[1] = Math.max(running[1], running[0]);
+                    }
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        // do nothing
+                    }
+                    synchronized (running) {
+                        running[0]--;
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(running[1] <= limit);
+        assertTrue(running[1] > 1);
+
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+}
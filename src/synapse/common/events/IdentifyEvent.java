@@ -9,7 +9,7 @@ import synapse.server.ConnectionManager;
  * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
  * @author <p>Flavio Vinicius Diniz de Figueiredo, flaviov@lcc.ufcg.edu.br</p>
  */
-public class IdentifyEvent implements ActionEvent {
+public class IdentifyEvent implements PartitionedEvent {
 	
 	/**
 	 * The source where the method will be invoked.
@@ -39,4 +39,13 @@ public class IdentifyEvent implements ActionEvent {
 		this.connectionManager.identify(this.provider);
 	}
 
+	/**
+	 * Returns the identified provider, so it is identified before its searches.
+	 * 
+	 * @see synapse.common.events.PartitionedEvent#getPartitionKey()
+	 */
+	public Object getPartitionKey() {
+		return this.provider;
+	}
+
 }
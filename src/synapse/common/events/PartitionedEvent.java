@@ -0,0 +1,20 @@
+package synapse.common.events;
+
+/**
+ * An <code>ActionEvent</code> that must be processed in the order it was put,
+ * after the events with the same key. The events with other keys may be processed
+ * at the same time by a <code>PartitionedEventProcessor</code>.
+ * 
+ * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+ */
+public interface PartitionedEvent extends ActionEvent {
+
+    /**
+     * Returns the key that orders this event, as a search id, a hash or the peer
+     * that made the request.
+     * 
+     * @return The key, with <code>equals()</code> and <code>hashCode()</code>.
+     */
+    public Object getPartitionKey();
+
+}
@@ -12,7 +12,7 @@ import synapse.common.Provider;
  * 
  * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
  */
-public class SearchFileHashRequestEvent implements ActionEvent {
+public class SearchFileHashRequestEvent implements PartitionedEvent {
 
     /**
      * The provider.
@@ -53,4 +53,13 @@ public class SearchFileHashRequestEvent implements ActionEvent {
 		}
     }
 
+    /**
+     * Returns the consumer, so the requests of a peer keep their order.
+     * 
+     * @see synapse.common.events.PartitionedEvent#getPartitionKey()
+     */
+    public Object getPartitionKey() {
+        return this.consumer;
+    }
+
 }
@@ -2,12 +2,14 @@ package synapse.server;
 
 import java.rmi.Naming;
 import java.rmi.RemoteException;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 
 import org.ourgrid.yal.Logger;
 
+import synapse.common.BusyException;
 import synapse.common.Consumer;
 import synapse.common.OperationNotSupportedException;
 import synapse.common.Provider;
@@ -17,7 +19,8 @@ import synapse.server.protocol.TerminalImpl;
 import synapse.server.protocol.TerminalServicesImpl;
 
 /**
- * Class that manages all the peer conected to the server.
+ * Class that manages all the peer conected to the server. The searches are
+ * spread to the providers at the same time by a <code>SearchFanOut</code>.
  * 
  * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
  * @author <p>Flavio Vinicius Diniz de Figueiredo, flaviov@lcc.ufcg.edu.br</p>
@@ -25,10 +28,16 @@ import synapse.server.protocol.TerminalServicesImpl;
 public class ConnectionManager implements Provider {
 	
 	/**
-	 * The client that are identified.
+	 * The client that are identified. Changed by the threads of the searches,
+	 * when a provider fails.
 	 */
 	private Set identifiedClients;
 
+	/**
+	 * Calls the providers of the searches.
+	 */
+	private SearchFanOut fanOut;
+
 	/**
 	 * The request manager for new requests.
 	 */
@@ -57,9 +66,10 @@ public class ConnectionManager implements Provider {
 	 * @param reqManager An external <code>RequestManager</code>.
 	 */
 	protected ConnectionManager(RequestManager reqManager) {
-	    this.identifiedClients = new HashSet();
+	    this.identifiedClients = Collections.synchronizedSet(new HashSet());
 		this.requestManager = reqManager;
 		this.logger = Logger.getInstance();
+		this.fanOut = new SearchFanOut(ServerConfig.getSearchThreads(), ServerConfig.getSearchDeadline());
 	}
 
 	/**
@@ -98,40 +108,44 @@ public class ConnectionManager implements Provider {
         throw new OperationNotSupportedException();
     }
 
+    /* (non-Javadoc)
+     * @see synapse.common.Provider#searchFile(synapse.common.Consumer, java.lang.String, int, boolean)
+     */
+    public long searchFile(Consumer consumer, String fileName, int limit, boolean ranked) throws OperationNotSupportedException {
+        throw new OperationNotSupportedException();
+    }
+
 	/* (non-Javadoc)
      * @see synapse.server.Provider#searchFile(long, synapse.common.Consumer, java.lang.String)
      */
     public void searchFile(long id, Consumer consumer, String fileName) {
+        this.searchFile(id, consumer, fileName, NO_LIMIT, false);
+    }
+
+	/* (non-Javadoc)
+     * @see synapse.common.Provider#searchFile(long, synapse.common.Consumer, java.lang.String, int, boolean)
+     */
+    public void searchFile(final long id, final Consumer consumer, final String fileName, final int limit, final boolean ranked) {
 
         try {
-	        this.createRequest(id, consumer, fileName);
+	        this.createRequest(id, consumer, fileName, limit, ranked);
 
 	        /*
 	         * Spreads the search.
 	         */
 	        // ask for file in other servers
 	        if ( this.containsClient((Provider) consumer) ) {
-	            this.terminal.searchForCommunity(id, consumer, fileName);
+	            this.terminal.searchForCommunity(id, consumer, fileName, limit, ranked);
 	        }
 
 	        // ask for file in the identified clients
-	        int count = 0;
-			Iterator providerIterator = new HashSet(this.identifiedClients).iterator();
-			while (providerIterator.hasNext()) {
-				Provider auxProvider = (Provider) providerIterator.next();
-
-				if (! consumer.equals(auxProvider) ) {
-					try {
-					    auxProvider.searchFile(id, consumer, fileName);
-					    count++;
-					}
-					catch (RemoteException e) {
-					    this.identifiedClients.remove(auxProvider);
-					}
-				}
-			}
+	        int count = this.fanOut.spread(this.getProviders(consumer), new ProviderCall() {
+	        	public void call(Provider provider) throws RemoteException {
+	        		provider.searchFile(id, consumer, fileName, limit, ranked);
+	        	}
+	        });
 			
-			logger.info(getClass().getName() + ".searchFile()", "The search with <" + id + "> was performed to " + count + " local providers.");
+			logger.info(getClass().getName() + ".searchFile()", "The search with <" + id + "> was performed to " + count + " local providers (" + this.fanOut + ").");
         } catch (ClientNotIdentifiedException e) {
             logger.error(getClass().getName() + ".searchFile()", "The client " + consumer + " performed a search but wasn't identified.");
         }
@@ -140,25 +154,15 @@ public class ConnectionManager implements Provider {
     /* (non-Javadoc)
      * @see synapse.common.Provider#searchFile(java.lang.String, synapse.common.Consumer)
      */
-    public void searchFile(String hash, Consumer consumer) throws RemoteException {
+    public void searchFile(final String hash, final Consumer consumer) throws RemoteException {
 
     	if ( this.identifiedClients.contains(consumer) ) {
 	        // ask for file in the identified clients
-	        int count = 0;
-			Iterator providerIterator = new HashSet(this.identifiedClients).iterator();
-			while (providerIterator.hasNext()) {
-				Provider auxProvider = (Provider) providerIterator.next();
-
-				if (! consumer.equals(auxProvider) ) {
-					try {
-					    auxProvider.searchFile(hash, consumer);
-					    count++;
-					} 
-					catch (RemoteException e) {
-					    this.identifiedClients.remove(auxProvider);
-					}
-				}
-			}
+	        int count = this.fanOut.spread(this.getProviders(consumer), new ProviderCall() {
+	        	public void call(Provider provider) throws RemoteException {
+	        		provider.searchFile(hash, consumer);
+	        	}
+	        });
 			
 			logger.info(getClass().getName() + ".searchFile()", "The search for <" + hash + "> was performed to " + count + " local providers.");
     	}
@@ -171,22 +175,19 @@ public class ConnectionManager implements Provider {
 	 * @see synapse.common.Provider#searchForCommunity(long, synapse.common.Consumer, java.lang.String)
 	 */
 	public void searchForCommunity(long id, Consumer consumer, String fileName) throws RemoteException {
+		this.searchForCommunity(id, consumer, fileName, NO_LIMIT, false);
+	}
+
+	/* (non-Javadoc)
+	 * @see synapse.common.Provider#searchForCommunity(long, synapse.common.Consumer, java.lang.String, int, boolean)
+	 */
+	public void searchForCommunity(final long id, final Consumer consumer, final String fileName, final int limit, final boolean ranked) throws RemoteException {
         // ask for file in the identified clients
-        int count = 0;
-		Iterator providerIterator = new HashSet(this.identifiedClients).iterator();
-		while (providerIterator.hasNext()) {
-			Provider auxProvider = (Provider) providerIterator.next();
-
-			if (! consumer.equals(auxProvider) ) {
-				try {
-				    auxProvider.searchFile(id, consumer, fileName);
-				    count++;
-				}
-				catch (RemoteException e) {
-				    this.identifiedClients.remove(auxProvider);
-				}
-			}
-		}
+        int count = this.fanOut.spread(this.getProviders(consumer), new ProviderCall() {
+        	public void call(Provider provider) throws RemoteException {
+        		provider.searchFile(id, consumer, fileName, limit, ranked);
+        	}
+        });
 		
 		logger.info(getClass().getName() + ".searchForCommunity()", "The search from community with <" + id + "> was performed to " + count + " local providers.");
 	}
@@ -204,12 +205,14 @@ public class ConnectionManager implements Provider {
      * @param id Request id.
      * @param consumer Requests consumer.
      * @param fileName Requested File Name.
+     * @param limit The number of files wanted from each provider.
+     * @param ranked true to ask for the files that best match the name, false for the first ones found.
      * @throws ClientNotIdentifiedException Thrown if the client is not identified
      */
-    private void createRequest(long id, Consumer consumer, String fileName) throws ClientNotIdentifiedException {
+    private void createRequest(long id, Consumer consumer, String fileName, int limit, boolean ranked) throws ClientNotIdentifiedException {
         if (this.identifiedClients.contains(consumer)) {
 			try {
-				requestManager.createRequest(id, consumer, fileName);
+				requestManager.createRequest(id, consumer, fileName, limit, ranked);
 			} catch (RequestIDAlreadyExistsException e) {
 				e.printStackTrace();
 			}
@@ -234,7 +237,7 @@ public class ConnectionManager implements Provider {
 			        requestManager.remove(tempRequest.getId());
 			    }
 			    else {
-					provider.searchFile(tempRequest.getId(), tempRequest.getConsumer(), tempRequest.getFileName());
+					provider.searchFile(tempRequest.getId(), tempRequest.getConsumer(), tempRequest.getFileName(), tempRequest.getLimit(), tempRequest.isRanked());
 					tempRequest.decreaseRetries();
 				}
 			} catch (RemoteException e) {
@@ -243,6 +246,30 @@ public class ConnectionManager implements Provider {
 		}
 	}
 
+	/**
+	 * Returns a copy of the identified clients, without the consumer of a search.
+	 * 
+	 * @param consumer The consumer of the search.
+	 * @return The providers to be asked.
+	 */
+	private Set getProviders(Consumer consumer) {
+		Set providers;
+		synchronized (this.identifiedClients) {
+			providers = new HashSet(this.identifiedClients);
+		}
+		providers.remove(consumer);
+		return providers;
+	}
+
+	/**
+	 * Returns the counters of the searches spread to the providers.
+	 * 
+	 * @return The fan-out of the searches.
+	 */
+	public SearchFanOut getFanOut() {
+		return this.fanOut;
+	}
+
 	/**
 	 * Sees if the client id identified.
 	 * 
@@ -253,4 +280,21 @@ public class ConnectionManager implements Provider {
     	return this.identifiedClients.contains(provider);
     }
 
+
+	/**
+	 * A call to a provider of a search. A provider that fails is forgotten, unless
+	 * it is only busy.
+	 */
+	private abstract class ProviderCall implements SearchFanOut.Call {
+
+		public void failed(Provider provider, RemoteException e) {
+			if (e instanceof BusyException) {
+				logger.debug(ConnectionManager.class.getName() + ".searchFile()", "The provider " + provider + " is busy and was not asked.");
+				return;
+			}
+			identifiedClients.remove(provider);
+			logger.error(ConnectionManager.class.getName() + ".searchFile()", "The provider " + provider + " failed and was removed: " + e.getMessage());
+		}
+	}
+
 }
\ No newline at end of file
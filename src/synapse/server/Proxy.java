@@ -70,8 +70,15 @@ public class Proxy extends UnicastRemoteObject implements Provider {
      * @see synapse.server.Provider#searchFile(synapse.common.Consumer, java.lang.String)
      */
     public long searchFile(Consumer consumer, String fileName) throws RemoteException {
+        return this.searchFile(consumer, fileName, NO_LIMIT, false);
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.common.Provider#searchFile(synapse.common.Consumer, java.lang.String, int, boolean)
+     */
+    public long searchFile(Consumer consumer, String fileName, int limit, boolean ranked) throws RemoteException {
         long id = this.getNextId();
-        this.facade.searchFile(id, consumer, fileName);
+        this.facade.searchFile(id, consumer, fileName, limit, ranked);
 
         return id;
     }
@@ -83,6 +90,13 @@ public class Proxy extends UnicastRemoteObject implements Provider {
     	throw new OperationNotSupportedException();
     }
 
+    /* (non-Javadoc)
+     * @see synapse.common.Provider#searchFile(long, synapse.common.Consumer, java.lang.String, int, boolean)
+     */
+    public void searchFile(long id, Consumer consumer, String fileName, int limit, boolean ranked) throws OperationNotSupportedException {
+    	throw new OperationNotSupportedException();
+    }
+
     /* (non-Javadoc)
      * @see synapse.common.Provider#searchFile(java.lang.String, synapse.common.Consumer)
      */
@@ -97,6 +111,13 @@ public class Proxy extends UnicastRemoteObject implements Provider {
 		this.facade.searchForCommunity(id, consumer, fileName);
 	}
 
+	/* (non-Javadoc)
+	 * @see synapse.common.Provider#searchForCommunity(long, synapse.common.Consumer, java.lang.String, int, boolean)
+	 */
+	public void searchForCommunity(long id, Consumer consumer, String fileName, int limit, boolean ranked) throws RemoteException {
+		this.facade.searchForCommunity(id, consumer, fileName, limit, ranked);
+	}
+
     /* (non-Javadoc)
      * @see synapse.common.Provider#getFile(java.lang.String)
      */
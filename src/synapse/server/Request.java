@@ -1,6 +1,7 @@
 package synapse.server;
 
 import synapse.common.Consumer;
+import synapse.common.Provider;
 
 /**
  * Class that represents a request made by a consumer.
@@ -25,6 +26,18 @@ class Request {
 	 */
 	private String fileName;
 
+	/**
+	 * The number of files wanted from each provider, sent again when the search
+	 * is retried.
+	 */
+	private int limit;
+
+	/**
+	 * Informs if the files that best match the name are wanted, sent again
+	 * with the limit.
+	 */
+	private boolean ranked;
+
     /**
 	 * Represents the number of retries that the requests
 	 * will be submited when a new <code>Provider</code> identifies.
@@ -35,9 +48,19 @@ class Request {
 	 * Creates a new request.
 	 */
 	public Request (long id, Consumer consumer, String fileName) {
+		this(id, consumer, fileName, Provider.NO_LIMIT, false);
+	}
+
+	/**
+	 * Creates a new request that wants at most <code>limit</code> files from each provider,
+	 * the ones that best match the name if it's <code>ranked</code>.
+	 */
+	public Request (long id, Consumer consumer, String fileName, int limit, boolean ranked) {
 		this.id = id;
 		this.consumer = consumer;
 		this.fileName = fileName;
+		this.limit = limit;
+		this.ranked = ranked;
 		this.setRetries(Integer.parseInt(ServerConfig.getMaxRetries()));
 	}
 
@@ -74,6 +97,20 @@ class Request {
 		return this.fileName;
 	}
 	
+	/**
+	 * @return The number of files wanted, or <code>Provider.NO_LIMIT</code>.
+	 */
+	public int getLimit () {
+		return this.limit;
+	}
+
+	/**
+	 * @return true if the files that best match the name are wanted.
+	 */
+	public boolean isRanked () {
+		return this.ranked;
+	}
+	
 	/**
 	 * @return The consumer that requested the file.
 	 */
@@ -5,10 +5,12 @@ import java.util.HashMap;
 import java.util.LinkedList;
 
 import synapse.common.Consumer;
+import synapse.common.Provider;
 import synapse.common.RequestIDAlreadyExistsException;
 
 /**
- * Class that manages all the requests sent to the server.
+ * Class that manages all the requests sent to the server. The events of the
+ * server are processed by many threads, so the requests are synchronized.
  * 
  * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
  * @author <p>Flavio Vinicius Diniz de Figueiredo, flaviov@lcc.ufcg.edu.br</p>
@@ -35,11 +37,25 @@ public class RequestManager {
 	 * 
 	 * @throws RequestIDAlreadyExistsException It is thrown if the id already exists.
 	 */
-	public void createRequest (long id, Consumer consumer, String fileName) throws RequestIDAlreadyExistsException {
+	public synchronized void createRequest (long id, Consumer consumer, String fileName) throws RequestIDAlreadyExistsException {
+		this.createRequest(id, consumer, fileName, Provider.NO_LIMIT, false);
+	}
+
+	/**
+	 * Adds a new request that wants at most <code>limit</code> files from each provider.
+	 * @param id Request id.
+	 * @param fileName Requested file name.
+	 * @param consumer The consumer that requested the search.
+	 * @param limit The number of files wanted, or <code>Provider.NO_LIMIT</code>.
+	 * @param ranked true to ask for the files that best match the name, false for the first ones found.
+	 * 
+	 * @throws RequestIDAlreadyExistsException It is thrown if the id already exists.
+	 */
+	public synchronized void createRequest (long id, Consumer consumer, String fileName, int limit, boolean ranked) throws RequestIDAlreadyExistsException {
 		if (requests.containsKey(new Long (id))) {
 			throw new RequestIDAlreadyExistsException (id);
 		}
-		requests.put (new Long (id), new Request (id, consumer, fileName));
+		requests.put (new Long (id), new Request (id, consumer, fileName, limit, ranked));
 	}
 	
 	/**
@@ -47,7 +63,7 @@ public class RequestManager {
 	 * 
 	 * @return A collection containing all requests.
 	 */
-	public Collection getAllRequests() {
+	public synchronized Collection getAllRequests() {
 		return new LinkedList(this.requests.values());
 	}
 	
@@ -57,7 +73,7 @@ public class RequestManager {
 	 * @param id The requests id.
 	 * @return True if it still exists.
 	 */
-	public boolean containsRequest (long id) {
+	public synchronized boolean containsRequest (long id) {
 		return requests.containsKey(new Long(id));
 	}
 	
@@ -67,7 +83,7 @@ public class RequestManager {
 	 * @param id The request id.
 	 * @return The request.
 	 */
-	protected Request getRequest (long id) {
+	protected synchronized Request getRequest (long id) {
 	    return (Request)requests.get(new Long(id));
 	}
 
@@ -76,7 +92,7 @@ public class RequestManager {
      * 
      * @param id The request id.
      */
-    public void remove(long id) {
+    public synchronized void remove(long id) {
        requests.remove(new Long(id)); 
     }
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package synapse.server;
 import junit.framework.TestCase;
 import synapse.common.FakeConsumer;
 import synapse.common.FakeProvider;
+import synapse.common.Provider;
 import synapse.common.RequestIDAlreadyExistsException;
 
 /**
@@ -47,6 +48,12 @@ public class RequestManagerTest extends TestCase {
 	public void testCreateRequest () throws Exception {
 		reqManager.createRequest(1234, new FakeConsumer(), "testMe");
 		assertTrue (reqManager.containsRequest(1234));
+		assertEquals(Provider.NO_LIMIT, reqManager.getRequest(1234).getLimit());
+		assertFalse(reqManager.getRequest(1234).isRanked());
+
+		reqManager.createRequest(4321, new FakeConsumer(), "testMe", 50, true);
+		assertEquals(50, reqManager.getRequest(4321).getLimit());
+		assertTrue(reqManager.getRequest(4321).isRanked());
 	}
 	
 	/**
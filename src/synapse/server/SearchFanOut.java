@@ -0,0 +1,202 @@
+package synapse.server;
+
+import java.rmi.RemoteException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.ourgrid.yal.Logger;
+
+import synapse.common.Provider;
+import synapse.common.WorkerThreads;
+
+/**
+ * Calls many providers at the same time, in a bounded pool of <code>WorkerThreads</code>.
+ * A search waits for the providers until its deadline; the providers that did not
+ * answer by then are dropped and counted as stragglers, so a slow provider doesn't
+ * delay the search. A call that starts after the deadline of its search is not made.
+ * <p>
+ * Each call should have its own timeout, given to RMI by
+ * <code>sun.rmi.transport.tcp.responseTimeout</code> (see <code>setCallTimeout</code>),
+ * so a dead provider doesn't hold a thread of the pool for long.
+ *
+ * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
+ * @author <p>Flavio Vinicius Diniz de Figueiredo, flaviov@lcc.ufcg.edu.br</p>
+ */
+public class SearchFanOut {
+
+    /**
+     * The RMI property with the time, in milliseconds, a remote call waits for its answer.
+     */
+    public static final String RMI_RESPONSE_TIMEOUT = "sun.rmi.transport.tcp.responseTimeout";
+
+    private ExecutorService executor;
+
+    private long deadline;
+
+    private long searches;
+
+    private long calls;
+
+    private long failures;
+
+    private long stragglers;
+
+    private Logger logger;
+
+    /**
+     * Creates a new SearchFanOut.
+     *
+     * @param threads The maximum number of providers called at the same time.
+     * @param deadline The time, in milliseconds, a search waits for the providers.
+     */
+    public SearchFanOut(int threads, long deadline) {
+        this.executor = WorkerThreads.newPool("SearchFanOut", threads);
+        this.deadline = deadline;
+        this.logger = Logger.getInstance();
+    }
+
+    /**
+     * Gives a timeout to the RMI calls of this JVM, if they don't have one yet.
+     *
+     * @param timeout The time, in milliseconds, a call waits for its answer.
+     */
+    public static void setCallTimeout(long timeout) {
+        if (System.getProperty(RMI_RESPONSE_TIMEOUT) == null) {
+            System.setProperty(RMI_RESPONSE_TIMEOUT, Long.toString(timeout));
+        }
+    }
+
+    /**
+     * Calls the providers and waits for them until the deadline.
+     *
+     * @param providers The providers.
+     * @param call The call made to each provider.
+     * @return The number of providers that answered before the deadline.
+     */
+    public int spread(Collection providers, final Call call) {
+        final long end = System.currentTimeMillis() + this.deadline;
+        final CountDownLatch done = new CountDownLatch(providers.size());
+        final int[] answered = new int[ 1 ];
+
+        Iterator it = providers.iterator();
+        while (it.hasNext()) {
+            final Provider provider = (Provider) it.next();
+            this.executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        //a busca ja desistiu desta chamada
+                        if (System.currentTimeMillis() > end) {
+                            return;
+                        }
+                        call.call(provider);
+                        synchronized (answered) {
+                            answered[0]++;
+                        }
+                    } catch (RemoteException e) {
+                        synchronized (SearchFanOut.this) {
+                            failures++;
+                        }
+                        call.failed(provider, e);
+                    } catch (RuntimeException e) {
+                        logger.exception(SearchFanOut.class.getName() + ".spread()", e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+
+        try {
+            done.await(Math.max(0, end - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            // the search stops waiting
+        }
+
+        synchronized (this) {
+            this.searches++;
+            this.calls += providers.size();
+            this.stragglers += done.getCount();
+        }
+        synchronized (answered) {
+            return answered[0];
+        }
+    }
+
+    /**
+     * Returns the number of searches spread.
+     *
+     * @return The number of searches.
+     */
+    public synchronized long getSearches() {
+        return this.searches;
+    }
+
+    /**
+     * Returns the number of calls asked to the providers.
+     *
+     * @return The number of calls.
+     */
+    public synchronized long getCalls() {
+        return this.calls;
+    }
+
+    /**
+     * Returns the number of calls that failed.
+     *
+     * @return The number of calls.
+     */
+    public synchronized long getFailures() {
+        return this.failures;
+    }
+
+    /**
+     * Returns the number of calls not finished when their search stopped waiting.
+     *
+     * @return The number of calls.
+     */
+    public synchronized long getStragglers() {
+        return this.stragglers;
+    }
+
+    /**
+     * Stops the threads of the pool. The calls in progress are not waited.
+     */
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Returns the String representation of the counters.
+     * @return The String representation of the counters.
+     */
+    public synchronized String toString() {
+        return this.searches + " searches, " + this.calls + " calls, " + this.failures + " failed, " + this.stragglers + " dropped";
+    }
+
+    /**
+     * A call made to each provider of a search.
+     */
+    public interface Call {
+
+        /**
+         * Calls a provider.
+         *
+         * @param provider The provider.
+         * @throws RemoteException If the provider could not be called.
+         */
+        public void call(Provider provider) throws RemoteException;
+
+        /**
+         * Informs that the call to a provider failed. It may be called after
+         * the search stopped waiting.
+         *
+         * @param provider The provider.
+         * @param e The failure.
+         */
+        public void failed(Provider provider, RemoteException e);
+    }
+
+}
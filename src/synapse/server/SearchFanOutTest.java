@@ -0,0 +1,148 @@
+package synapse.server;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import synapse.common.FakeProvider;
+import synapse.common.Provider;
+
+/**
+ * Tests for SearchFanOut.
+ *
+ * @author <p>Joao Arthur Brunet Monteiro, jarthur@dsc.ufcg.edu.br</p>
+ */
+public class SearchFanOutTest extends TestCase {
+
+    private SearchFanOut fanOut;
+
+    private FakeProvider fast, slow, broken;
+
+    /*
+     * @see TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.fast = new FakeProvider();
+        this.slow = new FakeProvider();
+        this.broken = new FakeProvider();
+    }
+
+    /*
+     * @see TestCase#tearDown()
+     */
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        if (this.fanOut != null) {
+            this.fanOut.shutdown();
+        }
+    }
+
+    /**
+     * Tests if the providers are called at the same time, so the search takes
+     * the time of one call.
+     */
+    public void testParallelCalls() throws Exception {
+        this.fanOut = new SearchFanOut(8, 5000);
+        List providers = new ArrayList();
+        for (int i = 0; i < 8; i++) {
+            providers.add(new FakeProvider());
+        }
+        final List called = Collections.synchronizedList(new ArrayList());
+
+        long start = System.currentTimeMillis();
+        int count = this.fanOut.spread(providers, new TestCall() {
+            public void call(Provider provider) throws RemoteException {
+                sleep(200);
+                called.add(provider);
+            }
+        });
+
+        assertEquals(8, count);
+        assertEquals(8, called.size());
+        assertTrue(System.currentTimeMillis() - start < 8 * 200);
+        assertEquals(0, this.fanOut.getStragglers());
+        assertEquals(8, this.fanOut.getCalls());
+    }
+
+    /**
+     * Tests if a slow provider is dropped at the deadline and a broken one is reported.
+     */
+    public void testDeadline() throws Exception {
+        this.fanOut = new SearchFanOut(4, 300);
+        List providers = new ArrayList();
+        providers.add(this.fast);
+        providers.add(this.slow);
+        providers.add(this.broken);
+        final List failed = Collections.synchronizedList(new ArrayList());
+
+        long start = System.currentTimeMillis();
+        int count = this.fanOut.spread(providers, new TestCall() {
+            public void call(Provider provider) throws RemoteException {
+                if (provider == slow) {
+                    sleep(3000);
+                }
+                else if (provider == broken) {
+                    throw new RemoteException("broken");
+                }
+            }
+
+            public void failed(Provider provider, RemoteException e) {
+                failed.add(provider);
+            }
+        });
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(1, count);
+        assertTrue(elapsed >= 250);
+        assertTrue(elapsed < 2000);
+        assertEquals(1, this.fanOut.getStragglers());
+        assertEquals(1, this.fanOut.getFailures());
+        assertEquals(1, failed.size());
+        assertTrue(failed.contains(this.broken));
+    }
+
+    /**
+     * Tests if the calls that could not start before the deadline are not made.
+     */
+    public void testLateCallsNotMade() throws Exception {
+        this.fanOut = new SearchFanOut(1, 200);
+        List providers = new ArrayList();
+        providers.add(this.fast);
+        providers.add(this.slow);
+        providers.add(this.broken);
+        final List called = Collections.synchronizedList(new ArrayList());
+
+        int count = this.fanOut.spread(providers, new TestCall() {
+            public void call(Provider provider) throws RemoteException {
+                called.add(provider);
+                sleep(400);
+            }
+        });
+        sleep(1000);
+
+        assertEquals(0, count);
+        assertEquals(1, called.size());
+        assertEquals(3, this.fanOut.getStragglers());
+    }
+
+    private static void sleep(long time) {
+        try {
+            Thread.sleep(time);
+        } catch (InterruptedException e) {
+            // do nothing
+        }
+    }
+
+    /**
+     * A call that ignores the failures.
+     */
+    private abstract static class TestCall implements SearchFanOut.Call {
+
+        public void failed(Provider provider, RemoteException e) {
+        }
+    }
+
+}
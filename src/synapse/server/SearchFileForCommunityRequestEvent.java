@@ -4,7 +4,7 @@ import java.rmi.RemoteException;
 
 import synapse.common.Consumer;
 import synapse.common.Provider;
-import synapse.common.events.ActionEvent;
+import synapse.common.events.PartitionedEvent;
 
 
 /**
@@ -12,7 +12,7 @@ import synapse.common.events.ActionEvent;
  * 
  * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
  */
-public class SearchFileForCommunityRequestEvent implements ActionEvent {
+public class SearchFileForCommunityRequestEvent implements PartitionedEvent {
 
     /**
      * The provider.
@@ -34,6 +34,16 @@ public class SearchFileForCommunityRequestEvent implements ActionEvent {
      */
     private String fileName;
 
+    /**
+     * The number of files wanted.
+     */
+    private int limit;
+
+    /**
+     * Informs if the files that best match the name are wanted.
+     */
+    private boolean ranked;
+
     /**
      * Creates an event that will submit a search to <code>provider</code>
      * telling the parameters <code>id</code>, <code>consumer</code> and <code>fileName</code>.
@@ -44,10 +54,27 @@ public class SearchFileForCommunityRequestEvent implements ActionEvent {
      * @param fileName The file name.
      */
     public SearchFileForCommunityRequestEvent(Provider provider, long id, Consumer consumer, String fileName) {
+        this(provider, id, consumer, fileName, Provider.NO_LIMIT, false);
+    }
+
+    /**
+     * Creates an event that will submit a search to <code>provider</code>
+     * asking for at most <code>limit</code> files.
+     * 
+     * @param provider The provider that the search will be submitted.
+     * @param id The search id.
+     * @param consumer The consumer interested in the file.
+     * @param fileName The file name.
+     * @param limit The number of files wanted, or <code>Provider.NO_LIMIT</code>.
+     * @param ranked true to ask for the files that best match the name, false for the first ones found.
+     */
+    public SearchFileForCommunityRequestEvent(Provider provider, long id, Consumer consumer, String fileName, int limit, boolean ranked) {
         this.provider = provider;
         this.id = id;
         this.consumer = consumer;
         this.fileName = fileName;
+        this.limit = limit;
+        this.ranked = ranked;
     }
 
     /* (non-Javadoc)
@@ -55,10 +82,19 @@ public class SearchFileForCommunityRequestEvent implements ActionEvent {
      */
     public void process() {
         try {
-			this.provider.searchForCommunity(this.id, this.consumer, this.fileName);
+			this.provider.searchForCommunity(this.id, this.consumer, this.fileName, this.limit, this.ranked);
 		} catch (RemoteException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Returns the consumer, so the requests of a peer keep their order.
+     * 
+     * @see synapse.common.events.PartitionedEvent#getPartitionKey()
+     */
+    public Object getPartitionKey() {
+        return this.consumer;
+    }
+
 }
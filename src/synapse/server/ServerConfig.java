@@ -39,6 +39,53 @@ public class ServerConfig extends Config {
      */
     public static final String LOGNAME = "logname";
 
+    /**
+     * The property name used to define the number of providers called at the same time by the searches.
+     */
+    public static final String SEARCH_THREADS = "searchthreads";
+
+    /**
+     * The property name used to define the time, in milliseconds, a provider has to answer a call.
+     */
+    public static final String SEARCH_TIMEOUT = "searchtimeout";
+
+    /**
+     * The property name used to define the time, in milliseconds, a search waits for the providers.
+     */
+    public static final String SEARCH_DEADLINE = "searchdeadline";
+
+    /**
+     * The property name used to define the number of events waiting to be processed.
+     */
+    public static final String EVENT_QUEUE_SIZE = "eventqueuesize";
+
+    /**
+     * The prefix of the properties used to define what happens to an event when the queue is full,
+     * followed by the event type, as <code>eventpolicy.FileWasFoundNotifyEvent=dropoldest</code>.
+     * The policy of <code>eventpolicy.Event</code> is used by the types without one.
+     */
+    public static final String EVENT_POLICY = "eventpolicy";
+
+    /**
+     * The default number of providers called at the same time.
+     */
+    private static final int DEFAULT_SEARCH_THREADS = 32;
+
+    /**
+     * The default time a provider has to answer a call.
+     */
+    private static final int DEFAULT_SEARCH_TIMEOUT = 5000;
+
+    /**
+     * The default time a search waits for the providers.
+     */
+    private static final int DEFAULT_SEARCH_DEADLINE = 2000;
+
+    /**
+     * The default number of events waiting to be processed.
+     */
+    private static final int DEFAULT_EVENT_QUEUE_SIZE = 10000;
+
     /**
      * The <code>Properties</code> object instance.
      */
@@ -66,6 +113,10 @@ public class ServerConfig extends Config {
         properties.setProperty(HOSTNAME, "localhost");
         properties.setProperty(MAX_RETRIES, "0");
         properties.setProperty(LOGNAME, "server.log");
+        properties.setProperty(SEARCH_THREADS, Integer.toString(DEFAULT_SEARCH_THREADS));
+        properties.setProperty(SEARCH_TIMEOUT, Integer.toString(DEFAULT_SEARCH_TIMEOUT));
+        properties.setProperty(SEARCH_DEADLINE, Integer.toString(DEFAULT_SEARCH_DEADLINE));
+        properties.setProperty(EVENT_QUEUE_SIZE, Integer.toString(DEFAULT_EVENT_QUEUE_SIZE));
         
         FileOutputStream out;
         try {
@@ -137,4 +188,65 @@ public class ServerConfig extends Config {
         }
         return getRootDir() + File.separator + "log" + File.separator + properties.getProperty(LOGNAME);
     }
+
+    /**
+     * Returns the number of providers called at the same time by the searches.
+     * 
+     * @return The number of calls.
+     */
+    public static int getSearchThreads() {
+        return getInt(SEARCH_THREADS, DEFAULT_SEARCH_THREADS);
+    }
+
+    /**
+     * Returns the time a provider has to answer a call.
+     * 
+     * @return The time, in milliseconds.
+     */
+    public static int getSearchTimeout() {
+        return getInt(SEARCH_TIMEOUT, DEFAULT_SEARCH_TIMEOUT);
+    }
+
+    /**
+     * Returns the time a search waits for the providers. The providers that
+     * did not answer are not waited.
+     * 
+     * @return The time, in milliseconds.
+     */
+    public static int getSearchDeadline() {
+        return getInt(SEARCH_DEADLINE, DEFAULT_SEARCH_DEADLINE);
+    }
+
+    /**
+     * Returns the maximum number of events waiting to be processed.
+     * 
+     * @return The number of events.
+     */
+    public static int getEventQueueSize() {
+        return getInt(EVENT_QUEUE_SIZE, DEFAULT_EVENT_QUEUE_SIZE);
+    }
+
+    /**
+     * Returns the policy of an event type when the queue is full.
+     * 
+     * @param type The event type.
+     * @param defaultPolicy The policy used if the property is not defined or is unknown.
+     * @return The policy, as defined by <code>EventLimit</code>.
+     */
+    public static int getEventPolicy(Class type, int defaultPolicy) {
+        if (properties == null) {
+            loadProperties();
+        }
+        return getEventPolicy(properties, EVENT_POLICY, type, defaultPolicy);
+    }
+
+    /**
+     * Returns a positive number property, or its default if it's not a positive number.
+     */
+    private static int getInt(String key, int defaultValue) {
+        if (properties == null) {
+            loadProperties();
+        }
+        return getInt(properties, key, defaultValue);
+    }
 }
@@ -5,14 +5,17 @@ import java.rmi.RemoteException;
 
 import org.ourgrid.yal.Logger;
 
+import synapse.common.BusyException;
 import synapse.common.Consumer;
+import synapse.common.EventLimit;
 import synapse.common.EventProcessor;
 import synapse.common.EventQueue;
 import synapse.common.Facade;
 import synapse.common.OperationNotSupportedException;
+import synapse.common.PartitionedEventProcessor;
 import synapse.common.Provider;
-import synapse.common.SimpleEventProcessor;
 import synapse.common.URLProvider;
+import synapse.common.events.Event;
 import synapse.common.events.IdentifyEvent;
 import synapse.common.events.SearchFileHashRequestEvent;
 import synapse.common.events.SearchFileRequestEvent;
@@ -29,10 +32,10 @@ public class ServerFacade extends Facade implements Provider {
     private Logger logger;
 
     /**
-     * Creates a new ServerFacade.
+     * Creates a new ServerFacade. Its events are limited as the <code>ServerConfig</code> says.
      */
     public ServerFacade() {
-        this(new SimpleEventProcessor());
+        this(new PartitionedEventProcessor(PartitionedEventProcessor.DEFAULT_THREADS, createEventLimit()));
     }
 
     /**
@@ -45,6 +48,21 @@ public class ServerFacade extends Facade implements Provider {
         this.logger = Logger.getInstance();
     }
 
+    /**
+     * Creates the limit of the events. By default the searches are rejected when the
+     * server is full, the clients try another time, and the other events wait.
+     * 
+     * @return The limit.
+     */
+    private static EventLimit createEventLimit() {
+        EventLimit limit = new EventLimit(ServerConfig.getEventQueueSize(), ServerConfig.getEventPolicy(Event.class, EventLimit.BLOCK));
+        limit.setPolicy(IdentifyEvent.class, ServerConfig.getEventPolicy(IdentifyEvent.class, EventLimit.BLOCK));
+        limit.setPolicy(SearchFileRequestEvent.class, ServerConfig.getEventPolicy(SearchFileRequestEvent.class, EventLimit.REJECT));
+        limit.setPolicy(SearchFileHashRequestEvent.class, ServerConfig.getEventPolicy(SearchFileHashRequestEvent.class, EventLimit.REJECT));
+        limit.setPolicy(SearchFileForCommunityRequestEvent.class, ServerConfig.getEventPolicy(SearchFileForCommunityRequestEvent.class, EventLimit.REJECT));
+        return limit;
+    }
+
     public void config() {
         try {
             proxy = new Proxy(this);
@@ -69,7 +87,7 @@ public class ServerFacade extends Facade implements Provider {
     /* (non-Javadoc)
      * @see synapse.proxy.Provider#identify(synapse.common.Provider)
      */
-    public void identify(Provider provider) {
+    public void identify(Provider provider) throws BusyException {
     	this.eventProcessor.putEvent(new IdentifyEvent(this.connectionManager, provider));
     }
 
@@ -80,11 +98,25 @@ public class ServerFacade extends Facade implements Provider {
         throw new OperationNotSupportedException();
     }
 
+    /* (non-Javadoc)
+     * @see synapse.common.Provider#searchFile(synapse.common.Consumer, java.lang.String, int, boolean)
+     */
+    public long searchFile(Consumer consumer, String fileName, int limit, boolean ranked) throws OperationNotSupportedException {
+        throw new OperationNotSupportedException();
+    }
+
     /* (non-Javadoc)
      * @see synapse.proxy.Provider#searchFile(long, synapse.common.Consumer, java.lang.String)
      */
-    public void searchFile(long id, Consumer consumer, String fileName) {
-        this.eventProcessor.putEvent(new SearchFileRequestEvent(this.connectionManager, id, consumer, fileName));
+    public void searchFile(long id, Consumer consumer, String fileName) throws BusyException {
+        this.searchFile(id, consumer, fileName, NO_LIMIT, false);
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.common.Provider#searchFile(long, synapse.common.Consumer, java.lang.String, int, boolean)
+     */
+    public void searchFile(long id, Consumer consumer, String fileName, int limit, boolean ranked) throws BusyException {
+        this.eventProcessor.putEvent(new SearchFileRequestEvent(this.connectionManager, id, consumer, fileName, limit, ranked));
     }
 
     /* (non-Javadoc)
@@ -97,8 +129,15 @@ public class ServerFacade extends Facade implements Provider {
     /* (non-Javadoc)
      * @see synapse.common.Provider#searchFile(long, synapse.common.Consumer, java.lang.String)
      */
-    public void searchForCommunity(long id, Consumer consumer, String fileName) {
-        this.eventProcessor.putEvent(new SearchFileForCommunityRequestEvent(this.connectionManager, id, consumer, fileName));
+    public void searchForCommunity(long id, Consumer consumer, String fileName) throws BusyException {
+        this.searchForCommunity(id, consumer, fileName, NO_LIMIT, false);
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.common.Provider#searchForCommunity(long, synapse.common.Consumer, java.lang.String, int, boolean)
+     */
+    public void searchForCommunity(long id, Consumer consumer, String fileName, int limit, boolean ranked) throws BusyException {
+        this.eventProcessor.putEvent(new SearchFileForCommunityRequestEvent(this.connectionManager, id, consumer, fileName, limit, ranked));
     }
 
     /* (non-Javadoc)
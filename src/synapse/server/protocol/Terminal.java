@@ -26,6 +26,11 @@ public interface Terminal extends Remote {
      */
     public void searchFromCommunity(Terminal terminal, long id, Consumer consumer, String fileName) throws RemoteException;
 
+    /**
+     * @see synapse.common.Provider#searchFile(long, Consumer, String, int, boolean)
+     */
+    public void searchFromCommunity(Terminal terminal, long id, Consumer consumer, String fileName, int limit, boolean ranked) throws RemoteException;
+
     /**
      * Adds a <code>Terminal</code> to be linked with this one.
      * 
@@ -123,9 +123,16 @@ public class TerminalImpl extends UnicastRemoteObject implements Terminal {
      * @see synapse.server.protocol.Terminal#searchFromCommunity(synapse.server.protocol.Terminal, long, synapse.common.Consumer, java.lang.String)
      */
     public void searchFromCommunity(Terminal terminal, long id, Consumer consumer, String fileName) throws RemoteException {
+    	this.searchFromCommunity(terminal, id, consumer, fileName, Provider.NO_LIMIT, false);
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.server.protocol.Terminal#searchFromCommunity(synapse.server.protocol.Terminal, long, synapse.common.Consumer, java.lang.String, int, boolean)
+     */
+    public void searchFromCommunity(Terminal terminal, long id, Consumer consumer, String fileName, int limit, boolean ranked) throws RemoteException {
 		try {
 			if (this.knownTerminals.contains(terminal)) {
-				this.provider.searchForCommunity(id, consumer, fileName);
+				this.provider.searchForCommunity(id, consumer, fileName, limit, ranked);
 			}
 			else {
 				logger.error(getClass().getName() + ".searchFromCommunity()", "A unknown Terminal performed a search but it was canceled.");
@@ -166,6 +173,13 @@ public class TerminalImpl extends UnicastRemoteObject implements Terminal {
      * Search the file in other serves.
      */
     public void searchForCommunity(long id, Consumer consumer, String fileName) {
+    	this.searchForCommunity(id, consumer, fileName, Provider.NO_LIMIT, false);
+    }
+
+    /**
+     * Search the file in other serves, asking for at most <code>limit</code> files.
+     */
+    public void searchForCommunity(long id, Consumer consumer, String fileName, int limit, boolean ranked) {
 
     	Iterator it;
     	synchronized (knownTerminals) {
@@ -174,7 +188,7 @@ public class TerminalImpl extends UnicastRemoteObject implements Terminal {
         while (it.hasNext()) {
             Terminal t = (Terminal) it.next();
             try {
-                t.searchFromCommunity(this, id, consumer, fileName);
+                t.searchFromCommunity(this, id, consumer, fileName, limit, ranked);
             } catch (RemoteException e) {
             	synchronized (knownTerminals) {
             		this.knownTerminals.remove(t);
@@ -10,6 +10,7 @@ import org.ourgrid.yal.LoggerCreator;
 
 import synapse.common.SynapseLogWriter;
 import synapse.common.URLProvider;
+import synapse.server.SearchFanOut;
 import synapse.server.ServerConfig;
 import synapse.server.ServerFacade;
 
@@ -24,6 +25,9 @@ public class Main {
 
         Logger logger = LoggerCreator.config(SynapseLogWriter.getLogWriter(ServerConfig.getLogFilename(), true));
 
+        // a provider that doesn't answer doesn't hold the searches
+        SearchFanOut.setCallTimeout(ServerConfig.getSearchTimeout());
+
         /*
          * Creates the registry
          */
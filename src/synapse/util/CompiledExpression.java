@@ -0,0 +1,275 @@
+package synapse.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * A search expression parsed once. The terms are kept in upper case, in the order
+ * they appear, with the same meaning they have in <code>SimpleExpressionAnalyzer</code>:
+ * a term accepts the names that contain it, a <code>a+b</code> group replaces the
+ * result with its own and a <code>!a</code> term rejects the names that contain it,
+ * wherever it appears. Matching a name allocates nothing.
+ *
+ * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+ * @author <p>Thiago Emmanuel, thiago.manel@gmail.com</p>
+ */
+public class CompiledExpression {
+
+    private static final String[] NONE = new String[ 0 ];
+
+    /**
+     * The score of a term found as a whole word of a name.
+     */
+    private static final int WORD = 3;
+
+    /**
+     * The score of a term found at the start of a word.
+     */
+    private static final int PREFIX = 2;
+
+    /**
+     * The score of a term found inside a word.
+     */
+    private static final int INSIDE = 1;
+
+    private boolean valid;
+
+    /**
+     * The terms of each step. A step has one term, or the parts of a group; a group
+     * with an invalid part is null and accepts nothing.
+     */
+    private String[][] steps;
+
+    /**
+     * Tells which steps are groups.
+     */
+    private boolean[] groups;
+
+    private String[] excluded;
+
+    /**
+     * Parses an expression.
+     *
+     * @param expression The search expression.
+     */
+    public CompiledExpression(String expression) {
+        this.valid = isValid(expression);
+        List steps = new ArrayList();
+        List groups = new ArrayList();
+        List excluded = new ArrayList();
+
+        StringTokenizer tks = new StringTokenizer(this.valid ? expression.toUpperCase() : "");
+        while (tks.hasMoreTokens()) {
+            String token = tks.nextToken();
+            if (token.indexOf('!') != -1) {
+                excluded.add(token.substring(1));
+            }
+            else if (token.indexOf('+') != -1) {
+                steps.add(parseGroup(token));
+                groups.add(Boolean.TRUE);
+            }
+            else {
+                steps.add(new String[] { token });
+                groups.add(Boolean.FALSE);
+            }
+        }
+
+        this.steps = (String[][]) steps.toArray(new String[ steps.size() ][]);
+        this.groups = new boolean[ groups.size() ];
+        for (int i = 0; i < this.groups.length; i++) {
+            this.groups[i] = ((Boolean) groups.get(i)).booleanValue();
+        }
+        this.excluded = (String[]) excluded.toArray(NONE);
+    }
+
+    /**
+     * Informs if a name matches this expression.
+     *
+     * @param name The name, in upper case.
+     * @return true if the name matches.
+     */
+    public boolean matches(String name) {
+        for (int i = 0; i < this.excluded.length; i++) {
+            if (name.indexOf(this.excluded[i]) != -1) {
+                return false;
+            }
+        }
+        boolean result = false;
+        for (int i = 0; i < this.steps.length; i++) {
+            if (this.groups[i]) {
+                result = this.containsAll(name, this.steps[i]);
+            }
+            else if (!result) {
+                result = name.indexOf(this.steps[i][0]) != -1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Informs if the expression is valid. An invalid expression matches nothing.
+     *
+     * @return true if it's valid.
+     */
+    public boolean isValid() {
+        return this.valid;
+    }
+
+    /**
+     * Returns the number of steps: terms and groups, in the order they appear.
+     *
+     * @return The number of steps.
+     */
+    public int getNumberOfSteps() {
+        return this.steps.length;
+    }
+
+    /**
+     * Informs if a step is a <code>a+b</code> group.
+     *
+     * @param step The step.
+     * @return true if it's a group.
+     */
+    public boolean isGroup(int step) {
+        return this.groups[step];
+    }
+
+    /**
+     * Returns the terms of a step: the term, or the parts of a group.
+     *
+     * @param step The step.
+     * @return The terms, or null if the group accepts nothing.
+     */
+    public String[] getTerms(int step) {
+        return this.steps[step];
+    }
+
+    /**
+     * Returns the terms whose names are rejected.
+     *
+     * @return The excluded terms.
+     */
+    public String[] getExcluded() {
+        return this.excluded;
+    }
+
+    /**
+     * Returns how well a name matches the terms of this expression: each term found
+     * as a whole word scores 3, at the start of a word 2 and inside a word 1. The
+     * excluded terms are not scored.
+     *
+     * @param name The name, in upper case.
+     * @return The score, from 0 to <code>getMaxScore()</code>.
+     */
+    public int score(String name) {
+        int score = 0;
+        for (int i = 0; i < this.steps.length; i++) {
+            if (this.steps[i] != null) {
+                for (int k = 0; k < this.steps[i].length; k++) {
+                    score += score(name, this.steps[i][k]);
+                }
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Returns the score of a name that has every term as a whole word.
+     *
+     * @return The highest score.
+     */
+    public int getMaxScore() {
+        int terms = 0;
+        for (int i = 0; i < this.steps.length; i++) {
+            if (this.steps[i] != null) {
+                terms += this.steps[i].length;
+            }
+        }
+        return terms * WORD;
+    }
+
+    /**
+     * The best score of the occurrences of a term in a name.
+     */
+    private static int score(String name, String term) {
+        if (term.length() == 0) {
+            return 0;
+        }
+        int score = 0;
+        for (int at = name.indexOf(term); at != -1 && score < WORD; at = name.indexOf(term, at + 1)) {
+            int end = at + term.length();
+            boolean start = at == 0 || !Character.isLetterOrDigit(name.charAt(at - 1));
+            boolean whole = start && (end == name.length() || !Character.isLetterOrDigit(name.charAt(end)));
+            score = Math.max(score, whole ? WORD : start ? PREFIX : INSIDE);
+        }
+        return score;
+    }
+
+    private boolean containsAll(String name, String[] terms) {
+        if (terms == null) {
+            return false;
+        }
+        for (int i = 0; i < terms.length; i++) {
+            if (name.indexOf(terms[i]) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Splits a group in its parts. In <code>SimpleExpressionAnalyzer</code> each part
+     * is an expression by itself, so a group with an invalid part accepts nothing.
+     */
+    private static String[] parseGroup(String token) {
+        List parts = new ArrayList();
+        StringTokenizer tks = new StringTokenizer(token, "+", true);
+        boolean expectingPart = true;
+        while (tks.hasMoreTokens()) {
+            String part = tks.nextToken();
+            if (part.equals("+")) {
+                if (expectingPart) {
+                    return null;
+                }
+                expectingPart = true;
+            }
+            else {
+                if (!isValid(part)) {
+                    return null;
+                }
+                parts.add(part);
+                expectingPart = false;
+            }
+        }
+        return expectingPart ? null : (String[]) parts.toArray(NONE);
+    }
+
+    private static boolean isValid(String expression) {
+        String trimmed = expression.trim();
+        return !trimmed.equals("") && !trimmed.equals("-") && !trimmed.equals("+");
+    }
+
+    /**
+     * Returns the String representation of this expression.
+     * @return The String representation of this expression.
+     */
+    public String toString() {
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < this.steps.length; i++) {
+            if (this.steps[i] == null) {
+                buffer.append("<none> ");
+                continue;
+            }
+            for (int k = 0; k < this.steps[i].length; k++) {
+                buffer.append(k > 0 ? "+" : "").append(this.steps[i][k]);
+            }
+            buffer.append(' ');
+        }
+        for (int i = 0; i < this.excluded.length; i++) {
+            buffer.append('!').append(this.excluded[i]).append(' ');
+        }
+        return buffer.toString().trim();
+    }
+
+}
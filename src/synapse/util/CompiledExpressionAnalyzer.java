@@ -0,0 +1,90 @@
+package synapse.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import synapse.client.ExpressionAnalyzer;
+
+/**
+ * An <code>ExpressionAnalyzer</code> that parses each expression once. The
+ * <code>CompiledExpression</code>s of the last searches are kept, so matching the
+ * same expression against many names only compares strings.
+ *
+ * @author <p>Flavio Roberto Santos, flaviors@dsc.ufcg.edu.br</p>
+ * @author <p>Thiago Emmanuel, thiago.manel@gmail.com</p>
+ */
+public class CompiledExpressionAnalyzer implements ExpressionAnalyzer {
+
+    /**
+     * The default number of expressions kept.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    private static CompiledExpressionAnalyzer instance;
+
+    /**
+     * The compiled expressions, the least recently used first.
+     */
+    private Map cache;
+
+    /**
+     * Creates a new CompiledExpressionAnalyzer.
+     *
+     * @param cacheSize The number of expressions kept.
+     */
+    public CompiledExpressionAnalyzer(final int cacheSize) {
+        this.cache = new LinkedHashMap(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return this.size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the analyzer shared by the searches.
+     *
+     * @return The CompiledExpressionAnalyzer instance.
+     */
+    public static synchronized CompiledExpressionAnalyzer getInstance() {
+        if (instance == null) {
+            instance = new CompiledExpressionAnalyzer(DEFAULT_CACHE_SIZE);
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the compiled form of an expression.
+     *
+     * @param expression The search expression.
+     * @return The compiled expression.
+     */
+    public CompiledExpression compile(String expression) {
+        synchronized (this.cache) {
+            CompiledExpression compiled = (CompiledExpression) this.cache.get(expression);
+            if (compiled == null) {
+                compiled = new CompiledExpression(expression);
+                this.cache.put(expression, compiled);
+            }
+            return compiled;
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see synapse.client.ExpressionAnalyzer#accept(java.lang.String, java.lang.String)
+     */
+    public boolean accept(String regex, String word) {
+        return this.compile(regex).matches(word.toUpperCase());
+    }
+
+    /**
+     * Returns the number of expressions kept.
+     *
+     * @return The number of expressions.
+     */
+    public int getCacheSize() {
+        synchronized (this.cache) {
+            return this.cache.size();
+        }
+    }
+
+}
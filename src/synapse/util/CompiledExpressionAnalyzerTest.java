@@ -0,0 +1,112 @@
+package synapse.util;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for CompiledExpressionAnalyzer.
+ *
+ * @author <p>Thiago Emmanuel, thiago.manel@gmail.com</p>
+ */
+public class CompiledExpressionAnalyzerTest extends TestCase {
+
+    private CompiledExpressionAnalyzer analyzer;
+
+    /*
+     * @see TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.analyzer = new CompiledExpressionAnalyzer(4);
+    }
+
+    /**
+     * Tests the cases of <code>SimpleExpressionAnalyzerTest</code>.
+     */
+    public void testAccept() {
+        assertFalse(analyzer.accept("",""));
+        assertFalse(analyzer.accept("!", "!"));
+        assertFalse(analyzer.accept("+", "+"));
+
+        assertTrue(analyzer.accept("infO.TxT", "Info.txt"));
+        assertTrue(analyzer.accept("fiLe my", "My File.zip"));
+        assertFalse(analyzer.accept("y.f", "My File.zip"));
+        assertTrue(analyzer.accept(" file  ", "  My File"));
+        assertTrue(analyzer.accept("    space   two ", " twO    SPACE  "));
+        assertFalse(analyzer.accept("   ", "Some        Spaces!"));
+
+        assertFalse(analyzer.accept("turing !machine ", "turing machine"));
+        assertTrue(analyzer.accept(" !machine turing", "church - turing "));
+        assertFalse(analyzer.accept(" !thesis ", " turing church "));
+
+        assertFalse(analyzer.accept(" turing+thesis ", " turing church"));
+        assertTrue(analyzer.accept(" turing+thesis foo", " turing thesis "));
+        assertTrue(analyzer.accept(" turing+thesis machine ", " alonzo church machine"));
+        assertFalse(analyzer.accept(" machine turing+thesis ", " alonzo church machine"));
+        assertFalse(analyzer.accept(" turing+thesis church !halt", " turing thesis church halt"));
+    }
+
+    /**
+     * Tests random names and expressions against <code>SimpleExpressionAnalyzer</code>.
+     */
+    public void testSameResults() {
+        SimpleExpressionAnalyzer simple = new SimpleExpressionAnalyzer();
+        Random random = new Random(11);
+        String alphabet = "abAB +!-";
+        for (int e = 0; e < 2000; e++) {
+            String expression = this.random(random, alphabet, random.nextInt(10));
+            for (int n = 0; n < 20; n++) {
+                String name = this.random(random, alphabet, random.nextInt(8));
+                assertEquals("'" + expression + "' on '" + name + "'",
+                        simple.accept(expression, name), this.analyzer.accept(expression, name));
+            }
+        }
+    }
+
+    /**
+     * Tests if the compiled expressions are reused and the cache is bounded.
+     */
+    public void testCache() {
+        CompiledExpression compiled = this.analyzer.compile("turing+thesis !halt");
+        assertSame(compiled, this.analyzer.compile("turing+thesis !halt"));
+        assertEquals("TURING+THESIS !HALT", compiled.toString());
+        assertEquals(1, compiled.getNumberOfSteps());
+        assertTrue(compiled.isGroup(0));
+        assertEquals(2, compiled.getTerms(0).length);
+        assertNull(this.analyzer.compile("a++b").getTerms(0));
+        assertFalse(this.analyzer.compile(" - ").isValid());
+
+        for (int i = 0; i < 10; i++) {
+            this.analyzer.compile("term" + i);
+        }
+        assertEquals(4, this.analyzer.getCacheSize());
+        assertNotSame(compiled, this.analyzer.compile("turing+thesis !halt"));
+    }
+
+    /**
+     * Tests if the names are scored by how well they match the terms.
+     */
+    public void testScore() {
+        CompiledExpression compiled = this.analyzer.compile("turing thesis !halt");
+        assertEquals(6, compiled.getMaxScore());
+        assertEquals(6, compiled.score("TURING THESIS.TXT"));
+        assertEquals(3, compiled.score("ALAN TURING"));
+        assertEquals(2 + 1, compiled.score("TURINGTHESIS"));
+        assertEquals(1, compiled.score("MATURING"));
+        assertEquals(3, compiled.score("MATURING TURING"));
+        assertEquals(0, compiled.score("HALT"));
+
+        assertEquals(0, this.analyzer.compile("a++b").getMaxScore());
+        assertEquals(0, this.analyzer.compile(" - ").score("ANYTHING"));
+    }
+
+    private String random(Random random, String alphabet, int length) {
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < length; i++) {
+            buffer.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return buffer.toString();
+    }
+
+}
@@ -1,7 +1,16 @@
 package synapse.util;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import org.ourgrid.yal.Logger;
+
+import synapse.common.PieceHashes;
+
 import com.twmacinta.util.MD5;
 
 /**
@@ -10,7 +19,20 @@ import com.twmacinta.util.MD5;
  */
 public class HashUtil {
 
-    private static final int BUFFER = 20971520 /* 20MB */;
+    /**
+     * The size of the buffer used to read the files.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * A read buffer for each thread, reused by every file the thread hashes. The
+     * MD5 implementation only takes arrays, so a direct buffer would be copied anyway.
+     */
+    private static final ThreadLocal buffers = new ThreadLocal() {
+        protected Object initialValue() {
+            return new byte[ BUFFER_SIZE ];
+        }
+    };
 
 	/**
 	 * Creats a hash for the file.
@@ -18,42 +40,146 @@ public class HashUtil {
 	 * @return The hash of the file.
 	 */
 	public static String createHash(File file) {
+	    byte[] buffer = getBuffer();
+	    MD5 md5 = new MD5();
+	    InputStream in = null;
+	    try {
+	        in = new FileInputStream(file);
+	        int n;
+	        while ((n = in.read(buffer, 0, buffer.length)) >= 0) {
+	            md5.Update(buffer, 0, n);
+	        }
+	        return md5.asHex();
+	    } catch (IOException e) {
+	        //o arquivo pode ter sido apagado ou estar bloqueado
+	        Logger.getInstance().exception(HashUtil.class.getName() + ".createHash()", e);
+	    } finally {
+	        close(in);
+	    }
+	    return null;
+	}
 
-	    long total = file.length();
-
-	    long partSize = BUFFER;
-	    long lastSize = total % partSize;
+	/**
+	 * Creates the file hash and the piece hashes reading the file only once.
+	 * @param file The file to create the hashes.
+	 * @return The hashes, or null if the file could not be read.
+	 */
+	public static PieceHashes createHashes(File file) {
+	    InputStream in = null;
+	    try {
+	        in = new FileInputStream(file);
+	        return createHashes(in, file.length(), PieceHashes.PIECE_SIZE);
+	    } catch (IOException e) {
+	        //o arquivo pode ter sido apagado ou estar bloqueado
+	        Logger.getInstance().exception(HashUtil.class.getName() + ".createHashes()", e);
+	    } finally {
+	        close(in);
+	    }
+	    return null;
+	}
 
-	    long parts = total / partSize;
-	    if ((total % BUFFER) != 0) parts += 1;
+	/**
+	 * Creates the hashes of bytes kept in memory.
+	 * @param content The bytes.
+	 * @param pieceSize The piece size.
+	 * @return The hashes.
+	 */
+	public static PieceHashes createHashes(byte[] content, int pieceSize) {
+	    try {
+	        return createHashes(new ByteArrayInputStream(content), content.length, pieceSize);
+	    } catch (IOException e) {
+	        // never happens
+	        throw new RuntimeException(e);
+	    }
+	}
 
-	    MD5 md5 = new MD5();
+	/**
+	 * Creates the MD5 of a piece of a file.
+	 * @param file The file.
+	 * @param offset The piece offset.
+	 * @param length The piece length.
+	 * @return The digest, or null if the file does not have all the bytes.
+	 * @throws IOException If the file could not be read.
+	 */
+	public static byte[] createPieceHash(File file, long offset, int length) throws IOException {
+	    if (offset + length > file.length()) {
+	        return null;
+	    }
+	    byte[] buffer = getBuffer();
+	    RandomAccessFile input = new RandomAccessFile(file, "r");
+	    try {
+	        MD5 md5 = new MD5();
+	        input.seek(offset);
+	        while (length > 0) {
+	            int n = Math.min(length, buffer.length);
+	            input.readFully(buffer, 0, n);
+	            md5.Update(buffer, 0, n);
+	            length -= n;
+	        }
+	        return md5.Final();
+	    } finally {
+	        input.close();
+	    }
+	}
 
-	    byte[] buffer = new byte[ (int) partSize ];
+	/**
+	 * Checks the pieces already written in a file.
+	 * @param file The file.
+	 * @param hashes The piece hashes.
+	 * @return The pieces that are correct.
+	 */
+	public static boolean[] verifyPieces(File file, PieceHashes hashes) {
+	    boolean[] valid = new boolean[ hashes.getNumberOfPieces() ];
+	    for (int i = 0; i < valid.length; i++) {
+	        try {
+	            byte[] digest = createPieceHash(file, hashes.getOffset(i), hashes.getLength(i));
+	            valid[i] = digest != null && hashes.matches(i, digest);
+	        } catch (IOException e) {
+	            valid[i] = false;
+	        }
+	    }
+	    return valid;
+	}
 
-	    try {
-	        FileInputStream in = new FileInputStream(file);
-	        // the first parts
-	        if (lastSize == 0) parts += 1; 
-	        for (int i = 0; i < parts - 1; i++) {
-	            in.read(buffer, 0, (int) partSize);
-	            md5.Update(buffer);
+	/**
+	 * Reads the stream in small blocks, updating the file MD5 and the MD5 of the
+	 * current piece with the same bytes.
+	 */
+	private static PieceHashes createHashes(InputStream in, long size, int pieceSize) throws IOException {
+	    int count = (int) ((size + pieceSize - 1) / pieceSize);
+	    byte[][] pieces = new byte[ count ][];
+	    byte[] buffer = getBuffer();
+	    MD5 file = new MD5();
 
+	    for (int i = 0; i < count; i++) {
+	        int length = (int) Math.min(pieceSize, size - (long) i * pieceSize);
+	        MD5 piece = new MD5();
+	        while (length > 0) {
+	            int n = in.read(buffer, 0, Math.min(length, buffer.length));
+	            if (n < 0) {
+	                throw new IOException("The file is shorter than " + size + " bytes");
+	            }
+	            file.Update(buffer, 0, n);
+	            piece.Update(buffer, 0, n);
+	            length -= n;
 	        }
-	        // the last part
-	        if (lastSize != 0) {
-		        buffer = new byte[ (int) lastSize ];
-		        in.read(buffer, 0, (int) lastSize);
-	            md5.Update(buffer);
+	        pieces[i] = piece.Final();
+	    }
+	    return new PieceHashes(file.asHex(), size, pieceSize, pieces);
+	}
+
+	private static byte[] getBuffer() {
+	    return (byte[]) buffers.get();
+	}
+
+	private static void close(InputStream in) {
+	    if (in != null) {
+	        try {
+	            in.close();
+	        } catch (IOException e) {
+	            // do nothing
 	        }
-	        // process
-	        md5.Final();
-	        return md5.asHex();
-	    } catch (Exception e) {
-	        // do nothing
-	        e.printStackTrace();
 	    }
-	    return null;
 	}
 
-}
\ No newline at end of file
+}
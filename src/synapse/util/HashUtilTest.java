@@ -1,8 +1,14 @@
 package synapse.util;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 
 import junit.framework.TestCase;
+import synapse.client.ClientConfig;
+import synapse.common.PieceHashes;
+
+import com.twmacinta.util.MD5;
 
 /**
  * Tests the HashUtil class.
@@ -43,4 +49,77 @@ public class HashUtilTest extends TestCase {
         
     }
 
+    /**
+     * Tests if the piece hashes are created with the same file hash.
+     */
+    public void testCreateHashes() throws Exception {
+        String[] names = new String[] { "test1.dat", "test2.dat", "test3.dat", "emptyFile.dat" };
+        for (int i = 0; i < names.length; i++) {
+            File file = new File("testFiles" + File.separator + names[i]);
+            PieceHashes hashes = HashUtil.createHashes(file);
+
+            assertEquals(HashUtil.createHash(file), hashes.getFileHash());
+            assertEquals(file.length(), hashes.getSize());
+            assertTrue(hashes.isConsistent());
+        }
+    }
+
+    /**
+     * Tests the hashes of many pieces and the check of a piece of a file.
+     */
+    public void testCreatePieceHash() throws Exception {
+        File file = new File("testFiles" + File.separator + "test2.dat");
+        byte[] content = new byte[ (int) file.length() ];
+        FileInputStream in = new FileInputStream(file);
+        int read = 0;
+        while (read < content.length) {
+            read += in.read(content, read, content.length - read);
+        }
+        in.close();
+
+        PieceHashes hashes = HashUtil.createHashes(content, 4096);
+        assertEquals(HashUtil.createHash(file), hashes.getFileHash());
+        assertEquals(6, hashes.getNumberOfPieces());
+        assertEquals(content.length - 5 * 4096, hashes.getLength(5));
+
+        for (int i = 0; i < hashes.getNumberOfPieces(); i++) {
+            byte[] digest = HashUtil.createPieceHash(file, hashes.getOffset(i), hashes.getLength(i));
+            assertTrue(hashes.matches(i, digest));
+        }
+        assertFalse(hashes.matches(1, HashUtil.createPieceHash(file, 0, 4096)));
+        assertNull(HashUtil.createPieceHash(file, content.length - 10, 4096));
+
+        boolean[] valid = HashUtil.verifyPieces(file, hashes);
+        for (int i = 0; i < valid.length; i++) {
+            assertTrue(valid[i]);
+        }
+    }
+
+    /**
+     * Tests the hashes of a file bigger than the read buffer.
+     */
+    public void testStreamingHash() throws Exception {
+        File file = new File(ClientConfig.getTestFolder() + File.separator + "hashTest.dat");
+        byte[] content = new byte[ 200000 ];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content);
+        out.close();
+
+        try {
+            PieceHashes expected = HashUtil.createHashes(content, 70000);
+            assertEquals(expected.getFileHash(), HashUtil.createHash(file));
+            assertEquals(expected.getFileHash(), HashUtil.createHashes(file).getFileHash());
+
+            MD5 md5 = new MD5();
+            md5.Update(content, 70000, 70000);
+            assertTrue(expected.matches(1, md5.Final()));
+            assertTrue(expected.matches(1, HashUtil.createPieceHash(file, 70000, 70000)));
+        } finally {
+            file.delete();
+        }
+    }
+
 }